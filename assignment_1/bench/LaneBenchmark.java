@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long urgent items wait behind a bulk flood, in a single
+ * FIFO LockBlockedQueue and in a two-lane MultiLaneBlockedQueue
+ *
+ * Bulk producers keep the queue full while one urgent producer sends an
+ * item every interval. Consumers spend a fixed amount of work on every
+ * item, so the queue stays backed up for the whole run.
+ *
+ * Reports per subject:
+ *  - urgent end-to-end latency (put() to remove()) at p50/p99/p99.9/max
+ *  - bulk items consumed per second
+ *
+ * Usage: java LaneBenchmark [--capacity N] [--bulk-producers N]
+ *            [--consumers N] [--urgent N] [--interval-us N] [--work-us N]
+ *            [--weight N]
+ */
+public class LaneBenchmark {
+    /**
+     * Item carrying its lane and the time it was put
+     */
+    static final class Item {
+        final boolean urgent;
+        final long putNanos;
+
+        Item(boolean urgent, long putNanos) {
+            this.urgent = urgent;
+            this.putNanos = putNanos;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        int capacity =
+            Integer.parseInt(options.getOrDefault("capacity", "1024"));
+        int bulkProducers =
+            Integer.parseInt(options.getOrDefault("bulk-producers", "2"));
+        int consumers = Integer.parseInt(options.getOrDefault("consumers", "2"));
+        int urgent = Integer.parseInt(options.getOrDefault("urgent", "2000"));
+        long intervalNanos = 1_000L
+            * Long.parseLong(options.getOrDefault("interval-us", "500"));
+        long workNanos =
+            1_000L * Long.parseLong(options.getOrDefault("work-us", "5"));
+        int weight = Integer.parseInt(options.getOrDefault("weight", "8"));
+
+        System.out.printf("%-10s %10s %10s %10s %10s %12s%n",
+            "queue", "p50_us", "p99_us", "p999_us", "max_us", "bulk/s"
+        );
+
+        // the urgent lane gets a tenth of the capacity, at least 1 slot
+        int urgentCapacity = Math.max(1, capacity / 10);
+        List<BlockedQueue<Item>> subjects = List.of(
+            new LockBlockedQueue<>(capacity),
+            new MultiLaneBlockedQueue<>(
+                new int[] {urgentCapacity, capacity - urgentCapacity},
+                new int[] {weight, 1}, item -> item.urgent ? 0 : 1
+            )
+        );
+        String[] names = {"fifo", "lanes"};
+
+        for(int i = 0; i < subjects.size(); i++) {
+            run(names[i], subjects.get(i), bulkProducers, consumers, urgent,
+                intervalNanos, workNanos
+            );
+        }
+    }
+
+    private static void run(String name, BlockedQueue<Item> queue,
+        int bulkProducers, int consumers, int urgent, long intervalNanos,
+        long workNanos) throws InterruptedException {
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long[] bulkConsumed = new long[consumers];
+        List<Thread> threads = new ArrayList<>();
+
+        for(int i = 0; i < bulkProducers; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while(queue.isActive()) {
+                        queue.put(new Item(false, System.nanoTime()));
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        for(int i = 0; i < consumers; i++) {
+            int index = i;
+
+            threads.add(new Thread(() -> {
+                try {
+                    Item item;
+
+                    while((item = queue.remove()) != null) {
+                        if(item.urgent) {
+                            latency.record(System.nanoTime() - item.putNanos);
+                        } else {
+                            bulkConsumed[index]++;
+                        }
+
+                        // simulate work
+                        long end = System.nanoTime() + workNanos;
+                        while(System.nanoTime() < end) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        long start = System.nanoTime();
+        for(Thread thread : threads) {
+            thread.start();
+        }
+
+        // let the bulk producers fill the queue first
+        Thread.sleep(100);
+
+        for(int i = 0; i < urgent; i++) {
+            queue.put(new Item(true, System.nanoTime()));
+            LockSupport.parkNanos(intervalNanos);
+        }
+
+        // wait for the last urgent items to be consumed
+        while(latency.getCount() < urgent) {
+            Thread.sleep(1);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        queue.shutdown();
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        long bulk = 0;
+        for(long count : bulkConsumed) {
+            bulk += count;
+        }
+
+        System.out.printf("%-10s %10.1f %10.1f %10.1f %10.1f %12.0f%n", name,
+            latency.getValueAtPercentile(50) / 1e3,
+            latency.getValueAtPercentile(99) / 1e3,
+            latency.getValueAtPercentile(99.9) / 1e3,
+            latency.getMax() / 1e3,
+            bulk / seconds
+        );
+    }
+}
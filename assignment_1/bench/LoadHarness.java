@@ -0,0 +1,535 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Configurable load generator and soak test for producer/consumer
+ * topologies over any QueueType
+ *
+ * Producers generate items on an arrival schedule (constant, Poisson or
+ * bursty) at a target rate, each carrying a payload of a given size.
+ * Consumers spend a fixed amount of work on every item. The run stops
+ * after a fixed duration or item count, then the queue is closed
+ * gracefully so consumers drain what is left.
+ *
+ * Latency is measured from each item's scheduled arrival, not from the
+ * moment its put() began, so a producer held back by a full queue still
+ * shows up as latency instead of silently lowering the load.
+ *
+ * Reports, as CSV or JSON:
+ *  - the configuration, items produced and consumed, and throughput
+ *  - queue wait (put() to remove()) and end-to-end latency (scheduled
+ *    arrival to end of work) at p50/p90/p99/p99.9/max
+ *  - a timeline of queue depth and enqueue/dequeue rates, sampled every
+ *    sample interval
+ *
+ * Options come from the command line, or from a properties file given
+ * with --config using the same keys; command-line options win.
+ *
+ * Usage: java LoadHarness [--config load.properties] [--queue ring]
+ *            [--producers N] [--consumers N] [--capacity N]
+ *            [--payload-bytes N] [--arrival constant|poisson|bursty]
+ *            [--rate ITEMS_PER_S] [--burst N] [--work-us N]
+ *            [--duration-s N] [--items N] [--sample-ms N]
+ *            [--threads platform|virtual] [--format csv|json] [--out FILE]
+ */
+public class LoadHarness {
+    /**
+     * How producers space out their items
+     */
+    enum Arrival {
+        // one item every mean interval
+        CONSTANT {
+            @Override
+            long gapNanos(long meanNanos, long index, int burst,
+                SplittableRandom random) {
+
+                return meanNanos;
+            }
+        },
+        // exponentially distributed gaps, as from many independent clients
+        POISSON {
+            @Override
+            long gapNanos(long meanNanos, long index, int burst,
+                SplittableRandom random) {
+
+                return (long) (-Math.log(1.0 - random.nextDouble()) * meanNanos);
+            }
+        },
+        // burst items at once, then a pause keeping the mean rate
+        BURSTY {
+            @Override
+            long gapNanos(long meanNanos, long index, int burst,
+                SplittableRandom random) {
+
+                return index % burst == burst - 1 ? meanNanos * burst : 0;
+            }
+        };
+
+        /**
+         * Returns the time between item index and the next one
+         */
+        abstract long gapNanos(long meanNanos, long index, int burst,
+            SplittableRandom random);
+
+        static Arrival fromName(String name) {
+            for(Arrival arrival : values()) {
+                if(arrival.name().equalsIgnoreCase(name.trim())) return arrival;
+            }
+
+            throw new IllegalArgumentException("Unknown arrival: " + name);
+        }
+    }
+
+    /**
+     * Item carrying its payload, its scheduled arrival and when its put()
+     * began
+     */
+    static final class Item {
+        final byte[] payload;
+        final long scheduledNanos;
+        final long putNanos;
+
+        Item(byte[] payload, long scheduledNanos, long putNanos) {
+            this.payload = payload;
+            this.scheduledNanos = scheduledNanos;
+            this.putNanos = putNanos;
+        }
+    }
+
+    /**
+     * One point of the queue timeline
+     */
+    static final class Sample {
+        final long elapsedMillis;
+        final long depth;
+        final long enqueued;
+        final long dequeued;
+
+        Sample(long elapsedMillis, long depth, long enqueued, long dequeued) {
+            this.elapsedMillis = elapsedMillis;
+            this.depth = depth;
+            this.enqueued = enqueued;
+            this.dequeued = dequeued;
+        }
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    public static void main(String[] args)
+        throws IOException, InterruptedException {
+
+        Map<String, String> options = loadOptions(args);
+
+        int producers = positive(options, "producers", "1");
+        int consumers = positive(options, "consumers", "1");
+        int capacity = positive(options, "capacity", "1024");
+        int payloadBytes =
+            Math.toIntExact(nonNegative(options, "payload-bytes", "64"));
+        Arrival arrival =
+            Arrival.fromName(options.getOrDefault("arrival", "constant"));
+        long rate = nonNegative(options, "rate", "10000");
+        int burst = positive(options, "burst", "100");
+        long workNanos = 1_000L * nonNegative(options, "work-us", "50");
+        long items = nonNegative(options, "items", "0");
+        // an item count alone runs until every item is produced
+        long durationNanos = TimeUnit.SECONDS.toNanos(nonNegative(options,
+            "duration-s", items > 0 ? "0" : "10"
+        ));
+        long sampleNanos =
+            TimeUnit.MILLISECONDS.toNanos(positive(options, "sample-ms", "100"));
+        ThreadMode threadMode =
+            ThreadMode.fromName(options.getOrDefault("threads", "platform"));
+        String format = options.getOrDefault("format", "csv").toLowerCase();
+
+        if(!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+
+        QueueType queueType = options.containsKey("queue")
+            ? QueueType.fromName(options.get("queue"))
+            : QueueType.LOCK.forUsage(producers, consumers);
+
+        if(!queueType.supports(producers, consumers)) {
+            throw new IllegalArgumentException(queueType + " does not support "
+                + producers + " producers and " + consumers + " consumers"
+            );
+        }
+
+        BlockedQueue<Item> queue = queueType.create(capacity);
+        LatencyHistogram waits = new LatencyHistogram();
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLong produced = new AtomicLong();
+
+        // the mean gap of each producer, so all of them together hit rate
+        long meanGapNanos = rate == 0 ? 0 : producers * 1_000_000_000L / rate;
+
+        ExecutorService pool = threadMode.newExecutor(producers + consumers);
+        List<Future<?>> producerTasks = new ArrayList<>();
+        List<Future<?>> consumerTasks = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        for(int i = 0; i < producers; i++) {
+            // spread the item count, giving the remainder to the first ones
+            long share = items / producers + (i < items % producers ? 1 : 0);
+            long seed = i;
+
+            producerTasks.add(pool.submit(() -> {
+                produce(queue, arrival, meanGapNanos, burst, payloadBytes,
+                    items == 0 ? Long.MAX_VALUE : share,
+                    durationNanos == 0 ? Long.MAX_VALUE : durationNanos,
+                    start, seed, produced
+                );
+            }));
+        }
+
+        for(int i = 0; i < consumers; i++) {
+            consumerTasks.add(pool.submit(() -> {
+                consume(queue, workNanos, waits, latencies);
+            }));
+        }
+
+        List<Sample> timeline = new ArrayList<>();
+        long nextSample = start;
+
+        // sample while producers run, then close the queue and keep
+        // sampling while consumers drain it
+        boolean closed = false;
+        while(!allDone(consumerTasks)) {
+            if(!closed && allDone(producerTasks)) {
+                queue.closeGracefully();
+                closed = true;
+            }
+
+            long now = System.nanoTime();
+            if(now >= nextSample) {
+                QueueMetrics metrics = queue.metrics();
+                timeline.add(new Sample(
+                    TimeUnit.NANOSECONDS.toMillis(now - start), queue.size(),
+                    metrics.getEnqueuedCount(), metrics.getDequeuedCount()
+                ));
+                nextSample += sampleNanos;
+            }
+
+            LockSupport.parkNanos(Math.min(sampleNanos, 1_000_000));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        failOnError(producerTasks);
+        failOnError(consumerTasks);
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("queue", queueType.name().toLowerCase());
+        config.put("producers", producers);
+        config.put("consumers", consumers);
+        config.put("capacity", capacity);
+        config.put("payload_bytes", payloadBytes);
+        config.put("arrival", arrival.name().toLowerCase());
+        config.put("rate", rate);
+        config.put("burst", burst);
+        config.put("work_us", workNanos / 1_000);
+        config.put("threads", threadMode.name().toLowerCase());
+
+        QueueMetrics metrics = queue.metrics();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("elapsed_s", round(seconds));
+        summary.put("produced", produced.get());
+        summary.put("consumed", metrics.getDequeuedCount());
+        summary.put("throughput", round(metrics.getDequeuedCount() / seconds));
+        summary.put("max_depth", metrics.getHighWaterMark());
+        summary.put("put_blocked_ms", metrics.getPutBlockedNanos() / 1_000_000);
+        putPercentiles(summary, "wait", waits);
+        putPercentiles(summary, "latency", latencies);
+
+        String report = format.equals("json")
+            ? toJson(config, summary, timeline)
+            : toCsv(config, summary, timeline);
+
+        if(options.containsKey("out")) {
+            Path out = Path.of(options.get("out"));
+            Files.writeString(out, report, StandardCharsets.UTF_8);
+            System.out.println("Wrote " + out + " (" + metrics.getDequeuedCount()
+                + " items in " + round(seconds) + " s)"
+            );
+        } else {
+            System.out.print(report);
+        }
+    }
+
+    /**
+     * Puts items on the arrival schedule until share items are produced,
+     * durationNanos elapse since start, or the queue stops
+     */
+    private static void produce(BlockedQueue<Item> queue, Arrival arrival,
+        long meanGapNanos, int burst, int payloadBytes, long share,
+        long durationNanos, long start, long seed, AtomicLong produced) {
+
+        SplittableRandom random = new SplittableRandom(seed);
+        long scheduled = System.nanoTime();
+
+        try {
+            for(long i = 0; i < share && queue.isActive(); i++) {
+                long now = System.nanoTime();
+                if(Math.max(scheduled, now) - start >= durationNanos) break;
+
+                if(scheduled > now) {
+                    LockSupport.parkNanos(scheduled - now);
+                }
+
+                byte[] payload = new byte[payloadBytes];
+                if(payloadBytes > 0) payload[0] = (byte) i;
+
+                queue.put(new Item(payload, scheduled, System.nanoTime()));
+                produced.incrementAndGet();
+
+                if(meanGapNanos > 0) {
+                    scheduled += arrival.gapNanos(meanGapNanos, i, burst, random);
+                } else {
+                    // unthrottled: every item is due as soon as it is made
+                    scheduled = System.nanoTime();
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes items until the queue is drained, spending workNanos on
+     * each, and records their latencies
+     */
+    private static void consume(BlockedQueue<Item> queue, long workNanos,
+        LatencyHistogram waits, LatencyHistogram latencies) {
+
+        LatencyHistogram localWaits = new LatencyHistogram();
+        LatencyHistogram localLatencies = new LatencyHistogram();
+
+        try {
+            Item item;
+
+            while((item = queue.remove()) != null) {
+                localWaits.record(System.nanoTime() - item.putNanos);
+
+                // simulate work
+                long end = System.nanoTime() + workNanos;
+                while(System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+
+                localLatencies.record(System.nanoTime() - item.scheduledNanos);
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waits.add(localWaits);
+            latencies.add(localLatencies);
+        }
+    }
+
+    private static boolean allDone(List<Future<?>> tasks) {
+        for(Future<?> task : tasks) {
+            if(!task.isDone()) return false;
+        }
+
+        return true;
+    }
+
+    private static void failOnError(List<Future<?>> tasks)
+        throws InterruptedException {
+
+        for(Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch(ExecutionException e) {
+                throw new IllegalStateException("Load task failed", e.getCause());
+            }
+        }
+    }
+
+    private static void putPercentiles(Map<String, Object> summary,
+        String name, LatencyHistogram histogram) {
+
+        for(double percentile : PERCENTILES) {
+            String label = String.valueOf(percentile)
+                .replace(".0", "").replace(".", "");
+
+            summary.put(name + "_p" + label + "_us",
+                round(histogram.getValueAtPercentile(percentile) / 1e3)
+            );
+        }
+
+        summary.put(name + "_max_us", round(histogram.getMax() / 1e3));
+    }
+
+    private static String toCsv(Map<String, Object> config,
+        Map<String, Object> summary, List<Sample> timeline) {
+
+        Map<String, Object> row = new LinkedHashMap<>(config);
+        row.putAll(summary);
+
+        StringBuilder csv = new StringBuilder();
+        csv.append(String.join(",", row.keySet())).append('\n');
+
+        List<String> values = new ArrayList<>();
+        for(Object value : row.values()) {
+            values.add(String.valueOf(value));
+        }
+        csv.append(String.join(",", values)).append("\n\n");
+
+        csv.append("elapsed_ms,depth,enqueued,dequeued,enqueue_rate,dequeue_rate\n");
+        Sample previous = null;
+        for(Sample sample : timeline) {
+            csv.append(sample.elapsedMillis).append(',')
+                .append(sample.depth).append(',')
+                .append(sample.enqueued).append(',')
+                .append(sample.dequeued).append(',')
+                .append(enqueueRate(previous, sample)).append(',')
+                .append(dequeueRate(previous, sample))
+                .append('\n');
+            previous = sample;
+        }
+
+        return csv.toString();
+    }
+
+    private static String toJson(Map<String, Object> config,
+        Map<String, Object> summary, List<Sample> timeline) {
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"config\": ").append(jsonObject(config)).append(",\n");
+        json.append("  \"summary\": ").append(jsonObject(summary)).append(",\n");
+        json.append("  \"timeline\": [");
+
+        Sample previous = null;
+        for(int i = 0; i < timeline.size(); i++) {
+            Sample sample = timeline.get(i);
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("elapsed_ms", sample.elapsedMillis);
+            point.put("depth", sample.depth);
+            point.put("enqueued", sample.enqueued);
+            point.put("dequeued", sample.dequeued);
+            point.put("enqueue_rate", enqueueRate(previous, sample));
+            point.put("dequeue_rate", dequeueRate(previous, sample));
+
+            json.append(i == 0 ? "\n    " : ",\n    ").append(jsonObject(point));
+            previous = sample;
+        }
+
+        json.append(timeline.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+
+        return json.toString();
+    }
+
+    private static String jsonObject(Map<String, Object> fields) {
+        StringBuilder json = new StringBuilder("{");
+
+        for(Map.Entry<String, Object> field : fields.entrySet()) {
+            if(json.length() > 1) json.append(", ");
+
+            json.append('"').append(field.getKey()).append("\": ");
+
+            Object value = field.getValue();
+            if(value instanceof Number) {
+                json.append(value);
+            } else {
+                json.append('"').append(value).append('"');
+            }
+        }
+
+        return json.append('}').toString();
+    }
+
+    private static long enqueueRate(Sample previous, Sample sample) {
+        if(previous == null) return 0;
+
+        return perSecond(sample.enqueued - previous.enqueued, previous, sample);
+    }
+
+    private static long dequeueRate(Sample previous, Sample sample) {
+        if(previous == null) return 0;
+
+        return perSecond(sample.dequeued - previous.dequeued, previous, sample);
+    }
+
+    /**
+     * Returns items per second over the time between two samples
+     */
+    private static long perSecond(long items, Sample previous, Sample sample) {
+        long millis = Math.max(1, sample.elapsedMillis - previous.elapsedMillis);
+
+        return items * 1_000 / millis;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Reads --config, if given, then lets command-line options override it
+     */
+    private static Map<String, String> loadOptions(String[] args)
+        throws IOException {
+
+        Map<String, String> cli = QueueBenchmark.parseOptions(args);
+        Map<String, String> options = new LinkedHashMap<>();
+
+        if(cli.containsKey("config")) {
+            Properties properties = new Properties();
+
+            try(Reader reader = Files.newBufferedReader(Path.of(cli.get("config")))) {
+                properties.load(reader);
+            }
+
+            for(String key : properties.stringPropertyNames()) {
+                options.put(key, properties.getProperty(key).trim());
+            }
+        }
+
+        options.putAll(cli);
+
+        return options;
+    }
+
+    private static int positive(Map<String, String> options, String key,
+        String defaultValue) {
+
+        long value = nonNegative(options, key, defaultValue);
+
+        if(value == 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "--" + key + " must be between 1 and " + Integer.MAX_VALUE
+            );
+        }
+
+        return (int) value;
+    }
+
+    private static long nonNegative(Map<String, String> options, String key,
+        String defaultValue) {
+
+        long value = Long.parseLong(options.getOrDefault(key, defaultValue));
+
+        if(value < 0) {
+            throw new IllegalArgumentException("--" + key + " must not be negative");
+        }
+
+        return value;
+    }
+}
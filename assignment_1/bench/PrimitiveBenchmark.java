@@ -0,0 +1,361 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Compares boxed LockBlockedQueue&lt;Integer&gt;/&lt;Long&gt; handoffs
+ * with IntBlockedQueue and LongBlockedQueue
+ *
+ * Every subject moves the same values from N producers to N consumers.
+ * Values start above the Integer cache range, so every boxed put()
+ * allocates. Consumers sum what they receive, so nothing is optimized
+ * away.
+ *
+ * Reports per subject:
+ *  - median throughput (items/s) of the measured iterations
+ *  - bytes allocated per item by producer and consumer threads
+ *    (HotSpot only; n/a elsewhere)
+ *  - GC collections and GC time during the measured iterations
+ *
+ * Usage: java PrimitiveBenchmark [--items N] [--capacity N]
+ *            [--batch N] [--threads N] [--warmup N] [--iterations N]
+ */
+public class PrimitiveBenchmark {
+    private static final int FIRST_VALUE = 1_000;
+    private static final ThreadMXBean THREADS =
+        ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED =
+        THREADS instanceof com.sun.management.ThreadMXBean;
+
+    /**
+     * One producer/consumer handoff being measured
+     */
+    interface Subject {
+        void produce(int from, int to) throws InterruptedException;
+
+        /** Consumes until shutdown, returning the sum of values */
+        long consume() throws InterruptedException;
+
+        int size();
+
+        void shutdown();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        int items = Integer.parseInt(options.getOrDefault("items", "2000000"));
+        int capacity =
+            Integer.parseInt(options.getOrDefault("capacity", "1024"));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "2"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        int iterations =
+            Integer.parseInt(options.getOrDefault("iterations", "5"));
+
+        System.out.printf("%-14s %6s %14s %12s %8s %10s%n",
+            "queue", "batch", "ops/s", "bytes/item", "gc", "gc_ms"
+        );
+
+        String[] names = {"lock<Integer>", "int", "lock<Long>", "long"};
+
+        for(String name : names) {
+            double[] opsPerSecond = new double[iterations];
+            long allocatedBytes = 0;
+            long gcCount = 0;
+            long gcMillis = 0;
+
+            for(int i = 0; i < warmup + iterations; i++) {
+                long gcCountBefore = gcCount();
+                long gcMillisBefore = gcMillis();
+                long[] allocated = new long[1];
+
+                double ops = runIteration(subject(name, capacity, batch),
+                    threads, items, allocated
+                );
+
+                if(i >= warmup) {
+                    opsPerSecond[i - warmup] = ops;
+                    allocatedBytes += allocated[0];
+                    gcCount += gcCount() - gcCountBefore;
+                    gcMillis += gcMillis() - gcMillisBefore;
+                }
+            }
+
+            Arrays.sort(opsPerSecond);
+
+            System.out.printf("%-14s %6d %14.0f %12s %8d %10d%n",
+                name, batch, opsPerSecond[iterations / 2],
+                ALLOCATION_SUPPORTED
+                    ? String.format("%.1f",
+                        (double) allocatedBytes / ((long) items * iterations))
+                    : "n/a",
+                gcCount, gcMillis
+            );
+        }
+    }
+
+    private static Subject subject(String name, int capacity, int batch) {
+        switch(name) {
+            case "int":
+                return intSubject(new IntBlockedQueue(capacity), batch);
+            case "long":
+                return longSubject(new LongBlockedQueue(capacity), batch);
+            case "lock<Long>":
+                return boxedSubject(new LockBlockedQueue<Long>(capacity),
+                    batch, Long::valueOf
+                );
+            default:
+                return boxedSubject(new LockBlockedQueue<Integer>(capacity),
+                    batch, Integer::valueOf
+                );
+        }
+    }
+
+    /**
+     * Boxes each value on put(); removes single items, or batches with
+     * removeBatch(), which returns a new List per call
+     */
+    private static <T extends Number> Subject boxedSubject(
+        BlockedQueue<T> queue, int batch,
+        IntFunction<T> box) {
+
+        return new Subject() {
+            @Override
+            public void produce(int from, int to)
+                throws InterruptedException {
+
+                for(int value = from; value < to; value++) {
+                    queue.put(box.apply(value));
+                }
+            }
+
+            @Override
+            public long consume() throws InterruptedException {
+                long sum = 0;
+
+                while(true) {
+                    if(batch == 1) {
+                        T value = queue.remove();
+                        if(value == null) return sum;
+
+                        sum += value.longValue();
+                    } else {
+                        List<T> values = queue.removeBatch(1, batch,
+                            Long.MAX_VALUE, TimeUnit.NANOSECONDS
+                        );
+                        if(values == null) return sum;
+
+                        for(T value : values) {
+                            sum += value.longValue();
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+
+            @Override
+            public void shutdown() {
+                queue.shutdown();
+            }
+        };
+    }
+
+    private static Subject intSubject(IntBlockedQueue queue, int batch) {
+        return new Subject() {
+            @Override
+            public void produce(int from, int to)
+                throws InterruptedException {
+
+                for(int value = from; value < to; value++) {
+                    queue.put(value);
+                }
+            }
+
+            @Override
+            public long consume() throws InterruptedException {
+                int[] values = new int[batch];
+                long sum = 0;
+
+                while(true) {
+                    int removed = queue.removeInto(values, 0, batch);
+                    if(removed < 0) return sum;
+
+                    for(int i = 0; i < removed; i++) {
+                        sum += values[i];
+                    }
+                }
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+
+            @Override
+            public void shutdown() {
+                queue.shutdown();
+            }
+        };
+    }
+
+    private static Subject longSubject(LongBlockedQueue queue, int batch) {
+        return new Subject() {
+            @Override
+            public void produce(int from, int to)
+                throws InterruptedException {
+
+                for(int value = from; value < to; value++) {
+                    queue.put(value);
+                }
+            }
+
+            @Override
+            public long consume() throws InterruptedException {
+                long[] values = new long[batch];
+                long sum = 0;
+
+                while(true) {
+                    int removed = queue.removeInto(values, 0, batch);
+                    if(removed < 0) return sum;
+
+                    for(int i = 0; i < removed; i++) {
+                        sum += values[i];
+                    }
+                }
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+
+            @Override
+            public void shutdown() {
+                queue.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Moves items values through subject, and returns the throughput in
+     * items/s; allocated[0] receives the bytes allocated by the worker
+     * threads
+     */
+    private static double runIteration(Subject subject, int threads,
+        int items, long[] allocated) throws InterruptedException {
+
+        int perProducer = items / threads;
+        AtomicLong allocatedBytes = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+
+        for(int p = 0; p < threads; p++) {
+            int from = FIRST_VALUE + p * perProducer;
+
+            producers.add(new Thread(() -> {
+                long before = currentThreadAllocatedBytes();
+                try {
+                    subject.produce(from, from + perProducer);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                addAllocated(allocatedBytes, before);
+            }, "producer-" + p));
+
+            consumers.add(new Thread(() -> {
+                long before = currentThreadAllocatedBytes();
+                try {
+                    received.addAndGet(subject.consume());
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                addAllocated(allocatedBytes, before);
+            }, "consumer-" + p));
+        }
+
+        long start = System.nanoTime();
+        consumers.forEach(Thread::start);
+        producers.forEach(Thread::start);
+
+        for(Thread producer : producers) {
+            producer.join();
+        }
+
+        // shutdown discards buffered values, so let consumers empty
+        // the queue first
+        while(subject.size() > 0) {
+            Thread.yield();
+        }
+
+        subject.shutdown();
+
+        for(Thread consumer : consumers) {
+            consumer.join();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        allocated[0] = allocatedBytes.get();
+
+        long expected = 0;
+        for(int p = 0; p < threads; p++) {
+            long from = FIRST_VALUE + (long) p * perProducer;
+            expected += (2 * from + perProducer - 1) * perProducer / 2;
+        }
+
+        if(received.get() != expected) {
+            throw new IllegalStateException("Lost values: expected sum "
+                + expected + ", received " + received.get()
+            );
+        }
+
+        return (double) perProducer * threads / (elapsed / 1e9);
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        if(!ALLOCATION_SUPPORTED) return 0;
+
+        return ((com.sun.management.ThreadMXBean) THREADS)
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    private static void addAllocated(AtomicLong total, long before) {
+        total.addAndGet(currentThreadAllocatedBytes() - before);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+
+        for(GarbageCollectorMXBean gc
+            : ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            count += Math.max(0, gc.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+
+        for(GarbageCollectorMXBean gc
+            : ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+
+        return millis;
+    }
+}
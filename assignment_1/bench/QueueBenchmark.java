@@ -0,0 +1,360 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Throughput and handoff latency benchmark for every QueueType, against
+ * ArrayBlockingQueue, LinkedBlockingQueue and LinkedTransferQueue
+ *
+ * Shapes:
+ *  - 1p1c:   one producer, one consumer
+ *  - npnc:   N producers, N consumers (N = half the available cores)
+ *  - bursty: N producers sending bursts back to back, pausing between
+ *            bursts, and N consumers
+ *
+ * Every item is the System.nanoTime() of its put(), so the consumer
+ * records the handoff latency of each item into a LatencyHistogram.
+ * Each configuration runs warmup iterations first, then reports the
+ * median throughput and the latency percentiles of measured iterations.
+ *
+ * Usage: java QueueBenchmark [--items N] [--warmup N] [--iterations N]
+ *            [--capacities 16,256,4096] [--shapes 1p1c,npnc,bursty]
+ *            [--queues ring,lock,abq,...] [--threads N] [--csv]
+ */
+public class QueueBenchmark {
+    // Identity-compared end-of-stream marker; never produced by valueOf()
+    private static final Long POISON = Long.valueOf(Long.MIN_VALUE);
+
+    private static final int BURST_SIZE = 1_000;
+    private static final long BURST_PAUSE_NANOS = 200_000;
+
+    /**
+     * Minimal blocking handoff every benchmarked queue is adapted to
+     */
+    interface Handoff {
+        void put(Long item) throws InterruptedException;
+
+        Long take() throws InterruptedException;
+    }
+
+    enum Shape {
+        ONE_TO_ONE("1p1c"),
+        MANY_TO_MANY("npnc"),
+        BURSTY("bursty");
+
+        final String label;
+
+        Shape(String label) {
+            this.label = label;
+        }
+
+        static Shape fromLabel(String label) {
+            for(Shape shape : values()) {
+                if(shape.label.equalsIgnoreCase(label.trim())) return shape;
+            }
+
+            throw new IllegalArgumentException("Unknown shape: " + label);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+
+        long items = Long.parseLong(options.getOrDefault("items", "1000000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        int iterations =
+            Integer.parseInt(options.getOrDefault("iterations", "5"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+            String.valueOf(Math.max(2,
+                Runtime.getRuntime().availableProcessors() / 2))
+        ));
+        boolean csv = options.containsKey("csv");
+
+        int[] capacities = Arrays
+            .stream(options.getOrDefault("capacities", "16,256,4096")
+                .split(","))
+            .mapToInt(value -> Integer.parseInt(value.trim()))
+            .toArray();
+
+        List<Shape> shapes = new ArrayList<>();
+        for(String label : options.getOrDefault("shapes", "1p1c,npnc,bursty")
+            .split(",")) {
+
+            shapes.add(Shape.fromLabel(label));
+        }
+
+        Map<String, IntFunction<Handoff>> subjects = subjects();
+        if(options.containsKey("queues")) {
+            Map<String, IntFunction<Handoff>> selected = new LinkedHashMap<>();
+
+            for(String name : options.get("queues").split(",")) {
+                String key = name.trim().toLowerCase();
+
+                if(!subjects.containsKey(key)) {
+                    throw new IllegalArgumentException(
+                        "Unknown queue: " + name + ", expected one of "
+                        + subjects.keySet()
+                    );
+                }
+
+                selected.put(key, subjects.get(key));
+            }
+
+            subjects = selected;
+        }
+
+        printHeader(csv);
+
+        for(Map.Entry<String, IntFunction<Handoff>> subject
+            : subjects.entrySet()) {
+
+            for(Shape shape : shapes) {
+                int producers = shape == Shape.ONE_TO_ONE ? 1 : threads;
+                int consumers = producers;
+
+                if(!supports(subject.getKey(), producers, consumers)) continue;
+
+                for(int capacity : capacities) {
+                    LatencyHistogram latency = new LatencyHistogram();
+                    double[] opsPerSecond = new double[iterations];
+
+                    for(int i = 0; i < warmup + iterations; i++) {
+                        LatencyHistogram iterationLatency =
+                            new LatencyHistogram();
+
+                        double ops = runIteration(
+                            subject.getValue().apply(capacity), shape,
+                            producers, consumers, items, iterationLatency
+                        );
+
+                        if(i >= warmup) {
+                            opsPerSecond[i - warmup] = ops;
+                            latency.add(iterationLatency);
+                        }
+                    }
+
+                    Arrays.sort(opsPerSecond);
+
+                    printRow(csv, subject.getKey(), shape, producers,
+                        consumers, capacity,
+                        opsPerSecond[opsPerSecond.length / 2], latency
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * Every QueueType, followed by the JDK queues, keyed by name
+     */
+    static Map<String, IntFunction<Handoff>> subjects() {
+        Map<String, IntFunction<Handoff>> subjects = new LinkedHashMap<>();
+
+        for(QueueType type : QueueType.values()) {
+            subjects.put(type.name().toLowerCase(), capacity -> {
+                BlockedQueue<Long> queue = type.create(capacity);
+
+                return new Handoff() {
+                    @Override
+                    public void put(Long item) throws InterruptedException {
+                        queue.put(item);
+                    }
+
+                    @Override
+                    public Long take() throws InterruptedException {
+                        return queue.remove();
+                    }
+                };
+            });
+        }
+
+        subjects.put("abq",
+            capacity -> jdk(new ArrayBlockingQueue<>(capacity)));
+        subjects.put("lbq",
+            capacity -> jdk(new LinkedBlockingQueue<>(capacity)));
+        // LinkedTransferQueue is unbounded; capacity does not apply
+        subjects.put("ltq",
+            capacity -> jdk(new LinkedTransferQueue<>()));
+
+        return subjects;
+    }
+
+    /**
+     * Returns false for a QueueType, such as SPSC, that is not safe with
+     * that many producers and consumers
+     */
+    private static boolean supports(String subject, int producers,
+        int consumers) {
+
+        for(QueueType type : QueueType.values()) {
+            if(type.name().equalsIgnoreCase(subject)) {
+                return type.supports(producers, consumers);
+            }
+        }
+
+        return true;
+    }
+
+    private static Handoff jdk(BlockingQueue<Long> queue) {
+        return new Handoff() {
+            @Override
+            public void put(Long item) throws InterruptedException {
+                queue.put(item);
+            }
+
+            @Override
+            public Long take() throws InterruptedException {
+                return queue.take();
+            }
+        };
+    }
+
+    /**
+     * Moves items through queue, and returns the throughput in items/s
+     */
+    static double runIteration(Handoff queue, Shape shape, int producers,
+        int consumers, long items, LatencyHistogram latency)
+        throws InterruptedException {
+
+        long itemsPerProducer = Math.max(1, items / producers);
+        CountDownLatch ready = new CountDownLatch(producers + consumers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producerThreads = new ArrayList<>();
+        List<Thread> consumerThreads = new ArrayList<>();
+        List<LatencyHistogram> consumerLatencies = new ArrayList<>();
+
+        for(int p = 0; p < producers; p++) {
+            producerThreads.add(new Thread(() -> {
+                try {
+                    ready.countDown();
+                    start.await();
+
+                    for(long i = 0; i < itemsPerProducer; i++) {
+                        queue.put(System.nanoTime());
+
+                        if(shape == Shape.BURSTY
+                            && (i + 1) % BURST_SIZE == 0) {
+
+                            LockSupport.parkNanos(BURST_PAUSE_NANOS);
+                        }
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "producer-" + p));
+        }
+
+        for(int c = 0; c < consumers; c++) {
+            // one histogram per consumer, so recording is uncontended
+            LatencyHistogram consumerLatency = new LatencyHistogram();
+            consumerLatencies.add(consumerLatency);
+
+            consumerThreads.add(new Thread(() -> {
+                try {
+                    ready.countDown();
+                    start.await();
+
+                    while(true) {
+                        Long item = queue.take();
+                        if(item == POISON) break;
+
+                        consumerLatency.record(System.nanoTime() - item);
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "consumer-" + c));
+        }
+
+        producerThreads.forEach(Thread::start);
+        consumerThreads.forEach(Thread::start);
+        ready.await();
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+
+        for(Thread producer : producerThreads) {
+            producer.join();
+        }
+
+        for(int c = 0; c < consumers; c++) {
+            queue.put(POISON);
+        }
+
+        for(Thread consumer : consumerThreads) {
+            consumer.join();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        for(LatencyHistogram consumerLatency : consumerLatencies) {
+            latency.add(consumerLatency);
+        }
+
+        return itemsPerProducer * producers / (elapsedNanos / 1e9);
+    }
+
+    private static void printHeader(boolean csv) {
+        if(csv) {
+            System.out.println("queue,shape,producers,consumers,capacity,"
+                + "ops_per_sec,p50_ns,p99_ns,p999_ns,max_ns"
+            );
+        } else {
+            System.out.printf("%-10s %-7s %4s %4s %9s %14s %10s %10s %10s %12s%n",
+                "queue", "shape", "P", "C", "capacity", "ops/s",
+                "p50_ns", "p99_ns", "p99.9_ns", "max_ns"
+            );
+        }
+    }
+
+    private static void printRow(boolean csv, String queue, Shape shape,
+        int producers, int consumers, int capacity, double opsPerSecond,
+        LatencyHistogram latency) {
+
+        String format = csv
+            ? "%s,%s,%d,%d,%d,%.0f,%d,%d,%d,%d%n"
+            : "%-10s %-7s %4d %4d %9d %14.0f %10d %10d %10d %12d%n";
+
+        System.out.printf(format, queue, shape.label, producers, consumers,
+            capacity, opsPerSecond,
+            latency.getValueAtPercentile(50),
+            latency.getValueAtPercentile(99),
+            latency.getValueAtPercentile(99.9),
+            latency.getMax()
+        );
+    }
+
+    /**
+     * Parses --key value pairs; a --flag without a value maps to "true"
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+
+        for(int i = 0; i < args.length; i++) {
+            if(!args[i].startsWith("--")) {
+                throw new IllegalArgumentException(
+                    "Expected an option starting with --, got " + args[i]
+                );
+            }
+
+            String key = args[i].substring(2);
+
+            if(i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "true");
+            }
+        }
+
+        return options;
+    }
+}
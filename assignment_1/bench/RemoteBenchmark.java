@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a socket hop costs: one producer and one consumer move
+ * items through a LockBlockedQueue in-process, then through a QueueServer
+ * over TCP loopback and over a Unix domain socket
+ *
+ * Batch size 1 uses put()/remove(), one round-trip per item; larger
+ * batches use putAll()/removeBatch(), one round-trip per batch. Server and
+ * clients share this JVM, so the remote rows add framing, the selector
+ * thread and the kernel socket path, but not a second process.
+ *
+ * Reports per transport and batch size: items per second, and the mean
+ * round-trip of the producer's calls.
+ *
+ * Usage: java RemoteBenchmark [--items N] [--capacity N]
+ *            [--batches 1,16,256]
+ */
+public class RemoteBenchmark {
+    public static void main(String[] args)
+        throws IOException, InterruptedException {
+
+        Map<String, String> options = QueueBenchmark.parseOptions(args);
+
+        int items = Integer.parseInt(options.getOrDefault("items", "200000"));
+        int capacity =
+            Integer.parseInt(options.getOrDefault("capacity", "1024"));
+        List<Integer> batches = new ArrayList<>();
+        for(String batch : options.getOrDefault("batches", "1,16,256")
+            .split(",")) {
+
+            batches.add(Integer.parseInt(batch.trim()));
+        }
+
+        Path directory = Files.createTempDirectory("remote-benchmark");
+
+        System.out.printf("%-10s %8s %14s %14s%n",
+            "transport", "batch", "items/s", "call_us"
+        );
+
+        try {
+            for(int batch : batches) {
+                // fewer items for one round-trip per item
+                int count = batch == 1 ? Math.max(1, items / 10) : items;
+
+                run("in-process", null, capacity, count, batch);
+                run("tcp", new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), 0
+                ), capacity, count, batch);
+                run("unix", UnixDomainSocketAddress.of(
+                    directory.resolve("queue.sock")
+                ), capacity, count, batch);
+            }
+        } finally {
+            Files.deleteIfExists(directory.resolve("queue.sock"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Runs one measurement; address null uses the queue directly
+     */
+    private static void run(String name, SocketAddress address, int capacity,
+        int items, int batch) throws IOException, InterruptedException {
+
+        LockBlockedQueue<Long> queue = new LockBlockedQueue<>(capacity);
+        QueueServer<Long> server = null;
+        RemoteQueue<Long> producerSide = null;
+        RemoteQueue<Long> consumerSide = null;
+
+        BlockedQueue<Long> producerQueue = queue;
+        BlockedQueue<Long> consumerQueue = queue;
+        if(address != null) {
+            server = new QueueServer<>(queue, RecordCodec.LONG, address);
+            producerSide =
+                new RemoteQueue<>(server.getAddress(), RecordCodec.LONG);
+            consumerSide =
+                new RemoteQueue<>(server.getAddress(), RecordCodec.LONG);
+            producerQueue = producerSide;
+            consumerQueue = consumerSide;
+        }
+
+        BlockedQueue<Long> source = consumerQueue;
+        long[] consumed = new long[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                while(consumed[0] < items) {
+                    if(batch == 1) {
+                        if(source.remove() == null) return;
+                        consumed[0]++;
+                    } else {
+                        List<Long> removed = source.removeBatch(1, batch,
+                            1, TimeUnit.SECONDS
+                        );
+                        if(removed == null) return;
+                        consumed[0] += removed.size();
+                    }
+                }
+            } catch(InterruptedException e) {}
+        });
+
+        long start = System.nanoTime();
+        consumer.start();
+
+        long calls = 0;
+        List<Long> chunk = new ArrayList<>(batch);
+        for(long i = 0; i < items; ) {
+            if(batch == 1) {
+                producerQueue.put(i++);
+            } else {
+                chunk.clear();
+                while(chunk.size() < batch && i < items) {
+                    chunk.add(i++);
+                }
+                producerQueue.putAll(chunk);
+            }
+            calls++;
+        }
+        consumer.join();
+
+        long elapsed = System.nanoTime() - start;
+
+        if(address != null) {
+            producerSide.close();
+            consumerSide.close();
+            server.close();
+        }
+
+        System.out.printf("%-10s %8d %14.0f %14.2f%n", name, batch,
+            consumed[0] / (elapsed / 1e9), elapsed / 1e3 / calls
+        );
+    }
+}
@@ -0,0 +1,119 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform and virtual threads running many Producer/Consumer
+ * tasks over one shared LockBlockedQueue
+ *
+ * For each task count, half of the tasks are producers and half are
+ * consumers. Every producer produces itemsPerProducer items, sleeping
+ * 100 ms per item, so most tasks spend their time blocked.
+ *
+ * Reports per run:
+ *  - elapsed time and throughput (items/s)
+ *  - peak live platform threads (virtual threads only count carriers)
+ *  - heap in use while the tasks are running
+ *
+ * Usage: java ThreadScaling [itemsPerProducer] [taskCount...]
+ */
+public class ThreadScaling {
+    private static final int DEFAULT_ITEMS_PER_PRODUCER = 10;
+    private static final int[] DEFAULT_TASK_COUNTS = {100, 1_000, 4_000};
+
+    public static void main(String[] args) throws InterruptedException {
+        int itemsPerProducer = args.length > 0
+            ? Integer.parseInt(args[0])
+            : DEFAULT_ITEMS_PER_PRODUCER;
+
+        int[] taskCounts = DEFAULT_TASK_COUNTS;
+        if(args.length > 1) {
+            taskCounts = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++) {
+                taskCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-9s %8s %10s %12s %14s %12s %8s%n",
+            "mode", "tasks", "items", "elapsed_ms", "items_per_sec",
+            "peak_threads", "heap_mb"
+        );
+
+        for(ThreadMode mode : ThreadMode.values()) {
+            if(!mode.isSupported()) {
+                System.out.println(mode + " threads are not supported by "
+                    + "this JVM (Java " + Runtime.version().feature() + ")"
+                );
+                continue;
+            }
+
+            for(int tasks : taskCounts) {
+                run(mode, tasks, itemsPerProducer);
+            }
+        }
+    }
+
+    private static void run(ThreadMode mode, int tasks, int itemsPerProducer)
+        throws InterruptedException {
+
+        int producers = Math.max(1, tasks / 2);
+        int consumers = Math.max(1, tasks - producers);
+        int totalItems = producers * itemsPerProducer;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.gc();
+        threads.resetPeakThreadCount();
+
+        BlockedQueue<Integer> buffer = new LockBlockedQueue<>(producers);
+        List<Integer> destination =
+            Collections.synchronizedList(new ArrayList<>(totalItems));
+
+        List<Integer> source = new ArrayList<>(itemsPerProducer);
+        for(int i = 0; i < itemsPerProducer; i++) {
+            source.add(i);
+        }
+
+        long heapInUse;
+        long start = System.nanoTime();
+        ExecutorService pool = mode.newExecutor(producers + consumers);
+
+        try {
+            for(int i = 0; i < producers; i++) {
+                pool.submit(new Producer<>(buffer, source));
+            }
+
+            for(int i = 0; i < consumers; i++) {
+                pool.submit(new Consumer<>(buffer, destination));
+            }
+
+            // Sample the heap while every task is still alive
+            Thread.sleep(50);
+            heapInUse = memory.getHeapMemoryUsage().getUsed();
+
+            while(destination.size() < totalItems) {
+                Thread.sleep(10);
+            }
+        } finally {
+            buffer.shutdown();
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.printf("%-9s %8d %10d %12d %14.0f %12d %8.1f%n",
+            mode, producers + consumers, totalItems,
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            totalItems / (elapsedNanos / 1e9),
+            threads.getPeakThreadCount(),
+            heapInUse / (1024.0 * 1024.0)
+        );
+    }
+}
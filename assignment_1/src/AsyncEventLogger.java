@@ -0,0 +1,196 @@
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events to a background writer thread through a preallocated ring
+ *
+ * Features:
+ *  - onEvent() only claims a slot and stores three references, so it
+ *    allocates nothing and never formats or does I/O
+ *  - Slots are claimed with a CAS on the enqueue position, as in
+ *    RingBufferBlockedQueue
+ *  - A full ring drops the event and counts it, instead of blocking
+ *    the producer or consumer that reported it
+ *  - The writer thread passes events to a delegate, by default a
+ *    ConsoleEventListener, in the order their slots were claimed
+ *
+ * Thread-safety:
+ * onEvent() may be called from any number of threads; the delegate is
+ * only ever called from the writer thread.
+ */
+public class AsyncEventLogger implements QueueEventListener, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long IDLE_PARK_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final QueueEvent[] events;
+    private final String[] threadNames;
+    private final Object[] payloads;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    // only read and written by the writer thread
+    private long dequeuePosition;
+
+    private final LongAdder droppedEvents = new LongAdder();
+    private final QueueEventListener delegate;
+    private final Thread writer;
+    private volatile boolean isRunning;
+
+    /**
+     * Creates a logger printing events to out
+     */
+    public AsyncEventLogger(PrintStream out) {
+        this(new ConsoleEventListener(out), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a logger passing events to delegate, buffering up to
+     * capacity events (rounded up to a power of two)
+     * @throws IllegalArgumentException when capacity <= 0 or capacity > 2^30
+     */
+    public AsyncEventLogger(QueueEventListener delegate, int capacity) {
+        if(capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(
+                "AsyncEventLogger capacity must be between 1 and " + (1 << 30)
+            );
+        }
+
+        int slots = capacity == 1
+            ? 1
+            : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.delegate = Objects.requireNonNull(delegate);
+        mask = slots - 1;
+        events = new QueueEvent[slots];
+        threadNames = new String[slots];
+        payloads = new Object[slots];
+        sequences = new AtomicLongArray(slots);
+
+        for(int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+
+        isRunning = true;
+        writer = new Thread(this::write, "async-event-logger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stores the event for the writer thread
+     * Drops the event if the ring is full, or the logger is closed.
+     */
+    @Override
+    public void onEvent(QueueEvent event, String threadName, Object payload) {
+        if(!isRunning) {
+            droppedEvents.increment();
+            return;
+        }
+
+        long position = enqueuePosition.get();
+
+        while(true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if(difference == 0) {
+                if(enqueuePosition.compareAndSet(position, position + 1)) {
+                    events[index] = event;
+                    threadNames[index] = threadName;
+                    payloads[index] = payload;
+                    // Publishing the sequence makes the slot visible
+                    sequences.set(index, position + 1);
+                    return;
+                }
+
+                position = enqueuePosition.get();
+            } else if(difference < 0) {
+                // Writer has not caught up with the previous lap
+                droppedEvents.increment();
+                return;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Stops accepting events, and waits for the writer to pass every
+     * stored event to the delegate
+     * Events reported while close() runs may be lost. If interrupted,
+     * returns early with the interrupt status set.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer loop: drains published slots, parks briefly when idle
+     */
+    private void write() {
+        while(true) {
+            boolean running = isRunning;
+
+            if(drain() == 0) {
+                // only exit after a drain that started once closed
+                if(!running) return;
+
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Passes every published slot to the delegate, in order
+     * Returns the number of events written.
+     */
+    private int drain() {
+        int written = 0;
+
+        while(true) {
+            int index = (int) (dequeuePosition & mask);
+            if(sequences.get(index) != dequeuePosition + 1) return written;
+
+            QueueEvent event = events[index];
+            String threadName = threadNames[index];
+            Object payload = payloads[index];
+
+            events[index] = null;
+            threadNames[index] = null;
+            payloads[index] = null;
+            // Free the slot for the next lap
+            sequences.set(index, dequeuePosition + mask + 1);
+            dequeuePosition++;
+            written++;
+
+            try {
+                delegate.onEvent(event, threadName, payload);
+            } catch(RuntimeException e) {
+                // a failing delegate must not stop the writer
+                System.err.println("AsyncEventLogger delegate failed: " + e);
+            }
+        }
+    }
+}
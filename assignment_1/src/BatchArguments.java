@@ -0,0 +1,42 @@
+/**
+ * Argument checks shared by the batch operations of BlockedQueue
+ * implementations
+ */
+final class BatchArguments {
+    private BatchArguments() {}
+
+    /**
+     * @throws IllegalArgumentException when maxItems < 0
+     */
+    static void checkMaxItems(int maxItems) {
+        if(maxItems < 0) {
+            throw new IllegalArgumentException(
+                "maxItems must not be negative"
+            );
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when minItems < 0 or maxItems < 1
+     *         or minItems > maxItems
+     */
+    static void checkBatchBounds(int minItems, int maxItems) {
+        if(minItems < 0 || maxItems < 1 || minItems > maxItems) {
+            throw new IllegalArgumentException(
+                "Batch bounds must satisfy 0 <= minItems <= maxItems"
+                + " and maxItems >= 1"
+            );
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    static void checkBatchSize(int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException(
+                "Batch size must be greater than 0"
+            );
+        }
+    }
+}
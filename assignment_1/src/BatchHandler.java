@@ -0,0 +1,13 @@
+import java.util.List;
+
+/**
+ * Callback for the batches of a BatchingSink
+ *
+ * Called on the consumer thread that filled the batch, so implementations
+ * should return quickly, and must be thread-safe when several consumers
+ * share the sink. The batch is not reused after the call.
+ */
+@FunctionalInterface
+public interface BatchHandler<T> {
+    void onBatch(List<T> batch);
+}
@@ -0,0 +1,81 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sink collecting items into fixed-size batches per consumer thread, and
+ * handing every batch to a BatchHandler
+ *
+ * Features:
+ *  - Items are buffered in a list owned by the calling thread, so there
+ *    is no shared write until a batch is full
+ *  - Each batch holds items of one consumer, in the order it removed them
+ *  - finish() hands over a consumer's last, partial batch
+ *
+ * Thread-safety:
+ * Buffers are confined to their thread. The handler is called by many
+ * consumer threads at once when they share the sink.
+ */
+public class BatchingSink<T> implements Sink<T> {
+    private final int batchSize;
+    private final BatchHandler<T> handler;
+    private final ThreadLocal<List<T>> buffer;
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * Creates a sink handing batches of batchSize items to handler
+     * @throws IllegalArgumentException when batchSize < 1, or handler is
+     *         null
+     */
+    public BatchingSink(int batchSize, BatchHandler<T> handler) {
+        BatchArguments.checkBatchSize(batchSize);
+
+        if(handler == null) {
+            throw new IllegalArgumentException(
+                "BatchingSink handler must not be null"
+            );
+        }
+
+        this.batchSize = batchSize;
+        this.handler = handler;
+        buffer = ThreadLocal.withInitial(() -> new ArrayList<>(batchSize));
+    }
+
+    @Override
+    public void accept(T item) {
+        List<T> items = buffer.get();
+        items.add(item);
+
+        if(items.size() == batchSize) flush(items);
+    }
+
+    /**
+     * Hands the calling thread's partial batch, if any, to the handler
+     */
+    @Override
+    public void finish() {
+        List<T> items = buffer.get();
+        buffer.remove();
+
+        if(!items.isEmpty()) {
+            batches.increment();
+            handler.onBatch(items);
+        }
+    }
+
+    /**
+     * Returns the number of batches handed to the handler
+     */
+    public long batchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Hands a full batch to the handler, and starts a new one
+     */
+    private void flush(List<T> items) {
+        buffer.set(new ArrayList<>(batchSize));
+        batches.increment();
+        handler.onBatch(items);
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded blocking queue shared between Producer and Consumer threads
+ *
+ * Contract:
+ *  - put() blocks while the queue is full, and returns without insertion
+ *    once the queue is shutdown
+ *  - remove() blocks while the queue is empty, and returns null once the
+ *    queue is shutdown
+ *  - shutdown() wakes every waiting thread
+ *  - closeGracefully() stops new puts but lets consumers take every
+ *    queued item; remove() returns null once the queue is also empty
+ *  - Batch operations move many items per lock round-trip
+ *  - offer()/poll() wait up to a timeout, and tryPut()/tryRemove()
+ *    never block, so callers can shed load instead of stalling
+ *  - metrics() exposes traffic counters without taking the queue's lock
+ *
+ * Implementations:
+ *  - SimpleBlockedQueue: synchronized methods with wait/notifyAll
+ *  - LockBlockedQueue: ReentrantLock with notFull/notEmpty conditions
+ *  - RingBufferBlockedQueue: lock-free ring buffer with CAS-claimed slots
+ *  - ShardedBlockedQueue: per-core locked shards with work stealing
+ *  - SpscBlockedQueue: lock-free ring for one producer and one consumer
+ *  - MultiLaneBlockedQueue: priority lanes with weighted-fair removal
+ *  - BroadcastQueue.group(): one consumer group's view of a ring that
+ *    delivers every item to every group
+ *  - RemoteQueue: client of a queue served by a QueueServer in another
+ *    process
+ */
+public interface BlockedQueue<T> {
+    /**
+     * Inserts data into the queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     */
+    void put(T data) throws InterruptedException;
+
+    /**
+     * Removes data from the queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    T remove() throws InterruptedException;
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException;
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Never blocks.
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    boolean tryPut(T data);
+
+    /**
+     * Removes data from the queue only if data is available
+     * Never blocks.
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    T tryRemove();
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    int putAll(Collection<? extends T> data) throws InterruptedException;
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown so buffered items
+     * can be recovered.
+     *
+     * @return number of items removed
+     * @throws IllegalArgumentException when maxItems < 0
+     */
+    int drainTo(Collection<? super T> destination, int maxItems);
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items are available, the timeout elapses,
+     * or the queue is shutdown.
+     * Returns the available items (possibly fewer than minItems, or none)
+     * when the timeout elapses.
+     * Returns null upon shutdown if no data was removed.
+     *
+     * @throws IllegalArgumentException when minItems < 0 or maxItems < 1
+     *         or minItems > maxItems
+     */
+    List<T> removeBatch(int minItems, int maxItems, long timeout, TimeUnit unit)
+        throws InterruptedException;
+
+    /**
+     * Returns the size of the queue
+     */
+    int size();
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    QueueMetrics metrics();
+
+    /**
+     * Returns true if the queue is active, false once it is closed or
+     * shutdown
+     */
+    boolean isActive();
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads to exit gracefully
+     */
+    void shutdown();
+
+    /**
+     * Closes the queue without dropping queued items
+     * Puts are refused and waiting producers return, as upon shutdown,
+     * but consumers keep removing queued items. Once the queue is empty,
+     * removals return null as upon shutdown.
+     * Has no effect once the queue is closed or shutdown.
+     */
+    void closeGracefully();
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty; false if the timeout elapses,
+     * or the queue is shutdown, first.
+     */
+    boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException;
+}
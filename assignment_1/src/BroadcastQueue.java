@@ -0,0 +1,705 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue delivering every item to each of several
+ * consumer groups, from one shared ring
+ *
+ * Features:
+ *  - group(i) returns a BlockedQueue view with its own read cursor: every
+ *    group sees every item once, in insertion order
+ *  - Consumers sharing a group view split that group's items between them,
+ *    as they would on any other queue
+ *  - An item is stored once, whatever the number of groups; its slot is
+ *    freed when the slowest group has read it
+ *  - Producers block while the slowest group is capacity items behind, so
+ *    that group applies backpressure to everyone
+ *  - Inserting through any group view publishes to every group, so any view
+ *    can be handed to a Producer
+ *  - Per-group QueueMetrics: depth and wait times of one group, plus the
+ *    time producers spent blocked
+ *  - closeGracefully() lets every group read the queued items before its
+ *    consumers stop
+ *
+ * Thread-safety:
+ * Every public method, of the queue and of its group views, holds the
+ * queue's lock while accessing the ring
+ */
+public class BroadcastQueue<T> {
+    private final Object[] ring;
+    private final int capacity;
+    // next sequence each group reads
+    private final long[] cursors;
+    private final List<Group> groups;
+    // oldest sequence some group has not read yet
+    private long head;
+    // next sequence to write
+    private long tail;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private boolean isRunning;
+    // closed gracefully: no new items, but groups read the queued ones
+    private boolean draining;
+
+    /**
+     * Creates a queue holding up to capacity items for groupCount groups
+     * @throws IllegalArgumentException when capacity <= 0 or
+     *         groupCount <= 0
+     */
+    public BroadcastQueue(int capacity, int groupCount) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException(
+                "BroadcastQueue capacity must be greater than 0"
+            );
+        }
+
+        if(groupCount <= 0) {
+            throw new IllegalArgumentException(
+                "BroadcastQueue needs at least one group"
+            );
+        }
+
+        this.capacity = capacity;
+        ring = new Object[capacity];
+        cursors = new long[groupCount];
+        groups = new ArrayList<>(groupCount);
+
+        for(int i = 0; i < groupCount; i++) {
+            groups.add(new Group(i));
+        }
+
+        isRunning = true;
+    }
+
+    /**
+     * Returns the view of the given group
+     * Removing through it only advances that group's cursor.
+     * @throws IndexOutOfBoundsException when index is not a valid group
+     */
+    public BlockedQueue<T> group(int index) {
+        return groups.get(index);
+    }
+
+    /**
+     * Returns the number of groups
+     */
+    public int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the most items the queue holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of items some group has not read yet, i.e. how
+     * far the slowest group is behind
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return isRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Shuts down the queue and every group
+     * Wakes all waiting threads to exit gracefully
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+
+            notFull.signalAll();
+            for(Group group : groups) {
+                group.notEmpty.signalAll();
+            }
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, and every group's
+     * consumers read the remaining items, then get null.
+     */
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            isRunning = false;
+            draining = true;
+
+            notFull.signalAll();
+            for(Group group : groups) {
+                group.notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every group has read every queued item
+     * Returns true if the queue is empty.
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while((isRunning || draining) && tail > head && remaining > 0) {
+                // wait till the slowest group catches up, or the timeout
+                // elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return tail == head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private boolean isFull() {
+        return tail - head == capacity;
+    }
+
+    /**
+     * Records time a producer spent blocked in every group's metrics
+     */
+    private void recordPutWait(long nanos) {
+        for(Group group : groups) {
+            group.metrics.recordPutWait(nanos);
+        }
+    }
+
+    /**
+     * Publishes data if the queue is active and has space
+     * Caller must hold the lock.
+     */
+    private boolean insert(T data) {
+        if(!isRunning) return false;
+
+        if(isFull()) {
+            for(Group group : groups) {
+                group.metrics.recordRejected();
+            }
+            return false;
+        }
+
+        publish(data);
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Writes data to the tail of the ring, once for every group
+     * Caller must hold the lock, and the ring must have space.
+     */
+    private void publish(T data) {
+        ring[slot(tail)] = data;
+        tail++;
+
+        for(Group group : groups) {
+            group.metrics.recordEnqueued(1, tail - cursors[group.index]);
+        }
+    }
+
+    /**
+     * Reads the next item of a group, and frees slots every group has
+     * read
+     * Caller must hold the lock, and the group must have unread items.
+     */
+    @SuppressWarnings("unchecked")
+    private T read(int group) {
+        long sequence = cursors[group]++;
+        T data = (T) ring[slot(sequence)];
+
+        if(sequence == head) releaseRead();
+
+        return data;
+    }
+
+    /**
+     * Moves head to the slowest group's cursor, clearing the slots in
+     * between so their items can be collected, and wakes producers
+     * Caller must hold the lock.
+     */
+    private void releaseRead() {
+        long slowest = tail;
+        for(long cursor : cursors) {
+            slowest = Math.min(slowest, cursor);
+        }
+
+        int freed = (int) (slowest - head);
+        for(; head < slowest; head++) {
+            ring[slot(head)] = null;
+        }
+
+        if(freed == 1) {
+            notFull.signal();
+        } else if(freed > 1) {
+            notFull.signalAll();
+        }
+
+        if(head == tail) drained.signalAll();
+    }
+
+    /**
+     * Wakes consumers of every group for newly published items
+     * Caller must hold the lock.
+     */
+    private void signalConsumers(int items) {
+        for(Group group : groups) {
+            group.signal(items);
+        }
+    }
+
+    /**
+     * One consumer group: removals read from its cursor, insertions
+     * publish to every group
+     */
+    private final class Group implements BlockedQueue<T> {
+        private final int index;
+        private final Condition notEmpty = lock.newCondition();
+        private final QueueMetrics metrics = new QueueMetrics();
+        // consumers in removeBatch() wait for more than one item,
+        // so a single signal() could wake a consumer that cannot proceed
+        private int batchWaiters;
+
+        private Group(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Publishes data to every group
+         * Blocks while the slowest group is capacity items behind, and if
+         * the queue is active.
+         * Returns upon shutdown without insertion.
+         */
+        @Override
+        public void put(T data) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                long waitStart = 0;
+
+                while(isRunning && isFull()) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+                    notFull.await(); // wait till the slowest group reads
+                }
+
+                if(waitStart != 0) {
+                    recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning) return;
+
+                publish(data);
+                signalConsumers(1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads this group's next item
+         * Blocks if the group has read every item, and if the queue is
+         * active.
+         * Returns null upon shutdown without removal.
+         */
+        @Override
+        public T remove() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                long waitStart = 0;
+
+                while(isRunning && unread() == 0) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+                    notEmpty.await(); // wait till an item is published
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                }
+
+                return extract();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Publishes data to every group, waiting up to timeout for space
+         * Returns false without insertion if the timeout elapses, or upon
+         * shutdown.
+         */
+        @Override
+        public boolean offer(T data, long timeout, TimeUnit unit)
+            throws InterruptedException {
+
+            long remaining = unit.toNanos(timeout);
+
+            lock.lockInterruptibly();
+            try {
+                long waitStart = 0;
+
+                while(isRunning && isFull() && remaining > 0) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wait till the slowest group reads, or the timeout
+                    // elapses
+                    remaining = notFull.awaitNanos(remaining);
+                }
+
+                if(waitStart != 0) {
+                    recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                return insert(data);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads this group's next item, waiting up to timeout for one
+         * Returns null without removal if the timeout elapses, or upon
+         * shutdown.
+         */
+        @Override
+        public T poll(long timeout, TimeUnit unit)
+            throws InterruptedException {
+
+            long remaining = unit.toNanos(timeout);
+
+            lock.lockInterruptibly();
+            try {
+                long waitStart = 0;
+
+                while(isRunning && unread() == 0 && remaining > 0) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wait till an item is published, or the timeout
+                    // elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                }
+
+                return extract();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Publishes data to every group only if the ring has space
+         * Returns false without insertion if the slowest group is
+         * capacity items behind, or shutdown.
+         */
+        @Override
+        public boolean tryPut(T data) {
+            lock.lock();
+            try {
+                return insert(data);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads this group's next item only if there is one
+         * Returns null without removal if the group has read every item,
+         * or shutdown.
+         */
+        @Override
+        public T tryRemove() {
+            lock.lock();
+            try {
+                return extract();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Publishes every item of data to every group, in order
+         * Blocks while the slowest group is capacity items behind, and if
+         * the queue is active.
+         * Returns upon shutdown without inserting the remaining items.
+         *
+         * @return number of items inserted
+         */
+        @Override
+        public int putAll(Collection<? extends T> data)
+            throws InterruptedException {
+
+            lock.lockInterruptibly();
+            try {
+                int inserted = 0;
+                int unsignalled = 0;
+
+                for(T item : data) {
+                    long waitStart = 0;
+
+                    while(isRunning && isFull()) {
+                        if(waitStart == 0) waitStart = System.nanoTime();
+
+                        // wake consumers for the items inserted so far
+                        signalConsumers(unsignalled);
+                        unsignalled = 0;
+                        notFull.await(); // wait till the slowest group reads
+                    }
+
+                    if(waitStart != 0) {
+                        recordPutWait(System.nanoTime() - waitStart);
+                    }
+
+                    if(!isRunning) break;
+
+                    publish(item);
+                    inserted++;
+                    unsignalled++;
+                }
+
+                signalConsumers(unsignalled);
+
+                return inserted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads up to maxItems of this group's unread items into
+         * destination, in order
+         * Never blocks, and still works after shutdown.
+         *
+         * @return number of items removed
+         */
+        @Override
+        public int drainTo(Collection<? super T> destination, int maxItems) {
+            BatchArguments.checkMaxItems(maxItems);
+
+            lock.lock();
+            try {
+                return drainItems(destination, maxItems);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads between minItems and maxItems of this group's items
+         * Blocks until minItems items are unread (at most capacity), the
+         * timeout elapses, or the queue is shutdown.
+         * Returns null upon shutdown without removal.
+         */
+        @Override
+        public List<T> removeBatch(int minItems, int maxItems, long timeout,
+            TimeUnit unit) throws InterruptedException {
+
+            BatchArguments.checkBatchBounds(minItems, maxItems);
+
+            int required = Math.min(minItems, capacity);
+            long remaining = unit.toNanos(timeout);
+
+            lock.lockInterruptibly();
+            try {
+                long waitStart = 0;
+
+                batchWaiters++;
+                try {
+                    while(isRunning && unread() < required && remaining > 0) {
+                        if(waitStart == 0) waitStart = System.nanoTime();
+
+                        // wait till enough items are published, or the
+                        // timeout elapses
+                        remaining = notEmpty.awaitNanos(remaining);
+                    }
+                } finally {
+                    batchWaiters--;
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning && (!draining || unread() == 0)) return null;
+
+                List<T> batch = new ArrayList<>(Math.min(maxItems, unread()));
+                drainItems(batch, maxItems);
+
+                return batch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of items this group has not read yet
+         */
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return unread();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns this group's traffic and blocking metrics
+         * Reading them never takes the queue's lock.
+         */
+        @Override
+        public QueueMetrics metrics() {
+            return metrics;
+        }
+
+        @Override
+        public boolean isActive() {
+            return BroadcastQueue.this.isActive();
+        }
+
+        /**
+         * Shuts down the whole queue, for every group
+         */
+        @Override
+        public void shutdown() {
+            BroadcastQueue.this.shutdown();
+        }
+
+        /**
+         * Closes the whole queue gracefully, for every group
+         */
+        @Override
+        public void closeGracefully() {
+            BroadcastQueue.this.closeGracefully();
+        }
+
+        /**
+         * Waits up to timeout until this group has read every queued item
+         * Returns true if the group has no unread items.
+         */
+        @Override
+        public boolean awaitDrained(long timeout, TimeUnit unit)
+            throws InterruptedException {
+
+            long remaining = unit.toNanos(timeout);
+
+            lock.lockInterruptibly();
+            try {
+                while((isRunning || draining)
+                    && unread() > 0
+                    && remaining > 0) {
+
+                    // wait till this group's consumers catch up, or the
+                    // timeout elapses
+                    remaining = drained.awaitNanos(remaining);
+                }
+
+                return unread() == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "BroadcastQueue.group(" + index + ")";
+        }
+
+        private int unread() {
+            return (int) (tail - cursors[index]);
+        }
+
+        /**
+         * Reads the next item if the group has one, and the queue is
+         * active or closed gracefully
+         * Caller must hold the lock.
+         */
+        private T extract() {
+            if(!(isRunning || draining) || unread() == 0) return null;
+
+            T data = read(index);
+            metrics.recordDequeued(1);
+            if(unread() == 0) drained.signalAll();
+
+            return data;
+        }
+
+        /**
+         * Moves up to maxItems unread items into destination
+         * Caller must hold the lock.
+         */
+        private int drainItems(Collection<? super T> destination,
+            int maxItems) {
+
+            int removed = 0;
+
+            while(removed < maxItems && unread() > 0) {
+                destination.add(read(index));
+                removed++;
+            }
+
+            metrics.recordDequeued(removed);
+            if(removed > 0 && unread() == 0) drained.signalAll();
+
+            return removed;
+        }
+
+        /**
+         * Wakes this group's consumers for newly published items
+         * One item wakes one consumer, unless a batch consumer is waiting.
+         * Caller must hold the lock.
+         */
+        private void signal(int items) {
+            if(items == 0) return;
+
+            if(items == 1 && batchWaiters == 0) {
+                notEmpty.signal();
+            } else {
+                notEmpty.signalAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.PrintStream;
+import java.util.Objects;
+
+/**
+ * Prints every event to a PrintStream, one line per event
+ *
+ * When given a queue, appends ". Buffer size = N" to item events, as the
+ * original Producer/Consumer logging did. That reads size(), which takes
+ * the queue's lock, so only pass a queue when the output is for humans.
+ *
+ * Thread-safety:
+ * PrintStream synchronizes each println, so lines never interleave
+ */
+public class ConsoleEventListener implements QueueEventListener {
+    private final PrintStream out;
+    private final BlockedQueue<?> queue;
+
+    public ConsoleEventListener(PrintStream out) {
+        this(out, null);
+    }
+
+    /**
+     * Creates a listener that also prints the size of queue
+     * @param queue queue to report the size of, or null to skip it
+     */
+    public ConsoleEventListener(PrintStream out, BlockedQueue<?> queue) {
+        this.out = Objects.requireNonNull(out);
+        this.queue = queue;
+    }
+
+    @Override
+    public void onEvent(QueueEvent event, String threadName, Object payload) {
+        String line = event.format(threadName, payload);
+
+        if(queue != null
+            && !event.isTerminal()
+            && event != QueueEvent.DROPPED) {
+
+            line += ". Buffer size = " + queue.size();
+        }
+
+        out.println(line);
+    }
+}
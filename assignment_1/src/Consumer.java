@@ -1,20 +1,121 @@
 import java.util.List;
+import java.util.Objects;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Consumer continuously consumes from a shared SimpleBlockedQueue,
- * and stores it in consumedData
- * Stops when SimpleBlockedQueue.remove() returns null, indicating shutdown
+ * Consumer continuously consumes from a shared BlockedQueue,
+ * and hands every item to a Sink
+ * Stops when BlockedQueue.remove() returns null, indicating shutdown, or
+ * that a queue closed with closeGracefully() has been drained, or when
+ * retire() is called, e.g. by a ConsumerSupervisor scaling down
  *
- * Thread-safety comes from SimpleBlockedQueue through the remove() method
+ * A List destination is wrapped with Sink.of(), and must be thread-safe
+ * when shared by several consumers. ThreadLocalSink, StripedSink and
+ * BatchingSink avoid a shared lock per item.
+ *
+ * Batch mode (batchSize > 1) takes every available item, up to batchSize,
+ * per removeBatch() call, so one lock round-trip moves many items
+ *
+ * Events (consumed, stopped) go to a QueueEventListener, which defaults
+ * to a no-op so logging stays off the critical path
+ *
+ * getStats() reports the consumer's rate, and how much of its time was
+ * spent waiting on the queue
+ *
+ * Thread-safety comes from the BlockedQueue implementation
+ * through the remove() method
  */
 public class Consumer<T> implements Runnable {
-    private final SimpleBlockedQueue<T> sharedQueue;
-    private final List<T> consumedData;
+    private final BlockedQueue<T> sharedQueue;
+    private final Sink<? super T> consumedData;
+    private final int batchSize;
+    private final StageStats stats = new StageStats();
+    private final CompletableFuture<StageStats> completion =
+        new CompletableFuture<>();
+    private QueueEventListener listener = QueueEventListener.noOp();
+    private ItemTracer tracer;
+
+    // set by retire(); the consumer stops before taking another item
+    private volatile boolean retired;
+    // thread running this consumer, guarded by this
+    private Thread runner;
+    // true while runner is parked in the queue, guarded by this
+    private boolean waiting;
+
+    public Consumer(BlockedQueue<T> queue, List<T> destination) {
+        this(queue, destination, 1);
+    }
+
+    public Consumer(BlockedQueue<T> queue, Sink<? super T> sink) {
+        this(queue, sink, 1);
+    }
+
+    /**
+     * Creates a consumer that removes up to batchSize items at a time
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    public Consumer(BlockedQueue<T> queue, List<T> destination,
+        int batchSize) {
+
+        this(queue, Sink.of(destination), batchSize);
+    }
+
+    /**
+     * Creates a consumer that removes up to batchSize items at a time,
+     * and hands them to sink
+     * @throws IllegalArgumentException when batchSize < 1, or sink is null
+     */
+    public Consumer(BlockedQueue<T> queue, Sink<? super T> sink,
+        int batchSize) {
+
+        BatchArguments.checkBatchSize(batchSize);
+
+        if(sink == null) {
+            throw new IllegalArgumentException(
+                "Consumer sink must not be null"
+            );
+        }
 
-    public Consumer(SimpleBlockedQueue<T> queue, List<T> destination) {
         sharedQueue = queue;
-        consumedData = destination;
+        consumedData = sink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the listener receiving this consumer's events
+     * Must be called before the consumer starts running.
+     */
+    public void setEventListener(QueueEventListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Sets the tracer recording how long this consumer spends on sampled
+     * items, from their removal until the consumer is done with them
+     * Must be called before the consumer starts running.
+     */
+    public void setTracer(ItemTracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer);
+    }
+
+    /**
+     * Returns this consumer's rate and time spent in queue calls
+     */
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns a future completing with getStats() once this consumer
+     * stops normally: when the queue is shutdown, or drained after
+     * closeGracefully()
+     * Completes exceptionally with InterruptedException if the consumer is
+     * interrupted, or with whatever exception stopped it.
+     */
+    public CompletableFuture<StageStats> completion() {
+        return completion;
     }
 
     /**
@@ -23,40 +124,235 @@ public class Consumer<T> implements Runnable {
      *
      * Termination:
      * - Normal termination when queue is shutdown
+     * - Normal termination upon retire()
      * - Interrupted termination upon interrupt
      */
     @Override
     public void run() {
+        synchronized(this) {
+            runner = Thread.currentThread();
+        }
+
+        try {
+            if(batchSize > 1) {
+                runBatches();
+            } else {
+                runItems();
+            }
+
+            // no-op if the run was interrupted
+            completion.complete(stats);
+        } catch(RuntimeException | Error e) {
+            completion.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized(this) {
+                runner = null;
+            }
+
+            // a retire() racing with the end of the run must not leave
+            // the (possibly pooled) thread interrupted
+            if(retired) Thread.interrupted();
+        }
+    }
+
+    /**
+     * Stops this consumer without losing items
+     * A consumer blocked on an empty queue stops at once. One holding an
+     * item or batch first hands it to the sink and finishes its simulated
+     * work; it is never interrupted outside the queue, so the sink cannot
+     * be. The queue and other consumers keep running.
+     * completion() then completes normally.
+     */
+    public void retire() {
+        retired = true;
+
+        synchronized(this) {
+            // wakes a consumer blocked in remove(), which takes no item
+            // when interrupted
+            if(waiting) runner.interrupt();
+        }
+    }
+
+    /**
+     * Returns true once retire() has been called
+     */
+    public boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * - Consume one item per remove()
+     *
+     * Termination: same as run()
+     */
+    private void runItems() {
         String threadName = Thread.currentThread().getName();
+        stats.start();
 
         try {
             while(true) {
-                T data = sharedQueue.remove();
+                if(!startWaiting()) {
+                    listener.onEvent(QueueEvent.CONSUMER_RETIRED,
+                        threadName, null
+                    );
+
+                    break;
+                }
+
+                long begin = stats.enterQueue();
+                T data;
+                try {
+                    data = sharedQueue.remove();
+                } finally {
+                    stopWaiting();
+                }
+                stats.record(data == null ? 0 : 1, System.nanoTime() - begin);
 
                 // if sharedQueue is shutdown, it returns null
                 // Stop consumer in this case
                 if(data == null) {
-                    System.out.println("Consumer thread " + threadName
-                        + " stopped as queue is shutdown"
+                    listener.onEvent(QueueEvent.CONSUMER_STOPPED,
+                        threadName, null
+                    );
+
+                    break;
+                }
+
+                long serviceStart = startService();
+
+                consumedData.accept(data);
+
+                listener.onEvent(QueueEvent.CONSUMED, threadName, data);
+
+                // Simulate work
+                Thread.sleep(100);
+
+                finishService(serviceStart, 1);
+            }
+        } catch (InterruptedException e) {
+            if(retired) {
+                listener.onEvent(QueueEvent.CONSUMER_RETIRED,
+                    threadName, null
+                );
+            } else {
+                completion.completeExceptionally(e);
+                listener.onEvent(QueueEvent.CONSUMER_INTERRUPTED,
+                    threadName, null
+                );
+            }
+        } finally {
+            consumedData.finish();
+            stats.finish();
+        }
+    }
+
+    /**
+     * - Consume at least one, and up to batchSize items per removeBatch()
+     * - Stops if removeBatch() returns null, indicating queue shutdown
+     *
+     * Termination: same as run()
+     */
+    private void runBatches() {
+        String threadName = Thread.currentThread().getName();
+        stats.start();
+
+        try {
+            while(true) {
+                if(!startWaiting()) {
+                    listener.onEvent(QueueEvent.CONSUMER_RETIRED,
+                        threadName, null
+                    );
+
+                    break;
+                }
+
+                long begin = stats.enterQueue();
+                List<T> batch;
+                try {
+                    batch = sharedQueue.removeBatch(1, batchSize,
+                        Long.MAX_VALUE, TimeUnit.NANOSECONDS
+                    );
+                } finally {
+                    stopWaiting();
+                }
+                stats.record(batch == null ? 0 : batch.size(),
+                    System.nanoTime() - begin
+                );
+
+                // if sharedQueue is shutdown, it returns null
+                // Stop consumer in this case
+                if(batch == null) {
+                    listener.onEvent(QueueEvent.CONSUMER_STOPPED,
+                        threadName, null
                     );
 
                     break;
                 }
 
-                consumedData.add(data);
+                long serviceStart = startService();
+
+                consumedData.acceptAll(batch);
 
-                System.out.println("Consumer thread " + threadName
-                    + " consumed data: " + data + ". Buffer size = "
-                    + sharedQueue.size()
+                listener.onEvent(QueueEvent.CONSUMED_BATCH,
+                    threadName, batch
                 );
 
                 // Simulate work
                 Thread.sleep(100);
+
+                finishService(serviceStart, batch.size());
             }
         } catch (InterruptedException e) {
-            System.out.println("Consumer thread " + threadName
-                + " interrupted"
-            );
+            if(retired) {
+                listener.onEvent(QueueEvent.CONSUMER_RETIRED,
+                    threadName, null
+                );
+            } else {
+                completion.completeExceptionally(e);
+                listener.onEvent(QueueEvent.CONSUMER_INTERRUPTED,
+                    threadName, null
+                );
+            }
+        } finally {
+            consumedData.finish();
+            stats.finish();
         }
     }
+
+    /**
+     * Marks the runner as parked in the queue, where retire() may
+     * interrupt it
+     * Returns false, without marking, once retired.
+     */
+    private synchronized boolean startWaiting() {
+        waiting = !retired;
+        return waiting;
+    }
+
+    /**
+     * Marks the runner as back from the queue
+     * A retire() racing with a removal may have interrupted the runner
+     * after the queue handed it items; that interrupt is cleared here, so
+     * it never reaches the sink.
+     */
+    private synchronized void stopWaiting() {
+        waiting = false;
+        if(retired) Thread.interrupted();
+    }
+
+    /**
+     * Returns the start of a sampled service time, or 0 if the item is not
+     * traced
+     */
+    private long startService() {
+        return tracer != null && tracer.sample() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the service time per item of items processed since start
+     */
+    private void finishService(long start, int items) {
+        if(start != 0) tracer.recordService((System.nanoTime() - start) / items);
+    }
 }
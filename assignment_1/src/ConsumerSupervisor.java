@@ -0,0 +1,522 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Grows and shrinks a pool of Consumers on one queue as the load changes
+ *
+ * Features:
+ *  - Every interval, samples the queue depth, the time producers spent
+ *    blocked in put(), and the share of time consumers spent waiting in
+ *    remove() (idle)
+ *  - Adds a consumer while the queue is backed up (depth at or above the
+ *    high threshold) or producers block; retires one while the queue is
+ *    nearly empty (depth at or below the low threshold) and consumers
+ *    are mostly idle
+ *  - Hysteresis: the high and low thresholds differ, and a signal must
+ *    hold for several intervals in a row before the pool changes
+ *  - Cool-down: at most one change per cool-down period
+ *  - Keeps between min and max consumers, and replaces consumers that
+ *    fail while the queue is active; an SpscBlockedQueue is limited to a
+ *    single consumer
+ *  - Retires consumers with Consumer.retire(), which never drops an item
+ *
+ * Scaling stops once the queue is shutdown or closed gracefully; the
+ * consumers then stop on their own, as they do without a supervisor.
+ *
+ * Thread-safety:
+ * Decisions are made by one monitor thread. Getters may be called from
+ * any thread; close() may be called once from any thread.
+ */
+public class ConsumerSupervisor<T> implements AutoCloseable {
+    /**
+     * Settings of a supervisor; every setter validates its arguments
+     */
+    public static final class Builder<T> {
+        private final BlockedQueue<T> queue;
+        private final Supplier<Consumer<T>> factory;
+        private int minWorkers = 1;
+        private int maxWorkers;
+        private int highDepth = 8;
+        private int lowDepth = 0;
+        private double putBlockedRatio = 0.1;
+        private double idleRatio = 0.5;
+        private int upIntervals = 2;
+        private int downIntervals = 5;
+        private long intervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long cooldownNanos = TimeUnit.SECONDS.toNanos(1);
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+        private Builder(BlockedQueue<T> queue, Supplier<Consumer<T>> factory) {
+            this.queue = queue;
+            this.factory = factory;
+
+            // a single-consumer queue is corrupted by a second consumer
+            maxWorkers = queue instanceof SpscBlockedQueue
+                ? 1
+                : Math.max(2, Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Sets how many consumers may run at once
+         * Defaults to 1 and the number of processors (at least 2), or to
+         * 1 and 1 for an SpscBlockedQueue.
+         * @throws IllegalArgumentException when min < 1, or max < min, or
+         *         max > 1 for an SpscBlockedQueue
+         */
+        public Builder<T> workers(int min, int max) {
+            if(min < 1 || max < min) {
+                throw new IllegalArgumentException(
+                    "Supervisor needs 1 <= min <= max workers, got "
+                    + min + " and " + max
+                );
+            }
+
+            if(max > 1 && queue instanceof SpscBlockedQueue) {
+                throw new IllegalArgumentException(
+                    "SpscBlockedQueue supports a single consumer, got max "
+                    + max + " workers"
+                );
+            }
+
+            minWorkers = min;
+            maxWorkers = max;
+
+            return this;
+        }
+
+        /**
+         * Sets the queue depths at or above which consumers are added, and
+         * at or below which they may be retired
+         * Defaults to 8 and 0.
+         * @throws IllegalArgumentException when low < 0, or high <= low
+         */
+        public Builder<T> depthThresholds(int high, int low) {
+            if(low < 0 || high <= low) {
+                throw new IllegalArgumentException(
+                    "Supervisor needs 0 <= low < high depth, got "
+                    + low + " and " + high
+                );
+            }
+
+            highDepth = high;
+            lowDepth = low;
+
+            return this;
+        }
+
+        /**
+         * Sets the producer time blocked in put(), per second of an
+         * interval, at or above which consumers are added
+         * Defaults to 0.1: producers blocked for 100ms each second.
+         * @throws IllegalArgumentException when ratio <= 0
+         */
+        public Builder<T> putBlockedThreshold(double ratio) {
+            if(!(ratio > 0)) {
+                throw new IllegalArgumentException(
+                    "Supervisor put-blocked threshold must be positive"
+                );
+            }
+
+            putBlockedRatio = ratio;
+
+            return this;
+        }
+
+        /**
+         * Sets the share of time consumers wait in remove() at or above
+         * which one may be retired
+         * Defaults to 0.5.
+         * @throws IllegalArgumentException when ratio is not in (0, 1]
+         */
+        public Builder<T> idleThreshold(double ratio) {
+            if(!(ratio > 0 && ratio <= 1)) {
+                throw new IllegalArgumentException(
+                    "Supervisor idle threshold must be in (0, 1]"
+                );
+            }
+
+            idleRatio = ratio;
+
+            return this;
+        }
+
+        /**
+         * Sets for how many intervals in a row a signal must hold before
+         * a consumer is added, or retired
+         * Defaults to 2 and 5, so the pool grows faster than it shrinks.
+         * @throws IllegalArgumentException when up < 1 or down < 1
+         */
+        public Builder<T> sustain(int up, int down) {
+            if(up < 1 || down < 1) {
+                throw new IllegalArgumentException(
+                    "Supervisor needs at least 1 interval per decision"
+                );
+            }
+
+            upIntervals = up;
+            downIntervals = down;
+
+            return this;
+        }
+
+        /**
+         * Sets how often the queue and consumers are sampled
+         * Defaults to 100ms.
+         * @throws IllegalArgumentException when interval <= 0
+         */
+        public Builder<T> interval(long interval, TimeUnit unit) {
+            if(interval <= 0) {
+                throw new IllegalArgumentException(
+                    "Supervisor interval must be positive"
+                );
+            }
+
+            intervalNanos = unit.toNanos(interval);
+
+            return this;
+        }
+
+        /**
+         * Sets the minimum time between two changes to the pool
+         * Defaults to 1 second.
+         * @throws IllegalArgumentException when cooldown < 0
+         */
+        public Builder<T> cooldown(long cooldown, TimeUnit unit) {
+            if(cooldown < 0) {
+                throw new IllegalArgumentException(
+                    "Supervisor cool-down must not be negative"
+                );
+            }
+
+            cooldownNanos = unit.toNanos(cooldown);
+
+            return this;
+        }
+
+        /**
+         * Sets the kind of threads running the consumers
+         * Defaults to PLATFORM.
+         * @throws IllegalArgumentException when threadMode is null
+         */
+        public Builder<T> threadMode(ThreadMode threadMode) {
+            if(threadMode == null) {
+                throw new IllegalArgumentException(
+                    "Supervisor thread mode must not be null"
+                );
+            }
+
+            this.threadMode = threadMode;
+
+            return this;
+        }
+
+        /**
+         * Creates the supervisor, without starting it
+         */
+        public ConsumerSupervisor<T> build() {
+            return new ConsumerSupervisor<>(this);
+        }
+    }
+
+    /**
+     * A running consumer, and its queue time at the previous sample
+     */
+    private static final class Worker<T> {
+        final Consumer<T> consumer;
+        long lastQueueNanos;
+
+        Worker(Consumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        boolean isDone() {
+            return consumer.completion().isDone();
+        }
+    }
+
+    private final BlockedQueue<T> queue;
+    private final Supplier<Consumer<T>> factory;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final int highDepth;
+    private final int lowDepth;
+    private final double putBlockedRatio;
+    private final double idleRatio;
+    private final int upIntervals;
+    private final int downIntervals;
+    private final long intervalNanos;
+    private final long cooldownNanos;
+    private final ThreadMode threadMode;
+
+    // live consumers, newest last; only touched by the monitor thread,
+    // or by close() once the monitor has stopped
+    private final List<Worker<T>> workers = new ArrayList<>();
+    // stats of every consumer ever started
+    private final List<StageStats> stats = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile int workerCount;
+    private volatile long scaleUps;
+    private volatile long scaleDowns;
+    private volatile ExecutorService pool;
+    private volatile Thread monitor;
+
+    private ConsumerSupervisor(Builder<T> builder) {
+        queue = builder.queue;
+        factory = builder.factory;
+        minWorkers = builder.minWorkers;
+        maxWorkers = builder.maxWorkers;
+        highDepth = builder.highDepth;
+        lowDepth = builder.lowDepth;
+        putBlockedRatio = builder.putBlockedRatio;
+        idleRatio = builder.idleRatio;
+        upIntervals = builder.upIntervals;
+        downIntervals = builder.downIntervals;
+        intervalNanos = builder.intervalNanos;
+        cooldownNanos = builder.cooldownNanos;
+        threadMode = builder.threadMode;
+    }
+
+    /**
+     * Starts configuring a supervisor of consumers created by factory,
+     * all removing from queue
+     * factory is called for every consumer added; each call must return
+     * a new Consumer of queue.
+     * @throws IllegalArgumentException when queue or factory is null
+     */
+    public static <T> Builder<T> supervise(BlockedQueue<T> queue,
+        Supplier<Consumer<T>> factory) {
+
+        if(queue == null || factory == null) {
+            throw new IllegalArgumentException(
+                "Supervisor queue and consumer factory must not be null"
+            );
+        }
+
+        return new Builder<>(queue, factory);
+    }
+
+    /**
+     * Starts min consumers, and the monitor thread scaling them
+     * @throws IllegalStateException when the supervisor was already started
+     */
+    public ConsumerSupervisor<T> start() {
+        if(!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Supervisor was already started");
+        }
+
+        pool = threadMode.newExecutor(maxWorkers);
+
+        for(int i = 0; i < minWorkers; i++) {
+            addWorker();
+        }
+
+        Thread thread = new Thread(this::supervise, "consumer-supervisor");
+        thread.setDaemon(true);
+        monitor = thread;
+        thread.start();
+
+        return this;
+    }
+
+    /**
+     * Returns the number of live consumers
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Returns how many times a consumer was added above the minimum
+     */
+    public long getScaleUpCount() {
+        return scaleUps;
+    }
+
+    /**
+     * Returns how many times a consumer was retired
+     */
+    public long getScaleDownCount() {
+        return scaleDowns;
+    }
+
+    /**
+     * Returns the stats of every consumer started so far, in start order
+     */
+    public List<StageStats> getStats() {
+        return List.copyOf(stats);
+    }
+
+    /**
+     * Waits up to timeout for every consumer to stop, e.g. after the
+     * queue was closed gracefully or the supervisor closed
+     * Returns true if they all stopped.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        Thread thread = monitor;
+        if(thread != null) {
+            TimeUnit.NANOSECONDS.timedJoin(thread,
+                Math.max(1, deadline - System.nanoTime())
+            );
+            if(thread.isAlive()) return false;
+        }
+
+        ExecutorService executor = pool;
+
+        return executor == null || executor.awaitTermination(
+            Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * Stops scaling, and retires every consumer
+     * Items left in the queue stay there, for drainTo() or other
+     * consumers. Returns without waiting for consumers to stop; see
+     * awaitTermination().
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        Thread thread = monitor;
+        if(thread == null) return;
+
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for(Worker<T> worker : workers) {
+            worker.consumer.retire();
+        }
+    }
+
+    /**
+     * Monitor loop: samples every interval and adds or retires consumers,
+     * until closed or the queue stops
+     */
+    private void supervise() {
+        QueueMetrics metrics = queue.metrics();
+        long lastSample = System.nanoTime();
+        long lastPutBlocked = metrics.getPutBlockedNanos();
+        // allow a change as soon as the first signal has held long enough
+        long lastChange = lastSample - cooldownNanos;
+        int upStreak = 0;
+        int downStreak = 0;
+
+        try {
+            while(!closed && queue.isActive()) {
+                LockSupport.parkNanos(this, intervalNanos);
+                if(closed || !queue.isActive()) break;
+
+                long now = System.nanoTime();
+                long elapsed = Math.max(1, now - lastSample);
+                lastSample = now;
+
+                replaceFailedWorkers();
+
+                long putBlocked = metrics.getPutBlockedNanos();
+                double blocked = (double) (putBlocked - lastPutBlocked) / elapsed;
+                lastPutBlocked = putBlocked;
+
+                double idle = sampleIdle(elapsed);
+                int depth = queue.size();
+
+                boolean pressure = depth >= highDepth || blocked >= putBlockedRatio;
+                boolean slack = !pressure && depth <= lowDepth && idle >= idleRatio;
+
+                upStreak = pressure ? upStreak + 1 : 0;
+                downStreak = slack ? downStreak + 1 : 0;
+
+                if(now - lastChange < cooldownNanos) continue;
+
+                if(upStreak >= upIntervals && workers.size() < maxWorkers) {
+                    addWorker();
+                    scaleUps++;
+                } else if(downStreak >= downIntervals
+                    && workers.size() > minWorkers) {
+
+                    // the newest consumer has the least warm state
+                    workers.remove(workers.size() - 1).consumer.retire();
+                    workerCount = workers.size();
+                    scaleDowns++;
+                } else {
+                    continue;
+                }
+
+                lastChange = now;
+                upStreak = 0;
+                downStreak = 0;
+            }
+        } finally {
+            // consumers keep running until the queue stops them, or
+            // close() retires them; no more are added
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the average share of the last elapsed nanoseconds that live
+     * consumers spent waiting in queue calls
+     */
+    private double sampleIdle(long elapsed) {
+        if(workers.isEmpty()) return 0;
+
+        long waited = 0;
+
+        for(Worker<T> worker : workers) {
+            long queueNanos = worker.consumer.getStats().getQueueNanosNow();
+            waited += Math.min(elapsed, queueNanos - worker.lastQueueNanos);
+            worker.lastQueueNanos = queueNanos;
+        }
+
+        return (double) waited / elapsed / workers.size();
+    }
+
+    /**
+     * Drops consumers that stopped, e.g. on an exception, and starts new
+     * ones while fewer than min are left
+     */
+    private void replaceFailedWorkers() {
+        workers.removeIf(Worker::isDone);
+
+        while(workers.size() < minWorkers && queue.isActive()) {
+            addWorker();
+        }
+
+        workerCount = workers.size();
+    }
+
+    private void addWorker() {
+        Consumer<T> consumer = factory.get();
+        Worker<T> worker = new Worker<>(consumer);
+
+        try {
+            pool.execute(consumer);
+        } catch(RejectedExecutionException e) {
+            // the pool is shut down once the supervisor stops
+            return;
+        }
+
+        worker.lastQueueNanos = consumer.getStats().getQueueNanosNow();
+        workers.add(worker);
+        stats.add(consumer.getStats());
+        workerCount = workers.size();
+    }
+}
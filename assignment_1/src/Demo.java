@@ -1,17 +1,21 @@
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Scanner;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
 public class Demo {
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args)
+        throws InterruptedException, ExecutionException {
+
         int producers = 1;
         int consumers = 1;
         int capacity;
+        QueueType queueType = QueueType.MONITOR;
+        ThreadMode threadMode = ThreadMode.PLATFORM;
 
         if(args.length > 0) {
             capacity = Integer.parseInt(args[0]);
@@ -21,36 +25,84 @@ public class Demo {
             capacity = sc.nextInt();
         }
 
+        // Optional second argument selects the queue implementation;
+        // otherwise pick the fastest one for this many producers/consumers
+        if(args.length > 1) {
+            queueType = QueueType.fromName(args[1]);
+        } else {
+            queueType = queueType.forUsage(producers, consumers);
+        }
+
+        // Optional third argument selects platform or virtual threads
+        if(args.length > 2) {
+            threadMode = ThreadMode.fromName(args[2]);
+        }
+
+        // synchronized/wait would pin virtual threads to their carriers
+        if(threadMode == ThreadMode.VIRTUAL && queueType == QueueType.MONITOR) {
+            System.out.println("MONITOR queue pins virtual threads; "
+                + "using LOCK queue instead"
+            );
+            queueType = QueueType.LOCK;
+        }
+
         System.out.println("Queue capacity = " + capacity);
+        System.out.println("Queue type = " + queueType);
+        System.out.println("Thread mode = " + threadMode);
         System.out.println("Number of producers = " + producers);
         System.out.println("Number of consumers = " + consumers + "\n");
 
-        SimpleBlockedQueue<Integer> buffer = new SimpleBlockedQueue<>(capacity);
+        BlockedQueue<Integer> buffer = queueType.create(capacity);
 
         List<Integer> source1 = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
-        List<Integer> destination = 
-            Collections.synchronizedList(new ArrayList<>());
+        // every consumer appends to its own buffer, merged once it stops
+        ThreadLocalSink<Integer> destination = new ThreadLocalSink<>();
+
+        // Create a fixed-size thread pool, or one virtual thread per task,
+        // to run all producers and consumers
+        ExecutorService pool = threadMode.newExecutor(producers + consumers);
 
-        // Create a fixed-size thread pool to run all producers and consumers
-        ExecutorService pool = 
-            Executors.newFixedThreadPool(producers + consumers);
+        // Print every event, with the buffer size, as it happens
+        QueueEventListener console =
+            new ConsoleEventListener(System.out, buffer);
 
         // producer starts producing
-        pool.submit(new Producer<Integer>(buffer, source1));
+        Producer<Integer> producer = new Producer<>(buffer, source1);
+        producer.setEventListener(console);
+        pool.submit(producer);
 
         // consumer starts consuming
+        List<Consumer<Integer>> consumerTasks = new ArrayList<>();
+        List<CompletableFuture<StageStats>> consumed = new ArrayList<>();
         for(int i = 0; i < consumers; i++) {
-            pool.submit(new Consumer<Integer>(buffer, destination));
+            Consumer<Integer> consumer = new Consumer<>(buffer, destination);
+            consumer.setEventListener(console);
+            consumerTasks.add(consumer);
+            consumed.add(consumer.completion());
+            pool.submit(consumer);
         }
 
-        // The thread pool waits for upto 6 seconds for tasks to complete
-        // before shutting down thread pool
+        // Wait for the producer to finish, then close the buffer: the
+        // consumers take every item left in it, and stop once it is empty
+        producer.completion().get();
+        buffer.closeGracefully();
+
+        CompletableFuture.allOf(
+            consumed.toArray(new CompletableFuture<?>[0])
+        ).get();
+
         pool.shutdown();
-        pool.awaitTermination(6, TimeUnit.SECONDS);
-        // Stop the buffer
-        buffer.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        System.out.println("\nFinal destination contents: "
+            + destination.toList()
+        );
 
-        System.out.println("\nFinal destination contents: " + destination);
+        System.out.println("\nProducer " + producer.getStats());
+        for(Consumer<Integer> consumer : consumerTasks) {
+            System.out.println("Consumer " + consumer.getStats());
+        }
+        System.out.println("Queue metrics: " + buffer.metrics().snapshot());
         System.out.println("\nDemo complete\n");
     }
 }
@@ -0,0 +1,343 @@
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe blocking queue of int values, backed by an int[] ring
+ *
+ * Features:
+ *  - Stores values in a preallocated int[], so a handoff never boxes
+ *    or allocates
+ *  - ReentrantLock with notFull/notEmpty conditions, as in
+ *    LockBlockedQueue
+ *  - putAll() and removeInto() copy runs of values with
+ *    System.arraycopy, one lock acquisition per run
+ *  - QueueMetrics counting traffic and time spent blocked
+ *
+ * Since an int cannot be null, shutdown is reported through the return
+ * value: put() returns false and removeInto() returns -1.
+ *
+ * Thread-safety:
+ * Every public method holds the lock while accessing the array
+ */
+public class IntBlockedQueue {
+    private final int[] items;
+    private final int capacity;
+    private int head;
+    private int count;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private boolean isRunning;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    /**
+     * Creates an int queue with given capacity
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public IntBlockedQueue(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException(
+                "IntBlockedQueue capacity must be greater than 0"
+            );
+        }
+
+        this.capacity = capacity;
+        items = new int[capacity];
+        isRunning = true;
+    }
+
+    /**
+     * Inserts value into the queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns false upon shutdown without insertion.
+     */
+    public boolean put(int value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && count == capacity) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notFull.await(); // wait till queue has some space
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning) return false;
+
+            insert(value);
+            signalConsumers(1);
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts value into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    public boolean tryPut(int value) {
+        lock.lock();
+        try {
+            if(!isRunning) return false;
+
+            if(count == capacity) {
+                metrics.recordRejected();
+                return false;
+            }
+
+            insert(value);
+            signalConsumers(1);
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts length values from values, starting at offset, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining values.
+     *
+     * @return number of values inserted
+     * @throws IndexOutOfBoundsException when the range is outside values
+     */
+    public int putAll(int[] values, int offset, int length)
+        throws InterruptedException {
+
+        Objects.checkFromIndexSize(offset, length, values.length);
+
+        lock.lockInterruptibly();
+        try {
+            int inserted = 0;
+            int unsignalled = 0;
+
+            while(inserted < length) {
+                long waitStart = 0;
+
+                while(isRunning && count == capacity) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wake consumers for the values inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+                    notFull.await(); // wait till queue has some space
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning) break;
+
+                int run = Math.min(length - inserted, capacity - count);
+                copyIn(values, offset + inserted, run);
+                inserted += run;
+                unsignalled += run;
+            }
+
+            signalConsumers(unsignalled);
+
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes between 1 and maxItems values into destination, starting
+     * at offset
+     * Blocks if the queue is empty, and if the queue is active.
+     *
+     * @return number of values removed, or -1 upon shutdown
+     * @throws IllegalArgumentException when maxItems < 1
+     * @throws IndexOutOfBoundsException when the range is outside
+     *         destination
+     */
+    public int removeInto(int[] destination, int offset, int maxItems)
+        throws InterruptedException {
+
+        checkRemoveRange(destination, offset, maxItems);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && count == 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notEmpty.await(); // wait till queue has some data
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning) return -1;
+
+            return extract(destination, offset, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxItems available values into destination, starting
+     * at offset
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of values removed
+     * @throws IllegalArgumentException when maxItems < 0
+     * @throws IndexOutOfBoundsException when the range is outside
+     *         destination
+     */
+    public int drainTo(int[] destination, int offset, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+        Objects.checkFromIndexSize(offset, maxItems, destination.length);
+
+        lock.lock();
+        try {
+            return extract(destination, offset, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the queue
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return isRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads on both conditions to exit gracefully
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends value at the tail
+     * Caller must hold the lock, and the queue must not be full.
+     */
+    private void insert(int value) {
+        int tail = head + count;
+        items[tail < capacity ? tail : tail - capacity] = value;
+        count++;
+        metrics.recordEnqueued(1, count);
+    }
+
+    /**
+     * Appends length values at the tail, wrapping around the array end
+     * Caller must hold the lock, and have space for length values.
+     */
+    private void copyIn(int[] values, int offset, int length) {
+        int tail = head + count;
+        if(tail >= capacity) tail -= capacity;
+
+        int first = Math.min(length, capacity - tail);
+        System.arraycopy(values, offset, items, tail, first);
+        System.arraycopy(values, offset + first, items, 0, length - first);
+
+        count += length;
+        metrics.recordEnqueued(length, count);
+    }
+
+    /**
+     * Moves up to maxItems values from the head into destination, and
+     * wakes producers for the freed slots
+     * Caller must hold the lock.
+     */
+    private int extract(int[] destination, int offset, int maxItems) {
+        int removed = Math.min(maxItems, count);
+        int first = Math.min(removed, capacity - head);
+
+        System.arraycopy(items, head, destination, offset, first);
+        System.arraycopy(items, 0, destination, offset + first,
+            removed - first
+        );
+
+        head += removed;
+        if(head >= capacity) head -= capacity;
+        count -= removed;
+
+        metrics.recordDequeued(removed);
+        signalProducers(removed);
+
+        return removed;
+    }
+
+    /**
+     * Wakes consumers for newly inserted values
+     * Caller must hold the lock.
+     */
+    private void signalConsumers(int values) {
+        if(values == 1) {
+            notEmpty.signal();
+        } else if(values > 1) {
+            notEmpty.signalAll();
+        }
+    }
+
+    /**
+     * Wakes producers for newly freed slots
+     * Caller must hold the lock.
+     */
+    private void signalProducers(int slots) {
+        if(slots == 1) {
+            notFull.signal();
+        } else if(slots > 1) {
+            notFull.signalAll();
+        }
+    }
+
+    private static void checkRemoveRange(int[] destination, int offset,
+        int maxItems) {
+
+        if(maxItems < 1) {
+            throw new IllegalArgumentException(
+                "maxItems must be greater than 0"
+            );
+        }
+
+        Objects.checkFromIndexSize(offset, maxItems, destination.length);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * IntProducer puts every value of an int[] into a shared IntBlockedQueue
+ * Stops when all values are produced, or due to early shutdown
+ *
+ * Unlike Producer, it never boxes a value and does not simulate work
+ * between items; batch mode (batchSize > 1) inserts up to batchSize
+ * values per putAll() call
+ *
+ * Thread-safety comes from IntBlockedQueue
+ */
+public class IntProducer implements Runnable {
+    private final IntBlockedQueue sharedQueue;
+    private final int[] dataToProduce;
+    private final int batchSize;
+    private final StageStats stats = new StageStats();
+
+    public IntProducer(IntBlockedQueue queue, int[] data) {
+        this(queue, data, 1);
+    }
+
+    /**
+     * Creates a producer that inserts up to batchSize values at a time
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    public IntProducer(IntBlockedQueue queue, int[] data, int batchSize) {
+        BatchArguments.checkBatchSize(batchSize);
+
+        sharedQueue = queue;
+        dataToProduce = data;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns this producer's rate and time spent in queue calls
+     */
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * - Produce values from dataToProduce, batchSize at a time
+     *
+     * Termination:
+     * - Normal termination when all values are produced
+     * - Early termination if queue is shutdown
+     * - Interrupted termination upon interrupt
+     */
+    @Override
+    public void run() {
+        stats.start();
+
+        try {
+            for(int from = 0; from < dataToProduce.length; from += batchSize) {
+                int length = Math.min(batchSize, dataToProduce.length - from);
+                long begin = System.nanoTime();
+                int produced = length == 1
+                    ? (sharedQueue.put(dataToProduce[from]) ? 1 : 0)
+                    : sharedQueue.putAll(dataToProduce, from, length);
+                stats.record(produced, System.nanoTime() - begin);
+
+                // queue was shutdown
+                if(produced < length) break;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.finish();
+        }
+    }
+}
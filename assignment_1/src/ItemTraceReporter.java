@@ -0,0 +1,101 @@
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Periodically prints the residency and service times an ItemTracer
+ * recorded over the last interval
+ *
+ * Features:
+ *  - One line per period: sample count, p50, p99 and max of both the
+ *    time items spent queued and the time consumers spent on them
+ *  - Runs on its own daemon thread, so reporting never delays producers
+ *    or consumers
+ *  - close() prints the last, partial interval
+ *
+ * A residency growing while service stays flat means consumers are too
+ * few for the load; a growing service time means processing itself got
+ * slower.
+ *
+ * Thread-safety:
+ * close() may be called from any thread.
+ */
+public class ItemTraceReporter implements AutoCloseable {
+    private final ItemTracer tracer;
+    private final PrintStream out;
+    private final long periodNanos;
+    private final Thread reporter;
+
+    private volatile boolean isRunning;
+
+    /**
+     * Starts printing tracer's intervals to out every period
+     * @throws IllegalArgumentException when period <= 0
+     */
+    public ItemTraceReporter(ItemTracer tracer, long period, TimeUnit unit,
+        PrintStream out) {
+
+        if(period <= 0) {
+            throw new IllegalArgumentException(
+                "Report period must be positive"
+            );
+        }
+
+        this.tracer = Objects.requireNonNull(tracer);
+        this.out = Objects.requireNonNull(out);
+        periodNanos = unit.toNanos(period);
+
+        isRunning = true;
+        tracer.nextInterval();
+        reporter = new Thread(this::report, "item-trace-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Stops reporting, after printing the current interval
+     * If interrupted, returns early with the interrupt status set.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        LockSupport.unpark(reporter);
+
+        try {
+            reporter.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reporter loop: prints one interval per period, and a last one once
+     * closed
+     */
+    private void report() {
+        long nextReport = System.nanoTime() + periodNanos;
+
+        while(isRunning) {
+            long now = System.nanoTime();
+
+            if(now - nextReport < 0) {
+                LockSupport.parkNanos(this, nextReport - now);
+                continue;
+            }
+
+            print();
+            nextReport += periodNanos;
+        }
+
+        print();
+    }
+
+    private void print() {
+        ItemTracer.Interval interval = tracer.nextInterval();
+
+        out.printf("[trace %dms] %s%n",
+            TimeUnit.NANOSECONDS.toMillis(interval.getNanos()), interval
+        );
+    }
+}
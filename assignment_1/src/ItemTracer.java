@@ -0,0 +1,226 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples how long items spend in a queue, and how long consumers spend
+ * processing them, to tell queueing delay from processing delay
+ *
+ * Features:
+ *  - Queue residency: time from an item's insertion to its removal,
+ *    recorded by a queue created with this tracer
+ *  - Service time: time a Consumer spends on an item after removing it,
+ *    recorded by a Consumer given this tracer
+ *  - Records about one in every sampleRate items; unsampled items do not
+ *    even read the clock
+ *  - Cumulative LatencyHistograms, plus interval histograms that
+ *    nextInterval() hands to a reporter such as ItemTraceReporter
+ *
+ * Items are never wrapped: a queue keeps the insertion times in a ring of
+ * longs beside its items, updated under the same lock, so stamps leave in
+ * the same order as their items.
+ *
+ * Thread-safety:
+ * Histograms are lock-free, so any number of queues and consumers can
+ * share one tracer.
+ */
+public class ItemTracer {
+    // stamp of an item that was not sampled
+    private static final long NOT_SAMPLED = 0;
+    // initial stamp ring, and the largest ring an empty queue keeps
+    private static final int INITIAL_STAMPS = 16;
+    private static final int TRIM_STAMPS = 1024;
+
+    private final int sampleRate;
+    private final LatencyHistogram residency = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+
+    private volatile Interval interval = new Interval(System.nanoTime());
+
+    /**
+     * Creates a tracer recording every item
+     */
+    public ItemTracer() {
+        this(1);
+    }
+
+    /**
+     * Creates a tracer recording about 1 in sampleRate items
+     * @throws IllegalArgumentException when sampleRate < 1
+     */
+    public ItemTracer(int sampleRate) {
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException(
+                "Sample rate must be at least 1"
+            );
+        }
+
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns the times sampled items spent in the queue, in nanoseconds
+     */
+    public LatencyHistogram getResidency() {
+        return residency;
+    }
+
+    /**
+     * Returns the times consumers spent on sampled items, in nanoseconds
+     */
+    public LatencyHistogram getService() {
+        return service;
+    }
+
+    /**
+     * Returns about one in every sampleRate items
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the values recorded since the previous call (or since this
+     * tracer was created), and starts a new interval
+     * Values recorded while the interval is swapped may land in either.
+     */
+    public Interval nextInterval() {
+        Interval finished = interval;
+        interval = new Interval(System.nanoTime());
+        finished.endNanos = System.nanoTime();
+
+        return finished;
+    }
+
+    /**
+     * Records the processing time of one item
+     */
+    public void recordService(long nanos) {
+        service.record(nanos);
+        interval.service.record(nanos);
+    }
+
+    /**
+     * Returns true if the next item should be recorded
+     */
+    boolean sample() {
+        return sampleRate == 1
+            || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Returns a new ring of insertion stamps for a queue of up to capacity
+     * items; the ring grows as items arrive
+     */
+    Stamps newStamps(int capacity) {
+        return new Stamps(capacity);
+    }
+
+    private void recordResidency(long nanos) {
+        residency.record(nanos);
+        interval.residency.record(nanos);
+    }
+
+    /**
+     * Residency and service times recorded over one reporting interval
+     */
+    public static final class Interval {
+        private final LatencyHistogram residency = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+        private final long startNanos;
+        private volatile long endNanos;
+
+        private Interval(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public LatencyHistogram getResidency() {
+            return residency;
+        }
+
+        public LatencyHistogram getService() {
+            return service;
+        }
+
+        /**
+         * Returns the length of the interval, in nanoseconds
+         */
+        public long getNanos() {
+            return endNanos - startNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "residency " + format(residency)
+                + " | service " + format(service);
+        }
+
+        private static String format(LatencyHistogram histogram) {
+            return String.format("n=%d p50=%.1fus p99=%.1fus max=%.1fus",
+                histogram.getCount(),
+                histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getMax() / 1e3
+            );
+        }
+    }
+
+    /**
+     * Insertion stamps of the items in one queue, in queue order
+     * Grows like the queue's storage, and shrinks back once the queue
+     * empties after a burst.
+     * Guarded by the lock of the queue owning it.
+     */
+    final class Stamps {
+        private final int initialLength;
+        private long[] stamps;
+        private int head;
+        private int size;
+
+        private Stamps(int capacity) {
+            initialLength = Math.min(capacity, INITIAL_STAMPS);
+            stamps = new long[initialLength];
+        }
+
+        /**
+         * Stamps an item just inserted at the tail
+         */
+        void enqueued() {
+            if(size == stamps.length) grow();
+
+            int tail = head + size;
+            if(tail >= stamps.length) tail -= stamps.length;
+
+            stamps[tail] = sample() ? System.nanoTime() : NOT_SAMPLED;
+            size++;
+        }
+
+        /**
+         * Records the residency of the item just removed from the head
+         */
+        void dequeued() {
+            long stamp = stamps[head];
+            head = head + 1 == stamps.length ? 0 : head + 1;
+            size--;
+
+            if(stamp != NOT_SAMPLED) recordResidency(System.nanoTime() - stamp);
+
+            if(size == 0 && stamps.length > TRIM_STAMPS) {
+                stamps = new long[initialLength];
+                head = 0;
+            }
+        }
+
+        /**
+         * Doubles the ring, moving the stamps to its start in queue order
+         */
+        private void grow() {
+            long[] grown = new long[Math.max(1, stamps.length * 2)];
+            int first = Math.min(size, stamps.length - head);
+
+            System.arraycopy(stamps, head, grown, 0, first);
+            System.arraycopy(stamps, 0, grown, first, size - first);
+
+            stamps = grown;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non-negative long values, such as latencies
+ * in nanoseconds
+ *
+ * Features:
+ *  - Log-linear buckets (HdrHistogram style): values below 128 are
+ *    exact, larger values are kept to within 1/64 (about 1.6%)
+ *  - Fixed memory regardless of how many values are recorded
+ *  - record() is lock-free, so many threads can record at once
+ *
+ * Thread-safety:
+ * Counts are atomic. Percentiles read while other threads record are a
+ * consistent enough snapshot for reporting, but not an exact one.
+ */
+public class LatencyHistogram {
+    // 2^7 = 128 exact values, then 64 sub-buckets per power of two
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = 63 - SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT =
+        SUB_BUCKET_COUNT + MAX_SHIFT * HALF_SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records one value
+     * Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+
+        counts.incrementAndGet(bucketIndex(clamped));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(clamped);
+
+        long max = maxValue.get();
+        while(clamped > max && !maxValue.compareAndSet(max, clamped)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Adds every value recorded by other into this histogram
+     */
+    public void add(LatencyHistogram other) {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if(count > 0) counts.addAndGet(i, count);
+        }
+
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+
+        long otherMax = other.maxValue.get();
+        long max = maxValue.get();
+        while(otherMax > max && !maxValue.compareAndSet(max, otherMax)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded value, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the mean of recorded values, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of
+     * recorded values fall, e.g. 99.9 for p99.9
+     * Returns 0 if nothing was recorded.
+     * @throws IllegalArgumentException when percentile is not in [0, 100]
+     */
+    public long getValueAtPercentile(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                "Percentile must be between 0 and 100"
+            );
+        }
+
+        long count = totalCount.get();
+        if(count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+
+            if(seen >= rank) {
+                return Math.min(highestValueInBucket(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Clears every recorded value
+     * Values recorded concurrently with reset() may be partially lost.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Returns count, mean, p50, p99, p99.9 and max, e.g. for logging
+     */
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+            + " mean=" + Math.round(getMean())
+            + " p50=" + getValueAtPercentile(50)
+            + " p99=" + getValueAtPercentile(99)
+            + " p99.9=" + getValueAtPercentile(99.9)
+            + " max=" + getMax();
+    }
+
+    private static int bucketIndex(long value) {
+        if(value < SUB_BUCKET_COUNT) return (int) value;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT
+            + subBucket;
+    }
+
+    private static long highestValueInBucket(int index) {
+        if(index < SUB_BUCKET_COUNT) return index;
+
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,590 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe blocking queue implementation using a ReentrantLock
+ * with separate notFull/notEmpty conditions
+ *
+ * Features:
+ *  - Uses a queue internally
+ *  - Producer blocks on notFull when queue is full.
+ *  - Consumer blocks on notEmpty when queue is empty.
+ *  - put() wakes one consumer and remove() wakes one producer, instead of
+ *    waking every waiting thread with notifyAll()
+ *  - Optional fair ordering: the longest-waiting thread acquires the lock
+ *  - Batch operations move many items per lock acquisition
+ *  - Timed offer()/poll() and non-blocking tryPut()/tryRemove()
+ *  - closeGracefully() lets consumers drain the queue before they stop
+ *  - QueueMetrics counting traffic and time spent blocked
+ *  - Optional ItemTracer sampling how long items stay in the queue
+ *  - Storage grows as items arrive, and is released once the queue
+ *    empties after a burst
+ *
+ * Thread-safety:
+ * Every public method holds the lock while accessing the queue
+ */
+public class LockBlockedQueue<T> implements BlockedQueue<T> {
+    // initial storage, and the most storage an empty queue keeps
+    private static final int INITIAL_STORAGE = 16;
+    private static final int TRIM_THRESHOLD = 1024;
+
+    private Queue<T> blockedQueue;
+    // most items queued since storage was last allocated
+    private int peakSize;
+    private final int capacity;
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Condition notEmpty;
+    private final Condition drained;
+    private boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private boolean draining;
+    // consumers in removeBatch() wait for more than one item,
+    // so a single signal() could wake a consumer that cannot proceed
+    private int batchWaiters;
+    private final QueueMetrics metrics = new QueueMetrics();
+    // insertion times of the queued items; null unless traced
+    private final ItemTracer.Stamps stamps;
+
+    /**
+     * Creates a non-fair blocking queue with given capacity
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public LockBlockedQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Creates a blocking queue with given capacity and lock fairness
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public LockBlockedQueue(int capacity, boolean fair) {
+        this(capacity, fair, null);
+    }
+
+    /**
+     * Creates a blocking queue with given capacity and fairness, recording
+     * how long items stay in it into tracer (none if null)
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public LockBlockedQueue(int capacity, boolean fair, ItemTracer tracer) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException(
+                "LockBlockedQueue capacity must be greater than 0"
+            );
+        }
+
+        this.capacity = capacity;
+        blockedQueue = new ArrayDeque<>(Math.min(capacity, INITIAL_STORAGE));
+        lock = new ReentrantLock(fair);
+        notFull = lock.newCondition();
+        notEmpty = lock.newCondition();
+        drained = lock.newCondition();
+        stamps = tracer == null ? null : tracer.newStamps(capacity);
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into the queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning
+                && this.capacity == blockedQueue.size()) {
+
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notFull.await(); // wait till queue has some space
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning) return;
+
+            add(data);
+            signalConsumers(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning
+                && blockedQueue.isEmpty()) {
+
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notEmpty.await(); // wait till queue has some data
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning
+                && this.capacity == blockedQueue.size()
+                && remaining > 0) {
+
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till queue has some space, or the timeout elapses
+                remaining = notFull.awaitNanos(remaining);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            return insert(data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning
+                && blockedQueue.isEmpty()
+                && remaining > 0) {
+
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till queue has some data, or the timeout elapses
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    @Override
+    public boolean tryPut(T data) {
+        lock.lock();
+        try {
+            return insert(data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        lock.lock();
+        try {
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        lock.lockInterruptibly();
+        try {
+            int inserted = 0;
+            int unsignalled = 0;
+
+            for(T item : data) {
+                long waitStart = 0;
+
+                while(isRunning
+                    && this.capacity == blockedQueue.size()) {
+
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wake consumers for the items inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+                    notFull.await(); // wait till queue has some space
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning) break;
+
+                add(item);
+                inserted++;
+                unsignalled++;
+            }
+
+            signalConsumers(unsignalled);
+
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        lock.lock();
+        try {
+            int removed = drainItems(destination, maxItems);
+            signalProducers(removed);
+
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items are available (at most capacity),
+     * the timeout elapses, or the queue is shutdown.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        int required = Math.min(minItems, this.capacity);
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            batchWaiters++;
+            try {
+                while(isRunning
+                    && blockedQueue.size() < required
+                    && remaining > 0) {
+
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wait till queue has enough data, or the timeout elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                batchWaiters--;
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning && (!draining || blockedQueue.isEmpty())) {
+                return null;
+            }
+
+            List<T> batch =
+                new ArrayList<>(Math.min(maxItems, blockedQueue.size()));
+            signalProducers(drainItems(batch, maxItems));
+
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the queue
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return blockedQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return isRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     * Reading them never takes the queue's lock.
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns true if the lock grants access in arrival order
+     */
+    public boolean isFair() {
+        return lock.isFair();
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads on both conditions to exit gracefully
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items, then get null.
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            isRunning = false;
+            draining = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while((isRunning || draining)
+                && !blockedQueue.isEmpty()
+                && remaining > 0) {
+
+                // wait till consumers empty the queue, or the timeout elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return blockedQueue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data if the queue is active and has space
+     * Caller must hold the lock.
+     */
+    private boolean insert(T data) {
+        if(!isRunning) return false;
+
+        if(this.capacity == blockedQueue.size()) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        add(data);
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Appends data to the tail, growing storage as needed
+     * Caller must hold the lock.
+     */
+    private void add(T data) {
+        blockedQueue.offer(data);
+        if(stamps != null) stamps.enqueued();
+
+        int size = blockedQueue.size();
+        if(size > peakSize) peakSize = size;
+        metrics.recordEnqueued(1, size);
+    }
+
+    /**
+     * Removes data if the queue has data, and is active or closed
+     * gracefully
+     * Caller must hold the lock.
+     */
+    private T extract() {
+        if(!(isRunning || draining) || blockedQueue.isEmpty()) return null;
+
+        T data = blockedQueue.poll();
+        if(stamps != null) stamps.dequeued();
+        trimStorage();
+        metrics.recordDequeued(1);
+        signalProducers(1);
+        signalDrained();
+
+        return data;
+    }
+
+    /**
+     * Moves up to maxItems items into destination
+     * Caller must hold the lock.
+     */
+    private int drainItems(Collection<? super T> destination, int maxItems) {
+        int removed = 0;
+
+        while(removed < maxItems && !blockedQueue.isEmpty()) {
+            destination.add(blockedQueue.poll());
+            if(stamps != null) stamps.dequeued();
+            removed++;
+        }
+
+        trimStorage();
+        metrics.recordDequeued(removed);
+        if(removed > 0) signalDrained();
+
+        return removed;
+    }
+
+    /**
+     * Releases the storage a burst grew, once the queue is empty
+     * Caller must hold the lock.
+     */
+    private void trimStorage() {
+        if(peakSize > TRIM_THRESHOLD && blockedQueue.isEmpty()) {
+            blockedQueue = new ArrayDeque<>(INITIAL_STORAGE);
+            peakSize = 0;
+        }
+    }
+
+    /**
+     * Wakes consumers for newly inserted items
+     * One item wakes one consumer, unless a batch consumer is waiting.
+     * Caller must hold the lock.
+     */
+    private void signalConsumers(int items) {
+        if(items == 0) return;
+
+        if(items == 1 && batchWaiters == 0) {
+            notEmpty.signal();
+        } else {
+            notEmpty.signalAll();
+        }
+    }
+
+    /**
+     * Wakes threads in awaitDrained() once the queue is empty
+     * Caller must hold the lock.
+     */
+    private void signalDrained() {
+        if(blockedQueue.isEmpty()) drained.signalAll();
+    }
+
+    /**
+     * Wakes producers for newly freed slots
+     * Caller must hold the lock.
+     */
+    private void signalProducers(int slots) {
+        if(slots == 1) {
+            notFull.signal();
+        } else if(slots > 1) {
+            notFull.signalAll();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Objects;
+
+/**
+ * LongConsumer removes values from a shared LongBlockedQueue, and passes
+ * each one to an action
+ * Stops when removeInto() returns -1, indicating shutdown
+ *
+ * Values are removed up to batchSize at a time into one long[] allocated
+ * up front, so steady-state consumption allocates nothing
+ *
+ * Thread-safety comes from LongBlockedQueue; action is only called from
+ * the consuming thread
+ */
+public class LongConsumer implements Runnable {
+    private final LongBlockedQueue sharedQueue;
+    private final java.util.function.LongConsumer action;
+    private final int batchSize;
+    private final StageStats stats = new StageStats();
+
+    public LongConsumer(LongBlockedQueue queue,
+        java.util.function.LongConsumer action) {
+
+        this(queue, action, 1);
+    }
+
+    /**
+     * Creates a consumer that removes up to batchSize values at a time
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    public LongConsumer(LongBlockedQueue queue,
+        java.util.function.LongConsumer action, int batchSize) {
+
+        BatchArguments.checkBatchSize(batchSize);
+
+        sharedQueue = queue;
+        this.action = Objects.requireNonNull(action);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns this consumer's rate and time spent in queue calls
+     */
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * - Continuously consume values by calling sharedQueue.removeInto()
+     * - Stops if removeInto() returns -1, indicating queue shutdown
+     *
+     * Termination:
+     * - Normal termination when queue is shutdown
+     * - Interrupted termination upon interrupt
+     */
+    @Override
+    public void run() {
+        long[] batch = new long[batchSize];
+        stats.start();
+
+        try {
+            while(true) {
+                long begin = System.nanoTime();
+                int removed = sharedQueue.removeInto(batch, 0, batchSize);
+                stats.record(Math.max(0, removed), System.nanoTime() - begin);
+
+                // if sharedQueue is shutdown, it returns -1
+                if(removed < 0) break;
+
+                for(int i = 0; i < removed; i++) {
+                    action.accept(batch[i]);
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.finish();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * LongProducer puts every value of a long[] into a shared LongBlockedQueue
+ * Stops when all values are produced, or due to early shutdown
+ *
+ * Unlike Producer, it never boxes a value and does not simulate work
+ * between items; batch mode (batchSize > 1) inserts up to batchSize
+ * values per putAll() call
+ *
+ * Thread-safety comes from LongBlockedQueue
+ */
+public class LongProducer implements Runnable {
+    private final LongBlockedQueue sharedQueue;
+    private final long[] dataToProduce;
+    private final int batchSize;
+    private final StageStats stats = new StageStats();
+
+    public LongProducer(LongBlockedQueue queue, long[] data) {
+        this(queue, data, 1);
+    }
+
+    /**
+     * Creates a producer that inserts up to batchSize values at a time
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    public LongProducer(LongBlockedQueue queue, long[] data, int batchSize) {
+        BatchArguments.checkBatchSize(batchSize);
+
+        sharedQueue = queue;
+        dataToProduce = data;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns this producer's rate and time spent in queue calls
+     */
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * - Produce values from dataToProduce, batchSize at a time
+     *
+     * Termination:
+     * - Normal termination when all values are produced
+     * - Early termination if queue is shutdown
+     * - Interrupted termination upon interrupt
+     */
+    @Override
+    public void run() {
+        stats.start();
+
+        try {
+            for(int from = 0; from < dataToProduce.length; from += batchSize) {
+                int length = Math.min(batchSize, dataToProduce.length - from);
+                long begin = System.nanoTime();
+                int produced = length == 1
+                    ? (sharedQueue.put(dataToProduce[from]) ? 1 : 0)
+                    : sharedQueue.putAll(dataToProduce, from, length);
+                stats.record(produced, System.nanoTime() - begin);
+
+                // queue was shutdown
+                if(produced < length) break;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.finish();
+        }
+    }
+}
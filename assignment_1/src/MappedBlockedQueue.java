@@ -0,0 +1,849 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking queue whose items live in a memory-mapped file ring buffer
+ *
+ * Features:
+ *  - Items are serialized by a RecordCodec into length-prefixed records,
+ *    so the buffered backlog lives in the page cache, not on the heap
+ *  - Capacity is in bytes: a put blocks until its record fits
+ *  - A record that would run past the end of the file is written at the
+ *    start instead, after a wrap marker
+ *  - The header keeps the head and tail positions, so reopening the file
+ *    recovers every item not yet removed, e.g. after a crash or shutdown
+ *  - Same ReentrantLock with notFull/notEmpty conditions as
+ *    LockBlockedQueue
+ *  - A record the codec fails to decode is skipped: the removal that
+ *    reaches it throws IllegalStateException naming its position, and
+ *    the next one continues after it, also after reopening the file
+ *
+ * Durability:
+ * A record is written before the tail that publishes it, and each
+ * position is a single write, so the file stays consistent if the
+ * process crashes at any point. Reopening counts the records between
+ * head and tail. Call flush() to also survive the OS crashing. An item
+ * is removed from the file when remove() returns it, so a crash while
+ * processing it loses it.
+ *
+ * Thread-safety:
+ * Every public method holds the lock while accessing the mapping
+ */
+public class MappedBlockedQueue<T> implements BlockedQueue<T>, Closeable {
+    private static final int MAGIC = 0x4D425131; // "MBQ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int HEAD_OFFSET = 16;
+    private static final int TAIL_OFFSET = 24;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    // written where a record would not fit before the end of the ring
+    private static final int WRAP_MARKER = -1;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - HEADER_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer records;
+    private final int capacity;
+    private final RecordCodec<T> codec;
+
+    // positions in bytes since the file was created; never wrap
+    private long head;
+    private long tail;
+    private int count;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private boolean draining;
+    private int batchWaiters;
+    private int blockedProducers;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    /**
+     * Opens the queue stored in file, creating it with capacityBytes of
+     * record space if it does not exist
+     * An existing file keeps its items, which remove() returns first.
+     *
+     * @throws IllegalArgumentException when capacityBytes <= 4 or too
+     *         large to map, or the file was created with another capacity
+     * @throws IllegalStateException when the file is not a queue file,
+     *         or its header is corrupt
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public MappedBlockedQueue(Path file, int capacityBytes,
+        RecordCodec<T> codec) throws IOException {
+
+        if(capacityBytes <= LENGTH_BYTES || capacityBytes > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                "MappedBlockedQueue capacity must be between "
+                + (LENGTH_BYTES + 1) + " and " + MAX_CAPACITY + " bytes"
+            );
+        }
+
+        this.codec = Objects.requireNonNull(codec);
+        this.capacity = capacityBytes;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+
+        try {
+            boolean exists = channel.size() > 0;
+
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES
+            );
+
+            // check the header before mapping, which would grow the file
+            if(exists) checkHeader(file);
+
+            records = channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_BYTES, capacityBytes
+            );
+
+            if(exists) {
+                recover(file);
+            } else {
+                header.putInt(4, VERSION);
+                header.putLong(CAPACITY_OFFSET, capacityBytes);
+                header.putLong(HEAD_OFFSET, 0);
+                header.putLong(TAIL_OFFSET, 0);
+                // written last, so a half-created file is not recovered
+                header.putInt(0, MAGIC);
+            }
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into the queue
+     * Blocks if its record does not fit, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     * @throws IllegalArgumentException when the record can never fit
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        int maxSize = checkRecord(data);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && !fits(maxSize)) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                awaitSpace(0, false);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning) return;
+
+            insert(data, maxSize);
+            signalConsumers(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal; the remaining items
+     * stay in the file.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && count == 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notEmpty.await(); // wait till queue has some data
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return tryExtract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     * @throws IllegalArgumentException when the record can never fit
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        int maxSize = checkRecord(data);
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && !fits(maxSize) && remaining > 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till the record fits, or the timeout elapses
+                remaining = awaitSpace(remaining, true);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            return tryInsert(data, maxSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && count == 0 && remaining > 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till queue has some data, or the timeout elapses
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return tryExtract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into the queue only if its record fits
+     * Returns false without insertion if it does not fit, or shutdown.
+     * @throws IllegalArgumentException when the record can never fit
+     */
+    @Override
+    public boolean tryPut(T data) {
+        int maxSize = checkRecord(data);
+
+        lock.lock();
+        try {
+            return tryInsert(data, maxSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        lock.lock();
+        try {
+            return tryExtract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while a record does not fit, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     * @throws IllegalArgumentException when a record can never fit
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        lock.lockInterruptibly();
+        int inserted = 0;
+        int unsignalled = 0;
+
+        try {
+            for(T item : data) {
+                int maxSize = checkRecord(item);
+                long waitStart = 0;
+
+                while(isRunning && !fits(maxSize)) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wake consumers for the items inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+                    awaitSpace(0, false);
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning) break;
+
+                insert(item, maxSize);
+                inserted++;
+                unsignalled++;
+            }
+
+            return inserted;
+        } finally {
+            signalConsumers(unsignalled);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        lock.lock();
+        try {
+            int removed = 0;
+
+            while(removed < maxItems && count > 0) {
+                T item = extract(removed == 0);
+                if(item == null) break;
+
+                destination.add(item);
+                removed++;
+            }
+
+            if(removed > 0) signalProducers();
+
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items are available, a producer is blocked
+     * because the queue is full, the timeout elapses, or the queue is
+     * shutdown.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            batchWaiters++;
+            try {
+                // a blocked producer means minItems may never fit
+                while(isRunning
+                    && count < minItems
+                    && blockedProducers == 0
+                    && remaining > 0) {
+
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wait till queue has enough data, or the timeout elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                batchWaiters--;
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning && (!draining || count == 0)) return null;
+
+            List<T> batch = new ArrayList<>(Math.min(maxItems, count));
+
+            while(batch.size() < maxItems && count > 0) {
+                T item = extract(batch.isEmpty());
+                if(item == null) break;
+
+                batch.add(item);
+            }
+
+            if(!batch.isEmpty()) signalProducers();
+
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items in the queue
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of record bytes in use, including length
+     * prefixes and space skipped at the end of the ring
+     */
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return tail - head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the record space of the file, in bytes
+     */
+    public int capacityBytes() {
+        return capacity;
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return isRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads on both conditions to exit gracefully.
+     * Items still buffered stay in the file.
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items, then get null. The file stays open until close().
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            isRunning = false;
+            draining = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while((isRunning || draining) && count > 0 && remaining > 0) {
+                // wait till consumers empty the queue, or the timeout elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return count == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces every record and the header to the storage device
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            records.force();
+            header.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Shuts down the queue, flushes it, and closes the file
+     * Reopening the file recovers every item not yet removed.
+     */
+    @Override
+    public void close() throws IOException {
+        shutdown();
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Checks that an existing file is a queue file of the same capacity
+     */
+    private void checkHeader(Path file) {
+        if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IllegalStateException(file + " is not a queue file");
+        }
+
+        long savedCapacity = header.getLong(CAPACITY_OFFSET);
+        if(savedCapacity != capacity) {
+            throw new IllegalArgumentException(file + " was created with "
+                + savedCapacity + " bytes of capacity, not " + capacity
+            );
+        }
+    }
+
+    /**
+     * Restores the positions saved in the header of an existing file
+     */
+    private void recover(Path file) {
+        head = header.getLong(HEAD_OFFSET);
+        tail = header.getLong(TAIL_OFFSET);
+
+        if(head < 0 || tail < head) {
+            throw new IllegalStateException(file + " has a corrupt header");
+        }
+
+        // walk the records, so count never has to be kept in the header
+        long position = head;
+
+        while(position < tail) {
+            int offset = physical(position);
+
+            if(capacity - offset < LENGTH_BYTES
+                || records.getInt(offset) == WRAP_MARKER) {
+
+                position += capacity - offset;
+                continue;
+            }
+
+            int length = records.getInt(offset);
+            position += LENGTH_BYTES + (long) length;
+
+            if(length < 0 || position > tail) {
+                throw new IllegalStateException(
+                    file + " has a corrupt record at " + offset
+                );
+            }
+
+            count++;
+        }
+
+        if(position != tail) {
+            throw new IllegalStateException(file + " has a corrupt header");
+        }
+    }
+
+    /**
+     * Returns the largest record data can encode to
+     * @throws NullPointerException when data is null
+     * @throws IllegalArgumentException when the record can never fit
+     */
+    private int checkRecord(T data) {
+        if(data == null) {
+            throw new NullPointerException(
+                "MappedBlockedQueue does not accept null data"
+            );
+        }
+
+        int maxSize = codec.maxEncodedSize(data);
+
+        if(maxSize < 0 || maxSize > capacity - LENGTH_BYTES) {
+            throw new IllegalArgumentException("Record of up to " + maxSize
+                + " bytes does not fit in " + capacity + " bytes"
+            );
+        }
+
+        return maxSize;
+    }
+
+    /**
+     * Returns the bytes to skip before a record of maxSize at the tail
+     * Caller must hold the lock.
+     */
+    private int skipBeforeRecord(int maxSize) {
+        int offset = physical(tail);
+
+        return offset + LENGTH_BYTES + maxSize > capacity
+            ? capacity - offset
+            : 0;
+    }
+
+    /**
+     * Returns true if a record of up to maxSize bytes fits at the tail
+     * Caller must hold the lock.
+     */
+    private boolean fits(int maxSize) {
+        // an empty queue can always skip to the start of the ring
+        if(count == 0) return true;
+
+        long needed = skipBeforeRecord(maxSize) + LENGTH_BYTES + maxSize;
+
+        return tail - head + needed <= capacity;
+    }
+
+    /**
+     * Waits on notFull as a blocked producer, so batch consumers stop
+     * waiting for items that cannot fit
+     * Returns the remaining nanos when timed.
+     * Caller must hold the lock.
+     */
+    private long awaitSpace(long nanos, boolean timed)
+        throws InterruptedException {
+
+        blockedProducers++;
+        try {
+            if(batchWaiters > 0) notEmpty.signalAll();
+
+            if(timed) return notFull.awaitNanos(nanos);
+
+            notFull.await(); // wait till queue has some space
+            return 0;
+        } finally {
+            blockedProducers--;
+        }
+    }
+
+    /**
+     * Inserts data if the queue is active and its record fits
+     * Caller must hold the lock.
+     */
+    private boolean tryInsert(T data, int maxSize) {
+        if(!isRunning) return false;
+
+        if(!fits(maxSize)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        insert(data, maxSize);
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Writes the record of data at the tail, then publishes the new tail
+     * Caller must hold the lock, and have checked that it fits.
+     */
+    private void insert(T item, int maxSize) {
+        int skip = skipBeforeRecord(maxSize);
+        long recordStart = tail + skip;
+        int offset = physical(recordStart);
+        int start = offset + LENGTH_BYTES;
+        int length;
+
+        records.limit(start + maxSize).position(start);
+        try {
+            codec.encode(item, records);
+            length = records.position() - start;
+        } finally {
+            records.clear();
+        }
+
+        // a marker needs room for a length; less than that is skipped
+        if(skip >= LENGTH_BYTES) records.putInt(physical(tail), WRAP_MARKER);
+
+        // the length, then the tail, are written once the payload is
+        // complete, so a crash never exposes a partial record
+        records.putInt(offset, length);
+        tail = recordStart + LENGTH_BYTES + length;
+        header.putLong(TAIL_OFFSET, tail);
+
+        if(count == 0) {
+            // nothing lives in the skipped space; a crash before this
+            // write still finds the record past the wrap marker
+            head = recordStart;
+            header.putLong(HEAD_OFFSET, head);
+        }
+
+        count++;
+        metrics.recordEnqueued(1, count);
+    }
+
+    /**
+     * Removes data if the queue has data, and is active or closed
+     * gracefully
+     * Caller must hold the lock.
+     */
+    private T tryExtract() {
+        if(!(isRunning || draining) || count == 0) return null;
+
+        T data = extract(true);
+        signalProducers();
+
+        return data;
+    }
+
+    /**
+     * Reads the record at the head, then publishes the new head
+     * If the codec fails on the record: with skipCorrupt, publishes the
+     * head past it, so it cannot wedge the queue, and throws; otherwise
+     * leaves it at the head and returns null.
+     * Caller must hold the lock, and the queue must not be empty.
+     * @throws IllegalStateException naming the skipped record's position
+     */
+    private T extract(boolean skipCorrupt) {
+        int offset = physical(head);
+
+        if(capacity - offset < LENGTH_BYTES
+            || records.getInt(offset) == WRAP_MARKER) {
+
+            head += capacity - offset;
+            offset = 0;
+        }
+
+        int length = records.getInt(offset);
+        int start = offset + LENGTH_BYTES;
+
+        records.limit(start + length).position(start);
+        T item;
+        try {
+            item = codec.decode(records);
+        } catch(RuntimeException e) {
+            if(!skipCorrupt) return null;
+
+            long position = head;
+            advance(length);
+            signalProducers();
+
+            throw new IllegalStateException(
+                "Skipped corrupt record at position " + position, e
+            );
+        } finally {
+            records.clear();
+        }
+
+        advance(length);
+
+        return item;
+    }
+
+    /**
+     * Publishes the head past the record of length bytes at the head
+     * Caller must hold the lock.
+     */
+    private void advance(int length) {
+        head += LENGTH_BYTES + length;
+        header.putLong(HEAD_OFFSET, head);
+        count--;
+        metrics.recordDequeued(1);
+        if(count == 0) drained.signalAll();
+    }
+
+    private int physical(long position) {
+        return (int) (position % capacity);
+    }
+
+    /**
+     * Wakes consumers for newly inserted items
+     * Caller must hold the lock.
+     */
+    private void signalConsumers(int items) {
+        if(items == 0) return;
+
+        if(items == 1 && batchWaiters == 0) {
+            notEmpty.signal();
+        } else {
+            notEmpty.signalAll();
+        }
+    }
+
+    /**
+     * Wakes producers for freed space
+     * Records vary in size, so every producer re-checks whether its
+     * record fits now.
+     * Caller must hold the lock.
+     */
+    private void signalProducers() {
+        notFull.signalAll();
+    }
+}
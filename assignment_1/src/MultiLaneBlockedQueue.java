@@ -0,0 +1,681 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded blocking queue with K priority lanes, each with its own
+ * capacity, dequeued weighted-fair
+ *
+ * Features:
+ *  - A lane selector maps each item to a lane; lane 0 has the highest
+ *    priority
+ *  - Every lane has its own capacity and notFull condition, so a flood of
+ *    bulk items blocks only the bulk producers, never the urgent ones
+ *  - remove() picks a lane by smooth weighted round-robin over non-empty
+ *    lanes: with weights {8, 1}, lane 0 gets 8 of every 9 removals while
+ *    both have data, and lane 1 is never starved
+ *  - Items leave each lane in insertion order
+ *  - Batch operations, timed offer()/poll() and non-blocking
+ *    tryPut()/tryRemove(), so Producer and Consumer run unchanged
+ *  - closeGracefully() lets consumers drain every lane before they stop
+ *  - QueueMetrics counting traffic and time spent blocked
+ *
+ * Thread-safety:
+ * Every public method holds the lock while accessing the lanes
+ */
+public class MultiLaneBlockedQueue<T> implements BlockedQueue<T> {
+    private final ArrayDeque<T>[] lanes;
+    private final int[] capacities;
+    private final int[] weights;
+    // smooth weighted round-robin credit of each lane
+    private final int[] credits;
+    private final long[] dequeuedPerLane;
+    private final int capacity;
+    private final ToIntFunction<? super T> laneSelector;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition[] notFull;
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private boolean draining;
+    private int size;
+    // consumers in removeBatch() wait for more than one item,
+    // so a single signal() could wake a consumer that cannot proceed
+    private int batchWaiters;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    /**
+     * Creates a multi-lane queue where lane i holds up to capacities[i]
+     * items and gets weights[i] shares of removals
+     * @throws IllegalArgumentException when there are no lanes, the arrays
+     *         differ in length, a capacity or weight is <= 0, or
+     *         laneSelector is null
+     */
+    @SuppressWarnings("unchecked")
+    public MultiLaneBlockedQueue(int[] capacities, int[] weights,
+        ToIntFunction<? super T> laneSelector) {
+
+        if(capacities.length == 0 || capacities.length != weights.length) {
+            throw new IllegalArgumentException(
+                "MultiLaneBlockedQueue needs one capacity and one weight"
+                + " per lane, and at least one lane"
+            );
+        }
+
+        if(laneSelector == null) {
+            throw new IllegalArgumentException(
+                "MultiLaneBlockedQueue lane selector must not be null"
+            );
+        }
+
+        int lanes = capacities.length;
+        long total = 0;
+
+        for(int i = 0; i < lanes; i++) {
+            if(capacities[i] <= 0 || weights[i] <= 0) {
+                throw new IllegalArgumentException(
+                    "MultiLaneBlockedQueue lane capacities and weights"
+                    + " must be greater than 0"
+                );
+            }
+
+            total += capacities[i];
+        }
+
+        if(total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "MultiLaneBlockedQueue total capacity is too large"
+            );
+        }
+
+        this.capacities = capacities.clone();
+        this.weights = weights.clone();
+        this.capacity = (int) total;
+        this.laneSelector = laneSelector;
+        this.lanes = (ArrayDeque<T>[]) new ArrayDeque<?>[lanes];
+        credits = new int[lanes];
+        dequeuedPerLane = new long[lanes];
+        notFull = new Condition[lanes];
+
+        for(int i = 0; i < lanes; i++) {
+            this.lanes[i] = new ArrayDeque<>(capacities[i]);
+            notFull[i] = lock.newCondition();
+        }
+
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into its lane
+     * Blocks if the lane is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     * @throws IllegalArgumentException when the selector returns no lane
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        int lane = laneOf(data);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && isFull(lane)) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notFull[lane].await(); // wait till the lane has some space
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning) return;
+
+            enqueue(lane, data);
+            signalConsumers(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the lane chosen by weighted round-robin
+     * Blocks if every lane is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && size == 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+                notEmpty.await(); // wait till some lane has data
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into its lane, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        int lane = laneOf(data);
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && isFull(lane) && remaining > 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till the lane has some space, or the timeout elapses
+                remaining = notFull[lane].awaitNanos(remaining);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+            }
+
+            return insert(lane, data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            while(isRunning && size == 0 && remaining > 0) {
+                if(waitStart == 0) waitStart = System.nanoTime();
+
+                // wait till some lane has data, or the timeout elapses
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into its lane only if the lane has space
+     * Returns false without insertion if the lane is full, or shutdown.
+     */
+    @Override
+    public boolean tryPut(T data) {
+        int lane = laneOf(data);
+
+        lock.lock();
+        try {
+            return insert(lane, data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        lock.lock();
+        try {
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts every item of data into its lane, in order
+     * Blocks while an item's lane is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        lock.lockInterruptibly();
+        try {
+            int inserted = 0;
+            int unsignalled = 0;
+
+            for(T item : data) {
+                int lane = laneOf(item);
+                long waitStart = 0;
+
+                while(isRunning && isFull(lane)) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wake consumers for the items inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+                    notFull[lane].await(); // wait till the lane has space
+                }
+
+                if(waitStart != 0) {
+                    metrics.recordPutWait(System.nanoTime() - waitStart);
+                }
+
+                if(!isRunning) break;
+
+                enqueue(lane, item);
+                inserted++;
+                unsignalled++;
+            }
+
+            signalConsumers(unsignalled);
+
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in
+     * weighted round-robin order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        lock.lock();
+        try {
+            return drainItems(destination, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue, in
+     * weighted round-robin order
+     * Blocks until minItems items are available (at most capacity),
+     * the timeout elapses, or the queue is shutdown.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        int required = Math.min(minItems, capacity);
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+
+            batchWaiters++;
+            try {
+                while(isRunning && size < required && remaining > 0) {
+                    if(waitStart == 0) waitStart = System.nanoTime();
+
+                    // wait till the lanes have enough data, or the timeout
+                    // elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                batchWaiters--;
+            }
+
+            if(waitStart != 0) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+
+            if(!isRunning && (!draining || size == 0)) return null;
+
+            List<T> batch = new ArrayList<>(Math.min(maxItems, size));
+            drainItems(batch, maxItems);
+
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items in every lane
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of lanes
+     */
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the number of items in the given lane
+     * @throws IndexOutOfBoundsException when lane is not a valid index
+     */
+    public int laneSize(int lane) {
+        lock.lock();
+        try {
+            return lanes[lane].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the capacity of the given lane
+     * @throws IndexOutOfBoundsException when lane is not a valid index
+     */
+    public int laneCapacity(int lane) {
+        return capacities[lane];
+    }
+
+    /**
+     * Returns the number of items ever removed from the given lane
+     * @throws IndexOutOfBoundsException when lane is not a valid index
+     */
+    public long laneDequeuedCount(int lane) {
+        lock.lock();
+        try {
+            return dequeuedPerLane[lane];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return isRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     * Reading them never takes the queue's lock.
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads on every condition to exit gracefully
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+
+            for(Condition condition : notFull) {
+                condition.signalAll();
+            }
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items of every lane, then get null.
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            isRunning = false;
+            draining = true;
+
+            for(Condition condition : notFull) {
+                condition.signalAll();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every lane is empty
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while((isRunning || draining) && size > 0 && remaining > 0) {
+                // wait till consumers empty the lanes, or the timeout elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return size == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lane the selector picks for data
+     * @throws IllegalArgumentException when the lane is out of range
+     */
+    private int laneOf(T data) {
+        int lane = laneSelector.applyAsInt(data);
+
+        if(lane < 0 || lane >= lanes.length) {
+            throw new IllegalArgumentException("Lane " + lane
+                + " is out of range for " + lanes.length + " lanes"
+            );
+        }
+
+        return lane;
+    }
+
+    private boolean isFull(int lane) {
+        return lanes[lane].size() == capacities[lane];
+    }
+
+    /**
+     * Inserts data if the queue is active and the lane has space
+     * Caller must hold the lock.
+     */
+    private boolean insert(int lane, T data) {
+        if(!isRunning) return false;
+
+        if(isFull(lane)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        enqueue(lane, data);
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Caller must hold the lock, and the lane must have space.
+     */
+    private void enqueue(int lane, T data) {
+        lanes[lane].offer(data);
+        size++;
+        metrics.recordEnqueued(1, size);
+    }
+
+    /**
+     * Removes data from the next lane if the queue has data, and is active
+     * or closed gracefully
+     * Caller must hold the lock.
+     */
+    private T extract() {
+        if(!(isRunning || draining) || size == 0) return null;
+
+        int lane = nextLane();
+        T data = dequeue(lane);
+        metrics.recordDequeued(1);
+        signalProducers(lane, 1);
+        if(size == 0) drained.signalAll();
+
+        return data;
+    }
+
+    /**
+     * Moves up to maxItems items into destination, lane by weighted
+     * round-robin, and wakes producers of every lane that freed space
+     * Caller must hold the lock.
+     */
+    private int drainItems(Collection<? super T> destination, int maxItems) {
+        int[] freed = new int[lanes.length];
+        int removed = 0;
+
+        while(removed < maxItems && size > 0) {
+            int lane = nextLane();
+
+            destination.add(dequeue(lane));
+            freed[lane]++;
+            removed++;
+        }
+
+        metrics.recordDequeued(removed);
+
+        for(int lane = 0; lane < lanes.length; lane++) {
+            signalProducers(lane, freed[lane]);
+        }
+
+        if(removed > 0 && size == 0) drained.signalAll();
+
+        return removed;
+    }
+
+    /**
+     * Caller must hold the lock, and the lane must have data.
+     */
+    private T dequeue(int lane) {
+        T data = lanes[lane].poll();
+        size--;
+        dequeuedPerLane[lane]++;
+
+        // an empty lane does not bank credit while it has nothing to send
+        if(lanes[lane].isEmpty()) credits[lane] = 0;
+
+        return data;
+    }
+
+    /**
+     * Picks the non-empty lane to remove from next, by smooth weighted
+     * round-robin: every non-empty lane earns its weight in credit, the
+     * lane with the most credit wins (ties go to the higher priority)
+     * and pays back the total weight of the non-empty lanes
+     * Caller must hold the lock, and some lane must have data.
+     */
+    private int nextLane() {
+        int best = -1;
+        int totalWeight = 0;
+
+        for(int lane = 0; lane < lanes.length; lane++) {
+            if(lanes[lane].isEmpty()) continue;
+
+            credits[lane] += weights[lane];
+            totalWeight += weights[lane];
+
+            if(best < 0 || credits[lane] > credits[best]) best = lane;
+        }
+
+        credits[best] -= totalWeight;
+
+        return best;
+    }
+
+    /**
+     * Wakes consumers for newly inserted items
+     * One item wakes one consumer, unless a batch consumer is waiting.
+     * Caller must hold the lock.
+     */
+    private void signalConsumers(int items) {
+        if(items == 0) return;
+
+        if(items == 1 && batchWaiters == 0) {
+            notEmpty.signal();
+        } else {
+            notEmpty.signalAll();
+        }
+    }
+
+    /**
+     * Wakes producers of a lane for its newly freed slots
+     * Caller must hold the lock.
+     */
+    private void signalProducers(int lane, int slots) {
+        if(slots == 1) {
+            notFull[lane].signal();
+        } else if(slots > 1) {
+            notFull[lane].signalAll();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * What a Producer does when the queue stays full for longer than its
+ * offer timeout
+ */
+public enum OverflowPolicy {
+    /** Wait for space without a timeout, using put() */
+    BLOCK,
+
+    /** Drop the item being produced */
+    DROP_NEWEST,
+
+    /**
+     * Remove and drop the oldest queued item, then retry the insert
+     * The producer removes from the queue, so it counts as a consumer: an
+     * SpscBlockedQueue is refused, and QueueType.forUsage() should be
+     * given one more consumer than the pipeline runs.
+     */
+    DROP_OLDEST,
+
+    /** Hand the item being produced to the Producer's RejectionHandler */
+    REJECT
+}
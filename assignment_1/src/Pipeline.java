@@ -0,0 +1,586 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Chain of stages connected by bounded BlockedQueues: a source, any
+ * number of transform stages, and a sink
+ *
+ * Features:
+ *  - Every transform stage runs on its own number of threads
+ *  - Every hop is a bounded queue, so a slow stage blocks the stages
+ *    before it, all the way back to the source
+ *  - End-of-stream markers follow the last item through every queue:
+ *    a stage stops once all of its upstream threads have finished, and
+ *    the pipeline completes once the sink has taken every item
+ *  - Ordered mode hands items to the sink in source order; unordered
+ *    mode hands them over as soon as they are ready
+ *  - A failing stage cancels the whole pipeline
+ *
+ * Usage:
+ *   Pipeline&lt;String&gt; pipeline = Pipeline.from(lines)
+ *       .map("parse", 4, Integer::parseInt)
+ *       .map("format", 2, i -&gt; "#" + i)
+ *       .ordered()
+ *       .to(destination);
+ *   pipeline.run();
+ *
+ * Thread-safety:
+ * A Builder is meant for one thread. A Pipeline can be started, awaited
+ * and cancelled from any thread; the destination is only written by the
+ * sink thread, and is complete once await() returns.
+ */
+public class Pipeline<T> {
+    /**
+     * One item on its way through the pipeline, tagged with its position
+     * in the source
+     */
+    private static final class Envelope {
+        final long sequence;
+        final Object value;
+
+        Envelope(long sequence, Object value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    // end-of-stream marker; every reader of a queue takes exactly one
+    private static final Envelope END = new Envelope(-1, null);
+
+    /**
+     * One stage and the threads that run it
+     */
+    private static final class Stage {
+        final String name;
+        final int parallelism;
+        // null for the source and the sink
+        final Function<Object, Object> function;
+        final List<StageStats> stats = new ArrayList<>();
+        final AtomicInteger running;
+
+        Stage(String name, int parallelism, Function<Object, Object> function) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.function = function;
+            running = new AtomicInteger(parallelism);
+
+            for(int i = 0; i < parallelism; i++) {
+                stats.add(new StageStats());
+            }
+        }
+    }
+
+    /**
+     * Collects the stages and settings of a pipeline whose items are
+     * currently of type T
+     */
+    public static final class Builder<T> {
+        private final Iterable<?> source;
+        private final List<Stage> stages = new ArrayList<>();
+        private int capacity = 64;
+        private QueueType queueType = QueueType.LOCK;
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+        private boolean ordered;
+
+        private Builder(Iterable<?> source) {
+            this.source = source;
+            stages.add(new Stage("source", 1, null));
+        }
+
+        /**
+         * Adds a stage applying function to every item on parallelism
+         * threads
+         * @throws IllegalArgumentException when name is null or already
+         *         used, parallelism < 1, or function is null
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Builder<R> map(String name, int parallelism,
+            Function<? super T, ? extends R> function) {
+
+            if(name == null || name.equals("sink") || stageNamed(name)) {
+                throw new IllegalArgumentException(
+                    "Pipeline stage names must be unique, got " + name
+                );
+            }
+
+            if(parallelism < 1) {
+                throw new IllegalArgumentException(
+                    "Pipeline stage parallelism must be greater than 0"
+                );
+            }
+
+            if(function == null) {
+                throw new IllegalArgumentException(
+                    "Pipeline stage function must not be null"
+                );
+            }
+
+            stages.add(new Stage(name, parallelism,
+                (Function<Object, Object>) function
+            ));
+
+            return (Builder<R>) this;
+        }
+
+        /**
+         * Sets the capacity of every queue between two stages
+         * Defaults to 64.
+         * @throws IllegalArgumentException when capacity <= 0
+         */
+        public Builder<T> capacity(int capacity) {
+            if(capacity <= 0) {
+                throw new IllegalArgumentException(
+                    "Pipeline queue capacity must be greater than 0"
+                );
+            }
+
+            this.capacity = capacity;
+
+            return this;
+        }
+
+        /**
+         * Sets the type of the queues between stages
+         * Defaults to LOCK. A hop between two single-threaded stages
+         * gets SPSC, see QueueType.forUsage().
+         * @throws IllegalArgumentException when queueType is null, or does
+         *         not keep items in FIFO order
+         */
+        public Builder<T> queueType(QueueType queueType) {
+            if(queueType == null || !queueType.isFifo()) {
+                throw new IllegalArgumentException(
+                    "Pipeline needs a FIFO queue type, got " + queueType
+                );
+            }
+
+            this.queueType = queueType;
+
+            return this;
+        }
+
+        /**
+         * Sets the kind of threads running the stages
+         * Defaults to PLATFORM.
+         * @throws IllegalArgumentException when threadMode is null
+         */
+        public Builder<T> threadMode(ThreadMode threadMode) {
+            if(threadMode == null) {
+                throw new IllegalArgumentException(
+                    "Pipeline thread mode must not be null"
+                );
+            }
+
+            this.threadMode = threadMode;
+
+            return this;
+        }
+
+        /**
+         * Hands items to the sink in source order
+         * At most as many items as every queue can hold are in flight,
+         * so the sink never buffers more than that while waiting for a
+         * slow item.
+         */
+        public Builder<T> ordered() {
+            ordered = true;
+
+            return this;
+        }
+
+        /**
+         * Ends the pipeline with a sink adding every item to destination
+         * The pipeline is not started.
+         * @throws IllegalArgumentException when destination is null, or the
+         *         queue type does not support a hop's number of threads
+         */
+        public Pipeline<T> to(Collection<? super T> destination) {
+            if(destination == null) {
+                throw new IllegalArgumentException(
+                    "Pipeline destination must not be null"
+                );
+            }
+
+            List<Stage> all = new ArrayList<>(stages);
+            all.add(new Stage("sink", 1, null));
+
+            return new Pipeline<>(this, all, destination);
+        }
+
+        private boolean stageNamed(String name) {
+            for(Stage stage : stages) {
+                if(stage.name.equals(name)) return true;
+            }
+
+            return false;
+        }
+    }
+
+    private final Iterable<?> source;
+    private final Collection<? super T> destination;
+    private final List<Stage> stages;
+    // queues.get(i) connects stages.get(i) to stages.get(i + 1)
+    private final List<BlockedQueue<Envelope>> queues = new ArrayList<>();
+    private final ThreadMode threadMode;
+    // limits items in flight in ordered mode; null when unordered
+    private final Semaphore window;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private volatile ExecutorService pool;
+
+    private Pipeline(Builder<?> builder, List<Stage> stages,
+        Collection<? super T> destination) {
+
+        this.source = builder.source;
+        this.destination = destination;
+        this.stages = stages;
+        this.threadMode = builder.threadMode;
+
+        for(int i = 0; i + 1 < stages.size(); i++) {
+            QueueType type = builder.queueType.forUsage(
+                stages.get(i).parallelism, stages.get(i + 1).parallelism
+            );
+
+            queues.add(type.create(builder.capacity));
+        }
+
+        window = builder.ordered
+            ? new Semaphore(builder.capacity * queues.size())
+            : null;
+    }
+
+    /**
+     * Starts a pipeline reading from source
+     * @throws IllegalArgumentException when source is null
+     */
+    public static <T> Builder<T> from(Iterable<? extends T> source) {
+        if(source == null) {
+            throw new IllegalArgumentException(
+                "Pipeline source must not be null"
+            );
+        }
+
+        return new Builder<>(source);
+    }
+
+    /**
+     * Starts one thread for the source, for the sink, and for every
+     * degree of parallelism of every stage
+     * @throws IllegalStateException when the pipeline was already started
+     */
+    public Pipeline<T> start() {
+        if(!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Pipeline was already started");
+        }
+
+        int threads = 0;
+        for(Stage stage : stages) {
+            threads += stage.parallelism;
+        }
+
+        ExecutorService executor = threadMode.newExecutor(threads);
+        pool = executor;
+
+        // a cancel() racing with start() may have missed the pool
+        if(cancelled) executor.shutdownNow();
+
+        try {
+            for(int i = 0; i < stages.size(); i++) {
+                Stage stage = stages.get(i);
+
+                for(int worker = 0; worker < stage.parallelism; worker++) {
+                    StageStats stats = stage.stats.get(worker);
+
+                    if(i == 0) {
+                        executor.execute(() -> runSource(stats));
+                    } else if(i == stages.size() - 1) {
+                        executor.execute(() -> runSink(stats));
+                    } else {
+                        int index = i;
+                        executor.execute(() -> runStage(index, stats));
+                    }
+                }
+            }
+        } catch(RejectedExecutionException e) {
+            // a stage already failed, or cancel() ran, and stopped the pool;
+            // the stages left out have nothing to do
+            if(failure.get() == null && !cancelled) throw e;
+        }
+
+        // no more tasks; the pool terminates once every stage has finished
+        executor.shutdown();
+
+        return this;
+    }
+
+    /**
+     * Waits until every item has reached the destination
+     * @throws CancellationException when the pipeline was cancelled
+     * @throws ExecutionException when a stage failed, with its exception
+     * @throws IllegalStateException when the pipeline was not started
+     */
+    public void await() throws InterruptedException, ExecutionException {
+        await(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits up to timeout until every item has reached the destination
+     * Returns false if the timeout elapses first.
+     * @throws CancellationException when the pipeline was cancelled
+     * @throws ExecutionException when a stage failed, with its exception
+     * @throws IllegalStateException when the pipeline was not started
+     */
+    public boolean await(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException {
+
+        ExecutorService executor = pool;
+        if(executor == null) {
+            throw new IllegalStateException("Pipeline was not started");
+        }
+
+        if(!executor.awaitTermination(timeout, unit)) return false;
+
+        Throwable cause = failure.get();
+        if(cause != null) {
+            throw new ExecutionException("Pipeline stage failed", cause);
+        }
+
+        if(cancelled) {
+            throw new CancellationException("Pipeline was cancelled");
+        }
+
+        return true;
+    }
+
+    /**
+     * Starts the pipeline and waits until every item has reached the
+     * destination
+     * @see #start()
+     * @see #await()
+     */
+    public void run() throws InterruptedException, ExecutionException {
+        start();
+        await();
+    }
+
+    /**
+     * Stops every stage without waiting for the items in flight
+     * Items already in the destination stay there.
+     */
+    public void cancel() {
+        cancelled = true;
+        stop();
+    }
+
+    /**
+     * Returns true once every stage has finished, for any reason
+     */
+    public boolean isDone() {
+        ExecutorService executor = pool;
+
+        return executor != null && executor.isTerminated();
+    }
+
+    /**
+     * Returns the per-thread stats of every stage, in pipeline order,
+     * starting with "source" and ending with "sink"
+     */
+    public Map<String, List<StageStats>> getStats() {
+        Map<String, List<StageStats>> stats = new LinkedHashMap<>();
+
+        for(Stage stage : stages) {
+            stats.put(stage.name, Collections.unmodifiableList(stage.stats));
+        }
+
+        return stats;
+    }
+
+    /**
+     * Returns the metrics of every queue, in pipeline order
+     * The queue at index i connects stage i to stage i + 1.
+     */
+    public List<QueueMetrics> getQueueMetrics() {
+        List<QueueMetrics> metrics = new ArrayList<>();
+
+        for(BlockedQueue<Envelope> queue : queues) {
+            metrics.add(queue.metrics());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Puts every source item into the first queue, then one end marker
+     * per reader
+     */
+    private void runSource(StageStats stats) {
+        BlockedQueue<Envelope> output = queues.get(0);
+        Iterator<?> items = null;
+        long sequence = 0;
+        stats.start();
+
+        try {
+            items = source.iterator();
+
+            while(items.hasNext()) {
+                Object item = items.next();
+                if(window != null) window.acquire();
+
+                long begin = System.nanoTime();
+                output.put(new Envelope(sequence++, item));
+
+                // put() returns without insertion once the pipeline stops
+                if(!output.isActive()) return;
+
+                stats.record(1, System.nanoTime() - begin);
+            }
+
+            finish(0);
+        } catch(Throwable e) {
+            abort(e);
+        } finally {
+            if(items != null) Sources.close(items);
+            stats.finish();
+        }
+    }
+
+    /**
+     * Applies the stage's function to every item until its end marker
+     */
+    private void runStage(int index, StageStats stats) {
+        Stage stage = stages.get(index);
+        BlockedQueue<Envelope> input = queues.get(index - 1);
+        BlockedQueue<Envelope> output = queues.get(index);
+        stats.start();
+
+        try {
+            while(true) {
+                long begin = System.nanoTime();
+                Envelope envelope = input.remove();
+                long removed = System.nanoTime();
+
+                // remove() returns null once the pipeline stops
+                if(envelope == null) return;
+                if(envelope == END) break;
+
+                Object value = stage.function.apply(envelope.value);
+
+                long applied = System.nanoTime();
+                output.put(new Envelope(envelope.sequence, value));
+
+                if(!output.isActive()) return;
+
+                stats.record(1,
+                    (removed - begin) + (System.nanoTime() - applied)
+                );
+            }
+
+            finish(index);
+        } catch(Throwable e) {
+            abort(e);
+        } finally {
+            stats.finish();
+        }
+    }
+
+    /**
+     * Adds every item to the destination until the end marker, restoring
+     * source order in ordered mode
+     */
+    private void runSink(StageStats stats) {
+        BlockedQueue<Envelope> input = queues.get(queues.size() - 1);
+        // items that arrived ahead of an earlier one, by sequence
+        Map<Long, Object> pending = new HashMap<>();
+        long next = 0;
+        stats.start();
+
+        try {
+            while(true) {
+                long begin = System.nanoTime();
+                Envelope envelope = input.remove();
+
+                if(envelope == null) return;
+                if(envelope == END) break;
+
+                stats.record(1, System.nanoTime() - begin);
+
+                if(window == null) {
+                    add(envelope.value);
+                    continue;
+                }
+
+                pending.put(envelope.sequence, envelope.value);
+
+                while(pending.containsKey(next)) {
+                    add(pending.remove(next));
+                    next++;
+                    window.release();
+                }
+            }
+        } catch(Throwable e) {
+            abort(e);
+        } finally {
+            stats.finish();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(Object value) {
+        destination.add((T) value);
+    }
+
+    /**
+     * Marks one thread of a stage as finished; the last one sends an end
+     * marker to every thread of the next stage
+     */
+    private void finish(int index) throws InterruptedException {
+        if(stages.get(index).running.decrementAndGet() > 0) return;
+
+        BlockedQueue<Envelope> output = queues.get(index);
+        int readers = stages.get(index + 1).parallelism;
+
+        for(int i = 0; i < readers; i++) {
+            output.put(END);
+        }
+    }
+
+    /**
+     * Stops the pipeline because a stage failed
+     * Only the first failure is kept, and none after cancel().
+     */
+    private void abort(Throwable cause) {
+        if(!cancelled) failure.compareAndSet(null, cause);
+
+        stop();
+    }
+
+    /**
+     * Shuts down every queue, and interrupts threads blocked elsewhere,
+     * such as on the ordered window or inside a stage's function
+     */
+    private void stop() {
+        for(BlockedQueue<Envelope> queue : queues) {
+            queue.shutdown();
+        }
+
+        ExecutorService executor = pool;
+        if(executor != null) executor.shutdownNow();
+    }
+}
@@ -1,18 +1,151 @@
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Producer produces from a list, and puts it in a sharedQueue
- * Stops when all items are produced, or due to early shutdown
+ * Producer produces from a source, and puts it in a sharedQueue
+ * Stops when all items are produced, or due to early shutdown or close
  *
- * Thread-safety comes from SimpleBlockedQueue through the put() method
+ * The source is any Iterable, read one item at a time: a List, or a lazy
+ * Iterator, Stream, file or channel source from Sources. Only the items
+ * in the queue, plus one batch, are held in memory at once.
+ *
+ * Batch mode (batchSize > 1) inserts up to batchSize items per putAll()
+ * call, so one lock round-trip moves many items
+ *
+ * An OverflowPolicy other than BLOCK bounds how long the producer waits
+ * on a full queue: it offers each item for up to the offer timeout, then
+ * drops or rejects instead of stalling
+ *
+ * Events (produced, dropped, stopped) go to a QueueEventListener, which
+ * defaults to a no-op so logging stays off the critical path
+ *
+ * getStats() reports the producer's rate, and how much of its time was
+ * spent waiting on the queue
+ *
+ * Thread-safety comes from the BlockedQueue implementation
+ * through the put() method
  */
 public class Producer<T> implements Runnable {
-    private final SimpleBlockedQueue<T> sharedQueue;
-    private final List<T> dataToProduce;
+    private final BlockedQueue<T> sharedQueue;
+    private final Iterable<? extends T> dataToProduce;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutNanos;
+    private final RejectionHandler<T> rejectionHandler;
+
+    // written only by the producing thread
+    private volatile long droppedCount;
+    private volatile long rejectedCount;
+    private final StageStats stats = new StageStats();
+    private final CompletableFuture<StageStats> completion =
+        new CompletableFuture<>();
+    private QueueEventListener listener = QueueEventListener.noOp();
+
+    public Producer(BlockedQueue<T> queue, Iterable<? extends T> list) {
+        this(queue, list, 1);
+    }
+
+    /**
+     * Creates a producer that inserts up to batchSize items at a time
+     * @throws IllegalArgumentException when batchSize < 1
+     */
+    public Producer(BlockedQueue<T> queue, Iterable<? extends T> list,
+        int batchSize) {
+
+        BatchArguments.checkBatchSize(batchSize);
+
+        sharedQueue = queue;
+        dataToProduce = list;
+        this.batchSize = batchSize;
+        overflowPolicy = OverflowPolicy.BLOCK;
+        offerTimeoutNanos = 0;
+        rejectionHandler = data -> {};
+    }
+
+    /**
+     * Creates a producer that applies policy as soon as the queue is full
+     * Rejected items are discarded.
+     */
+    public Producer(BlockedQueue<T> queue, Iterable<? extends T> list,
+        OverflowPolicy policy) {
+
+        this(queue, list, policy, 0, TimeUnit.NANOSECONDS, data -> {});
+    }
+
+    /**
+     * Creates a producer that waits up to timeout for space in a full
+     * queue, then applies policy
+     * Under OverflowPolicy.REJECT, handler receives every rejected item.
+     * @throws IllegalArgumentException when timeout < 0, or policy is
+     *         DROP_OLDEST on an SpscBlockedQueue
+     */
+    public Producer(BlockedQueue<T> queue, Iterable<? extends T> list,
+        OverflowPolicy policy, long timeout, TimeUnit unit,
+        RejectionHandler<T> handler) {
+
+        if(timeout < 0) {
+            throw new IllegalArgumentException(
+                "Offer timeout must not be negative"
+            );
+        }
+        if(policy == OverflowPolicy.DROP_OLDEST
+            && queue instanceof SpscBlockedQueue) {
+
+            // evicting would make this producer a second consumer
+            throw new IllegalArgumentException(
+                "DROP_OLDEST needs a queue that allows several consumers"
+            );
+        }
 
-    public Producer(SimpleBlockedQueue<T> queue, List<T> list) {
         sharedQueue = queue;
         dataToProduce = list;
+        batchSize = 1;
+        overflowPolicy = Objects.requireNonNull(policy);
+        offerTimeoutNanos = unit.toNanos(timeout);
+        rejectionHandler = Objects.requireNonNull(handler);
+    }
+
+    /**
+     * Returns the number of items dropped under DROP_NEWEST or DROP_OLDEST
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Returns the number of items handed to the RejectionHandler
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Sets the listener receiving this producer's events
+     * Must be called before the producer starts running.
+     */
+    public void setEventListener(QueueEventListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Returns this producer's rate and time spent in queue calls
+     */
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns a future completing with getStats() once this producer
+     * stops normally: when every item is produced, or the queue stops it
+     * Completes exceptionally with InterruptedException if the producer is
+     * interrupted, or with whatever exception stopped it.
+     */
+    public CompletableFuture<StageStats> completion() {
+        return completion;
     }
 
      /**
@@ -26,33 +159,175 @@ public class Producer<T> implements Runnable {
 
     @Override
     public void run() {
+        try {
+            if(batchSize > 1) {
+                runBatches();
+            } else {
+                runItems();
+            }
+
+            // no-op if the run was interrupted
+            completion.complete(stats);
+        } catch(RuntimeException | Error e) {
+            completion.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * - Produce items one at a time using put(), or the
+     *   overflow policy
+     *
+     * Termination: same as run()
+     */
+    private void runItems() {
         String threadName = Thread.currentThread().getName();
+        Iterator<? extends T> source = dataToProduce.iterator();
+        stats.start();
 
         try {
-            for(T data : dataToProduce) {
+            while(source.hasNext()) {
+                T data = source.next();
+
                 // stop producing when queue is inactive
                 if(!sharedQueue.isActive()) {
-                    System.out.println("Producer thread "
-                        + threadName + " stopped as queue is shutdown"
+                    listener.onEvent(QueueEvent.PRODUCER_STOPPED,
+                        threadName, null
                     );
 
                     break;
                 }
 
+                long begin = System.nanoTime();
+                boolean produced = produce(data, threadName);
+                stats.record(produced ? 1 : 0, System.nanoTime() - begin);
+
+                if(!produced) continue;
+
+                listener.onEvent(QueueEvent.PRODUCED, threadName, data);
+
+                // Simulated work
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            completion.completeExceptionally(e);
+            listener.onEvent(QueueEvent.PRODUCER_INTERRUPTED,
+                threadName, null
+            );
+        } finally {
+            Sources.close(source);
+            stats.finish();
+        }
+    }
+
+    /**
+     * Inserts data according to the overflow policy
+     * Returns true if data was inserted.
+     */
+    private boolean produce(T data, String threadName)
+        throws InterruptedException {
+
+        switch(overflowPolicy) {
+            case DROP_NEWEST:
+                if(offer(data)) return true;
+
+                if(sharedQueue.isActive()) {
+                    droppedCount++;
+                    listener.onEvent(QueueEvent.DROPPED, threadName, data);
+                }
+
+                return false;
+
+            case DROP_OLDEST:
+                while(!offer(data)) {
+                    if(!sharedQueue.isActive()) return false;
+
+                    // make room by evicting the oldest queued item
+                    T oldest = sharedQueue.tryRemove();
+
+                    if(oldest != null) {
+                        droppedCount++;
+                        listener.onEvent(QueueEvent.DROPPED,
+                            threadName, oldest
+                        );
+                    }
+                }
+
+                return true;
+
+            case REJECT:
+                if(offer(data)) return true;
+
+                if(sharedQueue.isActive()) {
+                    rejectedCount++;
+                    rejectionHandler.rejected(data);
+                }
+
+                return false;
+
+            default:
                 sharedQueue.put(data);
 
-                System.out.println("Producer thread "
-                    + threadName + " produced data: " + data
-                    + ". Buffer size = " + sharedQueue.size()
+                return true;
+        }
+    }
+
+    /**
+     * Offers data, waiting up to the offer timeout for space
+     */
+    private boolean offer(T data) throws InterruptedException {
+        if(offerTimeoutNanos == 0) return sharedQueue.tryPut(data);
+
+        return sharedQueue.offer(data, offerTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * - Produce items from dataToProduce in batches using putAll()
+     *
+     * Termination: same as run()
+     */
+    private void runBatches() {
+        String threadName = Thread.currentThread().getName();
+        Iterator<? extends T> source = dataToProduce.iterator();
+        stats.start();
+
+        try {
+            while(source.hasNext()) {
+                // stop producing when queue is inactive
+                if(!sharedQueue.isActive()) {
+                    listener.onEvent(QueueEvent.PRODUCER_STOPPED,
+                        threadName, null
+                    );
+
+                    break;
+                }
+
+                List<T> batch = new ArrayList<>(batchSize);
+                while(batch.size() < batchSize && source.hasNext()) {
+                    batch.add(source.next());
+                }
+
+                long begin = System.nanoTime();
+                int produced = sharedQueue.putAll(batch);
+                stats.record(produced, System.nanoTime() - begin);
+
+                listener.onEvent(QueueEvent.PRODUCED_BATCH, threadName,
+                    produced == batch.size()
+                        ? batch
+                        : batch.subList(0, produced)
                 );
 
                 // Simulated work
                 Thread.sleep(100);
             }
         } catch (InterruptedException e) {
-            System.out.println("Producer thread "
-                + threadName + " interrupted"
+            completion.completeExceptionally(e);
+            listener.onEvent(QueueEvent.PRODUCER_INTERRUPTED,
+                threadName, null
             );
+        } finally {
+            Sources.close(source);
+            stats.finish();
         }
     }
 }
@@ -0,0 +1,51 @@
+/**
+ * Events a Producer or Consumer reports to its QueueEventListener
+ *
+ * The payload passed with each event is:
+ *  - PRODUCED, DROPPED, CONSUMED: the item
+ *  - PRODUCED_BATCH, CONSUMED_BATCH: the List of items
+ *  - every other event: null
+ */
+public enum QueueEvent {
+    PRODUCED("Producer", "produced data: "),
+    PRODUCED_BATCH("Producer", "produced batch: "),
+    DROPPED("Producer", "dropped data: "),
+    PRODUCER_STOPPED("Producer", "stopped as queue is shutdown"),
+    PRODUCER_INTERRUPTED("Producer", "interrupted"),
+    CONSUMED("Consumer", "consumed data: "),
+    CONSUMED_BATCH("Consumer", "consumed batch: "),
+    CONSUMER_STOPPED("Consumer", "stopped as queue is shutdown"),
+    CONSUMER_RETIRED("Consumer", "retired"),
+    CONSUMER_INTERRUPTED("Consumer", "interrupted");
+
+    private final String role;
+    private final String action;
+
+    QueueEvent(String role, String action) {
+        this.role = role;
+        this.action = action;
+    }
+
+    /**
+     * Returns true for events that end a Producer or Consumer
+     */
+    public boolean isTerminal() {
+        return this == PRODUCER_STOPPED || this == PRODUCER_INTERRUPTED
+            || this == CONSUMER_STOPPED || this == CONSUMER_RETIRED
+            || this == CONSUMER_INTERRUPTED;
+    }
+
+    /**
+     * Formats the event as a log line,
+     * e.g. "Producer thread pool-1-thread-1 produced data: 3"
+     */
+    public String format(String threadName, Object payload) {
+        StringBuilder line = new StringBuilder(64)
+            .append(role).append(" thread ").append(threadName)
+            .append(' ').append(action);
+
+        if(payload != null) line.append(payload);
+
+        return line.toString();
+    }
+}
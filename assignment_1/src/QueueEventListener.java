@@ -0,0 +1,27 @@
+/**
+ * Receives the events of a Producer or Consumer
+ *
+ * Called on the producing or consuming thread, between queue calls, so
+ * a slow listener slows the pipeline down. Implementations:
+ *  - noOp(): the default, costs one virtual call per event
+ *  - SampledEventListener: forwards one in every N item events
+ *  - ConsoleEventListener: prints every event as it happens
+ *  - AsyncEventLogger: hands events to a background writer thread
+ */
+@FunctionalInterface
+public interface QueueEventListener {
+    QueueEventListener NO_OP = (event, threadName, payload) -> {};
+
+    /**
+     * Called once per event
+     * See QueueEvent for the payload of each event.
+     */
+    void onEvent(QueueEvent event, String threadName, Object payload);
+
+    /**
+     * Returns a listener that ignores every event
+     */
+    static QueueEventListener noOp() {
+        return NO_OP;
+    }
+}
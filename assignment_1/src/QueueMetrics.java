@@ -0,0 +1,350 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Low-overhead counters describing a queue's traffic
+ *
+ * Features:
+ *  - Enqueued, dequeued and rejected counts on striped LongAdders, so
+ *    recording never contends on a single cache line
+ *  - Time spent blocked in put and remove, recorded only on the slow path
+ *    when a thread actually waits
+ *  - High-water mark of the queue depth
+ *  - Wait-time histograms for blocked puts and removes
+ *  - How many waits ended while spinning, while yielding, or after
+ *    parking, for queues with a WaitStrategy
+ *  - snapshot() and an optional JMX MBean expose the values without taking
+ *    the queue's lock
+ *
+ * Thread-safety:
+ * Every record method can be called concurrently. Values read while other
+ * threads record are approximate, which is fine for monitoring.
+ */
+public class QueueMetrics implements QueueMetricsMXBean {
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder putBlockedNanos = new LongAdder();
+    private final LongAdder removeBlockedNanos = new LongAdder();
+    private final LongAdder spinWaits = new LongAdder();
+    private final LongAdder yieldWaits = new LongAdder();
+    private final LongAdder parkWaits = new LongAdder();
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final LatencyHistogram putWaitTimes = new LatencyHistogram();
+    private final LatencyHistogram removeWaitTimes = new LatencyHistogram();
+
+    /**
+     * Records items inserted, and the queue depth right after insertion
+     */
+    void recordEnqueued(int items, long depth) {
+        enqueued.add(items);
+
+        // read first, so the CAS only runs when the mark actually moves
+        long mark = highWaterMark.get();
+        while(depth > mark && !highWaterMark.compareAndSet(mark, depth)) {
+            mark = highWaterMark.get();
+        }
+    }
+
+    /**
+     * Records items removed
+     */
+    void recordDequeued(int items) {
+        dequeued.add(items);
+    }
+
+    /**
+     * Records an insert refused because the queue was full
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Records how long one put waited for space
+     */
+    void recordPutWait(long nanos) {
+        putBlockedNanos.add(nanos);
+        putWaitTimes.record(nanos);
+    }
+
+    /**
+     * Records how long one remove waited for data
+     */
+    void recordRemoveWait(long nanos) {
+        removeBlockedNanos.add(nanos);
+        removeWaitTimes.record(nanos);
+    }
+
+    /**
+     * Records a wait that ended while spinning
+     */
+    void recordSpinWait() {
+        spinWaits.increment();
+    }
+
+    /**
+     * Records a wait that ended while yielding
+     */
+    void recordYieldWait() {
+        yieldWaits.increment();
+    }
+
+    /**
+     * Records a wait that parked the thread
+     */
+    void recordParkWait() {
+        parkWaits.increment();
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getDequeuedCount() {
+        return dequeued.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns enqueued minus dequeued items, without taking the queue's lock
+     */
+    @Override
+    public long getDepth() {
+        return Math.max(0, enqueued.sum() - dequeued.sum());
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getPutBlockedNanos() {
+        return putBlockedNanos.sum();
+    }
+
+    @Override
+    public long getRemoveBlockedNanos() {
+        return removeBlockedNanos.sum();
+    }
+
+    @Override
+    public long getSpinWaitCount() {
+        return spinWaits.sum();
+    }
+
+    @Override
+    public long getYieldWaitCount() {
+        return yieldWaits.sum();
+    }
+
+    @Override
+    public long getParkWaitCount() {
+        return parkWaits.sum();
+    }
+
+    @Override
+    public long getPutWaitP99Nanos() {
+        return putWaitTimes.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRemoveWaitP99Nanos() {
+        return removeWaitTimes.getValueAtPercentile(99);
+    }
+
+    /**
+     * Returns the histogram of blocked put wait times, in nanoseconds
+     */
+    public LatencyHistogram getPutWaitTimes() {
+        return putWaitTimes;
+    }
+
+    /**
+     * Returns the histogram of blocked remove wait times, in nanoseconds
+     */
+    public LatencyHistogram getRemoveWaitTimes() {
+        return removeWaitTimes;
+    }
+
+    /**
+     * Clears every counter, the high-water mark and both histograms
+     */
+    @Override
+    public void reset() {
+        enqueued.reset();
+        dequeued.reset();
+        rejected.reset();
+        putBlockedNanos.reset();
+        removeBlockedNanos.reset();
+        spinWaits.reset();
+        yieldWaits.reset();
+        parkWaits.reset();
+        highWaterMark.set(0);
+        putWaitTimes.reset();
+        removeWaitTimes.reset();
+    }
+
+    /**
+     * Returns a point-in-time copy of every counter
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * blockedqueue:type=QueueMetrics,name=&lt;name&gt;
+     * @throws IllegalStateException when registration fails, e.g. the
+     *         name is already registered
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, objectName);
+
+            return objectName;
+        } catch(JMException e) {
+            throw new IllegalStateException(
+                "Could not register queue metrics MBean " + name, e
+            );
+        }
+    }
+
+    /**
+     * Unregisters the MBean registered under name, if any
+     */
+    public void unregisterMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+
+            if(server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch(JMException e) {
+            throw new IllegalStateException(
+                "Could not unregister queue metrics MBean " + name, e
+            );
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("blockedqueue:type=QueueMetrics,name="
+            + ObjectName.quote(name)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Immutable copy of QueueMetrics taken at one point in time
+     */
+    public static final class Snapshot {
+        private final long enqueuedCount;
+        private final long dequeuedCount;
+        private final long rejectedCount;
+        private final long highWaterMark;
+        private final long putBlockedNanos;
+        private final long removeBlockedNanos;
+        private final long spinWaitCount;
+        private final long yieldWaitCount;
+        private final long parkWaitCount;
+        private final long putWaitP99Nanos;
+        private final long removeWaitP99Nanos;
+
+        private Snapshot(QueueMetrics metrics) {
+            enqueuedCount = metrics.getEnqueuedCount();
+            dequeuedCount = metrics.getDequeuedCount();
+            rejectedCount = metrics.getRejectedCount();
+            highWaterMark = metrics.getHighWaterMark();
+            putBlockedNanos = metrics.getPutBlockedNanos();
+            removeBlockedNanos = metrics.getRemoveBlockedNanos();
+            spinWaitCount = metrics.getSpinWaitCount();
+            yieldWaitCount = metrics.getYieldWaitCount();
+            parkWaitCount = metrics.getParkWaitCount();
+            putWaitP99Nanos = metrics.getPutWaitP99Nanos();
+            removeWaitP99Nanos = metrics.getRemoveWaitP99Nanos();
+        }
+
+        public long getEnqueuedCount() {
+            return enqueuedCount;
+        }
+
+        public long getDequeuedCount() {
+            return dequeuedCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public long getDepth() {
+            return Math.max(0, enqueuedCount - dequeuedCount);
+        }
+
+        public long getHighWaterMark() {
+            return highWaterMark;
+        }
+
+        public long getPutBlockedNanos() {
+            return putBlockedNanos;
+        }
+
+        public long getRemoveBlockedNanos() {
+            return removeBlockedNanos;
+        }
+
+        public long getSpinWaitCount() {
+            return spinWaitCount;
+        }
+
+        public long getYieldWaitCount() {
+            return yieldWaitCount;
+        }
+
+        public long getParkWaitCount() {
+            return parkWaitCount;
+        }
+
+        public long getPutWaitP99Nanos() {
+            return putWaitP99Nanos;
+        }
+
+        public long getRemoveWaitP99Nanos() {
+            return removeWaitP99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "enqueued=" + enqueuedCount
+                + " dequeued=" + dequeuedCount
+                + " rejected=" + rejectedCount
+                + " depth=" + getDepth()
+                + " highWaterMark=" + highWaterMark
+                + " putBlockedMs=" + putBlockedNanos / 1_000_000
+                + " removeBlockedMs=" + removeBlockedNanos / 1_000_000
+                + " spinWaits=" + spinWaitCount
+                + " yieldWaits=" + yieldWaitCount
+                + " parkWaits=" + parkWaitCount
+                + " putWaitP99Us=" + putWaitP99Nanos / 1_000
+                + " removeWaitP99Us=" + removeWaitP99Nanos / 1_000;
+        }
+    }
+}
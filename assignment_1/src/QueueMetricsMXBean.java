@@ -0,0 +1,33 @@
+/**
+ * JMX view of a queue's QueueMetrics
+ *
+ * Register with QueueMetrics.registerMBean(name); the attributes then
+ * show up in JConsole or VisualVM under the "blockedqueue" domain.
+ */
+public interface QueueMetricsMXBean {
+    long getEnqueuedCount();
+
+    long getDequeuedCount();
+
+    long getRejectedCount();
+
+    long getDepth();
+
+    long getHighWaterMark();
+
+    long getPutBlockedNanos();
+
+    long getRemoveBlockedNanos();
+
+    long getSpinWaitCount();
+
+    long getYieldWaitCount();
+
+    long getParkWaitCount();
+
+    long getPutWaitP99Nanos();
+
+    long getRemoveWaitP99Nanos();
+
+    void reset();
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wire format shared by QueueServer and RemoteQueue
+ *
+ * Every frame is a 4-byte big-endian length, followed by that many bytes:
+ * a 1-byte op (requests) or status (responses), a 4-byte request id, and
+ * the payload. Responses carry the id of their request, so a client may
+ * pipeline many requests on one connection and match answers as they
+ * come, in any order.
+ *
+ * Payloads:
+ *  - PUT     request: timeout, items           response: inserted count
+ *  - TAKE    request: timeout, min, max        response: items, or none
+ *  - DRAIN   request: max                      response: items
+ *  - DRAINED request: timeout                  response: 1 if drained
+ *  - STATUS  request: -                        response: size, active
+ *  - CANCEL  request: id of a pending request  no response of its own
+ *  - SHUTDOWN, CLOSE: -                        response: -
+ *
+ * Items are an item count followed by one length-prefixed RecordCodec
+ * record per item; a count of -1 means no items because the queue is
+ * shutdown. A timeout is in nanoseconds; FOREVER waits indefinitely and
+ * 0 never waits.
+ */
+final class QueueProtocol {
+    static final byte PUT = 1;
+    static final byte TAKE = 2;
+    static final byte DRAINED = 3;
+    static final byte STATUS = 4;
+    static final byte CANCEL = 5;
+    static final byte SHUTDOWN = 6;
+    static final byte CLOSE = 7;
+    static final byte DRAIN = 8;
+
+    static final byte OK = 0;
+    // the request was cancelled before it had any effect
+    static final byte CANCELLED = 1;
+    // the request failed; the payload is a UTF-8 message
+    static final byte ERROR = 2;
+
+    static final long FOREVER = -1;
+    static final int NO_ITEMS = -1;
+
+    // op or status, and request id
+    static final int HEADER_BYTES = 1 + Integer.BYTES;
+    static final int MAX_FRAME_BYTES = 16 << 20;
+
+    /**
+     * Throws unless length is the length of a valid frame
+     */
+    static void checkFrameLength(int length) throws IOException {
+        if(length < HEADER_BYTES || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+    }
+
+    private QueueProtocol() {}
+
+    /**
+     * Opens a non-blocking server channel bound to address, a TCP
+     * InetSocketAddress or a UnixDomainSocketAddress
+     */
+    static ServerSocketChannel bind(SocketAddress address) throws IOException {
+        ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+        } catch(IOException e) {
+            server.close();
+            throw e;
+        }
+
+        return server;
+    }
+
+    /**
+     * Opens a blocking channel connected to address
+     */
+    static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+            ? SocketChannel.open(StandardProtocolFamily.UNIX)
+            : SocketChannel.open();
+
+        try {
+            channel.connect(address);
+        } catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel;
+    }
+
+    /**
+     * Returns an upper bound of the bytes putItems() writes for items
+     */
+    static <T> int itemsSize(Collection<? extends T> items,
+        RecordCodec<T> codec) {
+
+        long size = Integer.BYTES;
+        for(T item : items) {
+            size += Integer.BYTES + codec.maxEncodedSize(item);
+        }
+
+        return Math.toIntExact(size);
+    }
+
+    /**
+     * Writes the item count, then each item as a length-prefixed record
+     */
+    static <T> void putItems(ByteBuffer out, Collection<? extends T> items,
+        RecordCodec<T> codec) {
+
+        out.putInt(items.size());
+
+        for(T item : items) {
+            int lengthAt = out.position();
+            out.position(lengthAt + Integer.BYTES);
+            codec.encode(item, out);
+            out.putInt(lengthAt, out.position() - lengthAt - Integer.BYTES);
+        }
+    }
+
+    /**
+     * Reads what putItems() wrote; null for a NO_ITEMS count
+     * @throws IllegalArgumentException when the count or a record length
+     *         does not fit in the remaining bytes
+     */
+    static <T> List<T> getItems(ByteBuffer in, RecordCodec<T> codec) {
+        int count = in.getInt();
+        if(count == NO_ITEMS) return null;
+
+        // every record has at least its length prefix
+        if(count < 0 || count > in.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid item count " + count);
+        }
+
+        List<T> items = new ArrayList<>(count);
+        int limit = in.limit();
+
+        for(int i = 0; i < count; i++) {
+            int length = in.getInt();
+            int end = in.position() + length;
+
+            in.limit(end);
+            items.add(codec.decode(in));
+            in.limit(limit);
+            in.position(end);
+        }
+
+        return items;
+    }
+
+    /**
+     * Returns a buffer of at least required bytes holding the remaining
+     * bytes of buffer, ready to be written to
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int required) {
+        if(buffer.remaining() >= required) return buffer;
+
+        int needed = buffer.position() + required;
+        ByteBuffer grown = ByteBuffer.allocate(
+            Math.max(needed, buffer.capacity() * 2)
+        );
+        buffer.flip();
+        grown.put(buffer);
+
+        return grown;
+    }
+}
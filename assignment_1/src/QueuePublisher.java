@@ -0,0 +1,316 @@
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flow.Publisher handing the items of a BlockedQueue to subscribers, as
+ * far as they requested them
+ *
+ * Features:
+ *  - Items are only removed from the queue for a subscriber that has
+ *    outstanding demand, so slow subscribers leave items queued and
+ *    producers feel the backpressure as usual
+ *  - Subscribers compete for items like Consumers do: every item goes to
+ *    exactly one of them, round-robin over those with demand
+ *  - One pump thread removes up to maxBatch items at a time with
+ *    removeBatch(); each subscriber's onNext() calls run as one task on
+ *    the given executor, so thousands of subscribers share a few threads
+ *  - Subscribers get onComplete() once the queue is shutdown, or closed
+ *    gracefully and drained
+ *  - Cancelling the last subscription shuts the queue down, waking
+ *    producers that would otherwise wait for it forever
+ *
+ * Items a subscriber already got from the queue are still delivered
+ * after it cancels, as Flow allows, so none are lost. The executor must
+ * outlive the publisher: items removed for a subscriber whose signals it
+ * rejects are dropped.
+ *
+ * Thread-safety:
+ * subscribe(), request() and cancel() may be called from any thread.
+ * Signals to one subscriber never overlap.
+ */
+public class QueuePublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+    // how long the pump waits for items before serving the next subscriber
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final BlockedQueue<T> queue;
+    private final Executor executor;
+    private final int maxBatch;
+
+    // subscriptions not cancelled or completed yet
+    private final CopyOnWriteArraySet<QueueSubscription> subscriptions =
+        new CopyOnWriteArraySet<>();
+    // subscriptions with outstanding demand, in the order they get items
+    private final Queue<QueueSubscription> ready =
+        new ConcurrentLinkedQueue<>();
+    private final Thread pump;
+
+    private volatile boolean isRunning = true;
+
+    /**
+     * Creates a publisher removing up to 64 items at a time
+     */
+    public QueuePublisher(BlockedQueue<T> queue, Executor executor) {
+        this(queue, executor, 64);
+    }
+
+    /**
+     * Creates a publisher removing up to maxBatch items at a time, and
+     * signalling subscribers from executor
+     * @throws IllegalArgumentException when maxBatch < 1
+     */
+    public QueuePublisher(BlockedQueue<T> queue, Executor executor,
+        int maxBatch) {
+
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException(
+                "QueuePublisher maxBatch must be at least 1"
+            );
+        }
+
+        this.queue = Objects.requireNonNull(queue);
+        this.executor = Objects.requireNonNull(executor);
+        this.maxBatch = maxBatch;
+
+        pump = new Thread(this::pump, "queue-publisher");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Subscribes subscriber; it gets items once it requests them
+     * A subscriber arriving after close() gets onError().
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.signal(() -> subscriber.onSubscribe(subscription));
+
+        if(!isRunning) {
+            subscription.fail(new IllegalStateException(
+                "QueuePublisher is closed"
+            ));
+        }
+    }
+
+    /**
+     * Returns the number of subscriptions not cancelled or completed
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stops removing items, and completes every subscriber once it got the
+     * items already removed for it
+     * Items still in the queue stay there. Does not shut the queue down.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        LockSupport.unpark(pump);
+    }
+
+    /**
+     * Pump loop: removes items for one subscription with demand at a time
+     */
+    private void pump() {
+        try {
+            while(isRunning) {
+                QueueSubscription subscription = ready.poll();
+
+                if(subscription == null) {
+                    LockSupport.parkNanos(this, POLL_NANOS);
+                    continue;
+                }
+
+                subscription.queued.set(false);
+                if(!subscription.isActive()) continue;
+
+                int wanted = (int) Math.min(subscription.demand.get(), maxBatch);
+                List<T> batch = queue.removeBatch(1, wanted, POLL_NANOS,
+                    TimeUnit.NANOSECONDS
+                );
+
+                if(batch == null) break; // queue shutdown, or closed and empty
+
+                subscription.deliver(batch);
+            }
+        } catch(InterruptedException e) {
+            // only close() stops the pump; treat an interrupt the same way
+        } catch(RuntimeException e) {
+            for(QueueSubscription subscription : List.copyOf(subscriptions)) {
+                subscription.fail(e);
+            }
+            return;
+        } finally {
+            isRunning = false;
+        }
+
+        for(QueueSubscription subscription : List.copyOf(subscriptions)) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Called when a subscription ends; shuts the queue down once the last
+     * subscriber cancelled
+     */
+    private void removed(QueueSubscription subscription, boolean cancelled) {
+        subscriptions.remove(subscription);
+
+        if(cancelled && subscriptions.size() == 0 && isRunning) {
+            close();
+            queue.shutdown();
+        }
+    }
+
+    /**
+     * One subscriber's demand, and the items removed for it but not yet
+     * signalled
+     */
+    private final class QueueSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // true while in the ready queue, so it is never queued twice
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        // signals in order: onSubscribe, items, then at most one terminal
+        private final Queue<Runnable> signals = new ConcurrentLinkedQueue<>();
+        // number of signals scheduled; the task draining them runs while > 0
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean terminated = new AtomicBoolean();
+        // the subscriber threw, so it gets no further signals
+        private volatile boolean broken;
+
+        private QueueSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds n to the demand, and lines the subscription up for items
+         * n <= 0 cancels it with onError(), as Flow requires.
+         */
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                fail(new IllegalArgumentException(
+                    "Subscriber requested " + n + " items; must be positive"
+                ));
+                cancel();
+                return;
+            }
+
+            // saturate at Long.MAX_VALUE, i.e. unbounded demand
+            demand.accumulateAndGet(n, (current, more) ->
+                current + more < 0 ? Long.MAX_VALUE : current + more
+            );
+            makeReady();
+        }
+
+        /**
+         * Stops removing items for this subscriber
+         * Items already removed for it are still delivered.
+         */
+        @Override
+        public void cancel() {
+            if(cancelled.compareAndSet(false, true)) removed(this, true);
+        }
+
+        private boolean isActive() {
+            return !cancelled.get() && !terminated.get() && demand.get() > 0;
+        }
+
+        private void makeReady() {
+            if(isActive() && queued.compareAndSet(false, true)) {
+                ready.offer(this);
+                LockSupport.unpark(pump);
+            }
+        }
+
+        /**
+         * Hands a batch removed from the queue to the subscriber, and lines
+         * the subscription up again if it wants more
+         * Called by the pump only.
+         */
+        private void deliver(List<T> batch) {
+            if(!batch.isEmpty()) {
+                demand.addAndGet(-batch.size());
+                signal(() -> {
+                    for(T item : batch) {
+                        subscriber.onNext(item);
+                    }
+                });
+            }
+
+            makeReady();
+        }
+
+        private void complete() {
+            if(terminated.compareAndSet(false, true)) {
+                removed(this, false);
+                signal(subscriber::onComplete);
+            }
+        }
+
+        private void fail(Throwable error) {
+            if(terminated.compareAndSet(false, true)) {
+                removed(this, false);
+                signal(() -> subscriber.onError(error));
+            }
+        }
+
+        /**
+         * Runs signal after every earlier one, on the executor
+         * Once the executor rejects a task, the subscriber can no longer be
+         * signalled, and the subscription ends.
+         */
+        private void signal(Runnable signal) {
+            signals.offer(signal);
+
+            if(pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drainSignals);
+                } catch(RejectedExecutionException e) {
+                    broken = true;
+                    if(terminated.compareAndSet(false, true)) {
+                        removed(this, false);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs the scheduled signals one after another; a subscriber that
+         * throws is cancelled, as Flow allows
+         */
+        private void drainSignals() {
+            do {
+                Runnable signal = signals.poll();
+                if(broken) continue;
+
+                try {
+                    signal.run();
+                } catch(RuntimeException e) {
+                    broken = true;
+                    terminated.set(true);
+                    cancel();
+                }
+            } while(pending.decrementAndGet() > 0);
+        }
+    }
+}
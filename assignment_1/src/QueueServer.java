@@ -0,0 +1,621 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a BlockedQueue to RemoteQueue clients in other processes, over
+ * TCP or Unix domain sockets
+ *
+ * Features:
+ *  - One selector thread serves every connection with non-blocking
+ *    channels and only non-blocking queue calls, so no thread is held by
+ *    a client waiting on a full or empty queue
+ *  - Length-prefixed binary frames (see QueueProtocol) carrying batches of
+ *    items, so putAll() and removeBatch() cost one round-trip
+ *  - Pipelining: a connection can have many requests in flight; a request
+ *    that cannot complete yet is parked, and retried as the queue changes
+ *  - Batched acks: responses are buffered, and written once per selector
+ *    pass, so a burst of pipelined requests is answered in one write
+ *  - A removal of at least min items also completes once the queue is
+ *    full, at the size where it last refused a put, as a local
+ *    removeBatch() caps minItems at the capacity
+ *  - Each connection's puts are applied in the order they arrived, and
+ *    its removals are served in the order they arrived; a parked removal
+ *    never holds up a put, or the other way round
+ *  - A malformed request (short payload, invalid batch bounds,
+ *    undecodable or null items) is answered with ERROR, and nothing else
+ *    is affected; a connection that still breaks the server is closed
+ *
+ * Parked requests are retried after every request read, and at least
+ * every RETRY_MILLIS, which bounds the delay for changes made by threads
+ * using the queue in this process.
+ *
+ * close() disconnects every client but leaves the queue as it is; items
+ * it holds can still be removed locally, or by a new server.
+ *
+ * Thread-safety:
+ * Only the selector thread touches connections; close() may be called
+ * from any thread.
+ */
+public class QueueServer<T> implements Closeable {
+    private static final long RETRY_MILLIS = 5;
+    // how often a parked put retries although the queue did not shrink
+    private static final long PUT_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int READ_BUFFER_BYTES = 64 << 10;
+
+    private final BlockedQueue<T> queue;
+    private final RecordCodec<T> codec;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final SocketAddress address;
+    private final Thread loop;
+    private final Set<Connection> connections =
+        ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isRunning = true;
+
+    // size at which the queue last refused a put; selector thread only
+    private int fullAtSize = Integer.MAX_VALUE;
+
+    /**
+     * Starts serving queue on address: an InetSocketAddress (port 0 picks
+     * a free port) or a UnixDomainSocketAddress, whose file must not exist
+     */
+    public QueueServer(BlockedQueue<T> queue, RecordCodec<T> codec,
+        SocketAddress address) throws IOException {
+
+        this.queue = Objects.requireNonNull(queue);
+        this.codec = Objects.requireNonNull(codec);
+
+        server = QueueProtocol.bind(address);
+        this.address = server.getLocalAddress();
+
+        try {
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch(IOException e) {
+            server.close();
+            throw e;
+        }
+
+        loop = new Thread(this::serve, "queue-server");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Returns the address clients connect to, with the actual port
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of connected clients
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Stops serving, and disconnects every client
+     * Requests still parked get no answer; their clients see the
+     * connection close. Does not shut the queue down.
+     */
+    @Override
+    public void close() throws IOException {
+        isRunning = false;
+        selector.wakeup();
+
+        try {
+            loop.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Selector loop
+     */
+    private void serve() {
+        try {
+            while(isRunning) {
+                selector.select(hasParkedRequests() ? RETRY_MILLIS : 0);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if(!key.isValid()) continue;
+
+                    if(key.isAcceptable()) {
+                        accept();
+                    } else {
+                        @SuppressWarnings("unchecked")
+                        Connection connection = (Connection) key.attachment();
+
+                        try {
+                            if(key.isReadable()) connection.read();
+                            if(key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch(IOException | RuntimeException e) {
+                            connection.close();
+                        }
+                    }
+                }
+
+                for(Connection connection : connections) {
+                    try {
+                        connection.process();
+                        connection.flush();
+                    } catch(IOException | RuntimeException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch(IOException | ClosedSelectorException e) {
+            // stop serving
+        } finally {
+            for(Connection connection : connections) {
+                connection.close();
+            }
+
+            try {
+                selector.close();
+                server.close();
+                if(address instanceof UnixDomainSocketAddress) {
+                    Files.deleteIfExists(
+                        ((UnixDomainSocketAddress) address).getPath()
+                    );
+                }
+            } catch(IOException e) {
+                // already closing
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if(channel == null) return;
+
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ,
+            connection
+        );
+        connections.add(connection);
+    }
+
+    private boolean hasParkedRequests() {
+        for(Connection connection : connections) {
+            if(connection.hasParked()) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the System.nanoTime() deadline of a protocol timeout, or
+     * Long.MAX_VALUE for none
+     */
+    private static long deadline(long timeoutNanos) {
+        if(timeoutNanos == QueueProtocol.FOREVER) return Long.MAX_VALUE;
+
+        return System.nanoTime() + timeoutNanos;
+    }
+
+    /**
+     * A request that may have to wait for the queue
+     */
+    private final class Request {
+        final int id;
+        final long deadline;
+
+        // PUT: items to insert, and how many are inserted
+        List<T> items = Collections.emptyList();
+        int inserted;
+        // queue size when a put last found no space
+        int blockedAtSize = Integer.MAX_VALUE;
+        long blockedAt;
+
+        // TAKE: batch bounds
+        int min;
+        int max;
+
+        Request(int id, long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+
+        boolean isExpired(long now) {
+            return deadline != Long.MAX_VALUE && now - deadline >= 0;
+        }
+    }
+
+    /**
+     * One client: its buffers, and its parked requests
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        // parked requests, each kind in arrival order
+        private final ArrayDeque<Request> puts = new ArrayDeque<>();
+        private final ArrayDeque<Request> takes = new ArrayDeque<>();
+        private final ArrayDeque<Request> drains = new ArrayDeque<>();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        boolean hasParked() {
+            return !puts.isEmpty() || !takes.isEmpty() || !drains.isEmpty();
+        }
+
+        /**
+         * Reads what the channel has, and handles every complete frame
+         */
+        void read() throws IOException {
+            if(channel.read(in) < 0) {
+                close();
+                return;
+            }
+
+            in.flip();
+
+            while(in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                QueueProtocol.checkFrameLength(length);
+
+                if(in.remaining() < Integer.BYTES + length) break;
+
+                int end = in.position() + Integer.BYTES + length;
+                in.position(in.position() + Integer.BYTES);
+                byte op = in.get();
+                int id = in.getInt();
+
+                int limit = in.limit();
+                in.limit(end);
+                handle(op, id, in);
+                in.limit(limit);
+                in.position(end);
+            }
+
+            in.compact();
+
+            // make room for a partial frame larger than the buffer
+            if(in.position() >= Integer.BYTES) {
+                int frame = Integer.BYTES + in.getInt(0);
+                in = QueueProtocol.ensureCapacity(in, frame - in.position());
+            }
+        }
+
+        /**
+         * Parks a new request, or answers it at once
+         * A malformed request is answered with ERROR; the frame length
+         * keeps the stream in step, so the connection stays usable.
+         */
+        private void handle(byte op, int id, ByteBuffer payload) {
+            try {
+                dispatch(op, id, payload);
+            } catch(BufferUnderflowException e) {
+                respondError(id, "Truncated request, op " + op);
+            } catch(IllegalArgumentException e) {
+                respondError(id, e.getMessage());
+            }
+        }
+
+        /**
+         * Checks a request's arguments before acting on it, so a failed
+         * check has answered nothing yet
+         */
+        private void dispatch(byte op, int id, ByteBuffer payload) {
+            switch(op) {
+                case QueueProtocol.PUT: {
+                    Request request = new Request(id,
+                        deadline(payload.getLong())
+                    );
+                    request.items = decodeItems(payload);
+                    puts.add(request);
+                    break;
+                }
+                case QueueProtocol.TAKE: {
+                    Request request = new Request(id,
+                        deadline(payload.getLong())
+                    );
+                    request.min = payload.getInt();
+                    request.max = payload.getInt();
+                    BatchArguments.checkBatchBounds(request.min, request.max);
+                    takes.add(request);
+                    break;
+                }
+                case QueueProtocol.DRAIN: {
+                    // never parked, and recovers items after shutdown
+                    int max = payload.getInt();
+                    BatchArguments.checkMaxItems(max);
+
+                    List<T> batch = new ArrayList<>();
+                    queue.drainTo(batch, max);
+                    respondItems(id, batch);
+                    break;
+                }
+                case QueueProtocol.DRAINED:
+                    drains.add(new Request(id, deadline(payload.getLong())));
+                    break;
+                case QueueProtocol.STATUS:
+                    respond(QueueProtocol.OK, id, Integer.BYTES + 1)
+                        .putInt(queue.size())
+                        .put((byte) (queue.isActive() ? 1 : 0));
+                    break;
+                case QueueProtocol.CANCEL:
+                    cancel(payload.getInt());
+                    break;
+                case QueueProtocol.SHUTDOWN:
+                    queue.shutdown();
+                    respond(QueueProtocol.OK, id, 0);
+                    break;
+                case QueueProtocol.CLOSE:
+                    queue.closeGracefully();
+                    respond(QueueProtocol.OK, id, 0);
+                    break;
+                default:
+                    respondError(id, "Unknown op " + op);
+            }
+        }
+
+        /**
+         * Returns the items of a PUT
+         * @throws IllegalArgumentException when they are missing, cannot
+         *         be decoded, or one is null
+         */
+        private List<T> decodeItems(ByteBuffer payload) {
+            List<T> items;
+            try {
+                items = QueueProtocol.getItems(payload, codec);
+            } catch(IllegalArgumentException e) {
+                throw e;
+            } catch(RuntimeException e) {
+                throw new IllegalArgumentException(
+                    "Undecodable item: " + e, e
+                );
+            }
+
+            if(items == null || items.contains(null)) {
+                throw new IllegalArgumentException(
+                    "A put needs items, none of them null"
+                );
+            }
+
+            return items;
+        }
+
+        /**
+         * Answers every parked request that can complete now, each kind in
+         * arrival order
+         */
+        void process() {
+            long now = System.nanoTime();
+
+            while(!puts.isEmpty() && tryPut(puts.peek(), now)) {
+                puts.poll();
+            }
+
+            while(!takes.isEmpty() && tryTake(takes.peek(), now)) {
+                takes.poll();
+            }
+
+            while(!drains.isEmpty() && tryDrained(drains.peek(), now)) {
+                drains.poll();
+            }
+        }
+
+        /**
+         * Inserts as many of the request's items as fit
+         * Returns true once answered: every item is inserted, the queue is
+         * closed, or the timeout elapsed.
+         */
+        private boolean tryPut(Request request, long now) {
+            // a full queue only gets new space when it shrinks, so retrying
+            // before then would just count rejections
+            boolean retry = queue.size() < request.blockedAtSize
+                || now - request.blockedAt >= PUT_RETRY_NANOS;
+
+            if(retry) {
+                while(request.inserted < request.items.size()
+                    && queue.tryPut(request.items.get(request.inserted))) {
+
+                    request.inserted++;
+                }
+
+                if(request.inserted < request.items.size()) {
+                    if(queue.isActive()) fullAtSize = queue.size();
+                } else if(queue.size() > fullAtSize) {
+                    fullAtSize = Integer.MAX_VALUE; // the bound grew
+                }
+            }
+
+            boolean done = request.inserted == request.items.size()
+                || !queue.isActive()
+                || request.isExpired(now);
+
+            if(done) {
+                respond(QueueProtocol.OK, request.id, Integer.BYTES)
+                    .putInt(request.inserted);
+            } else if(retry) {
+                request.blockedAtSize = queue.size();
+                request.blockedAt = now;
+            }
+
+            return done;
+        }
+
+        /**
+         * Removes between min and max items
+         * Returns true once answered: enough items were removed, the
+         * queue is shutdown or drained after a graceful close, or the
+         * timeout elapsed.
+         */
+        private boolean tryTake(Request request, long now) {
+            List<T> batch = new ArrayList<>();
+            boolean expired = request.isExpired(now);
+
+            if(queue.isActive()) {
+                int size = queue.size();
+
+                if(size >= request.min || size >= fullAtSize || expired) {
+                    queue.drainTo(batch, request.max);
+                }
+
+                if(batch.isEmpty() && !expired && request.min > 0) {
+                    return false;
+                }
+            } else {
+                // closed: tryRemove() takes the items left after a
+                // graceful close, and returns null after shutdown
+                T item;
+                while(batch.size() < request.max
+                    && (item = queue.tryRemove()) != null) {
+
+                    batch.add(item);
+                }
+
+                if(batch.isEmpty()) batch = null;
+            }
+
+            respondItems(request.id, batch);
+
+            return true;
+        }
+
+        /**
+         * Returns true once answered: the queue is empty, or the timeout
+         * elapsed
+         */
+        private boolean tryDrained(Request request, long now) {
+            boolean drained = queue.size() == 0;
+            if(!drained && !request.isExpired(now)) return false;
+
+            respond(QueueProtocol.OK, request.id, 1)
+                .put((byte) (drained ? 1 : 0));
+
+            return true;
+        }
+
+        /**
+         * Drops a parked request, answering it with CANCELLED
+         * A put that already inserted some items is answered with their
+         * count instead, so the client knows they are queued.
+         */
+        private void cancel(int id) {
+            for(ArrayDeque<Request> parked : List.of(puts, takes, drains)) {
+                Iterator<Request> requests = parked.iterator();
+
+                while(requests.hasNext()) {
+                    Request request = requests.next();
+                    if(request.id != id) continue;
+
+                    requests.remove();
+
+                    if(request.inserted > 0) {
+                        respond(QueueProtocol.OK, id, Integer.BYTES)
+                            .putInt(request.inserted);
+                    } else {
+                        respond(QueueProtocol.CANCELLED, id, 0);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void respondItems(int id, List<T> items) {
+            if(items == null) {
+                respond(QueueProtocol.OK, id, Integer.BYTES)
+                    .putInt(QueueProtocol.NO_ITEMS);
+                return;
+            }
+
+            ByteBuffer buffer = respond(QueueProtocol.OK, id,
+                QueueProtocol.itemsSize(items, codec)
+            );
+            int lengthAt = buffer.position() - QueueProtocol.HEADER_BYTES
+                - Integer.BYTES;
+
+            QueueProtocol.putItems(buffer, items, codec);
+
+            // the records may be shorter than their maximum size
+            buffer.putInt(lengthAt, buffer.position() - lengthAt - Integer.BYTES);
+        }
+
+        private void respondError(int id, String message) {
+            byte[] bytes = String.valueOf(message)
+                .getBytes(StandardCharsets.UTF_8);
+            respond(QueueProtocol.ERROR, id, bytes.length).put(bytes);
+        }
+
+        /**
+         * Appends a response header, and returns the output buffer with
+         * room for payloadBytes more
+         */
+        private ByteBuffer respond(byte status, int id, int payloadBytes) {
+            int frame = Integer.BYTES + QueueProtocol.HEADER_BYTES + payloadBytes;
+            out = QueueProtocol.ensureCapacity(out, frame);
+
+            out.putInt(QueueProtocol.HEADER_BYTES + payloadBytes);
+            out.put(status);
+            out.putInt(id);
+
+            return out;
+        }
+
+        /**
+         * Writes buffered responses, and waits for OP_WRITE if the
+         * channel cannot take them all
+         */
+        void flush() throws IOException {
+            if(out.position() == 0 || !channel.isOpen()) return;
+
+            out.flip();
+            channel.write(out);
+            out.compact();
+
+            int interest = out.position() > 0
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ;
+            if(key.interestOps() != interest) key.interestOps(interest);
+        }
+
+        void close() {
+            connections.remove(this);
+            if(key != null) key.cancel();
+
+            try {
+                channel.close();
+            } catch(IOException e) {
+                // already closed
+            }
+        }
+    }
+}
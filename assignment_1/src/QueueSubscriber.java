@@ -0,0 +1,129 @@
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flow.Subscriber inserting the items of an upstream Flow.Publisher into
+ * a BlockedQueue
+ *
+ * Features:
+ *  - Requests prefetch items up front, then tops the demand up in
+ *    batches as items are inserted, so at most prefetch items are ever
+ *    in flight
+ *  - onNext() returns at once while the queue has space; once it is
+ *    full, it blocks the publisher's thread until consumers catch up,
+ *    which is the backpressure a bounded queue exists for
+ *  - completion() completes with the number of items inserted once the
+ *    publisher completes, and exceptionally on onError() or when the
+ *    queue stops accepting items
+ *  - Never closes the queue: like a Producer, it is one of possibly
+ *    many writers
+ *
+ * Thread-safety:
+ * Flow signals never overlap; completion() may be read from any thread.
+ */
+public class QueueSubscriber<T> implements Flow.Subscriber<T> {
+    private final BlockedQueue<T> queue;
+    private final int prefetch;
+    // demand is topped up once this many items were inserted
+    private final int refill;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+    private Flow.Subscription subscription;
+    private long inserted;
+    // items inserted since the demand was last topped up
+    private int sinceRefill;
+
+    /**
+     * Creates a subscriber keeping up to 64 items in flight
+     */
+    public QueueSubscriber(BlockedQueue<T> queue) {
+        this(queue, 64);
+    }
+
+    /**
+     * Creates a subscriber keeping up to prefetch items in flight
+     * @throws IllegalArgumentException when prefetch < 1
+     */
+    public QueueSubscriber(BlockedQueue<T> queue, int prefetch) {
+        if(prefetch < 1) {
+            throw new IllegalArgumentException(
+                "QueueSubscriber prefetch must be at least 1"
+            );
+        }
+
+        this.queue = Objects.requireNonNull(queue);
+        this.prefetch = prefetch;
+        refill = Math.max(1, prefetch / 2);
+    }
+
+    /**
+     * Returns a future completed with the number of items inserted once
+     * the publisher completes, or exceptionally when the subscription
+     * fails
+     */
+    public CompletableFuture<Long> completion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(this.subscription != null) {
+            // a subscriber can only be subscribed once
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    /**
+     * Inserts item, blocking while the queue is full
+     * Cancels the subscription if the queue is shutdown or closed, or
+     * the thread is interrupted.
+     */
+    @Override
+    public void onNext(T item) {
+        if(completion.isDone()) return;
+
+        try {
+            // offer() tells a full queue from a closed one, unlike put()
+            while(!queue.offer(item, 1, TimeUnit.SECONDS)) {
+                if(!queue.isActive()) {
+                    stop(new IllegalStateException(
+                        "Queue stopped accepting items after " + inserted
+                    ));
+                    return;
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(e);
+            return;
+        }
+
+        inserted++;
+
+        if(++sinceRefill == refill) {
+            sinceRefill = 0;
+            subscription.request(refill);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        completion.completeExceptionally(error);
+    }
+
+    @Override
+    public void onComplete() {
+        completion.complete(inserted);
+    }
+
+    private void stop(Throwable error) {
+        subscription.cancel();
+        completion.completeExceptionally(error);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Selects the BlockedQueue implementation at construction time
+ *
+ * Producer, Consumer and Demo only depend on BlockedQueue, so they run
+ * unchanged against every queue type.
+ */
+public enum QueueType {
+    /** SimpleBlockedQueue: synchronized methods with wait/notifyAll */
+    MONITOR {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new SimpleBlockedQueue<>(capacity);
+        }
+    },
+
+    /** LockBlockedQueue: ReentrantLock with notFull/notEmpty conditions */
+    LOCK {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new LockBlockedQueue<>(capacity);
+        }
+    },
+
+    /** LockBlockedQueue with a fair lock, granting access in arrival order */
+    FAIR_LOCK {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new LockBlockedQueue<>(capacity, true);
+        }
+    },
+
+    /** RingBufferBlockedQueue: lock-free ring buffer with CAS-claimed slots */
+    RING {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new RingBufferBlockedQueue<>(capacity);
+        }
+    },
+
+    /** ShardedBlockedQueue: one locked shard per core, with work stealing */
+    SHARDED {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new ShardedBlockedQueue<>(capacity);
+        }
+
+        @Override
+        public boolean isFifo() {
+            return false;
+        }
+    },
+
+    /**
+     * SpscBlockedQueue: lock-free ring for one producer and one consumer
+     * thread; see forUsage()
+     */
+    SPSC {
+        @Override
+        public <T> BlockedQueue<T> create(int capacity) {
+            return new SpscBlockedQueue<>(capacity);
+        }
+
+        @Override
+        public boolean supports(int producers, int consumers) {
+            return producers <= 1 && consumers <= 1;
+        }
+    };
+
+    /**
+     * Creates a queue of this type with given capacity
+     * @throws IllegalArgumentException when capacity is invalid
+     */
+    public abstract <T> BlockedQueue<T> create(int capacity);
+
+    /**
+     * Returns true if queues of this type are safe with the given number
+     * of producer and consumer threads
+     */
+    public boolean supports(int producers, int consumers) {
+        return true;
+    }
+
+    /**
+     * Returns true if queues of this type remove items in the order they
+     * were inserted
+     */
+    public boolean isFifo() {
+        return true;
+    }
+
+    /**
+     * Returns the queue type to use for the given number of producer and
+     * consumer threads
+     * One producer with one consumer gets SPSC, which never takes a lock
+     * while a slot is available; any other usage keeps this type.
+     * @throws IllegalArgumentException when producers or consumers < 1,
+     *         or this type does not support that many threads
+     */
+    public QueueType forUsage(int producers, int consumers) {
+        if(producers < 1 || consumers < 1) {
+            throw new IllegalArgumentException(
+                "Queue usage needs at least one producer and one consumer"
+            );
+        }
+
+        if(producers == 1 && consumers == 1) return SPSC;
+
+        if(!supports(producers, consumers)) {
+            throw new IllegalArgumentException(this + " queue does not support "
+                + producers + " producers and " + consumers + " consumers"
+            );
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the queue type for a case-insensitive name, e.g. "ring"
+     * Dashes are accepted in place of underscores, e.g. "fair-lock"
+     * @throws IllegalArgumentException when no queue type has that name
+     */
+    public static QueueType fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
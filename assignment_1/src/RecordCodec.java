@@ -0,0 +1,85 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes items to and from the records of a MappedBlockedQueue
+ *
+ * A record may be fixed-length (INT, LONG) or variable-length (STRING);
+ * the queue stores each record's actual length in front of it.
+ */
+public interface RecordCodec<T> {
+    /** 4-byte big-endian int records */
+    RecordCodec<Integer> INT = new RecordCodec<>() {
+        @Override
+        public int maxEncodedSize(Integer value) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer value, ByteBuffer out) {
+            out.putInt(value);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+
+    /** 8-byte big-endian long records */
+    RecordCodec<Long> LONG = new RecordCodec<>() {
+        @Override
+        public int maxEncodedSize(Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void encode(Long value, ByteBuffer out) {
+            out.putLong(value);
+        }
+
+        @Override
+        public Long decode(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+
+    /** Variable-length UTF-8 string records */
+    RecordCodec<String> STRING = new RecordCodec<>() {
+        @Override
+        public int maxEncodedSize(String value) {
+            // a UTF-16 char never takes more than 3 UTF-8 bytes
+            return value.length() * 3;
+        }
+
+        @Override
+        public void encode(String value, ByteBuffer out) {
+            out.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String decode(ByteBuffer in) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Returns an upper bound of the bytes encode() writes for value
+     * The queue reserves this much space before encoding.
+     */
+    int maxEncodedSize(T value);
+
+    /**
+     * Writes value at the position of out, advancing it
+     * out has at least maxEncodedSize(value) bytes remaining.
+     */
+    void encode(T value, ByteBuffer out);
+
+    /**
+     * Reads a value from in, whose remaining bytes are exactly one record
+     */
+    T decode(ByteBuffer in);
+}
@@ -0,0 +1,10 @@
+/**
+ * Callback for items a Producer could not insert under
+ * OverflowPolicy.REJECT
+ *
+ * Called on the producer thread, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface RejectionHandler<T> {
+    void rejected(T data);
+}
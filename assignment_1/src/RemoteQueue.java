@@ -0,0 +1,535 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * BlockedQueue client of a QueueServer in another process, so a stock
+ * Producer or Consumer can run there unchanged
+ *
+ * Features:
+ *  - Every call is one request frame; putAll() and removeBatch() move a
+ *    whole batch per round-trip
+ *  - Any number of threads share one connection: their requests are
+ *    pipelined, a writer thread sends them, a burst in one write, and a
+ *    reader thread hands each response to its caller
+ *  - Callers never touch the channel, so interrupting one cannot close
+ *    the connection shared by the others
+ *  - Blocking calls wait on the server, not here: a put() on a full queue
+ *    or a remove() on an empty one is parked by the server until it can
+ *    complete
+ *  - An interrupted call cancels its request on the server and waits for
+ *    the answer, so an item is never lost or inserted twice: if the
+ *    request had already taken effect, the call returns its result with
+ *    the interrupt status set
+ *  - metrics() counts this client's own traffic
+ *
+ * A lost connection makes every pending and later call throw
+ * UncheckedIOException, and isActive() return false.
+ *
+ * Thread-safety:
+ * Every method may be called from any thread.
+ */
+public class RemoteQueue<T> implements BlockedQueue<T>, Closeable {
+    // timeouts longer than this wait forever
+    private static final long MAX_TIMEOUT_NANOS = TimeUnit.DAYS.toNanos(365);
+
+    private final SocketChannel channel;
+    private final RecordCodec<T> codec;
+    private final Thread reader;
+    private final Thread writer;
+    // request frames waiting for the writer
+    private final LinkedBlockingQueue<ByteBuffer> outbox =
+        new LinkedBlockingQueue<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending =
+        new ConcurrentHashMap<>();
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    // why the connection was lost; null while connected
+    private volatile IOException failure;
+
+    /**
+     * Connects to the QueueServer at address
+     */
+    public RemoteQueue(SocketAddress address, RecordCodec<T> codec)
+        throws IOException {
+
+        this.codec = Objects.requireNonNull(codec);
+        channel = QueueProtocol.connect(address);
+
+        reader = new Thread(this::readResponses, "remote-queue-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        writer = new Thread(this::writeRequests, "remote-queue-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Inserts data into the remote queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        insert(List.of(data), QueueProtocol.FOREVER, true);
+    }
+
+    /**
+     * Removes data from the remote queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        return first(take(1, 1, QueueProtocol.FOREVER, true));
+    }
+
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        return insert(List.of(data), timeoutNanos(timeout, unit), true) == 1;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return first(take(1, 1, timeoutNanos(timeout, unit), true));
+    }
+
+    @Override
+    public boolean tryPut(T data) {
+        try {
+            return insert(List.of(data), 0, false) == 1;
+        } catch(InterruptedException e) {
+            throw new AssertionError(e); // uninterruptible
+        }
+    }
+
+    @Override
+    public T tryRemove() {
+        try {
+            return first(take(1, 1, 0, false));
+        } catch(InterruptedException e) {
+            throw new AssertionError(e); // uninterruptible
+        }
+    }
+
+    /**
+     * Inserts every item of data into the remote queue, in order, with one
+     * request
+     * @throws IllegalArgumentException when the items take more than one
+     *         frame, QueueProtocol.MAX_FRAME_BYTES
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        if(data.isEmpty()) return 0;
+
+        return insert(data, QueueProtocol.FOREVER, true);
+    }
+
+    /**
+     * Removes up to maxItems available items into destination
+     * Never blocks on the queue, and still works after shutdown.
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+        if(maxItems == 0) return 0;
+
+        ByteBuffer response = callUninterruptibly(QueueProtocol.DRAIN,
+            Integer.BYTES, out -> out.putInt(maxItems)
+        );
+
+        List<T> items = QueueProtocol.getItems(response, codec);
+        metrics.recordDequeued(items.size());
+        destination.addAll(items);
+
+        return items.size();
+    }
+
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        return take(minItems, maxItems, timeoutNanos(timeout, unit), true);
+    }
+
+    /**
+     * Returns the size of the remote queue
+     */
+    @Override
+    public int size() {
+        return status().getInt();
+    }
+
+    /**
+     * Returns this client's traffic: items it inserted, removed and had
+     * rejected
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns true if the remote queue is active, false once it is closed
+     * or shutdown, or the connection is lost
+     */
+    @Override
+    public boolean isActive() {
+        if(failure != null) return false;
+
+        try {
+            ByteBuffer status = status();
+            status.getInt(); // size
+
+            return status.get() == 1;
+        } catch(UncheckedIOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Shuts down the remote queue, for every client
+     */
+    @Override
+    public void shutdown() {
+        callUninterruptibly(QueueProtocol.SHUTDOWN, 0, out -> {});
+    }
+
+    /**
+     * Closes the remote queue gracefully, for every client
+     */
+    @Override
+    public void closeGracefully() {
+        callUninterruptibly(QueueProtocol.CLOSE, 0, out -> {});
+    }
+
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long nanos = timeoutNanos(timeout, unit);
+        ByteBuffer response = call(QueueProtocol.DRAINED, Long.BYTES,
+            out -> out.putLong(nanos), true
+        );
+
+        if(response == null) throw new InterruptedException();
+
+        return response.get() == 1;
+    }
+
+    /**
+     * Closes the connection; the remote queue is not affected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        writer.interrupt();
+
+        try {
+            reader.join();
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a PUT, and returns the number of items inserted
+     */
+    private int insert(Collection<? extends T> items, long timeoutNanos,
+        boolean interruptible) throws InterruptedException {
+
+        int size = Long.BYTES + QueueProtocol.itemsSize(items, codec);
+        if(size > QueueProtocol.MAX_FRAME_BYTES - QueueProtocol.HEADER_BYTES) {
+            throw new IllegalArgumentException(
+                "Items take more than " + QueueProtocol.MAX_FRAME_BYTES
+                + " bytes"
+            );
+        }
+
+        ByteBuffer response = call(QueueProtocol.PUT, size, out -> {
+            out.putLong(timeoutNanos);
+            QueueProtocol.putItems(out, items, codec);
+        }, interruptible);
+
+        if(response == null) throw new InterruptedException();
+
+        int inserted = response.getInt();
+        if(inserted > 0) metrics.recordEnqueued(inserted, 0);
+        if(inserted < items.size() && timeoutNanos == 0) {
+            metrics.recordRejected();
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Sends a TAKE, and returns the items removed, or null upon shutdown
+     */
+    private List<T> take(int min, int max, long timeoutNanos,
+        boolean interruptible) throws InterruptedException {
+
+        ByteBuffer response = call(QueueProtocol.TAKE,
+            Long.BYTES + 2 * Integer.BYTES, out -> {
+                out.putLong(timeoutNanos);
+                out.putInt(min);
+                out.putInt(max);
+            }, interruptible
+        );
+
+        if(response == null) throw new InterruptedException();
+
+        List<T> items = QueueProtocol.getItems(response, codec);
+        if(items != null) metrics.recordDequeued(items.size());
+
+        return items;
+    }
+
+    private ByteBuffer status() {
+        return callUninterruptibly(QueueProtocol.STATUS, 0, out -> {});
+    }
+
+    private ByteBuffer callUninterruptibly(byte op, int payloadBytes,
+        Consumer<ByteBuffer> payload) {
+
+        try {
+            return call(op, payloadBytes, payload, false);
+        } catch(InterruptedException e) {
+            throw new AssertionError(e); // uninterruptible
+        }
+    }
+
+    /**
+     * Sends a request, and waits for its response payload
+     * If interruptible and interrupted while waiting, cancels the request:
+     * returns null if the server cancelled it, or else its response with
+     * the interrupt status set.
+     */
+    private ByteBuffer call(byte op, int payloadBytes,
+        Consumer<ByteBuffer> payload, boolean interruptible)
+        throws InterruptedException {
+
+        if(interruptible && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        int id = nextId.incrementAndGet();
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        pending.put(id, response);
+
+        ByteBuffer frame = ByteBuffer.allocate(
+            Integer.BYTES + QueueProtocol.HEADER_BYTES + payloadBytes
+        );
+        frame.putInt(0);
+        frame.put(op);
+        frame.putInt(id);
+        payload.accept(frame);
+        frame.putInt(0, frame.position() - Integer.BYTES);
+        frame.flip();
+
+        send(id, frame);
+
+        boolean interrupted = false;
+        boolean cancelling = false;
+        try {
+            while(true) {
+                try {
+                    return unwrap(response.get());
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                    if(!interruptible || cancelling) continue;
+
+                    // cancel, then wait for the request's final answer
+                    cancelling = true;
+                    sendCancel(id);
+                } catch(ExecutionException e) {
+                    throw new UncheckedIOException((IOException) e.getCause());
+                }
+            }
+        } catch(Cancelled e) {
+            interrupted = false; // reported by returning null instead
+            return null;
+        } finally {
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the payload of an OK response
+     * @throws Cancelled for a CANCELLED response
+     */
+    private static ByteBuffer unwrap(ByteBuffer response) {
+        byte status = response.get();
+
+        if(status == QueueProtocol.CANCELLED) throw new Cancelled();
+
+        if(status == QueueProtocol.ERROR) {
+            byte[] message = new byte[response.remaining()];
+            response.get(message);
+            throw new IllegalStateException(
+                new String(message, StandardCharsets.UTF_8)
+            );
+        }
+
+        return response;
+    }
+
+    private void sendCancel(int id) {
+        ByteBuffer frame = ByteBuffer.allocate(
+            Integer.BYTES + QueueProtocol.HEADER_BYTES + Integer.BYTES
+        );
+        frame.putInt(QueueProtocol.HEADER_BYTES + Integer.BYTES);
+        frame.put(QueueProtocol.CANCEL);
+        frame.putInt(nextId.incrementAndGet());
+        frame.putInt(id);
+        frame.flip();
+
+        send(id, frame);
+    }
+
+    /**
+     * Hands a frame to the writer; once the connection is lost, fails
+     * request id instead
+     */
+    private void send(int id, ByteBuffer frame) {
+        outbox.add(frame);
+
+        // checked after id is pending, so either this or the thread that
+        // recorded the failure fails the request
+        IOException cause = failure;
+        if(cause != null) {
+            CompletableFuture<ByteBuffer> response = pending.remove(id);
+            if(response != null) response.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Writer loop: writes the frames queued since its last write in one
+     * gathering write
+     * Only close() interrupts this thread. A failed write closes the
+     * channel, and the reader then fails every pending request.
+     */
+    private void writeRequests() {
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        try {
+            while(true) {
+                frames.add(outbox.take());
+                outbox.drainTo(frames);
+
+                ByteBuffer[] buffers = frames.toArray(new ByteBuffer[0]);
+                while(buffers[buffers.length - 1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                frames.clear();
+            }
+        } catch(InterruptedException e) {
+            // closed
+        } catch(IOException e) {
+            if(failure == null) failure = e;
+
+            try {
+                channel.close();
+            } catch(IOException closing) {
+                // already failed
+            }
+        }
+    }
+
+    /**
+     * Reader loop: completes each request with its response, status first
+     */
+    private void readResponses() {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+
+        try {
+            while(true) {
+                lengthBuffer.clear();
+                readFully(lengthBuffer);
+
+                int length = lengthBuffer.getInt(0);
+                QueueProtocol.checkFrameLength(length);
+
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+
+                byte status = frame.get();
+                int id = frame.getInt();
+
+                // status replaces the last id byte, right before the payload
+                frame.position(frame.position() - 1);
+                ByteBuffer response = frame.slice().put(0, status);
+
+                CompletableFuture<ByteBuffer> waiting = pending.remove(id);
+                if(waiting != null) waiting.complete(response);
+            }
+        } catch(IOException e) {
+            // a failed write closed the channel, and is the real cause
+            if(failure == null) failure = e;
+        } finally {
+            IOException cause = failure != null
+                ? failure
+                : new IOException("Connection closed");
+            failure = cause;
+
+            for(Integer id : pending.keySet()) {
+                CompletableFuture<ByteBuffer> waiting = pending.remove(id);
+                if(waiting != null) waiting.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new EOFException("QueueServer closed the connection");
+            }
+        }
+    }
+
+    private static long timeoutNanos(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(Math.max(0, timeout));
+        return nanos > MAX_TIMEOUT_NANOS ? QueueProtocol.FOREVER : nanos;
+    }
+
+    private static <T> T first(List<T> items) {
+        return items == null || items.isEmpty() ? null : items.get(0);
+    }
+
+    /**
+     * The server answered CANCELLED: the request had no effect
+     */
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+}
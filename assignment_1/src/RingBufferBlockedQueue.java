@@ -0,0 +1,729 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free bounded blocking queue backed by a preallocated ring buffer
+ *
+ * Features:
+ *  - Preallocated power-of-two array, sized to hold at least capacity items
+ *  - Each slot carries a sequence number; producers and consumers claim
+ *    slots with a CAS on the enqueue/dequeue position (Vyukov MPMC)
+ *  - Producer blocks when queue is full.
+ *  - Consumer blocks when queue is empty.
+ *  - Batch operations claim slots back to back, and wake parked threads
+ *    once per batch
+ *  - Timed offer()/poll() and non-blocking tryPut()/tryRemove()
+ *  - closeGracefully() lets consumers drain the queue before they stop;
+ *    a put() racing with it may still insert its item
+ *  - A WaitStrategy choosing whether a full or empty queue makes
+ *    put()/remove() spin, yield or park (BLOCKING by default)
+ *  - QueueMetrics counting traffic, and time spent parked on the slow path
+ *
+ * Thread-safety:
+ * put() and remove() never take a lock while a slot is available.
+ * A lock is only used to park threads when the queue is full or empty,
+ * and the opposite side only signals when a thread is actually parked.
+ */
+public class RingBufferBlockedQueue<T> implements BlockedQueue<T> {
+    // Largest power of two an int-indexed array can hold
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final int capacity;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    // Slow path: only used to park and wake threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    // consumers in removeBatch() wait for more than one item,
+    // so a single signal() could wake a consumer that cannot proceed
+    private final AtomicInteger waitingBatchConsumers = new AtomicInteger();
+    private final Condition drained = lock.newCondition();
+    private final AtomicInteger waitingDrainers = new AtomicInteger();
+
+    private volatile boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private volatile boolean draining;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    // spin and yield phases run before a thread parks on the lock
+    private final SpinWaiter putWaiter;
+    private final SpinWaiter removeWaiter;
+
+    /**
+     * Creates a ring buffer queue with given capacity
+     * @throws IllegalArgumentException when capacity <= 0 or capacity > 2^30
+     */
+    public RingBufferBlockedQueue(int capacity) {
+        this(capacity, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Creates a ring buffer queue with given capacity, waiting for space
+     * or data as waitStrategy dictates
+     * @throws IllegalArgumentException when capacity <= 0 or capacity > 2^30,
+     *         or waitStrategy is null
+     */
+    public RingBufferBlockedQueue(int capacity, WaitStrategy waitStrategy) {
+        if(capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                "RingBufferBlockedQueue capacity must be between 1 and "
+                + MAX_CAPACITY
+            );
+        }
+
+        int slots = ceilingPowerOfTwo(capacity);
+
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        buffer = new Object[slots];
+        sequences = new AtomicLongArray(slots);
+
+        // Slot i is free for the producer claiming position i
+        for(int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+
+        putWaiter = new SpinWaiter(waitStrategy, metrics);
+        removeWaiter = new SpinWaiter(waitStrategy, metrics);
+
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into the queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        checkNotNull(data);
+
+        if(!isRunning) return;
+
+        if(!tryEnqueue(data)) {
+            if(!awaitEnqueue(data, false, 0)) return;
+        }
+
+        signalConsumers(1);
+    }
+
+    /**
+     * Removes data from the queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+
+        if(data == null) {
+            data = awaitDequeue(false, 0);
+            if(data == null) return null;
+        }
+
+        signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryEnqueue(data)) {
+            long nanos = unit.toNanos(timeout);
+
+            if(nanos <= 0 || !awaitEnqueue(data, true, nanos)) {
+                if(isRunning) metrics.recordRejected();
+                return false;
+            }
+        }
+
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+
+        if(data == null) {
+            long nanos = unit.toNanos(timeout);
+            if(nanos <= 0) return null;
+
+            data = awaitDequeue(true, nanos);
+            if(data == null) return null;
+        }
+
+        signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    @Override
+    public boolean tryPut(T data) {
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryEnqueue(data)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+        if(data != null) signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        int inserted = 0;
+        int unsignalled = 0;
+
+        try {
+            for(T item : data) {
+                checkNotNull(item);
+
+                if(!isRunning) break;
+
+                if(!tryEnqueue(item)) {
+                    // wake consumers for the items inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+
+                    if(!awaitEnqueue(item, false, 0)) break;
+                }
+
+                inserted++;
+                unsignalled++;
+            }
+        } finally {
+            signalConsumers(unsignalled);
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        int removed = dequeueAvailable(destination, maxItems);
+        signalProducers(removed);
+
+        return removed;
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items (at most capacity) have been removed,
+     * the timeout elapses, or the queue is shutdown.
+     * Returns null upon shutdown if no data was removed.
+     *
+     * Items are claimed as they are published, so an interrupt while
+     * waiting returns the items claimed so far with the interrupt
+     * status set, rather than losing them.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        if(!isRunning && !draining) return null;
+
+        int required = Math.min(minItems, capacity);
+        long remaining = unit.toNanos(timeout);
+        List<T> batch = new ArrayList<>();
+
+        signalProducers(dequeueAvailable(batch, maxItems));
+
+        if(batch.size() < required && remaining > 0) {
+            long waitStart = System.nanoTime();
+
+            lock.lock();
+            waitingConsumers.incrementAndGet();
+            waitingBatchConsumers.incrementAndGet();
+
+            try {
+                while(true) {
+                    int removed =
+                        dequeueAvailable(batch, maxItems - batch.size());
+                    signalProducers(removed);
+
+                    if(batch.size() >= required
+                        || !isRunning
+                        || remaining <= 0) {
+
+                        break;
+                    }
+
+                    // wait till queue has more data, or the timeout elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } catch(InterruptedException e) {
+                if(batch.isEmpty()) throw e;
+
+                Thread.currentThread().interrupt();
+            } finally {
+                waitingBatchConsumers.decrementAndGet();
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+        }
+
+        if(batch.isEmpty() && !isRunning) return null;
+
+        return batch;
+    }
+
+    /**
+     * Returns the size of the queue
+     * The value is a snapshot, and may be stale under concurrent access.
+     */
+    @Override
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * Returns how put() and remove() wait on a full or empty queue
+     */
+    public WaitStrategy waitStrategy() {
+        return putWaiter.strategy();
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        return isRunning;
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads to exit gracefully
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items, then get null.
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            // set before isRunning, so consumers never see neither flag
+            draining = true;
+            isRunning = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        if(size() == 0) return true;
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so a consumer taking the last item
+        // either sees this thread waiting or this thread sees the queue empty
+        waitingDrainers.incrementAndGet();
+
+        try {
+            while((isRunning || draining) && size() > 0 && remaining > 0) {
+                // wait till consumers empty the queue, or the timeout elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return size() == 0;
+        } finally {
+            waitingDrainers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims the next free slot and publishes data into it
+     * Returns false if the queue is full.
+     */
+    private boolean tryEnqueue(T data) {
+        long position = enqueuePosition.get();
+
+        while(true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if(difference == 0) {
+                // The ring may hold more slots than the requested capacity
+                if(position - dequeuePosition.get() >= capacity) {
+                    return false;
+                }
+
+                if(enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer[index] = data;
+                    // Publishing the sequence makes data visible to consumers
+                    sequences.set(index, position + 1);
+                    metrics.recordEnqueued(1,
+                        position + 1 - dequeuePosition.get()
+                    );
+                    return true;
+                }
+
+                position = enqueuePosition.get();
+            } else if(difference < 0) {
+                // Slot still holds data from the previous lap
+                return false;
+            } else {
+                // Another producer claimed this position
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Claims the next published slot and takes data from it
+     * Returns null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    private T tryDequeue() {
+        long position = dequeuePosition.get();
+
+        while(true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if(difference == 0) {
+                if(dequeuePosition.compareAndSet(position, position + 1)) {
+                    T data = (T) buffer[index];
+                    buffer[index] = null;
+                    // Free the slot for the producer on the next lap
+                    sequences.set(index, position + mask + 1);
+                    metrics.recordDequeued(1);
+                    signalDrained();
+                    return data;
+                }
+
+                position = dequeuePosition.get();
+            } else if(difference < 0) {
+                // Slot not yet published
+                return null;
+            } else {
+                // Another consumer claimed this position
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Spins, yields or parks the producer, as the wait strategy dictates,
+     * until data is inserted, the queue is shutdown, or, if timed, nanos
+     * elapse
+     * Returns true if data was inserted.
+     */
+    private boolean awaitEnqueue(T data, boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        for(int attempt = 1; putWaiter.idle(attempt); attempt++) {
+            if(tryEnqueue(data)) {
+                putWaiter.satisfied(attempt);
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+                return true;
+            }
+
+            if(Thread.interrupted()) throw new InterruptedException();
+
+            if(!isRunning || timed && System.nanoTime() - waitStart >= nanos) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+                return false;
+            }
+        }
+
+        if(timed) nanos -= System.nanoTime() - waitStart;
+        putWaiter.parked();
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so a consumer freeing a slot
+        // either sees this producer waiting or the producer sees the slot
+        waitingProducers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                if(tryEnqueue(data)) return true;
+
+                if(!timed) {
+                    notFull.await(); // wait till queue has some space
+                } else if(nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+
+            return false;
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+            metrics.recordPutWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Spins, yields or parks the consumer, as the wait strategy dictates,
+     * until data is available, the queue is shutdown, or, if timed, nanos
+     * elapse
+     * Returns null upon shutdown or timeout.
+     */
+    private T awaitDequeue(boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        for(int attempt = 1; removeWaiter.idle(attempt); attempt++) {
+            T data = tryDequeue();
+
+            if(data != null) {
+                removeWaiter.satisfied(attempt);
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                return data;
+            }
+
+            if(Thread.interrupted()) throw new InterruptedException();
+
+            if(!isRunning || timed && System.nanoTime() - waitStart >= nanos) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                return isRunning ? null : dequeueRemaining();
+            }
+        }
+
+        if(timed) nanos -= System.nanoTime() - waitStart;
+        removeWaiter.parked();
+
+        lock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                T data = tryDequeue();
+                if(data != null) return data;
+
+                if(!timed) {
+                    notEmpty.await(); // wait till queue has some data
+                } else if(nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } else {
+                    return null;
+                }
+            }
+
+            return dequeueRemaining();
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+            metrics.recordRemoveWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Takes an item published before closeGracefully(), once the queue
+     * stopped running
+     * Returns null upon shutdown, or once the queue is empty.
+     */
+    private T dequeueRemaining() {
+        return draining ? tryDequeue() : null;
+    }
+
+    /**
+     * Wakes threads in awaitDrained() once the queue is empty
+     * Takes the lock only if a thread is waiting.
+     */
+    private void signalDrained() {
+        if(waitingDrainers.get() == 0 || size() > 0) return;
+
+        lock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims up to maxItems published slots into destination
+     */
+    private int dequeueAvailable(Collection<? super T> destination,
+        int maxItems) {
+
+        int removed = 0;
+
+        while(removed < maxItems) {
+            T data = tryDequeue();
+            if(data == null) break;
+
+            destination.add(data);
+            removed++;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Wakes parked consumers for newly inserted items
+     * Takes the lock only if a consumer is parked.
+     */
+    private void signalConsumers(int items) {
+        if(items == 0 || waitingConsumers.get() == 0) return;
+
+        boolean wakeAll = items > 1 || waitingBatchConsumers.get() > 0;
+
+        lock.lock();
+        try {
+            if(wakeAll) {
+                notEmpty.signalAll();
+            } else {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes parked producers for newly freed slots
+     * Takes the lock only if a producer is parked.
+     */
+    private void signalProducers(int slots) {
+        if(slots == 0 || waitingProducers.get() == 0) return;
+
+        lock.lock();
+        try {
+            if(slots > 1) {
+                notFull.signalAll();
+            } else {
+                notFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkNotNull(Object data) {
+        if(data == null) {
+            throw new NullPointerException(
+                "RingBufferBlockedQueue does not accept null data"
+            );
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Forwards a random sample of item events to another listener
+ *
+ * Features:
+ *  - Forwards about one in every sampleRate item events
+ *  - Always forwards stop and interrupt events, so lifecycle is never lost
+ *  - Samples with ThreadLocalRandom, so threads never share a counter
+ *
+ * Thread-safety:
+ * Safe to share between threads if the delegate is.
+ */
+public class SampledEventListener implements QueueEventListener {
+    private final QueueEventListener delegate;
+    private final int sampleRate;
+
+    /**
+     * Creates a listener forwarding about 1 in sampleRate item events
+     * @throws IllegalArgumentException when sampleRate < 1
+     */
+    public SampledEventListener(QueueEventListener delegate, int sampleRate) {
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException(
+                "Sample rate must be at least 1"
+            );
+        }
+
+        this.delegate = Objects.requireNonNull(delegate);
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void onEvent(QueueEvent event, String threadName, Object payload) {
+        if(event.isTerminal()
+            || sampleRate == 1
+            || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+
+            delegate.onEvent(event, threadName, payload);
+        }
+    }
+}
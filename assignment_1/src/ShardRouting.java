@@ -0,0 +1,26 @@
+/**
+ * Chooses the shard of a ShardedBlockedQueue that put() inserts into
+ */
+public enum ShardRouting {
+    /**
+     * Each producer thread cycles through the shards, starting from its
+     * own home shard, and spills into the next shard when one is full
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Items go to the shard chosen by their hashCode(), so equal items
+     * always share a shard and keep their relative order; a full shard
+     * blocks the producer instead of spilling
+     */
+    HASH;
+
+    /**
+     * Returns the routing with the given name, ignoring case,
+     * with '-' accepted in place of '_'
+     * @throws IllegalArgumentException when no routing matches
+     */
+    public static ShardRouting fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,811 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue split into independently locked shards
+ *
+ * Features:
+ *  - capacity is split across N shards, each with its own lock, so
+ *    producers and consumers on different shards never contend
+ *  - Every thread gets a home shard, assigned round-robin on first use
+ *  - put() routes items by ShardRouting: ROUND_ROBIN cycles through the
+ *    shards and spills past full ones, HASH uses the item's hashCode()
+ *  - remove() tries the home shard first, then steals from the siblings,
+ *    so an idle consumer never waits while any shard holds data
+ *  - Batch operations, timed offer()/poll() and non-blocking
+ *    tryPut()/tryRemove(), with the same contract as every BlockedQueue
+ *  - closeGracefully() lets consumers drain every shard before they stop;
+ *    a put() racing with it may still insert its item
+ *  - QueueMetrics counting traffic, and time spent parked on the slow path.
+ *    Summing every shard on each put would touch all their cache lines,
+ *    so the high-water mark samples the queue's size every
+ *    DEPTH_SAMPLE_PUTS puts of a thread, and whenever a put fills its
+ *    shard; shardHighWaterMark() is exact per shard
+ *
+ * Items leave each shard in insertion order, but there is no order
+ * across shards.
+ *
+ * Thread-safety:
+ * Each shard is guarded by its own lock. shutdown() is global: it stops
+ * every shard at once, and buffered items stay in the shards, where
+ * drainTo() can still recover them.
+ * A global lock is only used to park threads when no shard has data or
+ * space, and the opposite side only signals when a thread is parked.
+ */
+public class ShardedBlockedQueue<T> implements BlockedQueue<T> {
+    // puts of a thread between samples of the queue-wide depth; power of 2
+    static final int DEPTH_SAMPLE_PUTS = 64;
+
+    private final Shard[] shards;
+    private final int capacity;
+    private final ShardRouting routing;
+
+    // home shard, round-robin cursor and put count of each thread
+    private final AtomicInteger nextHome = new AtomicInteger();
+    private final ThreadLocal<int[]> threadState =
+        ThreadLocal.withInitial(this::newThreadState);
+
+    // Slow path: only used to park and wake threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingBatchConsumers = new AtomicInteger();
+
+    private final Condition drained = lock.newCondition();
+    private final AtomicInteger waitingDrainers = new AtomicInteger();
+
+    private final LongAdder stolen = new LongAdder();
+
+    private volatile boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private volatile boolean draining;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    /**
+     * Creates a sharded queue with given capacity, with one shard per
+     * available processor (at most capacity shards), routed round-robin
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public ShardedBlockedQueue(int capacity) {
+        this(capacity,
+            Math.max(1, Math.min(capacity,
+                Runtime.getRuntime().availableProcessors()
+            )),
+            ShardRouting.ROUND_ROBIN
+        );
+    }
+
+    /**
+     * Creates a sharded queue with given capacity, split across shardCount
+     * shards as evenly as possible
+     * @throws IllegalArgumentException when shardCount <= 0,
+     *         capacity < shardCount, or routing is null
+     */
+    public ShardedBlockedQueue(int capacity, int shardCount,
+        ShardRouting routing) {
+
+        if(shardCount <= 0) {
+            throw new IllegalArgumentException(
+                "ShardedBlockedQueue shard count must be positive"
+            );
+        }
+
+        if(capacity < shardCount) {
+            throw new IllegalArgumentException(
+                "ShardedBlockedQueue capacity must be at least the shard count"
+            );
+        }
+
+        if(routing == null) {
+            throw new IllegalArgumentException(
+                "ShardedBlockedQueue routing must not be null"
+            );
+        }
+
+        this.capacity = capacity;
+        this.routing = routing;
+        shards = new Shard[shardCount];
+
+        for(int i = 0; i < shardCount; i++) {
+            int shardCapacity = capacity / shardCount
+                + (i < capacity % shardCount ? 1 : 0);
+
+            shards[i] = new Shard(shardCapacity);
+        }
+
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into the queue
+     * Blocks if every shard data may go to is full, and if the queue is
+     * active.
+     * Returns upon shutdown without insertion.
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        checkNotNull(data);
+
+        if(!isRunning) return;
+
+        if(!tryInsert(data)) {
+            if(!awaitInsert(data, false, 0)) return;
+        }
+
+        signalConsumers(1);
+    }
+
+    /**
+     * Removes data from the queue
+     * Blocks if every shard is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryExtract();
+
+        if(data == null) {
+            data = awaitExtract(false, 0);
+            if(data == null) return null;
+        }
+
+        signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryInsert(data)) {
+            long nanos = unit.toNanos(timeout);
+
+            if(nanos <= 0 || !awaitInsert(data, true, nanos)) {
+                if(isRunning) metrics.recordRejected();
+                return false;
+            }
+        }
+
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryExtract();
+
+        if(data == null) {
+            long nanos = unit.toNanos(timeout);
+            if(nanos <= 0) return null;
+
+            data = awaitExtract(true, nanos);
+            if(data == null) return null;
+        }
+
+        signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    @Override
+    public boolean tryPut(T data) {
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryInsert(data)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        signalConsumers(1);
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        if(!isRunning && !draining) return null;
+
+        T data = tryExtract();
+        if(data != null) signalProducers(1);
+
+        return data;
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        int inserted = 0;
+        int unsignalled = 0;
+
+        try {
+            for(T item : data) {
+                checkNotNull(item);
+
+                if(!isRunning) break;
+
+                if(!tryInsert(item)) {
+                    // wake consumers for the items inserted so far
+                    signalConsumers(unsignalled);
+                    unsignalled = 0;
+
+                    if(!awaitInsert(item, false, 0)) break;
+                }
+
+                inserted++;
+                unsignalled++;
+            }
+        } finally {
+            signalConsumers(unsignalled);
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, starting
+     * with the caller's home shard
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        int removed = extractAvailable(destination, maxItems);
+        signalProducers(removed);
+
+        return removed;
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items (at most capacity) have been removed,
+     * the timeout elapses, or the queue is shutdown.
+     * Returns null upon shutdown if no data was removed.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        if(!isRunning && !draining) return null;
+
+        int required = Math.min(minItems, capacity);
+        long remaining = unit.toNanos(timeout);
+        List<T> batch = new ArrayList<>();
+
+        signalProducers(extractAvailable(batch, maxItems));
+
+        if(batch.size() < required && remaining > 0) {
+            long waitStart = System.nanoTime();
+
+            lock.lock();
+            waitingConsumers.incrementAndGet();
+            waitingBatchConsumers.incrementAndGet();
+
+            try {
+                while(true) {
+                    int removed =
+                        extractAvailable(batch, maxItems - batch.size());
+                    signalProducers(removed);
+
+                    if(batch.size() >= required
+                        || !isRunning
+                        || remaining <= 0) {
+
+                        break;
+                    }
+
+                    // wait till some shard has more data, or the timeout elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } catch(InterruptedException e) {
+                if(batch.isEmpty()) throw e;
+
+                Thread.currentThread().interrupt();
+            } finally {
+                waitingBatchConsumers.decrementAndGet();
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+        }
+
+        if(batch.isEmpty() && !isRunning) return null;
+
+        return batch;
+    }
+
+    /**
+     * Returns the size of the queue, summed over every shard
+     * The value is a snapshot, and may be stale under concurrent access.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+
+        for(Shard shard : shards) {
+            size += shard.count;
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the number of shards
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the number of items in the given shard
+     * @throws IndexOutOfBoundsException when shard is not a valid index
+     */
+    public int shardSize(int shard) {
+        return shards[shard].count;
+    }
+
+    /**
+     * Returns the most items the given shard has held
+     * @throws IndexOutOfBoundsException when shard is not a valid index
+     */
+    public int shardHighWaterMark(int shard) {
+        return shards[shard].peak;
+    }
+
+    /**
+     * Returns the number of items consumers took from a shard other than
+     * their home shard
+     */
+    public long stolenCount() {
+        return stolen.sum();
+    }
+
+    /**
+     * Returns the routing used by put()
+     */
+    public ShardRouting routing() {
+        return routing;
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        return isRunning;
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down every shard at once
+     * Wakes all waiting threads to exit gracefully
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes every shard at once, without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items from any shard, then get null.
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            // set before isRunning, so consumers never see neither flag
+            draining = true;
+            isRunning = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every shard is empty
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        if(size() == 0) return true;
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so a consumer taking the last item
+        // either sees this thread waiting or this thread sees the queue empty
+        waitingDrainers.incrementAndGet();
+
+        try {
+            while((isRunning || draining) && size() > 0 && remaining > 0) {
+                // wait till consumers empty every shard, or the timeout
+                // elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return size() == 0;
+        } finally {
+            waitingDrainers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts data into the shard chosen by the routing
+     * Returns false if that shard (HASH), or every shard (ROUND_ROBIN),
+     * is full.
+     */
+    private boolean tryInsert(T data) {
+        if(routing == ShardRouting.HASH) {
+            int hash = data.hashCode();
+            hash ^= hash >>> 16;
+
+            return insertInto(Math.floorMod(hash, shards.length), data);
+        }
+
+        int[] state = threadState.get();
+        int start = state[1];
+
+        for(int i = 0; i < shards.length; i++) {
+            int index = (start + i) % shards.length;
+
+            if(insertInto(index, data)) {
+                state[1] = (index + 1) % shards.length;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean insertInto(int index, T data) {
+        Shard shard = shards[index];
+        int depth = shard.offer(data);
+        if(depth == 0) return false;
+
+        int[] state = threadState.get();
+        boolean sample = (state[2]++ & (DEPTH_SAMPLE_PUTS - 1)) == 0
+            || depth == shard.capacity;
+
+        metrics.recordEnqueued(1, sample ? size() : 0);
+        return true;
+    }
+
+    /**
+     * Takes data from the home shard, or else steals from a sibling
+     * Returns null if every shard is empty.
+     */
+    @SuppressWarnings("unchecked")
+    private T tryExtract() {
+        int home = threadState.get()[0];
+
+        for(int i = 0; i < shards.length; i++) {
+            Object data = shards[(home + i) % shards.length].poll();
+
+            if(data != null) {
+                if(i > 0) stolen.increment();
+                metrics.recordDequeued(1);
+                signalDrained();
+                return (T) data;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Drains up to maxItems items into destination, home shard first
+     */
+    private int extractAvailable(Collection<? super T> destination,
+        int maxItems) {
+
+        int home = threadState.get()[0];
+        int removed = 0;
+
+        for(int i = 0; i < shards.length && removed < maxItems; i++) {
+            int moved = shards[(home + i) % shards.length]
+                .drainTo(destination, maxItems - removed);
+
+            if(i > 0) stolen.add(moved);
+            removed += moved;
+        }
+
+        if(removed > 0) {
+            metrics.recordDequeued(removed);
+            signalDrained();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Parks the producer until data is inserted, the queue is shutdown,
+     * or, if timed, nanos elapse
+     * Returns true if data was inserted.
+     */
+    private boolean awaitInsert(T data, boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so a consumer freeing a slot
+        // either sees this producer waiting or the producer sees the slot
+        waitingProducers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                if(tryInsert(data)) return true;
+
+                if(!timed) {
+                    notFull.await(); // wait till some shard has space
+                } else if(nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+
+            return false;
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+            metrics.recordPutWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Parks the consumer until data is available, the queue is shutdown,
+     * or, if timed, nanos elapse
+     * Returns null upon shutdown or timeout.
+     */
+    private T awaitExtract(boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        lock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                T data = tryExtract();
+                if(data != null) return data;
+
+                if(!timed) {
+                    notEmpty.await(); // wait till some shard has data
+                } else if(nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } else {
+                    return null;
+                }
+            }
+
+            // once closed gracefully, take what is left in any shard
+            return draining ? tryExtract() : null;
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+            metrics.recordRemoveWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Wakes threads in awaitDrained() once every shard is empty
+     * Takes the lock only if a thread is waiting.
+     */
+    private void signalDrained() {
+        if(waitingDrainers.get() == 0 || size() > 0) return;
+
+        lock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes parked consumers for newly inserted items
+     * Takes the lock only if a consumer is parked.
+     */
+    private void signalConsumers(int items) {
+        if(items == 0 || waitingConsumers.get() == 0) return;
+
+        boolean wakeAll = items > 1 || waitingBatchConsumers.get() > 0;
+
+        lock.lock();
+        try {
+            if(wakeAll) {
+                notEmpty.signalAll();
+            } else {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes parked producers for newly freed slots
+     * Takes the lock only if a producer is parked.
+     *
+     * With HASH routing every parked producer is woken, since the freed
+     * slot may be in a shard that only some of them route to.
+     */
+    private void signalProducers(int slots) {
+        if(slots == 0 || waitingProducers.get() == 0) return;
+
+        lock.lock();
+        try {
+            if(slots > 1 || routing == ShardRouting.HASH) {
+                notFull.signalAll();
+            } else {
+                notFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int[] newThreadState() {
+        int home = Math.floorMod(nextHome.getAndIncrement(), shards.length);
+
+        return new int[] {home, home, 0};
+    }
+
+    private static void checkNotNull(Object data) {
+        if(data == null) {
+            throw new NullPointerException(
+                "ShardedBlockedQueue does not accept null data"
+            );
+        }
+    }
+
+    /**
+     * One bounded FIFO with its own lock
+     */
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Object> items;
+        private final int capacity;
+
+        // read without the lock by size() and the empty/full fast paths
+        private volatile int count;
+        // most items held; written under the lock
+        private volatile int peak;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+            items = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Returns the shard's size after inserting data, or 0 when full
+         */
+        int offer(Object data) {
+            if(count >= capacity) return 0;
+
+            lock.lock();
+            try {
+                if(count >= capacity) return 0;
+
+                items.offer(data);
+                int size = ++count;
+                if(size > peak) peak = size;
+
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Object poll() {
+            if(count == 0) return null;
+
+            lock.lock();
+            try {
+                Object data = items.poll();
+                if(data != null) count--;
+
+                return data;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> int drainTo(Collection<? super T> destination, int maxItems) {
+            if(count == 0 || maxItems <= 0) return 0;
+
+            lock.lock();
+            try {
+                int removed = 0;
+
+                while(removed < maxItems && !items.isEmpty()) {
+                    destination.add((T) items.poll());
+                    removed++;
+                }
+
+                count -= removed;
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,5 +1,11 @@
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 /**
  * Thread-safe blocking queue implementation using wait/notifyAll
@@ -8,28 +14,99 @@ import java.util.Queue;
  *  - Uses a queue internally
  *  - Producer blocks when queue is full.
  *  - Consumer blocks when queue is empty.
+ *  - Batch operations move many items per lock acquisition
+ *  - Timed offer()/poll() and non-blocking tryPut()/tryRemove()
+ *  - closeGracefully() lets consumers drain the queue before they stop
+ *  - QueueMetrics counting traffic and time spent blocked
+ *  - Optional ItemTracer sampling how long items stay in the queue
+ *  - setCapacity() resizes the bound at runtime
+ *  - Optional weight budget: a weigher gives each item a weight (e.g. its
+ *    size in bytes), and producers block while the queued items would
+ *    weigh more than maxWeight
+ *  - Storage grows as items arrive, and is released once the queue
+ *    empties after a burst, so a large, idle queue pins little memory
  *
  * Thread-safety:
  * synchronized public methods to allow mutual exclusive access to the queue
  */
-public class SimpleBlockedQueue<T> {
-    private final Queue<T> blockedQueue;
-    private final int capacity;
+public class SimpleBlockedQueue<T> implements BlockedQueue<T> {
+    // initial storage, and the most storage an empty queue keeps
+    private static final int INITIAL_STORAGE = 16;
+    private static final int TRIM_THRESHOLD = 1024;
+
+    private Queue<T> blockedQueue;
+    // most items queued since storage was last allocated
+    private int peakSize;
+    private int capacity;
+    // weight of an item; null unless bounded by weight
+    private final ToLongFunction<? super T> weigher;
+    private long maxWeight;
+    private long weight;
+    // weights of the items parked producers wait to insert, lightest first
+    private final Queue<Long> parkedWeights = new PriorityQueue<>();
     private boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private boolean draining;
+    private final QueueMetrics metrics = new QueueMetrics();
+    // insertion times of the queued items; null unless traced
+    private final ItemTracer.Stamps stamps;
 
     /**
      * Creates a blocking queue with given capacity
      * @throws IllegalArgumentException when capacity <= 0
      */
     public SimpleBlockedQueue(int capacity) {
-        if(capacity <= 0) {
-            throw new IllegalArgumentException(
-                "SimpleBlockedQueue capacity must be greater than 0"
-            );
-        }
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a blocking queue with given capacity, recording how long
+     * items stay in it into tracer (none if null)
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public SimpleBlockedQueue(int capacity, ItemTracer tracer) {
+        this(null, capacity, Long.MAX_VALUE, tracer);
+    }
+
+    /**
+     * Creates a blocking queue holding at most capacity items, weighing
+     * at most maxWeight in total
+     * An item heavier than maxWeight is only accepted into an empty queue.
+     * The weigher is called under the queue's monitor, so it should be
+     * cheap, and must return the same weight for an item while queued.
+     *
+     * @throws IllegalArgumentException when capacity <= 0, maxWeight <= 0,
+     * or weigher is null
+     */
+    public SimpleBlockedQueue(int capacity, long maxWeight,
+        ToLongFunction<? super T> weigher) {
+
+        this(capacity, maxWeight, weigher, null);
+    }
+
+    /**
+     * Creates a weight-bounded blocking queue, recording how long items
+     * stay in it into tracer (none if null)
+     * @throws IllegalArgumentException when capacity <= 0, maxWeight <= 0,
+     * or weigher is null
+     */
+    public SimpleBlockedQueue(int capacity, long maxWeight,
+        ToLongFunction<? super T> weigher, ItemTracer tracer) {
+
+        this(requireWeigher(weigher), capacity, maxWeight, tracer);
+    }
+
+    private SimpleBlockedQueue(ToLongFunction<? super T> weigher,
+        int capacity, long maxWeight, ItemTracer tracer) {
+
+        checkCapacity(capacity);
+        checkMaxWeight(maxWeight);
 
         this.capacity = capacity;
-        blockedQueue = new ArrayDeque<>(this.capacity);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        blockedQueue = new ArrayDeque<>(Math.min(capacity, INITIAL_STORAGE));
+        stamps = tracer == null ? null : tracer.newStamps(capacity);
         isRunning = true;
     }
 
@@ -38,17 +115,15 @@ public class SimpleBlockedQueue<T> {
      * Blocks if the queue is full, and if the queue is active.
      * Returns upon shutdown without insertion.
      */
+    @Override
     public synchronized void put(T data) throws InterruptedException {
-        while(isRunning
-            && this.capacity == blockedQueue.size()) {
+        long itemWeight = weigh(data);
 
-            wait(); // wait till queue has some space
-        }
+        awaitRoom(itemWeight, Long.MAX_VALUE);
 
         if(!isRunning) return;
 
-        blockedQueue.offer(data);
-        notifyAll();
+        insert(data, itemWeight);
     }
 
     /**
@@ -56,24 +131,186 @@ public class SimpleBlockedQueue<T> {
      * Blocks if the queue is empty, and if the queue is active.
      * Returns null upon shutdown without removal.
      */
+    @Override
     public synchronized T remove() throws InterruptedException {
+        long waitStart = 0;
+
         while(isRunning
             && blockedQueue.isEmpty()) {
 
+            if(waitStart == 0) waitStart = System.nanoTime();
             wait(); // wait till queue has some data
         }
 
-        if(!isRunning) return null;
+        if(waitStart != 0) {
+            metrics.recordRemoveWait(System.nanoTime() - waitStart);
+        }
 
-        T data = blockedQueue.poll();
-        notifyAll();
+        if(!canRemove()) return null;
 
-        return data;
+        return extract();
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public synchronized boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long itemWeight = weigh(data);
+
+        awaitRoom(itemWeight, Math.max(0, unit.toNanos(timeout)));
+
+        return tryInsert(data, itemWeight);
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public synchronized T poll(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long start = System.nanoTime();
+        long remaining = unit.toNanos(timeout);
+        long deadline = start + remaining;
+        boolean waited = false;
+
+        while(isRunning
+            && blockedQueue.isEmpty()
+            && remaining > 0) {
+
+            // wait till queue has some data, or the timeout elapses
+            waited = true;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+
+        if(waited) metrics.recordRemoveWait(System.nanoTime() - start);
+
+        return tryRemove();
+    }
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    @Override
+    public synchronized boolean tryPut(T data) {
+        return tryInsert(data, weigh(data));
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public synchronized T tryRemove() {
+        if(!canRemove()) return null;
+
+        return extract();
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public synchronized int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        int inserted = 0;
+
+        for(T item : data) {
+            long itemWeight = weigh(item);
+
+            // also wakes consumers for the items inserted so far
+            awaitRoom(itemWeight, Long.MAX_VALUE);
+
+            if(!isRunning) break;
+
+            add(item, itemWeight);
+            inserted++;
+        }
+
+        if(inserted > 0) notifyAll();
+
+        return inserted;
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public synchronized int drainTo(Collection<? super T> destination,
+        int maxItems) {
+
+        BatchArguments.checkMaxItems(maxItems);
+
+        int removed = drainItems(destination, maxItems);
+        if(removed > 0) notifyAll();
+
+        return removed;
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items are available (at most capacity), the
+     * queue is too full for a blocked producer's item, the timeout
+     * elapses, or the queue is shutdown.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public synchronized List<T> removeBatch(int minItems, int maxItems,
+        long timeout, TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        long start = System.nanoTime();
+        long remaining = unit.toNanos(timeout);
+        long deadline = start + remaining;
+        boolean waited = false;
+
+        // capacity may change while waiting, and a weight budget may fit
+        // fewer than minItems items
+        while(isRunning
+            && blockedQueue.size() < Math.min(minItems, this.capacity)
+            && !isFullForProducers()
+            && remaining > 0) {
+
+            // wait till queue has enough data, or the timeout elapses
+            waited = true;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+
+        if(waited) metrics.recordRemoveWait(System.nanoTime() - start);
+
+        if(!isRunning && !canRemove()) return null;
+
+        List<T> batch =
+            new ArrayList<>(Math.min(maxItems, blockedQueue.size()));
+
+        if(drainItems(batch, maxItems) > 0) notifyAll();
+
+        return batch;
     }
 
     /**
      * Returns the size of the queue
      */
+    @Override
     public synchronized int size() {
         return blockedQueue.size();
     }
@@ -81,16 +318,328 @@ public class SimpleBlockedQueue<T> {
     /**
      * Returns true if the queue is active, false otherwise
      */
+    @Override
     public synchronized boolean isActive() {
         return isRunning;
     }
 
+    /**
+     * Returns the queue's traffic and blocking metrics
+     * Reading them never takes the queue's monitor.
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the most items the queue holds
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the most items the queue holds
+     * Growing wakes blocked producers. Shrinking below the current size
+     * keeps every queued item; producers block until consumers bring the
+     * size under the new capacity.
+     *
+     * @throws IllegalArgumentException when capacity <= 0
+     */
+    public synchronized void setCapacity(int capacity) {
+        checkCapacity(capacity);
+
+        this.capacity = capacity;
+        notifyAll();
+    }
+
+    /**
+     * Returns the most the queued items may weigh, Long.MAX_VALUE if the
+     * queue is not bounded by weight
+     */
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Changes the most the queued items may weigh
+     * Like setCapacity(), shrinking keeps every queued item.
+     *
+     * @throws IllegalArgumentException when maxWeight <= 0
+     * @throws IllegalStateException when the queue has no weigher
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        checkMaxWeight(maxWeight);
+
+        if(weigher == null) {
+            throw new IllegalStateException(
+                "SimpleBlockedQueue was created without a weigher"
+            );
+        }
+
+        this.maxWeight = maxWeight;
+        notifyAll();
+    }
+
+    /**
+     * Returns the total weight of the queued items, 0 if the queue is not
+     * bounded by weight
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
     /**
      * Shuts down the queue
      * Wakes all waiting threads to exit gracefully
      */
+    @Override
     public synchronized void shutdown() {
         isRunning = false;
+        draining = false;
+        notifyAll();
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: producers return, consumers take the
+     * remaining items, then get null.
+     */
+    @Override
+    public synchronized void closeGracefully() {
+        if(!isRunning) return;
+
+        isRunning = false;
+        draining = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty.
+     */
+    @Override
+    public synchronized boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+
+        while((isRunning || draining)
+            && !blockedQueue.isEmpty()
+            && remaining > 0) {
+
+            // wait till consumers empty the queue, or the timeout elapses
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+
+        return blockedQueue.isEmpty();
+    }
+
+    /**
+     * Returns true if the queue has data and is active, or closed
+     * gracefully
+     * Caller must hold the monitor.
+     */
+    private boolean canRemove() {
+        return (isRunning || draining) && !blockedQueue.isEmpty();
+    }
+
+    /**
+     * Returns true if an item of itemWeight fits: the queue is below
+     * capacity, and below maxWeight unless it is empty
+     * Caller must hold the monitor.
+     */
+    private boolean hasRoom(long itemWeight) {
+        if(blockedQueue.size() >= this.capacity) return false;
+
+        return weigher == null
+            || blockedQueue.isEmpty()
+            || itemWeight <= maxWeight - weight;
+    }
+
+    /**
+     * Returns true if a parked producer's item does not fit, so no more
+     * items arrive until some are removed
+     * Caller must hold the monitor.
+     */
+    private boolean isFullForProducers() {
+        Long lightest = parkedWeights.peek();
+
+        return lightest != null && !hasRoom(lightest);
+    }
+
+    /**
+     * Waits until an item of itemWeight fits, the queue is shutdown, or
+     * timeoutNanos elapse (Long.MAX_VALUE waits indefinitely)
+     * Caller must hold the monitor.
+     */
+    private void awaitRoom(long itemWeight, long timeoutNanos)
+        throws InterruptedException {
+
+        if(!isRunning || hasRoom(itemWeight) || timeoutNanos <= 0) return;
+
+        long start = System.nanoTime();
+        Long parked = itemWeight;
+        parkedWeights.add(parked);
+
+        // batch consumers stop waiting for items that no longer fit
+        notifyAll();
+
+        try {
+            long remaining = timeoutNanos;
+
+            do {
+                if(timeoutNanos == Long.MAX_VALUE) {
+                    wait(); // wait till queue has some space
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = timeoutNanos - (System.nanoTime() - start);
+                }
+            } while(isRunning && !hasRoom(itemWeight) && remaining > 0);
+        } finally {
+            parkedWeights.remove(parked);
+        }
+
+        metrics.recordPutWait(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the weight of data, 0 if the queue is not bounded by weight
+     * @throws IllegalArgumentException when the weight is negative
+     */
+    private long weigh(T data) {
+        if(weigher == null) return 0;
+
+        long itemWeight = weigher.applyAsLong(data);
+        if(itemWeight < 0) {
+            throw new IllegalArgumentException(
+                "Item weight must not be negative"
+            );
+        }
+
+        return itemWeight;
+    }
+
+    /**
+     * Inserts data if it fits, and wakes waiting threads
+     * Caller must hold the monitor.
+     */
+    private boolean tryInsert(T data, long itemWeight) {
+        if(!isRunning) return false;
+
+        if(!hasRoom(itemWeight)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        insert(data, itemWeight);
+
+        return true;
+    }
+
+    /**
+     * Inserts data, and wakes waiting threads
+     * Caller must hold the monitor.
+     */
+    private void insert(T data, long itemWeight) {
+        add(data, itemWeight);
         notifyAll();
     }
+
+    /**
+     * Appends data to the tail, growing storage as needed
+     * Caller must hold the monitor.
+     */
+    private void add(T data, long itemWeight) {
+        blockedQueue.offer(data);
+        if(stamps != null) stamps.enqueued();
+        weight += itemWeight;
+
+        int size = blockedQueue.size();
+        if(size > peakSize) peakSize = size;
+        metrics.recordEnqueued(1, size);
+    }
+
+    /**
+     * Removes the head of the queue, and wakes waiting threads
+     * Caller must hold the monitor.
+     */
+    private T extract() {
+        T data = take();
+        trimStorage();
+        metrics.recordDequeued(1);
+        notifyAll();
+
+        return data;
+    }
+
+    /**
+     * Removes the head of the queue
+     * Caller must hold the monitor.
+     */
+    private T take() {
+        T data = blockedQueue.poll();
+        if(stamps != null) stamps.dequeued();
+        weight -= weigh(data);
+
+        return data;
+    }
+
+    /**
+     * Releases the storage a burst grew, once the queue is empty
+     * Caller must hold the monitor.
+     */
+    private void trimStorage() {
+        if(peakSize > TRIM_THRESHOLD && blockedQueue.isEmpty()) {
+            blockedQueue = new ArrayDeque<>(INITIAL_STORAGE);
+            peakSize = 0;
+        }
+    }
+
+    /**
+     * Moves up to maxItems items into destination
+     * Caller must hold the monitor.
+     */
+    private int drainItems(Collection<? super T> destination, int maxItems) {
+        int removed = 0;
+
+        while(removed < maxItems && !blockedQueue.isEmpty()) {
+            destination.add(take());
+            removed++;
+        }
+
+        trimStorage();
+        metrics.recordDequeued(removed);
+
+        return removed;
+    }
+
+    private static void checkCapacity(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException(
+                "SimpleBlockedQueue capacity must be greater than 0"
+            );
+        }
+    }
+
+    private static void checkMaxWeight(long maxWeight) {
+        if(maxWeight <= 0) {
+            throw new IllegalArgumentException(
+                "SimpleBlockedQueue maxWeight must be greater than 0"
+            );
+        }
+    }
+
+    private static <T> T requireWeigher(T weigher) {
+        if(weigher == null) {
+            throw new IllegalArgumentException(
+                "SimpleBlockedQueue weigher must not be null"
+            );
+        }
+
+        return weigher;
+    }
 }
@@ -0,0 +1,64 @@
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Destination of the items a Consumer removes
+ *
+ * Implementations:
+ *  - Sink.of(collection): adds to a collection, which must be thread-safe
+ *    when shared by several consumers
+ *  - ThreadLocalSink: one unsynchronized buffer per consumer thread,
+ *    merged once the consumers finish
+ *  - StripedSink: lock-free stripes, one per group of consumer threads,
+ *    readable while consumers run
+ *  - BatchingSink: hands fixed-size batches to a BatchHandler
+ *
+ * Thread-safety:
+ * Every consumer thread calls accept()/acceptAll(), then finish() once
+ * when it stops, so implementations shared by consumers must be
+ * thread-safe.
+ */
+public interface Sink<T> {
+    /**
+     * Takes one item removed by the calling consumer thread
+     */
+    void accept(T item);
+
+    /**
+     * Takes a batch of items removed by the calling consumer thread
+     */
+    default void acceptAll(List<? extends T> items) {
+        for(T item : items) {
+            accept(item);
+        }
+    }
+
+    /**
+     * Called by each consumer thread once, when it stops
+     */
+    default void finish() {}
+
+    /**
+     * Returns a sink adding every item to destination
+     * @throws IllegalArgumentException when destination is null
+     */
+    static <T> Sink<T> of(Collection<? super T> destination) {
+        if(destination == null) {
+            throw new IllegalArgumentException(
+                "Sink destination must not be null"
+            );
+        }
+
+        return new Sink<T>() {
+            @Override
+            public void accept(T item) {
+                destination.add(item);
+            }
+
+            @Override
+            public void acceptAll(List<? extends T> items) {
+                destination.addAll(items);
+            }
+        };
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Lazy item sources for Producer and Pipeline
+ *
+ * Features:
+ *  - Wraps an Iterator, Spliterator or Stream as an Iterable, so it can
+ *    be produced without first collecting it into a List
+ *  - Reads lines, or length-prefixed RecordCodec records, from a file or
+ *    any ReadableByteChannel one item at a time
+ *  - Only a fixed read buffer (plus the largest record) is held in memory,
+ *    so memory use is bounded by the queue's capacity, not by input size
+ *
+ * File sources open the file on every iterator(), so they can be
+ * produced more than once. Iterator, Spliterator, Stream and channel
+ * sources can be iterated only once.
+ *
+ * Readers close their file or channel once the input is exhausted.
+ * Their iterators are AutoCloseable, and Producer closes them when it
+ * stops early. Read errors are thrown as UncheckedIOException.
+ *
+ * Thread-safety:
+ * An iterator must be used by one thread, e.g. the Producer running it.
+ */
+public final class Sources {
+    // bytes read from a file or channel per read() call
+    static final int READ_BUFFER_BYTES = 8192;
+
+    private Sources() {}
+
+    /**
+     * Returns a single-use source of the items of iterator
+     * @throws IllegalArgumentException when iterator is null
+     */
+    public static <T> Iterable<T> of(Iterator<? extends T> iterator) {
+        if(iterator == null) {
+            throw new IllegalArgumentException("Source iterator must not be null");
+        }
+
+        AtomicBoolean used = new AtomicBoolean();
+
+        return () -> {
+            if(used.getAndSet(true)) {
+                throw new IllegalStateException(
+                    "Source can only be iterated once"
+                );
+            }
+
+            @SuppressWarnings("unchecked")
+            Iterator<T> items = (Iterator<T>) iterator;
+
+            return items;
+        };
+    }
+
+    /**
+     * Returns a single-use source of the items of spliterator
+     * @throws IllegalArgumentException when spliterator is null
+     */
+    public static <T> Iterable<T> of(Spliterator<? extends T> spliterator) {
+        if(spliterator == null) {
+            throw new IllegalArgumentException(
+                "Source spliterator must not be null"
+            );
+        }
+
+        return of(Spliterators.iterator(spliterator));
+    }
+
+    /**
+     * Returns a single-use source of the items of stream
+     * The stream is closed once it is exhausted, or the Producer stops.
+     * A null item ends the source, as queues take no null items.
+     * @throws IllegalArgumentException when stream is null
+     */
+    public static <T> Iterable<T> of(Stream<? extends T> stream) {
+        if(stream == null) {
+            throw new IllegalArgumentException("Source stream must not be null");
+        }
+
+        Iterator<? extends T> items = stream.iterator();
+
+        return of(new ReadAheadIterator<T>() {
+            @Override
+            T read() {
+                return items.hasNext() ? items.next() : null;
+            }
+
+            @Override
+            void closeInput() {
+                stream.close();
+            }
+        });
+    }
+
+    /**
+     * Returns a source of the UTF-8 lines of a file, without line
+     * terminators
+     * @throws IllegalArgumentException when path is null
+     */
+    public static Iterable<String> lines(Path path) {
+        return lines(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a source of the lines of a file in charset
+     * @throws IllegalArgumentException when path or charset is null
+     */
+    public static Iterable<String> lines(Path path, Charset charset) {
+        if(path == null || charset == null) {
+            throw new IllegalArgumentException(
+                "Source path and charset must not be null"
+            );
+        }
+
+        return () -> new LineIterator(open(path), charset);
+    }
+
+    /**
+     * Returns a single-use source of the lines read from channel
+     * channel must be in blocking mode.
+     * @throws IllegalArgumentException when channel or charset is null
+     */
+    public static Iterable<String> lines(ReadableByteChannel channel,
+        Charset charset) {
+
+        if(channel == null || charset == null) {
+            throw new IllegalArgumentException(
+                "Source channel and charset must not be null"
+            );
+        }
+
+        return of(new LineIterator(channel, charset));
+    }
+
+    /**
+     * Returns a source of the records of a file
+     * Every record is a 4-byte big-endian length followed by that many
+     * bytes, decoded by codec.
+     * @throws IllegalArgumentException when path or codec is null
+     */
+    public static <T> Iterable<T> records(Path path, RecordCodec<T> codec) {
+        if(path == null || codec == null) {
+            throw new IllegalArgumentException(
+                "Source path and codec must not be null"
+            );
+        }
+
+        return () -> new RecordIterator<>(open(path), codec);
+    }
+
+    /**
+     * Returns a single-use source of the records read from channel
+     * @see #records(Path, RecordCodec)
+     * @throws IllegalArgumentException when channel or codec is null
+     */
+    public static <T> Iterable<T> records(ReadableByteChannel channel,
+        RecordCodec<T> codec) {
+
+        if(channel == null || codec == null) {
+            throw new IllegalArgumentException(
+                "Source channel and codec must not be null"
+            );
+        }
+
+        return of(new RecordIterator<>(channel, codec));
+    }
+
+    /**
+     * Writes items to channel in the format read by records()
+     * Useful to prepare record files.
+     */
+    public static <T> void writeRecords(Iterable<? extends T> items,
+        RecordCodec<T> codec, WritableByteChannel channel)
+        throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        for(T item : items) {
+            int maxSize = Integer.BYTES + codec.maxEncodedSize(item);
+
+            if(buffer.remaining() < maxSize) {
+                flush(buffer, channel);
+
+                if(buffer.capacity() < maxSize) {
+                    buffer = ByteBuffer.allocate(maxSize);
+                }
+            }
+
+            int start = buffer.position();
+            buffer.position(start + Integer.BYTES);
+            codec.encode(item, buffer);
+            buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+        }
+
+        flush(buffer, channel);
+    }
+
+    private static void flush(ByteBuffer buffer,
+        WritableByteChannel channel) throws IOException {
+
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Closes a source iterator holding a file or channel, e.g. when its
+     * Producer stops before the end of the input
+     * Other iterators are left alone.
+     */
+    static void close(Iterator<?> source) {
+        if(!(source instanceof AutoCloseable)) return;
+
+        try {
+            ((AutoCloseable) source).close();
+        } catch(Exception e) {
+            throw new IllegalStateException("Could not close the source", e);
+        }
+    }
+
+    private static ReadableByteChannel open(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Iterator reading one item ahead, so hasNext() knows whether input
+     * is left, and closing its input once exhausted
+     */
+    private abstract static class ReadAheadIterator<T>
+        implements Iterator<T>, AutoCloseable {
+
+        private T next;
+        private boolean closed;
+
+        /**
+         * Returns the next item, or null at the end of input
+         */
+        abstract T read() throws IOException;
+
+        abstract void closeInput() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if(next != null) return true;
+            if(closed) return false;
+
+            try {
+                next = read();
+            } catch(IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+
+            if(next == null) close();
+
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()) throw new NoSuchElementException();
+
+            T item = next;
+            next = null;
+
+            return item;
+        }
+
+        /**
+         * Closes the input; items read ahead are discarded
+         */
+        @Override
+        public void close() {
+            if(closed) return;
+
+            closed = true;
+            next = null;
+
+            try {
+                closeInput();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads lines through a fixed-size character buffer
+     */
+    private static final class LineIterator extends ReadAheadIterator<String> {
+        private final BufferedReader reader;
+
+        LineIterator(ReadableByteChannel channel, Charset charset) {
+            reader = new BufferedReader(
+                Channels.newReader(channel, charset.newDecoder(), -1),
+                READ_BUFFER_BYTES
+            );
+        }
+
+        @Override
+        String read() throws IOException {
+            return reader.readLine();
+        }
+
+        @Override
+        void closeInput() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads length-prefixed records through a byte buffer that only grows
+     * to fit the largest record
+     */
+    private static final class RecordIterator<T> extends ReadAheadIterator<T> {
+        private final ReadableByteChannel channel;
+        private final RecordCodec<T> codec;
+        // unread bytes are between position and limit
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        RecordIterator(ReadableByteChannel channel, RecordCodec<T> codec) {
+            this.channel = channel;
+            this.codec = codec;
+            buffer.flip();
+        }
+
+        @Override
+        T read() throws IOException {
+            if(!fill(Integer.BYTES)) {
+                if(buffer.hasRemaining()) {
+                    throw new EOFException("Truncated record length");
+                }
+
+                return null;
+            }
+
+            int length = buffer.getInt(buffer.position());
+            if(length < 0) {
+                throw new IOException("Invalid record length " + length);
+            }
+
+            if(!fill(Integer.BYTES + length)) {
+                throw new EOFException("Truncated record of " + length
+                    + " bytes"
+                );
+            }
+
+            buffer.position(buffer.position() + Integer.BYTES);
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+
+            T item = codec.decode(record);
+            if(item == null) {
+                throw new IOException("Codec decoded a null record");
+            }
+
+            return item;
+        }
+
+        @Override
+        void closeInput() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Reads until at least bytes bytes are unread
+         * Returns false if the input ends first.
+         */
+        private boolean fill(int bytes) throws IOException {
+            if(buffer.remaining() >= bytes) return true;
+
+            if(buffer.capacity() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+
+            // buffer is now in write mode
+            while(buffer.position() < bytes) {
+                if(channel.read(buffer) < 0) break;
+            }
+
+            buffer.flip();
+
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Runs the spin and yield phases of a WaitStrategy for one side (put or
+ * remove) of a queue, and records which phase ended each wait
+ *
+ * Thread-safety:
+ * Shared by every thread waiting on that side. The adaptive budget is a
+ * hint: concurrent updates may overwrite each other, which only nudges
+ * how long the next waiter spins.
+ */
+final class SpinWaiter {
+    // SPIN_YIELD spins this many times before yielding
+    static final int YIELD_AFTER = 100;
+    static final int MIN_BUDGET = 16;
+    static final int MAX_BUDGET = 1 << 14;
+
+    private final WaitStrategy strategy;
+    private final QueueMetrics metrics;
+    private volatile int budget = 256;
+
+    SpinWaiter(WaitStrategy strategy, QueueMetrics metrics) {
+        if(strategy == null) {
+            throw new IllegalArgumentException("Wait strategy must not be null");
+        }
+
+        this.strategy = strategy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Idles once before the given attempt (counting from 1) to retry
+     * Returns false without idling once the waiter should park instead.
+     */
+    boolean idle(int attempt) {
+        switch(strategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                return true;
+            case SPIN_YIELD:
+                if(attempt <= YIELD_AFTER) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                return true;
+            case SPIN_PARK:
+                if(attempt > budget) return false;
+
+                Thread.onSpinWait();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Records a wait that ended on the given attempt, without parking
+     */
+    void satisfied(int attempt) {
+        if(strategy == WaitStrategy.SPIN_YIELD && attempt > YIELD_AFTER) {
+            metrics.recordYieldWait();
+            return;
+        }
+
+        metrics.recordSpinWait();
+
+        if(strategy == WaitStrategy.SPIN_PARK) {
+            // leave room for waits a little longer than this one
+            budget = Math.min(MAX_BUDGET, Math.max(budget, attempt * 2));
+        }
+    }
+
+    /**
+     * Records a wait that had to park
+     */
+    void parked() {
+        metrics.recordParkWait();
+
+        if(strategy == WaitStrategy.SPIN_PARK) {
+            budget = Math.max(MIN_BUDGET, budget / 2);
+        }
+    }
+
+    WaitStrategy strategy() {
+        return strategy;
+    }
+
+    int budget() {
+        return budget;
+    }
+}
@@ -0,0 +1,695 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue for exactly one producer thread and one consumer
+ * thread
+ *
+ * Features:
+ *  - Preallocated power-of-two ring; the requested capacity is still
+ *    enforced exactly
+ *  - The producer alone advances the tail, and the consumer alone advances
+ *    the head, so neither side needs a CAS or a lock to claim a slot
+ *  - Each side caches the other side's position, and only re-reads it
+ *    when the ring looks full (producer) or empty (consumer)
+ *  - Producer blocks when queue is full.
+ *  - Consumer blocks when queue is empty.
+ *  - Batch removals publish the head once per batch
+ *  - Timed offer()/poll() and non-blocking tryPut()/tryRemove()
+ *  - closeGracefully() lets the consumer drain the queue before it stops;
+ *    a put() racing with it may still insert its item
+ *  - A WaitStrategy choosing whether a full or empty queue makes
+ *    put()/remove() spin, yield or park (BLOCKING by default)
+ *  - QueueMetrics counting traffic, and time spent parked on the slow path
+ *
+ * Thread-safety:
+ * put(), offer(), tryPut() and putAll() must only be called by one
+ * producer thread, and remove(), poll(), tryRemove(), removeBatch() and
+ * drainTo() by one consumer thread. Once the consumer has stopped,
+ * another thread may drainTo() the remaining items.
+ * A lock is only used to park threads when the queue is full or empty,
+ * and the opposite side only signals when a thread is actually parked.
+ * Use QueueType.forUsage() to pick this queue only when the usage is
+ * known to be single-producer/single-consumer.
+ */
+public class SpscBlockedQueue<T> implements BlockedQueue<T> {
+    // Largest power of two an int-indexed array can hold
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Object[] buffer;
+    private final int mask;
+    private final int capacity;
+
+    // next position to write; only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // next position to read; only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // producer's last view of head, and consumer's last view of tail
+    private long cachedHead;
+    private long cachedTail;
+
+    // Slow path: only used to park and wake threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final Condition drained = lock.newCondition();
+    private final AtomicInteger waitingDrainers = new AtomicInteger();
+
+    private volatile boolean isRunning;
+    // closed gracefully: no new items, but queued items can be removed
+    private volatile boolean draining;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    // spin and yield phases run before a thread parks on the lock
+    private final SpinWaiter putWaiter;
+    private final SpinWaiter removeWaiter;
+
+    /**
+     * Creates a single-producer/single-consumer queue with given capacity
+     * @throws IllegalArgumentException when capacity <= 0 or capacity > 2^30
+     */
+    public SpscBlockedQueue(int capacity) {
+        this(capacity, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Creates a single-producer/single-consumer queue with given capacity,
+     * waiting for space or data as waitStrategy dictates
+     * @throws IllegalArgumentException when capacity <= 0 or capacity > 2^30,
+     *         or waitStrategy is null
+     */
+    public SpscBlockedQueue(int capacity, WaitStrategy waitStrategy) {
+        if(capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                "SpscBlockedQueue capacity must be between 1 and "
+                + MAX_CAPACITY
+            );
+        }
+
+        int slots = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        buffer = new Object[slots];
+
+        putWaiter = new SpinWaiter(waitStrategy, metrics);
+        removeWaiter = new SpinWaiter(waitStrategy, metrics);
+
+        isRunning = true;
+    }
+
+    /**
+     * Inserts data into the queue
+     * Blocks if the queue is full, and if the queue is active.
+     * Returns upon shutdown without insertion.
+     */
+    @Override
+    public void put(T data) throws InterruptedException {
+        checkNotNull(data);
+
+        if(!isRunning) return;
+
+        if(!tryEnqueue(data)) {
+            if(!awaitEnqueue(data, false, 0)) return;
+        }
+
+        signalConsumer();
+    }
+
+    /**
+     * Removes data from the queue
+     * Blocks if the queue is empty, and if the queue is active.
+     * Returns null upon shutdown without removal.
+     */
+    @Override
+    public T remove() throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+
+        if(data == null) {
+            data = awaitDequeue(false, 0);
+            if(data == null) return null;
+        }
+
+        signalProducer();
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue, waiting up to timeout for space
+     * Returns false without insertion if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public boolean offer(T data, long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryEnqueue(data)) {
+            long nanos = unit.toNanos(timeout);
+
+            if(nanos <= 0 || !awaitEnqueue(data, true, nanos)) {
+                if(isRunning) metrics.recordRejected();
+                return false;
+            }
+        }
+
+        signalConsumer();
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue, waiting up to timeout for data
+     * Returns null without removal if the timeout elapses, or upon
+     * shutdown.
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+
+        if(data == null) {
+            long nanos = unit.toNanos(timeout);
+            if(nanos <= 0) return null;
+
+            data = awaitDequeue(true, nanos);
+            if(data == null) return null;
+        }
+
+        signalProducer();
+
+        return data;
+    }
+
+    /**
+     * Inserts data into the queue only if space is available
+     * Returns false without insertion if the queue is full, or shutdown.
+     */
+    @Override
+    public boolean tryPut(T data) {
+        checkNotNull(data);
+
+        if(!isRunning) return false;
+
+        if(!tryEnqueue(data)) {
+            metrics.recordRejected();
+            return false;
+        }
+
+        signalConsumer();
+
+        return true;
+    }
+
+    /**
+     * Removes data from the queue only if data is available
+     * Returns null without removal if the queue is empty, or shutdown.
+     */
+    @Override
+    public T tryRemove() {
+        if(!isRunning && !draining) return null;
+
+        T data = tryDequeue();
+        if(data != null) signalProducer();
+
+        return data;
+    }
+
+    /**
+     * Inserts every item of data into the queue, in order
+     * Blocks while the queue is full, and if the queue is active.
+     * Returns upon shutdown without inserting the remaining items.
+     *
+     * @return number of items inserted
+     */
+    @Override
+    public int putAll(Collection<? extends T> data)
+        throws InterruptedException {
+
+        int inserted = 0;
+        int unsignalled = 0;
+
+        try {
+            for(T item : data) {
+                checkNotNull(item);
+
+                if(!isRunning) break;
+
+                if(!tryEnqueue(item)) {
+                    // wake the consumer for the items inserted so far
+                    if(unsignalled > 0) signalConsumer();
+                    unsignalled = 0;
+
+                    if(!awaitEnqueue(item, false, 0)) break;
+                }
+
+                inserted++;
+                unsignalled++;
+            }
+        } finally {
+            if(unsignalled > 0) signalConsumer();
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Removes up to maxItems available items into destination, in order
+     * Never blocks, and still works after shutdown.
+     *
+     * @return number of items removed
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxItems) {
+        BatchArguments.checkMaxItems(maxItems);
+
+        int removed = dequeueAvailable(destination, maxItems);
+        if(removed > 0) signalProducer();
+
+        return removed;
+    }
+
+    /**
+     * Removes between minItems and maxItems items from the queue
+     * Blocks until minItems items (at most capacity) have been removed,
+     * the timeout elapses, or the queue is shutdown.
+     * Returns null upon shutdown if no data was removed.
+     */
+    @Override
+    public List<T> removeBatch(int minItems, int maxItems, long timeout,
+        TimeUnit unit) throws InterruptedException {
+
+        BatchArguments.checkBatchBounds(minItems, maxItems);
+
+        if(!isRunning && !draining) return null;
+
+        int required = Math.min(minItems, capacity);
+        long remaining = unit.toNanos(timeout);
+        List<T> batch = new ArrayList<>();
+
+        if(dequeueAvailable(batch, maxItems) > 0) signalProducer();
+
+        if(batch.size() < required && remaining > 0) {
+            long waitStart = System.nanoTime();
+
+            lock.lock();
+            waitingConsumers.incrementAndGet();
+
+            try {
+                while(true) {
+                    int removed =
+                        dequeueAvailable(batch, maxItems - batch.size());
+                    if(removed > 0) signalProducer();
+
+                    if(batch.size() >= required
+                        || !isRunning
+                        || remaining <= 0) {
+
+                        break;
+                    }
+
+                    // wait till queue has more data, or the timeout elapses
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } catch(InterruptedException e) {
+                if(batch.isEmpty()) throw e;
+
+                Thread.currentThread().interrupt();
+            } finally {
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+            }
+        }
+
+        if(batch.isEmpty() && !isRunning) return null;
+
+        return batch;
+    }
+
+    /**
+     * Returns the size of the queue
+     * The value is a snapshot, and may be stale under concurrent access.
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * Returns how put() and remove() wait on a full or empty queue
+     */
+    public WaitStrategy waitStrategy() {
+        return putWaiter.strategy();
+    }
+
+    /**
+     * Returns true if the queue is active, false otherwise
+     */
+    @Override
+    public boolean isActive() {
+        return isRunning;
+    }
+
+    /**
+     * Returns the queue's traffic and blocking metrics
+     */
+    @Override
+    public QueueMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts down the queue
+     * Wakes all waiting threads to exit gracefully
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isRunning = false;
+            draining = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue without dropping queued items
+     * Wakes all waiting threads: the producer returns, the consumer takes
+     * the remaining items, then gets null.
+     */
+    @Override
+    public void closeGracefully() {
+        lock.lock();
+        try {
+            if(!isRunning) return;
+
+            // set before isRunning, so the consumer never sees neither flag
+            draining = true;
+            isRunning = false;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to timeout until every queued item has been removed
+     * Returns true if the queue is empty. Any thread may call it.
+     */
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit)
+        throws InterruptedException {
+
+        if(size() == 0) return true;
+
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so the consumer taking the last item
+        // either sees this thread waiting or this thread sees the queue empty
+        waitingDrainers.incrementAndGet();
+
+        try {
+            while((isRunning || draining) && size() > 0 && remaining > 0) {
+                // wait till the consumer empties the queue, or the timeout
+                // elapses
+                remaining = drained.awaitNanos(remaining);
+            }
+
+            return size() == 0;
+        } finally {
+            waitingDrainers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes data into the next slot and publishes the tail
+     * Returns false if the queue is full.
+     * Producer thread only.
+     */
+    private boolean tryEnqueue(T data) {
+        long position = tail.get();
+
+        if(position - cachedHead >= capacity) {
+            cachedHead = head.get();
+            if(position - cachedHead >= capacity) return false;
+        }
+
+        buffer[(int) (position & mask)] = data;
+        // the volatile write publishes data, and orders it before the
+        // read of waitingConsumers in signalConsumer()
+        tail.set(position + 1);
+        metrics.recordEnqueued(1, position + 1 - head.get());
+
+        return true;
+    }
+
+    /**
+     * Takes data from the next published slot and publishes the head
+     * Returns null if the queue is empty.
+     * Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    private T tryDequeue() {
+        long position = head.get();
+
+        if(position >= cachedTail) {
+            cachedTail = tail.get();
+            if(position >= cachedTail) return null;
+        }
+
+        int index = (int) (position & mask);
+        T data = (T) buffer[index];
+        buffer[index] = null;
+        head.set(position + 1);
+        metrics.recordDequeued(1);
+        signalDrained();
+
+        return data;
+    }
+
+    /**
+     * Takes up to maxItems published items into destination, publishing
+     * the head once
+     * Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    private int dequeueAvailable(Collection<? super T> destination,
+        int maxItems) {
+
+        long position = head.get();
+        cachedTail = tail.get();
+
+        int available = (int) Math.min(maxItems, cachedTail - position);
+        if(available <= 0) return 0;
+
+        for(int i = 0; i < available; i++) {
+            int index = (int) ((position + i) & mask);
+
+            destination.add((T) buffer[index]);
+            buffer[index] = null;
+        }
+
+        head.set(position + available);
+        metrics.recordDequeued(available);
+        signalDrained();
+
+        return available;
+    }
+
+    /**
+     * Spins, yields or parks the producer, as the wait strategy dictates,
+     * until data is inserted, the queue is shutdown, or, if timed, nanos
+     * elapse
+     * Returns true if data was inserted.
+     */
+    private boolean awaitEnqueue(T data, boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        for(int attempt = 1; putWaiter.idle(attempt); attempt++) {
+            if(tryEnqueue(data)) {
+                putWaiter.satisfied(attempt);
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+                return true;
+            }
+
+            if(Thread.interrupted()) throw new InterruptedException();
+
+            if(!isRunning || timed && System.nanoTime() - waitStart >= nanos) {
+                metrics.recordPutWait(System.nanoTime() - waitStart);
+                return false;
+            }
+        }
+
+        if(timed) nanos -= System.nanoTime() - waitStart;
+        putWaiter.parked();
+
+        lock.lockInterruptibly();
+        // Register before re-checking, so the consumer freeing a slot
+        // either sees the producer waiting or the producer sees the slot
+        waitingProducers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                if(tryEnqueue(data)) return true;
+
+                if(!timed) {
+                    notFull.await(); // wait till queue has some space
+                } else if(nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+
+            return false;
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+            metrics.recordPutWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Spins, yields or parks the consumer, as the wait strategy dictates,
+     * until data is available, the queue is shutdown, or, if timed, nanos
+     * elapse
+     * Returns null upon shutdown or timeout.
+     */
+    private T awaitDequeue(boolean timed, long nanos)
+        throws InterruptedException {
+
+        long waitStart = System.nanoTime();
+
+        for(int attempt = 1; removeWaiter.idle(attempt); attempt++) {
+            T data = tryDequeue();
+
+            if(data != null) {
+                removeWaiter.satisfied(attempt);
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                return data;
+            }
+
+            if(Thread.interrupted()) throw new InterruptedException();
+
+            if(!isRunning || timed && System.nanoTime() - waitStart >= nanos) {
+                metrics.recordRemoveWait(System.nanoTime() - waitStart);
+                return isRunning ? null : dequeueRemaining();
+            }
+        }
+
+        if(timed) nanos -= System.nanoTime() - waitStart;
+        removeWaiter.parked();
+
+        lock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+
+        try {
+            while(isRunning) {
+                T data = tryDequeue();
+                if(data != null) return data;
+
+                if(!timed) {
+                    notEmpty.await(); // wait till queue has some data
+                } else if(nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } else {
+                    return null;
+                }
+            }
+
+            return dequeueRemaining();
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+            metrics.recordRemoveWait(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * Takes an item put before closeGracefully(), once the queue stopped
+     * running
+     * Returns null upon shutdown, or once the queue is empty.
+     */
+    private T dequeueRemaining() {
+        return draining ? tryDequeue() : null;
+    }
+
+    /**
+     * Wakes threads in awaitDrained() once the queue is empty
+     * Takes the lock only if a thread is waiting.
+     */
+    private void signalDrained() {
+        if(waitingDrainers.get() == 0 || size() > 0) return;
+
+        lock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the consumer if it is parked
+     */
+    private void signalConsumer() {
+        if(waitingConsumers.get() == 0) return;
+
+        lock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the producer if it is parked
+     */
+    private void signalProducer() {
+        if(waitingProducers.get() == 0) return;
+
+        lock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkNotNull(Object data) {
+        if(data == null) {
+            throw new NullPointerException(
+                "SpscBlockedQueue does not accept null data"
+            );
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Per-thread rates of one pipeline stage, e.g. a Producer or Consumer
+ *
+ * Features:
+ *  - Items moved, wall-clock time, and time spent inside queue calls
+ *  - itemsPerSecond() and queueTimeRatio() point at the slow stage:
+ *    a producer spending most of its time in put() is waiting on slow
+ *    consumers, and vice versa
+ *
+ * Thread-safety:
+ * Written only by the thread running the stage; fields are volatile so
+ * any other thread can read a recent value while the stage runs.
+ */
+public class StageStats {
+    private volatile String threadName = "";
+    private volatile long items;
+    private volatile long queueNanos;
+    // start of the queue call in progress, 0 between calls
+    private volatile long callStartNanos;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Marks the stage as started on the calling thread
+     */
+    void start() {
+        threadName = Thread.currentThread().getName();
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    /**
+     * Marks the start of a queue call, and returns its start time
+     */
+    long enterQueue() {
+        long now = System.nanoTime();
+        callStartNanos = now;
+
+        return now;
+    }
+
+    /**
+     * Records items moved by one queue call, and how long the call took
+     */
+    void record(int moved, long nanos) {
+        items += moved;
+        queueNanos += nanos;
+        callStartNanos = 0;
+    }
+
+    /**
+     * Marks the stage as finished
+     */
+    void finish() {
+        callStartNanos = 0;
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the name of the thread that ran the stage
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the number of items moved through the queue
+     */
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the time spent inside queue calls, including blocking
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Returns the time spent inside queue calls, including the time so far
+     * of a call still blocked, e.g. a consumer waiting on an empty queue
+     * Only counts the call in progress if it was marked by enterQueue().
+     */
+    public long getQueueNanosNow() {
+        long callStart = callStartNanos;
+        long total = queueNanos;
+
+        return callStart == 0 ? total : total + System.nanoTime() - callStart;
+    }
+
+    /**
+     * Returns the time since the stage started, up to when it finished
+     * Returns 0 if the stage has not started.
+     */
+    public long getElapsedNanos() {
+        long start = startNanos;
+        if(start == 0) return 0;
+
+        long end = endNanos;
+
+        return (end == 0 ? System.nanoTime() : end) - start;
+    }
+
+    /**
+     * Returns items moved per second of elapsed time
+     */
+    public double itemsPerSecond() {
+        long elapsed = getElapsedNanos();
+
+        return elapsed == 0 ? 0 : items / (elapsed / 1e9);
+    }
+
+    /**
+     * Returns the fraction of elapsed time spent inside queue calls
+     */
+    public double queueTimeRatio() {
+        long elapsed = getElapsedNanos();
+
+        return elapsed == 0 ? 0 : Math.min(1, (double) queueNanos / elapsed);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: items=%d elapsedMs=%d items/s=%.1f"
+            + " inQueue=%.0f%%",
+            threadName, items, getElapsedNanos() / 1_000_000,
+            itemsPerSecond(), queueTimeRatio() * 100
+        );
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free sink spreading consumer threads across stripes
+ *
+ * Features:
+ *  - Every thread is assigned a stripe round-robin on its first item, so
+ *    consumers only contend when more of them than stripes run at once
+ *  - Each stripe is a lock-free ConcurrentLinkedQueue
+ *  - size() and toList() can be read while consumers run
+ *
+ * Items keep the order of each consumer within its stripe; there is no
+ * order across stripes.
+ *
+ * Thread-safety:
+ * Every method is safe to call from any thread. toList() is weakly
+ * consistent while consumers run.
+ */
+public class StripedSink<T> implements Sink<T> {
+    private final List<ConcurrentLinkedQueue<T>> stripes = new ArrayList<>();
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<ConcurrentLinkedQueue<T>> stripe =
+        ThreadLocal.withInitial(() -> stripes.get(
+            Math.floorMod(nextStripe.getAndIncrement(), stripes.size())
+        ));
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates a sink with one stripe per available processor
+     */
+    public StripedSink() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a sink with the given number of stripes
+     * @throws IllegalArgumentException when stripeCount < 1
+     */
+    public StripedSink(int stripeCount) {
+        if(stripeCount < 1) {
+            throw new IllegalArgumentException(
+                "StripedSink needs at least one stripe"
+            );
+        }
+
+        for(int i = 0; i < stripeCount; i++) {
+            stripes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    @Override
+    public void accept(T item) {
+        stripe.get().add(item);
+        size.increment();
+    }
+
+    @Override
+    public void acceptAll(List<? extends T> items) {
+        stripe.get().addAll(items);
+        size.add(items.size());
+    }
+
+    /**
+     * Releases the calling thread's stripe assignment
+     */
+    @Override
+    public void finish() {
+        stripe.remove();
+    }
+
+    /**
+     * Returns the number of items accepted so far
+     */
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * Returns the number of stripes
+     */
+    public int stripeCount() {
+        return stripes.size();
+    }
+
+    /**
+     * Returns every item accepted so far, stripe by stripe
+     */
+    public List<T> toList() {
+        List<T> items = new ArrayList<>();
+
+        for(ConcurrentLinkedQueue<T> queue : stripes) {
+            items.addAll(queue);
+        }
+
+        return items;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sink giving every consumer thread its own unsynchronized buffer,
+ * merged once the consumers finish
+ *
+ * Features:
+ *  - accept() appends to a plain ArrayList owned by the calling thread:
+ *    no lock and no shared write per item
+ *  - finish() hands the thread's buffer over for merging, and clears it
+ *    from the thread, so pooled threads can run the next consumer
+ *  - toList() merges the buffers of finished consumers, each in the order
+ *    its consumer removed the items
+ *
+ * Items of consumers still running are not visible until they finish.
+ *
+ * Thread-safety:
+ * Buffers are confined to their thread until finish() publishes them
+ * through a concurrent queue.
+ */
+public class ThreadLocalSink<T> implements Sink<T> {
+    private final ThreadLocal<List<T>> buffer =
+        ThreadLocal.withInitial(ArrayList::new);
+    private final ConcurrentLinkedQueue<List<T>> finished =
+        new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void accept(T item) {
+        buffer.get().add(item);
+    }
+
+    @Override
+    public void acceptAll(List<? extends T> items) {
+        buffer.get().addAll(items);
+    }
+
+    /**
+     * Publishes the calling thread's buffer for merging
+     */
+    @Override
+    public void finish() {
+        List<T> items = buffer.get();
+        buffer.remove();
+
+        if(!items.isEmpty()) finished.add(items);
+    }
+
+    /**
+     * Returns the items of every finished consumer, one consumer after
+     * the other
+     */
+    public List<T> toList() {
+        List<T> merged = new ArrayList<>(size());
+
+        for(List<T> items : finished) {
+            merged.addAll(items);
+        }
+
+        return merged;
+    }
+
+    /**
+     * Returns the number of items of every finished consumer
+     */
+    public int size() {
+        int size = 0;
+
+        for(List<T> items : finished) {
+            size += items.size();
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Selects the kind of threads that run Producer and Consumer tasks
+ *
+ * PLATFORM ties every blocked put()/remove() to an OS thread.
+ * VIRTUAL runs every task on its own virtual thread, so thousands of
+ * blocked producers and consumers only need a handful of carrier threads.
+ *
+ * Virtual threads park without pinning their carrier only when they block
+ * on java.util.concurrent locks. SimpleBlockedQueue blocks inside
+ * synchronized methods, so the VIRTUAL mode should be paired with a
+ * lock-based queue (QueueType.LOCK, FAIR_LOCK or RING).
+ */
+public enum ThreadMode {
+    /** Fixed pool with one platform thread per task */
+    PLATFORM {
+        @Override
+        public ExecutorService newExecutor(int tasks) {
+            return Executors.newFixedThreadPool(tasks);
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+    },
+
+    /** One virtual thread per task (Java 21 or higher) */
+    VIRTUAL {
+        @Override
+        public ExecutorService newExecutor(int tasks) {
+            // Looked up reflectively, so the project still compiles
+            // with JDKs older than 21
+            try {
+                return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            } catch(NoSuchMethodException e) {
+                throw new UnsupportedOperationException(
+                    "Virtual threads require Java 21 or higher", e
+                );
+            } catch(ReflectiveOperationException e) {
+                throw new IllegalStateException(
+                    "Could not create a virtual thread executor", e
+                );
+            }
+        }
+
+        @Override
+        public boolean isSupported() {
+            try {
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return true;
+            } catch(NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * Creates an executor able to run the given number of tasks at once
+     * @throws UnsupportedOperationException when the running JVM does not
+     *         support this thread mode
+     */
+    public abstract ExecutorService newExecutor(int tasks);
+
+    /**
+     * Returns true if the running JVM supports this thread mode
+     */
+    public abstract boolean isSupported();
+
+    /**
+     * Returns the thread mode for a case-insensitive name, e.g. "virtual"
+     * @throws IllegalArgumentException when no thread mode has that name
+     */
+    public static ThreadMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * How a thread waits for space or data once the fast path of put() or
+ * remove() finds the queue full or empty
+ *
+ * Parking costs a park/unpark round trip, which dominates the latency of
+ * microsecond-scale handoffs; spinning avoids it, at the cost of burning
+ * a core while waiting. QueueMetrics counts how many waits ended while
+ * spinning, while yielding, and after parking.
+ *
+ * Used by RingBufferBlockedQueue and SpscBlockedQueue, whose fast path
+ * takes no lock, for put(), remove(), offer() and poll().
+ */
+public enum WaitStrategy {
+    /** Park right away (default); no CPU is spent while waiting */
+    BLOCKING,
+
+    /** Spin until the wait ends; lowest latency, one busy core per waiter */
+    BUSY_SPIN,
+
+    /** Spin briefly, then Thread.yield() until the wait ends */
+    SPIN_YIELD,
+
+    /**
+     * Spin up to an adaptive budget, then park
+     * The budget grows when spinning succeeds, and halves when the
+     * thread has to park, so it tracks how long waits usually last.
+     */
+    SPIN_PARK;
+
+    /**
+     * Returns the wait strategy with the given name, ignoring case,
+     * with '-' accepted in place of '_'
+     * @throws IllegalArgumentException when no strategy matches
+     */
+    public static WaitStrategy fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class AsyncEventLoggerTests {
+    @Test
+    @DisplayName("Test events reach the delegate in order")
+    void testOrder() {
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventLogger logger = new AsyncEventLogger(
+            (event, threadName, payload) -> written.add(payload), 1024
+        );
+
+        for(int i = 0; i < 500; i++) {
+            logger.onEvent(QueueEvent.PRODUCED, "producer", i);
+        }
+        logger.close();
+
+        assertEquals(500, written.size(), "Every event should be written");
+        for(int i = 0; i < 500; i++) {
+            assertEquals(i, written.get(i), "Event " + i + " is out of order");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a full ring drops events instead of blocking")
+    void testDropWhenFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+
+        // the delegate blocks, so the writer cannot free any slot
+        AsyncEventLogger logger = new AsyncEventLogger(
+            (event, threadName, payload) -> {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(payload);
+            }, 4
+        );
+
+        for(int i = 0; i < 20; i++) {
+            logger.onEvent(QueueEvent.CONSUMED, "consumer", i);
+        }
+
+        release.countDown();
+        logger.close();
+
+        assertTrue(logger.getDroppedCount() > 0, "Some events should drop");
+        assertEquals(20, written.size() + logger.getDroppedCount(),
+            "Every event should be written or counted as dropped"
+        );
+    }
+
+    @Test
+    @DisplayName("Test console output matches the original log lines")
+    void testConsoleFormat() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BlockedQueue<Integer> queue = new SimpleBlockedQueue<>(2);
+        queue.tryPut(1);
+
+        AsyncEventLogger logger = new AsyncEventLogger(new ConsoleEventListener(
+            new PrintStream(bytes, true), queue), 16
+        );
+        logger.onEvent(QueueEvent.PRODUCED, "p-1", 1);
+        logger.onEvent(QueueEvent.CONSUMER_STOPPED, "c-1", null);
+        logger.close();
+
+        assertEquals("Producer thread p-1 produced data: 1. Buffer size = 1"
+            + System.lineSeparator()
+            + "Consumer thread c-1 stopped as queue is shutdown"
+            + System.lineSeparator(), bytes.toString(),
+            "Lines should keep their original format"
+        );
+    }
+
+    @Test
+    @DisplayName("Test sampling forwards terminal events")
+    void testSampled() {
+        List<QueueEvent> forwarded = new ArrayList<>();
+        QueueEventListener sampled = new SampledEventListener(
+            (event, threadName, payload) -> forwarded.add(event), 1_000_000
+        );
+
+        for(int i = 0; i < 100; i++) {
+            sampled.onEvent(QueueEvent.PRODUCED, "producer", i);
+        }
+        sampled.onEvent(QueueEvent.PRODUCER_STOPPED, "producer", null);
+
+        assertTrue(forwarded.contains(QueueEvent.PRODUCER_STOPPED),
+            "Stop events should always be forwarded"
+        );
+        assertTrue(forwarded.size() < 10, "Item events should be sampled");
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SampledEventListener(QueueEventListener.noOp(), 0);
+        }, "Sample rate 0 should not be allowed");
+    }
+}
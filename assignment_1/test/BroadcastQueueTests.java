@@ -0,0 +1,170 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class BroadcastQueueTests {
+    BroadcastQueue<Integer> q;
+
+    @BeforeEach
+    void init() {
+        q = new BroadcastQueue<>(2, 3);
+    }
+
+    @Test
+    @DisplayName("Test for invalid capacity and group count")
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new BroadcastQueue<>(0, 1);
+        }, "Capacity 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new BroadcastQueue<>(1, 0);
+        }, "0 groups should not be allowed");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            q.group(3);
+        }, "Group 3 of 3 should not exist");
+    }
+
+    @Test
+    @DisplayName("Test every group reads every item, in order")
+    void testEveryGroupReadsEveryItem() throws InterruptedException {
+        q.group(0).put(10);
+        q.group(2).put(20);
+
+        for(int i = 0; i < q.groupCount(); i++) {
+            BlockedQueue<Integer> group = q.group(i);
+
+            assertEquals(2, group.size(), group + " should have 2 items");
+            assertEquals(10, group.remove(), group + " should read 10 first");
+            assertEquals(20, group.tryRemove(), group + " should read 20 next");
+            assertNull(group.tryRemove(), group + " should have read all");
+        }
+
+        assertEquals(0, q.size(), "Every group read every item");
+    }
+
+    @Test
+    @DisplayName("Test the slowest group applies backpressure")
+    void testSlowestGroupBlocksProducers() throws InterruptedException {
+        BlockedQueue<Integer> producer = q.group(0);
+
+        assertTrue(producer.tryPut(10), "First item should fit");
+        assertTrue(producer.tryPut(20), "Second item should fit");
+
+        // groups 0 and 1 catch up, group 2 does not
+        q.group(0).drainTo(new ArrayList<>(), 2);
+        q.group(1).drainTo(new ArrayList<>(), 2);
+
+        assertEquals(2, q.size(), "Group 2 is 2 items behind");
+        assertFalse(producer.tryPut(30), "Ring should be full for group 2");
+        assertEquals(1, q.group(0).metrics().getRejectedCount(),
+            "Rejection should be counted"
+        );
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread blocked = new Thread(() -> {
+                try {
+                    producer.put(30);
+                } catch(InterruptedException e) {}
+            });
+            blocked.start();
+            Thread.sleep(100);
+            assertTrue(blocked.isAlive(), "Producer should block");
+
+            assertEquals(10, q.group(2).remove(), "Group 2 reads 10");
+            blocked.join();
+        });
+
+        assertEquals(List.of(20, 30), q.group(2).removeBatch(1, 5, 1,
+            TimeUnit.SECONDS), "Group 2 should read the rest"
+        );
+        assertEquals(List.of(30), q.group(0).removeBatch(1, 5, 1,
+            TimeUnit.SECONDS), "Group 0 should only read the new item"
+        );
+    }
+
+    @Test
+    @DisplayName("Test consumers sharing a group split its items")
+    void testLoadBalancingInsideGroup() {
+        BroadcastQueue<Integer> broadcast = new BroadcastQueue<>(4, 2);
+        List<Integer> indexed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> audited = Collections.synchronizedList(new ArrayList<>());
+
+        List<Consumer<Integer>> indexers = List.of(
+            new Consumer<>(broadcast.group(0), indexed),
+            new Consumer<>(broadcast.group(0), indexed)
+        );
+        Consumer<Integer> auditor = new Consumer<>(broadcast.group(1), audited);
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            for(Consumer<Integer> indexer : indexers) {
+                new Thread(indexer).start();
+            }
+            new Thread(auditor).start();
+
+            broadcast.group(0).putAll(List.of(1, 2, 3, 4, 5, 6));
+            broadcast.closeGracefully();
+
+            for(Consumer<Integer> indexer : indexers) {
+                indexer.completion().get();
+            }
+            auditor.completion().get();
+        });
+
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), audited,
+            "A lone consumer should read every item in order"
+        );
+        assertEquals(6, indexed.size(), "Indexers should read every item");
+        assertEquals(6, new HashSet<>(indexed).size(), "... once");
+        for(Consumer<Integer> indexer : indexers) {
+            assertTrue(indexer.completion().join().getItems() > 0,
+                "Both indexers should get a share"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test close and shutdown")
+    void testCloseAndShutdown() throws InterruptedException {
+        q.group(0).putAll(List.of(10, 20));
+        q.group(0).remove();
+        q.closeGracefully();
+
+        assertFalse(q.isActive(), "Queue should be closed");
+        assertFalse(q.group(1).tryPut(30), "Puts should be refused");
+        assertEquals(10, q.group(1).remove(), "Groups still read queued items");
+        assertEquals(20, q.group(1).remove(), "Groups still read queued items");
+        assertNull(q.group(1).remove(), "then get null");
+        assertTrue(q.group(1).awaitDrained(0, TimeUnit.SECONDS),
+            "Group 1 has read every item"
+        );
+        assertFalse(q.awaitDrained(50, TimeUnit.MILLISECONDS),
+            "Other groups are behind"
+        );
+
+        q.shutdown();
+
+        assertNull(q.group(2).remove(), "remove() returns null on shutdown");
+        List<Integer> recovered = new ArrayList<>();
+        q.group(2).drainTo(recovered, 5);
+        assertEquals(List.of(10, 20), recovered,
+            "drainTo() still recovers a group's items after shutdown"
+        );
+    }
+}
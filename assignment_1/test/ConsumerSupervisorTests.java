@@ -0,0 +1,189 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class ConsumerSupervisorTests {
+    LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(100);
+    List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+
+    ConsumerSupervisor.Builder<Integer> supervise() {
+        return ConsumerSupervisor.supervise(queue,
+            () -> new Consumer<>(queue, destination)
+        ).interval(20, TimeUnit.MILLISECONDS);
+    }
+
+    void putRange(int from, int to) throws InterruptedException {
+        for(int i = from; i < to; i++) {
+            queue.put(i);
+        }
+    }
+
+    static void waitFor(java.util.function.BooleanSupplier condition)
+        throws InterruptedException {
+
+        while(!condition.getAsBoolean()) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Test for invalid settings")
+    void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            ConsumerSupervisor.supervise(null, () -> null);
+        }, "A null queue should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            supervise().workers(0, 2);
+        }, "0 workers should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            supervise().workers(3, 2);
+        }, "max below min should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            supervise().depthThresholds(4, 4);
+        }, "Equal depth thresholds leave no hysteresis");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            supervise().idleThreshold(1.5);
+        }, "An idle share above 1 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            supervise().sustain(0, 1);
+        }, "0 intervals should not be allowed");
+
+        ConsumerSupervisor<Integer> supervisor = supervise().build().start();
+        assertThrows(IllegalStateException.class, () -> {
+            supervisor.start();
+        }, "A supervisor should not start twice");
+        supervisor.close();
+    }
+
+    @Test
+    @DisplayName("Test pool grows under backlog, shrinks when idle, and keeps every item")
+    void testScalesUpAndDown() throws Exception {
+        ConsumerSupervisor<Integer> supervisor = supervise()
+            .workers(1, 3)
+            .depthThresholds(4, 0)
+            .sustain(1, 3)
+            .cooldown(50, TimeUnit.MILLISECONDS)
+            .build()
+            .start();
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            assertEquals(1, supervisor.getWorkerCount(), "Starts with min");
+
+            putRange(0, 40);
+            waitFor(() -> supervisor.getWorkerCount() == 3);
+            assertEquals(2, supervisor.getScaleUpCount(), "Grown up to max");
+
+            waitFor(() -> queue.size() == 0);
+            waitFor(() -> supervisor.getWorkerCount() == 1);
+            assertEquals(2, supervisor.getScaleDownCount(), "Shrunk down to min");
+
+            putRange(40, 45);
+            queue.closeGracefully();
+            assertTrue(supervisor.awaitTermination(5, TimeUnit.SECONDS),
+                "Consumers should drain the queue, then stop"
+            );
+        });
+
+        assertEquals(45, destination.size(), "Every item should be consumed");
+        assertEquals(45, new HashSet<>(destination).size(), "Only once");
+        assertEquals(3, supervisor.getStats().size(), "3 consumers were started");
+    }
+
+    @Test
+    @DisplayName("Test a single-consumer queue never gets a second consumer")
+    void testSpscSingleConsumer() throws Exception {
+        SpscBlockedQueue<Integer> spsc = new SpscBlockedQueue<>(100);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            ConsumerSupervisor.supervise(spsc, () -> null).workers(1, 2);
+        }, "More than 1 worker should not be allowed on SPSC");
+
+        ConsumerSupervisor<Integer> supervisor = ConsumerSupervisor
+            .supervise(spsc, () -> new Consumer<>(spsc, destination))
+            .interval(20, TimeUnit.MILLISECONDS)
+            .depthThresholds(4, 0)
+            .sustain(1, 1)
+            .cooldown(0, TimeUnit.MILLISECONDS)
+            .build();
+
+        for(int i = 0; i < 20; i++) {
+            spsc.put(i);
+        }
+        supervisor.start();
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread.sleep(200);
+        });
+
+        assertEquals(1, supervisor.getWorkerCount(), "Backlog adds no consumer");
+        assertEquals(0, supervisor.getScaleUpCount(), "The pool never grew");
+        supervisor.close();
+    }
+
+    @Test
+    @DisplayName("Test cool-down limits how often the pool changes")
+    void testCooldown() throws Exception {
+        ConsumerSupervisor<Integer> supervisor = supervise()
+            .workers(1, 4)
+            .depthThresholds(4, 0)
+            .sustain(1, 1)
+            .cooldown(1, TimeUnit.MINUTES)
+            .build();
+
+        putRange(0, 60);
+        supervisor.start();
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            waitFor(() -> supervisor.getWorkerCount() == 2);
+            Thread.sleep(300);
+        });
+
+        assertEquals(1, supervisor.getScaleUpCount(),
+            "Only one change should happen within the cool-down"
+        );
+        supervisor.close();
+    }
+
+    @Test
+    @DisplayName("Test close retires every consumer and leaves items queued")
+    void testClose() throws Exception {
+        ConsumerSupervisor<Integer> supervisor = supervise()
+            .workers(2, 2)
+            .build();
+
+        putRange(0, 20);
+        supervisor.start();
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread.sleep(150);
+            supervisor.close();
+            assertTrue(supervisor.awaitTermination(5, TimeUnit.SECONDS),
+                "Consumers should stop"
+            );
+        });
+
+        assertTrue(queue.isActive(), "Queue should keep running");
+        List<Integer> left = new ArrayList<>();
+        queue.drainTo(left, 20);
+        assertEquals(20, destination.size() + left.size(),
+            "No item should be lost"
+        );
+    }
+}
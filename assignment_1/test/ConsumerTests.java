@@ -7,6 +7,7 @@ import static java.time.Duration.ofSeconds;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 import org.junit.jupiter.api.Test;
@@ -36,6 +37,64 @@ public class ConsumerTests {
         );
     }
 
+    @Test
+    @DisplayName("Consumer should consume in batches in order")
+    void testConsumerBatchMode() throws InterruptedException {
+        consumer = new Consumer<>(sharedQueue, destination, 2);
+
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        sharedQueue.putAll(List.of(10, 20, 30));
+        sharedQueue.put(40);
+
+        // Wait before shutting down so that consumer can consume
+        Thread.sleep(1000);
+
+        sharedQueue.shutdown();
+        consumerThread.join();
+
+        assertEquals(List.of(10, 20, 30, 40), destination,
+            "Correct order should be [10, 20, 30, 40]"
+        );
+    }
+
+    @Test
+    @DisplayName("Consumer should reject invalid batch size")
+    void testConsumerInvalidBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Consumer<>(sharedQueue, destination, 0);
+        }, "Batch size 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Consumer should report events to its listener")
+    void testConsumerEvents() throws InterruptedException {
+        List<QueueEvent> events =
+            Collections.synchronizedList(new ArrayList<>());
+
+        consumer.setEventListener((event, threadName, payload) -> {
+            events.add(event);
+        });
+
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        sharedQueue.put(10);
+        sharedQueue.put(20);
+
+        // Wait before shutting down so that consumer can consume
+        Thread.sleep(500);
+
+        sharedQueue.shutdown();
+        consumerThread.join();
+
+        assertEquals(List.of(QueueEvent.CONSUMED, QueueEvent.CONSUMED,
+            QueueEvent.CONSUMER_STOPPED), events,
+            "Both items should be consumed before the consumer stops"
+        );
+    }
+
     @Nested
     @DisplayName("Consumer thread running")
     class ConsumerRunning {
@@ -116,6 +175,67 @@ public class ConsumerTests {
             );
         }
 
+        @Test
+        @DisplayName("Consumer should retire without losing items")
+        void testConsumerRetires() throws Exception {
+            // blocked on an empty queue: stops at once
+            Thread.sleep(50);
+            consumer.retire();
+            consumerThread.join(500);
+
+            assertFalse(consumerThread.isAlive(), "Consumer should retire");
+            assertTrue(consumer.isRetired(), "Consumer should be retired");
+            assertEquals(0, consumer.completion().get().getItems(),
+                "Retiring should complete normally"
+            );
+            assertTrue(sharedQueue.isActive(), "Queue should keep running");
+
+            // holding an item: hands it to the sink first
+            Consumer<Integer> working = new Consumer<>(sharedQueue, destination);
+            Thread workingThread = new Thread(working);
+            sharedQueue.put(10);
+            sharedQueue.put(20);
+            workingThread.start();
+            Thread.sleep(50);
+            working.retire();
+            workingThread.join(500);
+
+            assertFalse(workingThread.isAlive(), "Consumer should retire");
+            assertEquals(List.of(10), destination, "Taken item should be kept");
+            assertEquals(1, sharedQueue.size(), "Other item should stay queued");
+        }
+
+        @Test
+        @DisplayName("Consumer should not interrupt its sink on retire")
+        void testRetireSparesSink() throws Exception {
+            List<Boolean> interrupted =
+                Collections.synchronizedList(new ArrayList<>());
+            SimpleBlockedQueue<Integer> queue = new SimpleBlockedQueue<>(3);
+            Consumer<Integer> working = new Consumer<>(queue, item -> {
+                try {
+                    Thread.sleep(200);
+                    interrupted.add(false);
+                } catch(InterruptedException e) {
+                    interrupted.add(true);
+                }
+            });
+            Thread workingThread = new Thread(working);
+            queue.put(10);
+            queue.put(20);
+            workingThread.start();
+            Thread.sleep(50);
+            working.retire();
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                workingThread.join();
+            });
+
+            assertEquals(List.of(false), interrupted,
+                "Sink should finish its item uninterrupted"
+            );
+            assertEquals(1, queue.size(), "Other item should stay queued");
+        }
+
         @Test
         @DisplayName("Consumer should stop on interrupt")
         void testConsumerStopsOnInterrupt() throws InterruptedException {
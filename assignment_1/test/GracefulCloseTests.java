@@ -0,0 +1,291 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+
+class GracefulCloseTests {
+    @TempDir
+    Path directory;
+
+    // mapped queues to close after each test
+    List<Closeable> files = new ArrayList<>();
+
+    @AfterEach
+    void close() throws IOException {
+        for(Closeable file : files) {
+            file.close();
+        }
+    }
+
+    /**
+     * Returns a new queue of every kind, holding 4 items, by name
+     */
+    Map<String, BlockedQueue<Integer>> queues() throws IOException {
+        Map<String, BlockedQueue<Integer>> queues = new LinkedHashMap<>();
+
+        for(QueueType type : QueueType.values()) {
+            queues.put(type.name(), type.create(4));
+        }
+
+        queues.put("LANES", new MultiLaneBlockedQueue<Integer>(
+            new int[] {2, 2}, new int[] {1, 1}, i -> i % 2
+        ));
+
+        // 4 records of a 4-byte int, each with a 4-byte length
+        MappedBlockedQueue<Integer> mapped = new MappedBlockedQueue<>(
+            directory.resolve("queue-" + files.size() + ".dat"), 32,
+            RecordCodec.INT
+        );
+        files.add(mapped);
+        queues.put("MAPPED", mapped);
+
+        return queues;
+    }
+
+    @Test
+    @DisplayName("Test closeGracefully refuses puts, but hands queued items out")
+    void testRemainingItemsRemoved() throws Exception {
+        for(Map.Entry<String, BlockedQueue<Integer>> entry : queues().entrySet()) {
+            String name = entry.getKey();
+            BlockedQueue<Integer> q = entry.getValue();
+
+            q.putAll(List.of(1, 2, 3, 4));
+            q.closeGracefully();
+
+            assertFalse(q.isActive(), name + ": queue should be inactive");
+            assertFalse(q.tryPut(5), name + ": tryPut should be refused");
+            assertFalse(q.offer(5, 10, TimeUnit.MILLISECONDS),
+                name + ": offer should be refused"
+            );
+            assertEquals(4, q.size(), name + ": no item should be dropped");
+
+            List<Integer> removed = new ArrayList<>();
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                removed.add(q.remove());
+                removed.add(q.poll(1, TimeUnit.SECONDS));
+                removed.add(q.tryRemove());
+                removed.addAll(q.removeBatch(2, 2, 1, TimeUnit.SECONDS));
+
+                assertNull(q.remove(), name + ": remove should return null");
+                assertNull(q.poll(1, TimeUnit.SECONDS),
+                    name + ": poll should return null"
+                );
+                assertNull(q.removeBatch(1, 2, 1, TimeUnit.SECONDS),
+                    name + ": removeBatch should return null"
+                );
+            }, name + ": removals should not block once the queue is empty");
+
+            Collections.sort(removed);
+            assertEquals(List.of(1, 2, 3, 4), removed,
+                name + ": every queued item should be removed"
+            );
+            assertEquals(0, q.metrics().getRejectedCount(),
+                name + ": refused puts should not count as rejected"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test closeGracefully wakes blocked producers and consumers")
+    void testWakesBlockedThreads() throws Exception {
+        for(Map.Entry<String, BlockedQueue<Integer>> entry : queues().entrySet()) {
+            String name = entry.getKey();
+            BlockedQueue<Integer> empty = entry.getValue();
+            AtomicReference<Integer> removed = new AtomicReference<>(-1);
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    removed.set(empty.remove());
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                consumer.start();
+                Thread.sleep(50);
+                empty.closeGracefully();
+                consumer.join();
+            }, name + ": blocked consumer should wake");
+            assertNull(removed.get(), name + ": empty queue should return null");
+        }
+
+        for(Map.Entry<String, BlockedQueue<Integer>> entry : queues().entrySet()) {
+            String name = entry.getKey();
+            BlockedQueue<Integer> full = entry.getValue();
+            full.putAll(List.of(0, 1, 2, 3));
+
+            Thread producer = new Thread(() -> {
+                try {
+                    full.put(8);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                producer.start();
+                Thread.sleep(50);
+                full.closeGracefully();
+                producer.join();
+            }, name + ": blocked producer should return");
+            assertEquals(4, full.drainTo(new ArrayList<>(), 10),
+                name + ": blocked item should not be inserted"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test awaitDrained waits for consumers to empty the queue")
+    void testAwaitDrained() throws Exception {
+        for(Map.Entry<String, BlockedQueue<Integer>> entry : queues().entrySet()) {
+            String name = entry.getKey();
+            BlockedQueue<Integer> q = entry.getValue();
+
+            assertTrue(q.awaitDrained(0, TimeUnit.SECONDS),
+                name + ": an empty queue is drained"
+            );
+
+            q.putAll(List.of(1, 2, 3));
+            assertFalse(q.awaitDrained(20, TimeUnit.MILLISECONDS),
+                name + ": awaitDrained should time out without consumers"
+            );
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    while(q.remove() != null) {
+                        Thread.sleep(20);
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                consumer.start();
+                q.closeGracefully();
+
+                assertTrue(q.awaitDrained(5, TimeUnit.SECONDS),
+                    name + ": queue should be drained"
+                );
+                consumer.join();
+            }, name + ": consumer should drain the queue, then stop");
+            assertEquals(3, q.metrics().getDequeuedCount(),
+                name + ": every item should be removed"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test shutdown ends awaitDrained and drops queued items")
+    void testShutdownEndsDrain() throws Exception {
+        for(Map.Entry<String, BlockedQueue<Integer>> entry : queues().entrySet()) {
+            String name = entry.getKey();
+            BlockedQueue<Integer> q = entry.getValue();
+
+            q.putAll(List.of(1, 2));
+            q.closeGracefully();
+
+            Thread stopper = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                q.shutdown();
+            });
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                stopper.start();
+                assertFalse(q.awaitDrained(1, TimeUnit.MINUTES),
+                    name + ": shutdown should end awaitDrained"
+                );
+                stopper.join();
+            });
+
+            assertNull(q.tryRemove(), name + ": shutdown stops removals");
+            assertEquals(2, q.drainTo(new ArrayList<>(), 10),
+                name + ": drainTo should still recover the items"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test completion futures of Producer and Consumer")
+    void testCompletionFutures() throws Exception {
+        LockBlockedQueue<Integer> q = new LockBlockedQueue<>(4);
+        List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+
+        Producer<Integer> producer = new Producer<>(q, List.of(1, 2, 3));
+        List<Consumer<Integer>> consumers = List.of(
+            new Consumer<>(q, destination),
+            new Consumer<>(q, destination, 2)
+        );
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            new Thread(producer).start();
+            for(Consumer<Integer> consumer : consumers) {
+                new Thread(consumer).start();
+            }
+
+            assertEquals(3, producer.completion().get().getItems(),
+                "Producer should complete with its stats"
+            );
+            q.closeGracefully();
+
+            long consumed = 0;
+            for(Consumer<Integer> consumer : consumers) {
+                consumed += consumer.completion().get().getItems();
+            }
+            assertEquals(3, consumed, "Consumers should complete with their stats");
+        });
+
+        Collections.sort(destination);
+        assertEquals(List.of(1, 2, 3), destination, "No item should be lost");
+
+        // an interrupted consumer completes exceptionally
+        Consumer<Integer> blocked = new Consumer<>(new LockBlockedQueue<>(1),
+            new ArrayList<>()
+        );
+        Thread thread = new Thread(blocked);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            thread.start();
+            Thread.sleep(50);
+            thread.interrupt();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> {
+                blocked.completion().get();
+            }, "Interrupted consumer should complete exceptionally");
+            assertTrue(e.getCause() instanceof InterruptedException,
+                "Cause should be the interrupt"
+            );
+        });
+
+        CompletableFuture<StageStats> pending =
+            new Consumer<>(q, destination).completion();
+        assertFalse(pending.isDone(), "A consumer not run should not complete");
+    }
+}
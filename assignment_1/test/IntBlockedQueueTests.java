@@ -0,0 +1,131 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class IntBlockedQueueTests {
+    IntBlockedQueue q;
+
+    @BeforeEach
+    void init() {
+        q = new IntBlockedQueue(4);
+    }
+
+    @Test
+    @DisplayName("Test for invalid capacity")
+    void testConstructorInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new IntBlockedQueue(0);
+        }, "Capacity 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test values come out in order across the array end")
+    void testOrderAcrossWrap() throws InterruptedException {
+        int[] out = new int[4];
+
+        q.putAll(new int[] {1, 2, 3}, 0, 3);
+        assertEquals(2, q.removeInto(out, 0, 2), "2 values should be removed");
+
+        // tail wraps around the end of the array
+        q.putAll(new int[] {4, 5, 6}, 0, 3);
+        assertEquals(4, q.removeInto(out, 0, 4), "4 values should be removed");
+
+        assertArrayEquals(new int[] {3, 4, 5, 6}, out,
+            "Correct order should be [3, 4, 5, 6]"
+        );
+    }
+
+    @Test
+    @DisplayName("Test tryPut and drainTo")
+    void testTryPutAndDrain() {
+        for(int i = 0; i < 4; i++) {
+            assertTrue(q.tryPut(i), "tryPut should succeed with space");
+        }
+        assertFalse(q.tryPut(4), "tryPut should fail on a full queue");
+
+        q.shutdown();
+        int[] out = new int[6];
+
+        assertEquals(4, q.drainTo(out, 2, 4), "drainTo works after shutdown");
+        assertArrayEquals(new int[] {0, 0, 0, 1, 2, 3}, out,
+            "Values should be written from the offset"
+        );
+    }
+
+    @Test
+    @DisplayName("Test shutdown is reported through return values")
+    void testShutdown() {
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread consumer = new Thread(() -> {
+                try {
+                    assertEquals(-1, q.removeInto(new int[1], 0, 1),
+                        "removeInto should return -1 upon shutdown"
+                    );
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+            Thread.sleep(100);
+            q.shutdown();
+            consumer.join();
+
+            assertFalse(q.put(1), "put should return false after shutdown");
+        });
+    }
+
+    @Test
+    @DisplayName("Test invalid ranges")
+    void testInvalidRanges() {
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            q.putAll(new int[2], 1, 2);
+        }, "Range past the end of the array should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            q.removeInto(new int[2], 0, 0);
+        }, "maxItems 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test producers and consumers move every value")
+    void testProducerConsumer() {
+        int[] data = new int[10_000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = i;
+        }
+
+        AtomicLong sum = new AtomicLong();
+        IntProducer producer = new IntProducer(q, data, 16);
+        IntConsumer consumer = new IntConsumer(q, sum::addAndGet, 8);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread consumerThread = new Thread(consumer);
+            consumerThread.start();
+            producer.run();
+
+            while(consumer.getStats().getItems() < data.length) {
+                Thread.sleep(10);
+            }
+
+            q.shutdown();
+            consumerThread.join();
+        });
+
+        assertEquals(10_000L * 9_999 / 2, sum.get(),
+            "Every value should be consumed once"
+        );
+        assertEquals(10_000, q.metrics().getDequeuedCount(),
+            "Metrics should count every value"
+        );
+    }
+}
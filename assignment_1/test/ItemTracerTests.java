@@ -0,0 +1,219 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class ItemTracerTests {
+    static final long MILLI = 1_000_000;
+
+    /**
+     * Both queues that can be traced, created with the given tracer
+     */
+    static final List<Function<ItemTracer, BlockedQueue<Integer>>> QUEUES =
+        List.of(
+            tracer -> new SimpleBlockedQueue<>(8, tracer),
+            tracer -> new LockBlockedQueue<>(8, false, tracer)
+        );
+
+    @Test
+    @DisplayName("Test for invalid sample rate")
+    void testInvalidSampleRate() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ItemTracer(0);
+        }, "Sample rate of 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test residency follows each item through every removal")
+    void testResidency() throws InterruptedException {
+        for(Function<ItemTracer, BlockedQueue<Integer>> factory : QUEUES) {
+            ItemTracer tracer = new ItemTracer();
+            BlockedQueue<Integer> q = factory.apply(tracer);
+            String name = q.getClass().getSimpleName();
+
+            q.put(1);
+            Thread.sleep(30);
+            q.put(2);
+            q.remove();
+            q.remove();
+
+            LatencyHistogram residency = tracer.getResidency();
+            assertEquals(2, residency.getCount(), name + ": both items");
+            assertTrue(residency.getMax() >= 30 * MILLI,
+                name + ": the first item waited 30ms"
+            );
+            assertTrue(residency.getValueAtPercentile(50) < 30 * MILLI,
+                name + ": the second item did not wait, so stamps stay in order"
+            );
+
+            // wrap around the stamp ring through every insert and removal
+            for(int i = 0; i < 5; i++) {
+                q.putAll(List.of(1, 2, 3));
+                assertTrue(q.offer(4, 1, TimeUnit.SECONDS), name + ": offer");
+                assertTrue(q.tryPut(5), name + ": tryPut");
+
+                q.drainTo(new ArrayList<>(), 2);
+                q.removeBatch(1, 2, 1, TimeUnit.SECONDS);
+                q.poll(1, TimeUnit.SECONDS);
+            }
+
+            assertEquals(2 + 5 * 5, residency.getCount(),
+                name + ": every removed item should be recorded"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test stamps grow with the queue and shrink once it empties")
+    void testStampsGrow() throws InterruptedException {
+        List<Function<ItemTracer, BlockedQueue<Integer>>> large = List.of(
+            tracer -> new SimpleBlockedQueue<>(5_000, tracer),
+            tracer -> new LockBlockedQueue<>(5_000, false, tracer)
+        );
+
+        for(Function<ItemTracer, BlockedQueue<Integer>> factory : large) {
+            ItemTracer tracer = new ItemTracer();
+            BlockedQueue<Integer> q = factory.apply(tracer);
+            String name = q.getClass().getSimpleName();
+
+            for(int round = 0; round < 2; round++) {
+                for(int i = 0; i < 3_000; i++) {
+                    q.put(i);
+                }
+                Thread.sleep(20);
+                q.drainTo(new ArrayList<>(), 3_000);
+            }
+
+            LatencyHistogram residency = tracer.getResidency();
+            assertEquals(6_000, residency.getCount(), name + ": every item");
+            assertTrue(residency.getValueAtPercentile(1) >= 20 * MILLI,
+                name + ": stamps should stay with their items while growing"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test only about 1 in sampleRate items are recorded")
+    void testSampling() throws InterruptedException {
+        ItemTracer tracer = new ItemTracer(10);
+        LockBlockedQueue<Integer> q = new LockBlockedQueue<>(8, false, tracer);
+
+        for(int i = 0; i < 10_000; i++) {
+            q.put(i);
+            q.remove();
+        }
+
+        long sampled = tracer.getResidency().getCount();
+        assertTrue(sampled > 500 && sampled < 1_500,
+            "About 1000 items should be sampled, but " + sampled + " were"
+        );
+        assertEquals(10, tracer.getSampleRate(), "Sample rate");
+    }
+
+    @Test
+    @DisplayName("Test Consumer records its service time per item")
+    void testServiceTime() {
+        ItemTracer tracer = new ItemTracer();
+        // one queue each, so neither consumer can take all the items
+        LockBlockedQueue<Integer> q1 = new LockBlockedQueue<>(8, false, tracer);
+        LockBlockedQueue<Integer> q2 = new LockBlockedQueue<>(8, false, tracer);
+
+        Consumer<Integer> single = new Consumer<>(q1, new ArrayList<>());
+        Consumer<Integer> batched = new Consumer<>(q2, new ArrayList<>(), 4);
+        single.setTracer(tracer);
+        batched.setTracer(tracer);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            q1.putAll(List.of(1, 2));
+            q2.putAll(List.of(3, 4, 5, 6));
+            new Thread(single).start();
+            new Thread(batched).start();
+
+            q1.closeGracefully();
+            q2.closeGracefully();
+            single.completion().get();
+            batched.completion().get();
+        });
+
+        LatencyHistogram service = tracer.getService();
+        assertTrue(service.getCount() >= 2,
+            "Each consumer should record at least one service time"
+        );
+        assertTrue(service.getValueAtPercentile(100) >= 25 * MILLI,
+            "Service time includes the simulated work"
+        );
+        assertEquals(6, tracer.getResidency().getCount(),
+            "Every item should have a residency"
+        );
+    }
+
+    @Test
+    @DisplayName("Test intervals start empty, while totals keep accumulating")
+    void testIntervals() throws InterruptedException {
+        ItemTracer tracer = new ItemTracer();
+        SimpleBlockedQueue<Integer> q = new SimpleBlockedQueue<>(4, tracer);
+
+        q.put(1);
+        q.remove();
+        tracer.recordService(5 * MILLI);
+
+        ItemTracer.Interval interval = tracer.nextInterval();
+        assertEquals(1, interval.getResidency().getCount(), "Interval residency");
+        assertEquals(1, interval.getService().getCount(), "Interval service");
+        assertTrue(interval.getNanos() > 0, "Interval should have a length");
+
+        q.put(2);
+        q.remove();
+
+        interval = tracer.nextInterval();
+        assertEquals(1, interval.getResidency().getCount(),
+            "A new interval should only hold new values"
+        );
+        assertEquals(0, interval.getService().getCount(),
+            "A new interval should only hold new values"
+        );
+        assertEquals(2, tracer.getResidency().getCount(), "Total residency");
+    }
+
+    @Test
+    @DisplayName("Test reporter prints every period, and once more on close")
+    void testReporter() {
+        ItemTracer tracer = new ItemTracer();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ItemTraceReporter(tracer, 0, TimeUnit.SECONDS, out);
+        }, "A period of 0 should not be allowed");
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            ItemTraceReporter reporter =
+                new ItemTraceReporter(tracer, 50, TimeUnit.MILLISECONDS, out);
+
+            tracer.recordService(2 * MILLI);
+            Thread.sleep(180);
+            reporter.close();
+        });
+
+        String[] lines = bytes.toString().split("\n");
+        assertTrue(lines.length >= 3,
+            "Expected a line per period plus the last one: " + bytes
+        );
+        assertTrue(lines[0].startsWith("[trace "), "Line format: " + lines[0]);
+        assertTrue(bytes.toString().contains("service n=1 "),
+            "The recorded service time should be reported: " + bytes
+        );
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.List;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class LatencyHistogramTests {
+    LatencyHistogram histogram;
+
+    @BeforeEach
+    void init() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    @DisplayName("Test empty histogram")
+    void testEmpty() {
+        assertEquals(0, histogram.getCount(), "Count should be 0");
+        assertEquals(0, histogram.getMax(), "Max should be 0");
+        assertEquals(0, histogram.getValueAtPercentile(99),
+            "Percentiles should be 0"
+        );
+    }
+
+    @Test
+    @DisplayName("Test small values are exact")
+    void testSmallValuesExact() {
+        for(int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount(), "Count should be 100");
+        assertEquals(50, histogram.getValueAtPercentile(50), "p50 should be 50");
+        assertEquals(99, histogram.getValueAtPercentile(99), "p99 should be 99");
+        assertEquals(100, histogram.getMax(), "Max should be 100");
+        assertEquals(50.5, histogram.getMean(), 1e-9, "Mean should be 50.5");
+    }
+
+    @Test
+    @DisplayName("Test large values stay within relative precision")
+    void testLargeValuesPrecision() {
+        long[] values = {1_000, 123_456, 10_000_000, 987_654_321_000L};
+
+        for(long value : values) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(value * 2);
+
+            long p50 = histogram.getValueAtPercentile(50);
+
+            assertTrue(p50 >= value && p50 <= value + value / 64,
+                "p50 " + p50 + " should be within 1/64 of " + value
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test percentiles are capped at the max value")
+    void testPercentileCappedAtMax() {
+        histogram.record(1_000_001);
+
+        assertEquals(1_000_001, histogram.getValueAtPercentile(100),
+            "p100 should equal the max"
+        );
+    }
+
+    @Test
+    @DisplayName("Test concurrent recording counts every value")
+    void testConcurrentRecord() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+
+        for(int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(40_000, histogram.getCount(), "Count should be 40000");
+        assertEquals(9_999, histogram.getMax(), "Max should be 9999");
+    }
+
+    @Test
+    @DisplayName("Test add merges counts and max")
+    void testAdd() {
+        LatencyHistogram other = new LatencyHistogram();
+
+        histogram.record(10);
+        other.record(20);
+        other.record(30);
+        histogram.add(other);
+
+        assertEquals(3, histogram.getCount(), "Count should be 3");
+        assertEquals(30, histogram.getMax(), "Max should be 30");
+        assertEquals(20, histogram.getValueAtPercentile(50), "p50 should be 20");
+    }
+
+    @Test
+    @DisplayName("Test negative values and invalid percentiles")
+    void testInvalidInput() {
+        histogram.record(-5);
+
+        assertEquals(0, histogram.getMax(), "Negative values should record 0");
+        assertThrows(IllegalArgumentException.class, () -> {
+            histogram.getValueAtPercentile(101);
+        }, "Percentile above 100 should not be allowed");
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class LongBlockedQueueTests {
+    LongBlockedQueue q;
+
+    @BeforeEach
+    void init() {
+        q = new LongBlockedQueue(3);
+    }
+
+    @Test
+    @DisplayName("Test values beyond the int range keep their order")
+    void testLargeValuesInOrder() throws InterruptedException {
+        long[] in = {Long.MAX_VALUE, 1L << 40, -7};
+        long[] out = new long[3];
+
+        q.putAll(in, 0, 3);
+        assertFalse(q.tryPut(0), "tryPut should fail on a full queue");
+        assertEquals(3, q.removeInto(out, 0, 3), "3 values should be removed");
+
+        assertArrayEquals(in, out, "Values should come out unchanged");
+    }
+
+    @Test
+    @DisplayName("Test producers and consumers move every value")
+    void testProducerConsumer() {
+        long[] data = new long[5_000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = i + (1L << 32);
+        }
+
+        AtomicLong count = new AtomicLong();
+        LongProducer producer = new LongProducer(q, data);
+        LongConsumer consumer =
+            new LongConsumer(q, value -> count.incrementAndGet(), 4);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread consumerThread = new Thread(consumer);
+            consumerThread.start();
+            producer.run();
+
+            while(count.get() < data.length) {
+                Thread.sleep(10);
+            }
+
+            q.shutdown();
+            consumerThread.join();
+        });
+
+        assertEquals(5_000, count.get(), "Every value should be consumed");
+        assertEquals(5_000, producer.getStats().getItems(),
+            "Producer should count every value"
+        );
+    }
+}
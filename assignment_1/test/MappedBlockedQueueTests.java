@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedBlockedQueueTests {
+    @TempDir
+    Path directory;
+
+    Path file;
+    MappedBlockedQueue<Integer> q;
+
+    @BeforeEach
+    void init() throws IOException {
+        file = directory.resolve("queue.dat");
+        // room for two 4-byte records with their 4-byte lengths
+        q = new MappedBlockedQueue<>(file, 16, RecordCodec.INT);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        q.close();
+    }
+
+    @Test
+    @DisplayName("Test for invalid capacity")
+    void testConstructorInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MappedBlockedQueue<>(directory.resolve("small.dat"), 4,
+                RecordCodec.INT
+            );
+        }, "Capacity of 4 bytes should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test put and remove in order, across the end of the file")
+    void testOrderAcrossWrap() throws InterruptedException {
+        for(int i = 0; i < 10; i++) {
+            q.put(i);
+            q.put(i + 100);
+
+            assertEquals(i, q.remove(), "Data removed should be " + i);
+            assertEquals(i + 100, q.remove(),
+                "Data removed should be " + (i + 100)
+            );
+        }
+
+        assertEquals(0, q.size(), "Size should be 0");
+    }
+
+    @Test
+    @DisplayName("Test put blocks until its record fits")
+    void testPutBlocksWhenFull() throws InterruptedException {
+        q.put(1);
+        q.put(2);
+
+        assertFalse(q.tryPut(3), "tryPut should fail when no record fits");
+        assertFalse(q.offer(3, 10, TimeUnit.MILLISECONDS),
+            "offer should time out when no record fits"
+        );
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    q.put(3);
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+            Thread.sleep(100);
+            assertTrue(producer.isAlive(), "Producer should block");
+
+            assertEquals(1, q.remove(), "Data removed should be 1");
+            producer.join();
+        });
+
+        assertEquals(2, q.size(), "Size should be 2");
+    }
+
+    @Test
+    @DisplayName("Test unconsumed items are recovered on reopen")
+    void testRecovery() throws IOException, InterruptedException {
+        q.put(1);
+        q.put(2);
+        q.remove();
+        q.put(3);
+        q.close();
+
+        q = new MappedBlockedQueue<>(file, 16, RecordCodec.INT);
+
+        assertEquals(2, q.size(), "2 items should be recovered");
+        assertEquals(2, q.remove(), "Data removed should be 2");
+        assertEquals(3, q.remove(), "Data removed should be 3");
+    }
+
+    @Test
+    @DisplayName("Test items written before a crash are recovered")
+    void testRecoveryWithoutClose() throws IOException, InterruptedException {
+        q.put(7);
+
+        // a second mapping sees the first one's writes without close()
+        MappedBlockedQueue<Integer> reopened =
+            new MappedBlockedQueue<>(file, 16, RecordCodec.INT);
+        try {
+            assertEquals(7, reopened.tryRemove(), "Item should be recovered");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * INT codec whose decode() fails on 13, like a corrupt record
+     */
+    static final RecordCodec<Integer> FAILS_ON_13 = new RecordCodec<>() {
+        @Override
+        public int maxEncodedSize(Integer value) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer value, ByteBuffer out) {
+            out.putInt(value);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer in) {
+            int value = in.getInt();
+            if(value == 13) throw new IllegalArgumentException("corrupt");
+
+            return value;
+        }
+    };
+
+    @Test
+    @DisplayName("Test a record that fails to decode is skipped, also after reopen")
+    void testCorruptRecordSkipped() throws IOException, InterruptedException {
+        Path corrupt = directory.resolve("corrupt.dat");
+        MappedBlockedQueue<Integer> queue =
+            new MappedBlockedQueue<>(corrupt, 64, FAILS_ON_13);
+
+        try {
+            queue.putAll(List.of(1, 13, 2, 13, 3));
+
+            assertEquals(List.of(1), queue.removeBatch(1, 5, 0,
+                TimeUnit.SECONDS), "A batch stops before the corrupt record"
+            );
+
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> queue.remove(), "The corrupt record should be reported"
+            );
+            assertTrue(e.getMessage().contains("position 8"),
+                "The message should name the skipped record's position"
+            );
+            assertEquals(2, queue.remove(), "The next record should follow");
+            assertEquals(2, queue.size(), "13 and 3 are left");
+        } finally {
+            queue.close();
+        }
+
+        MappedBlockedQueue<Integer> reopened =
+            new MappedBlockedQueue<>(corrupt, 64, FAILS_ON_13);
+        try {
+            assertThrows(IllegalStateException.class, () -> reopened.poll(0,
+                TimeUnit.SECONDS), "The second corrupt record is reported once"
+            );
+
+            List<Integer> rest = new ArrayList<>();
+            assertEquals(1, reopened.drainTo(rest, 5), "1 item is left");
+            assertEquals(List.of(3), rest, "The queue should move on");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test reopening with another capacity or file")
+    void testReopenMismatch() throws IOException {
+        Files.write(directory.resolve("other.dat"), new byte[128]);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MappedBlockedQueue<>(file, 32, RecordCodec.INT);
+        }, "Capacity must match the existing file");
+
+        assertThrows(IllegalStateException.class, () -> {
+            new MappedBlockedQueue<>(directory.resolve("other.dat"), 16,
+                RecordCodec.INT
+            );
+        }, "A file without a queue header should not be opened");
+    }
+
+    @Test
+    @DisplayName("Test variable-length string records")
+    void testStrings() throws IOException, InterruptedException {
+        MappedBlockedQueue<String> strings = new MappedBlockedQueue<>(
+            directory.resolve("strings.dat"), 64, RecordCodec.STRING
+        );
+
+        try {
+            List<String> sent = new ArrayList<>();
+            List<String> received = new ArrayList<>();
+
+            // enough rounds for records to wrap around the end of the file
+            for(int round = 0; round < 5; round++) {
+                for(String value
+                    : List.of("a", "h\u00e9llo", "", "w\u00f6rld" + round)) {
+
+                    sent.add(value);
+                    strings.put(value);
+                    received.add(strings.remove());
+                }
+            }
+
+            assertEquals(sent, received, "Strings should round-trip");
+            assertThrows(IllegalArgumentException.class, () -> {
+                strings.put("x".repeat(30));
+            }, "A record larger than the file should not be allowed");
+        } finally {
+            strings.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test concurrent producers and consumers move every item")
+    void testConcurrent() {
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for(int p = 0; p < 2; p++) {
+            int first = p * 1_000;
+
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = first; i < first + 1_000; i++) {
+                        q.put(i);
+                    }
+                } catch(InterruptedException e) {}
+            }));
+
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < 1_000; i++) {
+                        consumed.add(q.remove());
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            threads.forEach(Thread::start);
+            for(Thread t : threads) {
+                t.join();
+            }
+        });
+
+        List<Integer> sorted = new ArrayList<>(consumed);
+        Collections.sort(sorted);
+
+        assertEquals(2_000, sorted.size(), "Every item should be consumed");
+        for(int i = 0; i < 2_000; i++) {
+            assertEquals(i, sorted.get(i), "Item " + i + " should appear once");
+        }
+    }
+
+    @Test
+    @DisplayName("Test shutdown keeps items in the file")
+    void testShutdown() throws InterruptedException {
+        q.put(1);
+        q.shutdown();
+
+        assertNull(q.remove(), "remove should return null upon shutdown");
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, q.drainTo(drained, 5), "drainTo works after shutdown");
+        assertEquals(List.of(1), drained, "Drained item should be 1");
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class MultiLaneBlockedQueueTests {
+    // negative items are urgent (lane 0), the rest are bulk (lane 1)
+    MultiLaneBlockedQueue<Integer> q;
+
+    @BeforeEach
+    void init() {
+        q = new MultiLaneBlockedQueue<>(new int[] {2, 3}, new int[] {3, 1},
+            i -> i < 0 ? 0 : 1
+        );
+    }
+
+    @Test
+    @DisplayName("Test for invalid lanes")
+    void testConstructorInvalidLanes() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiLaneBlockedQueue<Integer>(new int[0], new int[0], i -> 0);
+        }, "No lanes should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiLaneBlockedQueue<Integer>(new int[] {1, 1}, new int[] {1},
+                i -> 0
+            );
+        }, "Mismatched capacities and weights should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiLaneBlockedQueue<Integer>(new int[] {1, 0}, new int[] {1, 1},
+                i -> 0
+            );
+        }, "A lane capacity of 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiLaneBlockedQueue<Integer>(new int[] {1}, new int[] {0},
+                i -> 0
+            );
+        }, "A lane weight of 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiLaneBlockedQueue<Integer>(new int[] {1}, new int[] {1}, null);
+        }, "A null lane selector should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test for a lane out of range")
+    void testLaneOutOfRange() {
+        MultiLaneBlockedQueue<Integer> queue = new MultiLaneBlockedQueue<>(
+            new int[] {1, 1}, new int[] {1, 1}, i -> i
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            queue.tryPut(2);
+        }, "Lane 2 should not be allowed with 2 lanes");
+        assertEquals(0, queue.size(), "Nothing should be inserted");
+    }
+
+    @Test
+    @DisplayName("Test every lane has its own capacity")
+    void testPerLaneCapacity() {
+        assertTrue(q.tryPut(1), "1st bulk item should fit");
+        assertTrue(q.tryPut(2), "2nd bulk item should fit");
+        assertTrue(q.tryPut(3), "3rd bulk item should fit");
+        assertFalse(q.tryPut(4), "4th bulk item should not fit");
+
+        assertTrue(q.tryPut(-1), "Urgent item should fit while bulk is full");
+        assertTrue(q.tryPut(-2), "2nd urgent item should fit");
+        assertFalse(q.tryPut(-3), "3rd urgent item should not fit");
+
+        assertEquals(5, q.size(), "Size should be 5");
+        assertEquals(2, q.laneSize(0), "Lane 0 should hold 2 items");
+        assertEquals(3, q.laneSize(1), "Lane 1 should hold 3 items");
+        assertEquals(2, q.metrics().getRejectedCount(),
+            "Both full lanes should count a rejection"
+        );
+    }
+
+    @Test
+    @DisplayName("Test removal follows the lane weights without starving a lane")
+    void testWeightedFairRemoval() throws InterruptedException {
+        MultiLaneBlockedQueue<Integer> queue = new MultiLaneBlockedQueue<>(
+            new int[] {30, 10}, new int[] {3, 1}, i -> i < 0 ? 0 : 1
+        );
+
+        for(int i = 1; i <= 30; i++) {
+            queue.put(-i);
+        }
+        for(int i = 1; i <= 10; i++) {
+            queue.put(i);
+        }
+
+        List<Integer> removed = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            removed.add(queue.remove());
+        }
+
+        assertEquals(List.of(-1, -2, 1, -3, -4, -5, 2, -6), removed.subList(0, 8),
+            "Lanes should interleave 3 to 1, in order within each lane"
+        );
+        assertEquals(15, queue.laneDequeuedCount(0), "Lane 0 should get 15");
+        assertEquals(5, queue.laneDequeuedCount(1), "Lane 1 should get 5");
+
+        List<Integer> drained = new ArrayList<>();
+        queue.drainTo(drained, 100);
+        assertEquals(20, drained.size(), "drainTo should empty every lane");
+        assertEquals(0, queue.size(), "Queue should be empty");
+    }
+
+    @Test
+    @DisplayName("Test a full bulk lane does not block urgent producers")
+    void testBackpressurePerLane() throws InterruptedException {
+        q.putAll(List.of(1, 2, 3));
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread bulk = new Thread(() -> {
+                try {
+                    q.put(4);
+                } catch(InterruptedException e) {}
+            });
+
+            bulk.start();
+            Thread.sleep(100);
+            assertTrue(bulk.isAlive(), "Bulk producer should block");
+
+            q.put(-1);
+            assertEquals(-1, q.remove(), "Urgent item should be removed first");
+            assertTrue(bulk.isAlive(), "Bulk producer should still block");
+
+            assertEquals(1, q.remove(), "Bulk item 1 should be removed next");
+            bulk.join();
+        });
+
+        assertEquals(List.of(2, 3, 4),
+            q.removeBatch(1, 10, 1, TimeUnit.SECONDS),
+            "Bulk lane should hold 2, 3, 4"
+        );
+    }
+
+    @Test
+    @DisplayName("Test shutdown wakes blocked threads and still allows drainTo")
+    void testShutdown() throws InterruptedException {
+        q.putAll(List.of(1, 2, 3));
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    q.put(4);
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+            Thread.sleep(100);
+            q.shutdown();
+            producer.join();
+        });
+
+        assertFalse(q.isActive(), "Queue should be inactive");
+        assertNull(q.tryRemove(), "tryRemove should return null upon shutdown");
+        assertNull(q.poll(10, TimeUnit.MILLISECONDS),
+            "poll should return null upon shutdown"
+        );
+
+        List<Integer> drained = new ArrayList<>();
+        q.drainTo(drained, 10);
+        assertEquals(List.of(1, 2, 3), drained, "drainTo should work after shutdown");
+    }
+
+    @Test
+    @DisplayName("Test Producer and Consumer run unchanged over the lanes")
+    void testProducerConsumer() throws InterruptedException {
+        List<Integer> urgent = new ArrayList<>();
+        List<Integer> bulk = new ArrayList<>();
+        for(int i = 1; i <= 8; i++) {
+            urgent.add(-i);
+        }
+        for(int i = 1; i <= 16; i++) {
+            bulk.add(i);
+        }
+
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        Thread urgentProducer = new Thread(new Producer<>(q, urgent));
+        Thread bulkProducer = new Thread(new Producer<>(q, bulk, 8));
+        Thread consumer = new Thread(new Consumer<>(q, consumed, 4));
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            consumer.start();
+            urgentProducer.start();
+            bulkProducer.start();
+            urgentProducer.join();
+            bulkProducer.join();
+
+            while(q.size() > 0) {
+                Thread.sleep(10);
+            }
+            q.shutdown();
+            consumer.join();
+        });
+
+        assertEquals(24, consumed.size(), "Every item should be consumed");
+
+        int lastUrgent = 0;
+        int lastBulk = 0;
+        for(int item : consumed) {
+            if(item < 0) {
+                assertEquals(lastUrgent - 1, item, "Urgent items should be in order");
+                lastUrgent = item;
+            } else {
+                assertEquals(lastBulk + 1, item, "Bulk items should be in order");
+                lastBulk = item;
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class PipelineTests {
+    static List<Integer> range(int count) {
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            items.add(i);
+        }
+
+        return items;
+    }
+
+    /**
+     * Sleeps for up to 200 microseconds, so parallel workers finish out
+     * of order
+     */
+    static void jitter() {
+        try {
+            TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(200));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("Test for invalid builder arguments")
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(null);
+        }, "A null source should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(range(1)).map("double", 0, i -> i * 2);
+        }, "Parallelism of 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(range(1)).map("a", 1, i -> i).map("a", 1, i -> i);
+        }, "Duplicate stage names should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(range(1)).capacity(0);
+        }, "Capacity of 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(range(1)).queueType(QueueType.SHARDED);
+        }, "A queue type without FIFO order should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            Pipeline.from(range(1)).queueType(QueueType.SPSC)
+                .map("double", 2, i -> i * 2).to(new ArrayList<>());
+        }, "SPSC should not be allowed between parallel stages");
+    }
+
+    @Test
+    @DisplayName("Test ordered mode keeps source order across parallel stages")
+    void testOrdered() {
+        List<String> destination = new ArrayList<>();
+        Pipeline<String> pipeline = Pipeline.from(range(2_000))
+            .map("square", 4, i -> {
+                jitter();
+                return i * i;
+            })
+            .map("format", 3, i -> "#" + i)
+            .capacity(8)
+            .ordered()
+            .to(destination);
+
+        assertTimeoutPreemptively(ofSeconds(20), () -> {
+            pipeline.run();
+        });
+
+        assertTrue(pipeline.isDone(), "Pipeline should be done");
+        assertEquals(2_000, destination.size(), "Every item should arrive");
+        for(int i = 0; i < 2_000; i++) {
+            assertEquals("#" + i * i, destination.get(i),
+                "Item " + i + " should be in source order"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test unordered mode delivers every item once")
+    void testUnordered() {
+        for(QueueType type : new QueueType[] {QueueType.LOCK, QueueType.RING}) {
+            List<Integer> destination = new ArrayList<>();
+            Pipeline<Integer> pipeline = Pipeline.from(range(5_000))
+                .map("increment", 4, i -> i + 1)
+                .map("negate", 2, i -> -i)
+                .queueType(type)
+                .capacity(16)
+                .to(destination);
+
+            assertTimeoutPreemptively(ofSeconds(20), () -> {
+                pipeline.run();
+            }, type + ": pipeline should drain");
+
+            List<Integer> sorted = new ArrayList<>(destination);
+            Collections.sort(sorted);
+            for(int i = 0; i < 5_000; i++) {
+                assertEquals(-5_000 + i, sorted.get(i),
+                    type + ": item " + (-5_000 + i) + " should arrive once"
+                );
+            }
+
+            Map<String, List<StageStats>> stats = pipeline.getStats();
+            assertEquals(List.of("source", "increment", "negate", "sink"),
+                new ArrayList<>(stats.keySet()), "Stats should be in order"
+            );
+            assertEquals(4, stats.get("increment").size(),
+                "increment should run on 4 threads"
+            );
+            assertEquals(5_000, stats.get("sink").get(0).getItems(),
+                "Sink should count every item"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test a slow stage blocks the source through every queue")
+    void testBackpressure() throws InterruptedException {
+        AtomicInteger pulled = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Iterable<Integer> source = () -> new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return pulled.get() < 1_000;
+            }
+
+            @Override
+            public Integer next() {
+                return pulled.getAndIncrement();
+            }
+        };
+
+        List<Integer> destination = new ArrayList<>();
+        Pipeline<Integer> pipeline = Pipeline.from(source)
+            .map("identity", 2, i -> i)
+            .map("slow", 1, i -> {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return i;
+            })
+            .capacity(4)
+            .to(destination)
+            .start();
+
+        Thread.sleep(200);
+
+        // 2 queues of 4 before the slow stage, 2 items held by "identity",
+        // 1 by "slow", and 1 held by the blocked source
+        assertTrue(pulled.get() <= 4 + 4 + 2 + 1 + 1,
+            "Source should block, but pulled " + pulled.get() + " items"
+        );
+        assertFalse(pipeline.isDone(), "Pipeline should still run");
+
+        release.countDown();
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            pipeline.await();
+        });
+        assertEquals(1_000, destination.size(), "Every item should arrive");
+    }
+
+    @Test
+    @DisplayName("Test a failing stage stops the pipeline with its exception")
+    void testFailure() {
+        List<Integer> destination = new ArrayList<>();
+        Pipeline<Integer> pipeline = Pipeline.from(range(10_000))
+            .map("check", 2, i -> {
+                if(i == 50) throw new IllegalStateException("bad item");
+                return i;
+            })
+            .to(destination);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> {
+                pipeline.run();
+            }, "run should throw ExecutionException");
+
+            assertEquals("bad item", e.getCause().getMessage(),
+                "Cause should be the stage's exception"
+            );
+        });
+
+        assertTrue(pipeline.isDone(), "Every stage should stop");
+    }
+
+    @Test
+    @DisplayName("Test a source failing at once does not break start()")
+    void testFailureDuringStart() {
+        Iterable<Integer> failing = () -> {
+            throw new IllegalStateException("no input");
+        };
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            for(int run = 0; run < 20; run++) {
+                Pipeline<Integer> pipeline = Pipeline.from(failing)
+                    .map("first", 8, i -> i)
+                    .map("second", 8, i -> i)
+                    .to(new ArrayList<>());
+
+                ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> pipeline.run(),
+                    "run should throw ExecutionException, not reject stages"
+                );
+                assertEquals("no input", e.getCause().getMessage(),
+                    "Cause should be the source's exception"
+                );
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Test cancel stops an endless pipeline")
+    void testCancel() throws InterruptedException {
+        Iterable<Integer> endless = () -> new Iterator<Integer>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return next++;
+            }
+        };
+
+        Pipeline<Integer> pipeline = Pipeline.from(endless)
+            .map("identity", 2, i -> i)
+            .ordered()
+            .to(new ArrayList<>())
+            .start();
+
+        Thread.sleep(100);
+        pipeline.cancel();
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            assertThrows(CancellationException.class, () -> {
+                pipeline.await();
+            }, "await should throw CancellationException");
+        });
+
+        assertThrows(IllegalStateException.class, () -> {
+            pipeline.start();
+        }, "A pipeline should not start twice");
+    }
+}
@@ -1,10 +1,13 @@
 import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static java.time.Duration.ofSeconds;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 import org.junit.jupiter.api.Test;
@@ -64,6 +67,141 @@ public class ProducerTests {
         });
     }
 
+    @Test
+    @DisplayName("Producer should produce in batches in order")
+    void testProducerBatchMode() throws InterruptedException {
+        sharedQueue = new SimpleBlockedQueue<>(5);
+        producer = new Producer<>(sharedQueue, List.of(1, 2, 3, 4, 5), 2);
+
+        Thread producerThread = new Thread(producer);
+        producerThread.start();
+        producerThread.join(1000);
+
+        assertEquals(5, sharedQueue.size(), "Size of queue should be 5");
+        for(int i = 1; i <= 5; i++) {
+            assertEquals(i, sharedQueue.remove(), "Data removed should be " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("Producer should reject invalid batch size")
+    void testProducerInvalidBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Producer<>(sharedQueue, dataToProduce, 0);
+        }, "Batch size 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Producer should report events to its listener")
+    void testProducerEvents() {
+        List<QueueEvent> events = new ArrayList<>();
+        List<Object> payloads = new ArrayList<>();
+
+        sharedQueue = new SimpleBlockedQueue<>(2);
+        producer = new Producer<>(sharedQueue, List.of(1, 2, 3),
+            OverflowPolicy.DROP_NEWEST
+        );
+        producer.setEventListener((event, threadName, payload) -> {
+            events.add(event);
+            payloads.add(payload);
+        });
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            producer.run();
+        });
+
+        assertEquals(List.of(QueueEvent.PRODUCED, QueueEvent.PRODUCED,
+            QueueEvent.DROPPED), events,
+            "Two items should be produced, and one dropped"
+        );
+        assertEquals(List.of(1, 2, 3), payloads,
+            "Each event should carry its item"
+        );
+    }
+
+    @Nested
+    @DisplayName("Producer overflow policy")
+    class ProducerOverflowPolicy {
+        @BeforeEach
+        void init() {
+            sharedQueue = new SimpleBlockedQueue<>(2);
+        }
+
+        @Test
+        @DisplayName("Producer should drop newest items on full queue")
+        void testDropNewest() {
+            producer = new Producer<>(sharedQueue, List.of(1, 2, 3, 4),
+                OverflowPolicy.DROP_NEWEST
+            );
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                producer.run();
+            });
+
+            assertEquals(2, producer.getDroppedCount(), "2 items should drop");
+            assertEquals(1, sharedQueue.tryRemove(), "Item 1 should be kept");
+            assertEquals(2, sharedQueue.tryRemove(), "Item 2 should be kept");
+        }
+
+        @Test
+        @DisplayName("Producer should drop oldest items on full queue")
+        void testDropOldest() {
+            producer = new Producer<>(sharedQueue, List.of(1, 2, 3, 4),
+                OverflowPolicy.DROP_OLDEST
+            );
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                producer.run();
+            });
+
+            assertEquals(2, producer.getDroppedCount(), "2 items should drop");
+            assertEquals(3, sharedQueue.tryRemove(), "Item 3 should be kept");
+            assertEquals(4, sharedQueue.tryRemove(), "Item 4 should be kept");
+        }
+
+        @Test
+        @DisplayName("Producer should refuse drop oldest on an SPSC queue")
+        void testDropOldestSpsc() {
+            SpscBlockedQueue<Integer> spsc = new SpscBlockedQueue<>(2);
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                new Producer<>(spsc, dataToProduce, OverflowPolicy.DROP_OLDEST);
+            }, "Evicting would add a second consumer");
+
+            new Producer<>(spsc, dataToProduce, OverflowPolicy.DROP_NEWEST);
+        }
+
+        @Test
+        @DisplayName("Producer should reject items after the offer timeout")
+        void testReject() {
+            List<Integer> rejected = new ArrayList<>();
+
+            producer = new Producer<>(sharedQueue, List.of(1, 2, 3),
+                OverflowPolicy.REJECT, 50, TimeUnit.MILLISECONDS, rejected::add
+            );
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                producer.run();
+            });
+
+            assertEquals(List.of(3), rejected, "Item 3 should be rejected");
+            assertEquals(1, producer.getRejectedCount(),
+                "1 item should be rejected"
+            );
+            assertEquals(2, sharedQueue.size(), "Size of queue should be 2");
+        }
+
+        @Test
+        @DisplayName("Producer should reject a negative offer timeout")
+        void testNegativeTimeout() {
+            assertThrows(IllegalArgumentException.class, () -> {
+                new Producer<>(sharedQueue, dataToProduce,
+                    OverflowPolicy.REJECT, -1, TimeUnit.SECONDS, data -> {}
+                );
+            }, "Negative timeout should not be allowed");
+        }
+    }
+
     @Nested
     @DisplayName("Producer thread running")
     class ProducerRunning {
@@ -0,0 +1,206 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class QueueMetricsTests {
+    @Test
+    @DisplayName("Test enqueued, dequeued and high-water mark are counted")
+    void testTrafficCounts() throws InterruptedException {
+        for(QueueType type : QueueType.values()) {
+            BlockedQueue<Integer> queue = type.create(4);
+
+            queue.put(1);
+            queue.put(2);
+            queue.putAll(List.of(3, 4));
+            queue.remove();
+            queue.drainTo(new ArrayList<>(), 2);
+
+            QueueMetrics.Snapshot snapshot = queue.metrics().snapshot();
+
+            assertEquals(4, snapshot.getEnqueuedCount(),
+                type + ": 4 items were inserted"
+            );
+            assertEquals(3, snapshot.getDequeuedCount(),
+                type + ": 3 items were removed"
+            );
+            assertEquals(1, snapshot.getDepth(),
+                type + ": 1 item should remain"
+            );
+            assertEquals(4, snapshot.getHighWaterMark(),
+                type + ": the queue was full at one point"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test inserts refused by a full queue are rejected")
+    void testRejected() throws InterruptedException {
+        for(QueueType type : QueueType.values()) {
+            BlockedQueue<Integer> queue = type.create(1);
+
+            queue.put(1);
+            assertFalse(queue.tryPut(2),
+                type + ": tryPut should fail on a full queue"
+            );
+            assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS),
+                type + ": offer should time out on a full queue"
+            );
+
+            assertEquals(2, queue.metrics().getRejectedCount(),
+                type + ": both refused inserts should be counted"
+            );
+
+            queue.shutdown();
+            queue.tryPut(4);
+            assertEquals(2, queue.metrics().getRejectedCount(),
+                type + ": inserts refused by shutdown should not be counted"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test time blocked in remove is recorded")
+    void testRemoveWait() {
+        for(QueueType type : QueueType.values()) {
+            BlockedQueue<Integer> queue = type.create(1);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                Thread producer = new Thread(() -> {
+                    try {
+                        Thread.sleep(50);
+                        queue.put(1);
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+
+                producer.start();
+                queue.remove();
+                producer.join();
+            });
+
+            QueueMetrics metrics = queue.metrics();
+
+            assertTrue(metrics.getRemoveBlockedNanos()
+                >= TimeUnit.MILLISECONDS.toNanos(20),
+                type + ": the consumer waited for the producer"
+            );
+            assertEquals(1, metrics.getRemoveWaitTimes().getCount(),
+                type + ": one blocked remove should be recorded"
+            );
+            assertEquals(0, metrics.getPutBlockedNanos(),
+                type + ": the producer never blocked"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test time blocked in put is recorded")
+    void testPutWait() throws InterruptedException {
+        BlockedQueue<Integer> queue = new LockBlockedQueue<>(1);
+        queue.put(1);
+
+        assertFalse(queue.offer(2, 30, TimeUnit.MILLISECONDS),
+            "offer should time out on a full queue"
+        );
+        assertTrue(queue.metrics().getPutBlockedNanos()
+            >= TimeUnit.MILLISECONDS.toNanos(20),
+            "The producer waited for the timeout"
+        );
+        assertTrue(queue.metrics().getPutWaitP99Nanos() > 0,
+            "The wait should appear in the histogram"
+        );
+    }
+
+    @Test
+    @DisplayName("Test reset clears every counter")
+    void testReset() throws InterruptedException {
+        BlockedQueue<Integer> queue = new SimpleBlockedQueue<>(2);
+        queue.put(1);
+        queue.tryPut(2);
+        queue.tryPut(3);
+
+        queue.metrics().reset();
+        QueueMetrics.Snapshot snapshot = queue.metrics().snapshot();
+
+        assertEquals(0, snapshot.getEnqueuedCount(), "Enqueued should be 0");
+        assertEquals(0, snapshot.getRejectedCount(), "Rejected should be 0");
+        assertEquals(0, snapshot.getHighWaterMark(),
+            "High-water mark should be 0"
+        );
+    }
+
+    @Test
+    @DisplayName("Test metrics are visible through JMX")
+    void testMBean() throws Exception {
+        BlockedQueue<Integer> queue = new SimpleBlockedQueue<>(2);
+        queue.put(1);
+
+        ObjectName name = queue.metrics().registerMBean("metrics-test");
+        try {
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "EnqueuedCount"),
+                "The MBean should report the enqueued count"
+            );
+            assertThrows(IllegalStateException.class, () -> {
+                queue.metrics().registerMBean("metrics-test");
+            }, "Registering the same name twice should not be allowed");
+        } finally {
+            queue.metrics().unregisterMBean("metrics-test");
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer()
+            .isRegistered(name), "The MBean should be unregistered"
+        );
+    }
+
+    @Test
+    @DisplayName("Test producer and consumer report their rates")
+    void testStageStats() {
+        BlockedQueue<Integer> queue = new LockBlockedQueue<>(2);
+        List<Integer> destination =
+            Collections.synchronizedList(new ArrayList<>());
+        Producer<Integer> producer = new Producer<>(queue, List.of(1, 2, 3));
+        Consumer<Integer> consumer = new Consumer<>(queue, destination);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            Thread consumerThread = new Thread(consumer, "stats-consumer");
+            consumerThread.start();
+            producer.run();
+
+            while(destination.size() < 3) {
+                Thread.sleep(10);
+            }
+
+            queue.shutdown();
+            consumerThread.join();
+        });
+
+        assertEquals(3, producer.getStats().getItems(),
+            "Producer should count every item"
+        );
+        assertEquals(3, consumer.getStats().getItems(),
+            "Consumer should count every item"
+        );
+        assertEquals("stats-consumer", consumer.getStats().getThreadName(),
+            "Stats should name the consumer thread"
+        );
+        assertTrue(producer.getStats().itemsPerSecond() > 0,
+            "Producer rate should be positive"
+        );
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.AfterEach;
+
+class QueuePublisherTests {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(100);
+
+    /**
+     * Records every signal, requesting initial items on subscribe
+     */
+    static class Recorder implements Flow.Subscriber<Integer> {
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final long initial;
+        volatile Flow.Subscription subscription;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if(initial > 0) subscription.request(initial);
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    void putRange(int from, int to) throws InterruptedException {
+        for(int i = from; i < to; i++) {
+            queue.put(i);
+        }
+    }
+
+    @Test
+    @DisplayName("Test for invalid batch size")
+    void testInvalidBatch() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new QueuePublisher<>(queue, executor, 0);
+        }, "maxBatch 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test items are only removed as far as they are requested")
+    void testDemand() throws Exception {
+        QueuePublisher<Integer> publisher = new QueuePublisher<>(queue, executor);
+        Recorder recorder = new Recorder(3);
+
+        putRange(0, 10);
+        publisher.subscribe(recorder);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            while(recorder.items.size() < 3) Thread.sleep(5);
+            Thread.sleep(150);
+
+            assertEquals(List.of(0, 1, 2), recorder.items, "3 items requested");
+            assertEquals(7, queue.size(), "The rest should stay queued");
+
+            recorder.subscription.request(100);
+            while(recorder.items.size() < 10) Thread.sleep(5);
+        });
+
+        assertEquals(0, queue.size(), "Every item should be delivered");
+        assertTrue(recorder.threads.stream()
+            .allMatch(name -> name.startsWith("pool-")),
+            "Items should be signalled from the executor"
+        );
+        publisher.close();
+    }
+
+    @Test
+    @DisplayName("Test many subscribers share a small executor and split the items")
+    void testManySubscribers() throws Exception {
+        QueuePublisher<Integer> publisher =
+            new QueuePublisher<>(queue, executor, 4);
+        List<Recorder> recorders = new ArrayList<>();
+
+        for(int i = 0; i < 200; i++) {
+            Recorder recorder = new Recorder(Long.MAX_VALUE);
+            recorders.add(recorder);
+            publisher.subscribe(recorder);
+        }
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            putRange(0, 1_000);
+            queue.closeGracefully();
+
+            for(Recorder recorder : recorders) {
+                recorder.done.get();
+            }
+        });
+
+        List<Integer> all = new ArrayList<>();
+        for(Recorder recorder : recorders) {
+            all.addAll(recorder.items);
+        }
+        assertEquals(1_000, all.size(), "Every item should be delivered");
+        assertEquals(1_000, new HashSet<>(all).size(), "... exactly once");
+        assertEquals(0, publisher.getSubscriberCount(),
+            "Every subscriber should be completed"
+        );
+    }
+
+    @Test
+    @DisplayName("Test cancelling the last subscription shuts the queue down")
+    void testCancelShutsDownQueue() throws Exception {
+        LockBlockedQueue<Integer> small = new LockBlockedQueue<>(1);
+        QueuePublisher<Integer> publisher = new QueuePublisher<>(small, executor);
+        Recorder first = new Recorder(0);
+        Recorder second = new Recorder(0);
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            small.put(1);
+            Thread producer = new Thread(() -> {
+                try {
+                    small.put(2); // blocks: nobody requests items
+                } catch(InterruptedException e) {}
+            });
+            producer.start();
+
+            while(second.subscription == null) Thread.sleep(5);
+            first.subscription.cancel();
+            assertTrue(small.isActive(), "A subscriber is left");
+
+            second.subscription.cancel();
+            producer.join();
+        });
+
+        assertFalse(small.isActive(), "Queue should be shutdown");
+        assertEquals(1, small.size(), "Queued items stay recoverable");
+    }
+
+    @Test
+    @DisplayName("Test a non-positive request fails the subscriber")
+    void testInvalidRequest() {
+        QueuePublisher<Integer> publisher = new QueuePublisher<>(queue, executor);
+        Recorder recorder = new Recorder(0);
+
+        publisher.subscribe(recorder);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            while(recorder.subscription == null) Thread.sleep(5);
+            recorder.subscription.request(0);
+
+            Throwable error = assertThrows(Exception.class,
+                () -> recorder.done.get()
+            ).getCause();
+            assertInstanceOf(IllegalArgumentException.class, error,
+                "request(0) should signal IllegalArgumentException"
+            );
+        });
+        publisher.close();
+    }
+
+    @Test
+    @DisplayName("Test close completes subscribers and leaves items queued")
+    void testClose() throws Exception {
+        QueuePublisher<Integer> publisher = new QueuePublisher<>(queue, executor);
+        Recorder recorder = new Recorder(2);
+
+        putRange(0, 5);
+        publisher.subscribe(recorder);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            while(recorder.items.size() < 2) Thread.sleep(5);
+            publisher.close();
+            recorder.done.get();
+        });
+
+        assertTrue(queue.isActive(), "close() should not shut the queue down");
+        assertEquals(3, queue.size(), "Unrequested items should stay queued");
+
+        Recorder late = new Recorder(1);
+        publisher.subscribe(late);
+        assertThrows(Exception.class, () -> late.done.get(5, TimeUnit.SECONDS),
+            "A late subscriber should get onError()"
+        );
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.AfterEach;
+
+class QueueSubscriberTests {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test for invalid prefetch")
+    void testInvalidPrefetch() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new QueueSubscriber<>(new LockBlockedQueue<Integer>(1), 0);
+        }, "Prefetch 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test a full queue holds the publisher back without losing items")
+    void testBackpressure() throws Exception {
+        LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(3);
+        QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(queue, 4);
+        List<Integer> received = new ArrayList<>();
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            try(SubmissionPublisher<Integer> publisher =
+                    new SubmissionPublisher<>(executor, 16)) {
+
+                publisher.subscribe(subscriber);
+                for(int i = 0; i < 10; i++) {
+                    publisher.submit(i);
+                }
+
+                Thread.sleep(100);
+                assertEquals(3, queue.size(), "Queue should be full");
+                assertFalse(subscriber.completion().isDone(), "Still running");
+
+                while(received.size() < 10) {
+                    Integer item = queue.poll(1, TimeUnit.SECONDS);
+                    if(item != null) received.add(item);
+                }
+            }
+
+            assertEquals(10, subscriber.completion().get(),
+                "Every item should be inserted"
+            );
+        });
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), received,
+            "Items should arrive in order"
+        );
+    }
+
+    @Test
+    @DisplayName("Test a shutdown queue cancels the subscription")
+    void testQueueShutdown() {
+        LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(1);
+        QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(queue);
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            try(SubmissionPublisher<Integer> publisher =
+                    new SubmissionPublisher<>(executor, 16)) {
+
+                publisher.subscribe(subscriber);
+                publisher.submit(1);
+                publisher.submit(2); // waits for space
+
+                Thread.sleep(100);
+                queue.shutdown();
+
+                assertThrows(ExecutionException.class,
+                    () -> subscriber.completion().get(),
+                    "Completion should fail once the queue refuses items"
+                );
+                while(publisher.hasSubscribers()) Thread.sleep(5);
+            }
+        });
+
+        List<Integer> recovered = new ArrayList<>();
+        queue.drainTo(recovered, 5);
+        assertEquals(List.of(1), recovered, "Inserted items stay recoverable");
+    }
+
+    @Test
+    @DisplayName("Test items flow publisher to queue to subscribers end to end")
+    void testRoundTrip() throws Exception {
+        SimpleBlockedQueue<Integer> queue = new SimpleBlockedQueue<>(8);
+        QueueSubscriber<Integer> inbound = new QueueSubscriber<>(queue, 8);
+        QueuePublisher<Integer> outbound = new QueuePublisher<>(queue, executor);
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+
+        outbound.subscribe(new Flow.Subscriber<Integer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                delivered.add(item);
+            }
+
+            @Override
+            public void onError(Throwable error) {}
+
+            @Override
+            public void onComplete() {}
+        });
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            try(SubmissionPublisher<Integer> upstream =
+                    new SubmissionPublisher<>(executor, 16)) {
+
+                upstream.subscribe(inbound);
+                for(int i = 0; i < 500; i++) {
+                    upstream.submit(i);
+                }
+            }
+
+            assertEquals(500, inbound.completion().get(), "All items inserted");
+            queue.closeGracefully();
+            while(delivered.size() < 500) Thread.sleep(5);
+        });
+
+        for(int i = 0; i < 500; i++) {
+            assertEquals(i, delivered.get(i), "A single subscriber gets order");
+        }
+        assertTrue(queue.awaitDrained(1, TimeUnit.SECONDS), "Queue is drained");
+    }
+}
@@ -0,0 +1,495 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+class RemoteQueueTests {
+    @TempDir
+    Path directory;
+
+    LockBlockedQueue<Integer> queue;
+    QueueServer<Integer> server;
+    RemoteQueue<Integer> remote;
+
+    @BeforeEach
+    void init() throws IOException {
+        queue = new LockBlockedQueue<>(4);
+        server = new QueueServer<>(queue, RecordCodec.INT,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)
+        );
+        remote = new RemoteQueue<>(server.getAddress(), RecordCodec.INT);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        remote.close();
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Test put and remove in order through the server")
+    void testRoundTrip() throws InterruptedException {
+        for(int i = 0; i < 10; i++) {
+            remote.put(i);
+            assertEquals(1, queue.size(), "Item should be in the server queue");
+            assertEquals(i, remote.remove(), "Data removed should be " + i);
+        }
+
+        queue.put(42);
+        assertEquals(1, remote.size(), "size() should be the server's size");
+        assertEquals(42, remote.tryRemove(), "Local puts are visible remotely");
+        assertNull(remote.tryRemove(), "tryRemove() on empty should be null");
+        assertTrue(remote.isActive(), "Queue should be active");
+    }
+
+    @Test
+    @DisplayName("Test batches move in one request, bounded by capacity")
+    void testBatches() throws InterruptedException {
+        assertEquals(4, remote.putAll(List.of(0, 1, 2, 3)), "4 items fit");
+        assertFalse(remote.tryPut(4), "tryPut() on full should fail");
+        assertFalse(remote.offer(4, 50, TimeUnit.MILLISECONDS),
+            "offer() on full should time out"
+        );
+
+        assertEquals(List.of(0, 1, 2), remote.removeBatch(1, 3, 0,
+            TimeUnit.SECONDS), "Up to 3 items should be removed"
+        );
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, remote.drainTo(drained, 10), "1 item is left");
+        assertEquals(List.of(3), drained, "drainTo() should keep order");
+
+        assertEquals(List.of(), remote.removeBatch(0, 5, 0, TimeUnit.SECONDS),
+            "An empty batch for minItems 0 on an empty queue"
+        );
+        assertNull(remote.poll(50, TimeUnit.MILLISECONDS),
+            "poll() on empty should time out"
+        );
+        assertEquals(4, remote.metrics().getEnqueuedCount(),
+            "Client metrics count its own inserts"
+        );
+        assertEquals(4, remote.metrics().getDequeuedCount(),
+            "... and removals"
+        );
+    }
+
+    @Test
+    @DisplayName("Test for invalid batch bounds")
+    void testInvalidBatch() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            remote.removeBatch(3, 2, 0, TimeUnit.SECONDS);
+        }, "minItems > maxItems should not be allowed");
+        assertThrows(IllegalArgumentException.class, () -> {
+            remote.drainTo(new ArrayList<>(), -1);
+        }, "Negative maxItems should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test blocked calls are parked by the server until they can complete")
+    void testBlocking() {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            AtomicReference<Integer> removed = new AtomicReference<>();
+            Thread consumer = new Thread(() -> {
+                try {
+                    removed.set(remote.remove());
+                } catch(InterruptedException e) {}
+            });
+            consumer.start();
+
+            Thread.sleep(100);
+            assertTrue(consumer.isAlive(), "remove() on empty should block");
+            queue.put(7);
+            consumer.join();
+            assertEquals(7, removed.get(), "Parked remove() should get 7");
+
+            remote.putAll(List.of(0, 1, 2, 3));
+            Thread producer = new Thread(() -> {
+                try {
+                    remote.put(4);
+                } catch(InterruptedException e) {}
+            });
+            producer.start();
+
+            Thread.sleep(100);
+            assertTrue(producer.isAlive(), "put() on full should block");
+            assertEquals(0, queue.remove(), "Local remove makes room");
+            producer.join();
+            assertEquals(4, queue.size(), "Parked put() should insert");
+        });
+    }
+
+    @Test
+    @DisplayName("Test many threads pipeline requests on one connection")
+    void testPipelining() {
+        int threads = 4;
+        int perThread = 250;
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> workers = new ArrayList<>();
+
+        assertTimeoutPreemptively(ofSeconds(20), () -> {
+            for(int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                workers.add(new Thread(() -> {
+                    try {
+                        for(int i = 0; i < perThread; i++) {
+                            remote.put(base + i);
+                        }
+                    } catch(InterruptedException e) {}
+                }));
+                workers.add(new Thread(() -> {
+                    try {
+                        for(int i = 0; i < perThread; i++) {
+                            received.add(remote.remove());
+                        }
+                    } catch(InterruptedException e) {}
+                }));
+            }
+
+            for(Thread worker : workers) {
+                worker.start();
+            }
+            for(Thread worker : workers) {
+                worker.join();
+            }
+        });
+
+        assertEquals(threads * perThread, received.size(), "All items removed");
+        assertEquals(threads * perThread, new HashSet<>(received).size(),
+            "... exactly once"
+        );
+        assertEquals(1, server.getConnectionCount(), "All over one connection");
+    }
+
+    @Test
+    @DisplayName("Test an interrupted remove() is cancelled without losing items")
+    void testInterruptCancels() {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            AtomicReference<Throwable> thrown = new AtomicReference<>();
+            Thread consumer = new Thread(() -> {
+                try {
+                    remote.remove();
+                } catch(InterruptedException e) {
+                    thrown.set(e);
+                }
+            });
+            consumer.start();
+
+            Thread.sleep(100);
+            consumer.interrupt();
+            consumer.join();
+
+            assertTrue(thrown.get() instanceof InterruptedException,
+                "remove() should throw InterruptedException"
+            );
+
+            queue.put(1);
+            Thread.sleep(50);
+            assertEquals(1, queue.size(), "The cancelled remove() took nothing");
+        });
+    }
+
+    @Test
+    @DisplayName("Test interrupting a caller leaves the connection open")
+    void testInterruptKeepsConnection() throws Exception {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            // interrupted while parked on the server
+            Thread taker = new Thread(() -> {
+                try {
+                    remote.remove();
+                } catch(InterruptedException e) {
+                    // expected
+                }
+            });
+            taker.start();
+            Thread.sleep(100);
+            taker.interrupt();
+            taker.join();
+
+            // interrupted before uninterruptible calls
+            Thread.currentThread().interrupt();
+            try {
+                assertTrue(remote.tryPut(1), "Item should be inserted");
+                assertEquals(1, remote.size(), "Size should be read");
+                assertTrue(Thread.currentThread().isInterrupted(),
+                    "Interrupt status should be kept"
+                );
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertTrue(remote.isActive(), "Connection should survive");
+            assertEquals(1, remote.remove(), "Item should not be lost");
+        });
+    }
+
+    @Test
+    @DisplayName("Test closeGracefully drains, then shutdown returns null")
+    void testCloseAndShutdown() {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            remote.putAll(List.of(1, 2));
+            remote.closeGracefully();
+
+            assertFalse(queue.isActive(), "Server queue should be closed");
+            assertFalse(remote.isActive(), "... and seen closed remotely");
+            remote.put(3);
+            assertEquals(2, queue.size(), "put() after close should not insert");
+
+            assertEquals(1, remote.remove(), "Removals drain the queue");
+            assertEquals(2, remote.remove(), "... in order");
+            assertTrue(remote.awaitDrained(1, TimeUnit.SECONDS),
+                "Queue should be drained"
+            );
+            assertNull(remote.remove(), "remove() on drained should be null");
+            assertNull(remote.removeBatch(1, 5, 1, TimeUnit.SECONDS),
+                "removeBatch() on drained should be null"
+            );
+        });
+    }
+
+    @Test
+    @DisplayName("Test drainTo recovers items after shutdown")
+    void testDrainAfterShutdown() throws InterruptedException {
+        remote.putAll(List.of(1, 2, 3));
+        remote.shutdown();
+
+        assertNull(remote.tryRemove(), "Removals return null after shutdown");
+
+        List<Integer> recovered = new ArrayList<>();
+        assertEquals(2, remote.drainTo(recovered, 2), "2 items requested");
+        assertEquals(1, remote.drainTo(recovered, 10), "1 item is left");
+        assertEquals(List.of(1, 2, 3), recovered, "Items should keep order");
+        assertEquals(0, queue.size(), "The server queue should be empty");
+    }
+
+    @Test
+    @DisplayName("Test a batch larger than the capacity is answered once the queue is full")
+    void testBatchAboveCapacity() {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    remote.putAll(List.of(0, 1, 2, 3, 4, 5));
+                } catch(InterruptedException e) {}
+            });
+            producer.start();
+
+            assertEquals(List.of(0, 1, 2, 3), remote.removeBatch(6, 6,
+                Long.MAX_VALUE, TimeUnit.NANOSECONDS),
+                "A full queue of 4 should be removed"
+            );
+            assertEquals(List.of(4, 5), remote.removeBatch(2, 6,
+                Long.MAX_VALUE, TimeUnit.NANOSECONDS),
+                "The rest should follow in order"
+            );
+            producer.join();
+        });
+    }
+
+    @Test
+    @DisplayName("Test shutdown wakes parked removes")
+    void testShutdownWakesRemove() {
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            AtomicReference<Integer> removed = new AtomicReference<>(-1);
+            Thread consumer = new Thread(() -> {
+                try {
+                    removed.set(remote.remove());
+                } catch(InterruptedException e) {}
+            });
+            consumer.start();
+
+            Thread.sleep(100);
+            queue.shutdown();
+            consumer.join();
+
+            assertNull(removed.get(), "remove() should return null");
+        });
+    }
+
+    @Test
+    @DisplayName("Test stock Producer and Consumer run against the remote queue")
+    void testProducerConsumer() {
+        List<Integer> data = new ArrayList<>();
+        for(int i = 0; i < 30; i++) {
+            data.add(i);
+        }
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            try(RemoteQueue<Integer> consumerSide =
+                    new RemoteQueue<>(server.getAddress(), RecordCodec.INT)) {
+
+                Thread producer = new Thread(new Producer<>(remote, data, 10));
+                Thread consumer = new Thread(
+                    new Consumer<>(consumerSide, consumed, 10)
+                );
+                producer.start();
+                consumer.start();
+
+                producer.join();
+                remote.closeGracefully();
+                consumer.join();
+            }
+        });
+
+        assertEquals(data, consumed, "Items should arrive once, in order");
+    }
+
+    @Test
+    @DisplayName("Test the queue is served over a Unix domain socket")
+    void testUnixSocket() throws IOException, InterruptedException {
+        Path socket = directory.resolve("queue.sock");
+
+        try(QueueServer<Integer> local = new QueueServer<>(queue,
+                RecordCodec.INT, UnixDomainSocketAddress.of(socket));
+            RemoteQueue<Integer> client = new RemoteQueue<>(
+                local.getAddress(), RecordCodec.INT)) {
+
+            client.putAll(List.of(1, 2, 3));
+            assertEquals(List.of(1, 2, 3), client.removeBatch(3, 3, 1,
+                TimeUnit.SECONDS), "Items should round-trip in order"
+            );
+        }
+
+        assertFalse(Files.exists(socket), "close() should remove the socket");
+    }
+
+    @Test
+    @DisplayName("Test a corrupt frame length fails calls with an I/O error")
+    void testCorruptFrame() throws IOException {
+        try(ServerSocketChannel fake = ServerSocketChannel.open()) {
+            fake.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try(RemoteQueue<Integer> client = new RemoteQueue<>(
+                    fake.getLocalAddress(), RecordCodec.INT);
+                SocketChannel peer = fake.accept()) {
+
+                peer.write(ByteBuffer.allocate(Integer.BYTES)
+                    .putInt(0, Integer.MAX_VALUE)
+                );
+
+                assertTimeoutPreemptively(ofSeconds(5), () -> {
+                    assertThrows(UncheckedIOException.class, () -> {
+                        client.size();
+                    }, "An invalid length should fail the connection");
+                });
+                assertFalse(client.isActive(), "Client should be inactive");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test the server answers malformed requests with an error")
+    void testMalformedRequests() throws Exception {
+        try(SocketChannel raw = SocketChannel.open(server.getAddress())) {
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                // TAKE with maxItems -1
+                ByteBuffer take = ByteBuffer.allocate(Long.BYTES + 8)
+                    .putLong(QueueProtocol.FOREVER).putInt(0).putInt(-1);
+                assertEquals(QueueProtocol.ERROR,
+                    exchange(raw, QueueProtocol.TAKE, 1, take),
+                    "Invalid batch bounds should be refused"
+                );
+
+                // PUT without items
+                ByteBuffer put = ByteBuffer.allocate(Long.BYTES + 4)
+                    .putLong(0).putInt(QueueProtocol.NO_ITEMS);
+                assertEquals(QueueProtocol.ERROR,
+                    exchange(raw, QueueProtocol.PUT, 2, put),
+                    "A put without items should be refused"
+                );
+
+                // PUT claiming more items than it carries
+                ByteBuffer huge = ByteBuffer.allocate(Long.BYTES + 4)
+                    .putLong(0).putInt(Integer.MAX_VALUE);
+                assertEquals(QueueProtocol.ERROR,
+                    exchange(raw, QueueProtocol.PUT, 3, huge),
+                    "An impossible item count should be refused"
+                );
+
+                // DRAIN without its maxItems
+                assertEquals(QueueProtocol.ERROR,
+                    exchange(raw, QueueProtocol.DRAIN, 4, ByteBuffer.allocate(0)),
+                    "A truncated request should be refused"
+                );
+
+                assertEquals(QueueProtocol.OK,
+                    exchange(raw, QueueProtocol.STATUS, 5, ByteBuffer.allocate(0)),
+                    "The connection should stay usable"
+                );
+            });
+        }
+
+        remote.put(1);
+        assertEquals(1, remote.remove(), "The server should keep serving");
+        assertTrue(queue.isActive(), "The queue should be untouched");
+    }
+
+    /**
+     * Sends one request frame, and returns the status of its response
+     */
+    private static byte exchange(SocketChannel channel, byte op, int id,
+        ByteBuffer payload) throws IOException {
+
+        payload.flip();
+        ByteBuffer frame = ByteBuffer.allocate(
+            Integer.BYTES + QueueProtocol.HEADER_BYTES + payload.remaining()
+        );
+        frame.putInt(QueueProtocol.HEADER_BYTES + payload.remaining())
+            .put(op).putInt(id).put(payload).flip();
+        while(frame.hasRemaining()) channel.write(frame);
+
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        while(length.hasRemaining()) channel.read(length);
+        ByteBuffer response = ByteBuffer.allocate(length.getInt(0));
+        while(response.hasRemaining()) channel.read(response);
+
+        assertEquals(id, response.getInt(1), "Response should answer " + id);
+        return response.get(0);
+    }
+
+    @Test
+    @DisplayName("Test a closed server fails calls and deactivates the client")
+    void testServerClosed() throws IOException {
+        SocketAddress address = server.getAddress();
+        server.close();
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            assertThrows(UncheckedIOException.class, () -> remote.remove(),
+                "Calls should fail once the connection is lost"
+            );
+        });
+        assertFalse(remote.isActive(), "Client should be inactive");
+        assertTrue(queue.isActive(), "The queue itself is untouched");
+        assertThrows(IOException.class,
+            () -> new RemoteQueue<>(address, RecordCodec.INT),
+            "Nothing should accept connections any more"
+        );
+    }
+}
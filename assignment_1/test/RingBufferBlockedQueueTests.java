@@ -0,0 +1,436 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+
+class RingBufferBlockedQueueTests {
+    RingBufferBlockedQueue<Integer> q;
+
+    @BeforeEach
+    void init() {
+        q = new RingBufferBlockedQueue<>(1);
+    }
+
+    @Test
+    @DisplayName("Test constructor initialization")
+    void testConstructorInitialState() {
+        assertEquals(0, q.size(), "Size should be 0 at initialization");
+        assertTrue(q.isActive(), "The buffer should be running/active");
+    }
+
+    @Test
+    @DisplayName("Test for invalid capacity")
+    void testConstructorInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new RingBufferBlockedQueue<>(0);
+        }, "Capacity 0 should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new RingBufferBlockedQueue<>(-1);
+        }, "Capacity -1 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test put method rejects null data")
+    void testPutNull() {
+        assertThrows(NullPointerException.class, () -> {
+            q.put(null);
+        }, "Null data should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test capacity is not rounded up to a power of two")
+    void testCapacityIsExact() {
+        q = new RingBufferBlockedQueue<>(3);
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            q.put(10);
+            q.put(20);
+            q.put(30);
+
+            Thread t = new Thread(() -> {
+                try {
+                    q.put(40);
+                } catch(InterruptedException e) {}
+            });
+
+            t.start();
+            t.join(300);
+
+            assertTrue(t.isAlive(),
+                "Thread should block as the queue holds 3 items"
+            );
+            assertEquals(3, q.size(), "Size should be 3");
+
+            t.interrupt();
+        });
+    }
+
+    @Test
+    @DisplayName("Test remove method when blocked queue is empty")
+    void testRemoveWhenQueueEmpty() {
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread t = new Thread(() -> {
+                try {
+                    q.remove();
+                } catch(InterruptedException e) {}
+            });
+
+            t.start();
+
+            assertTrue(
+                t.isAlive(),
+                "Thread should be active as it is in the wait state"
+            );
+
+            t.interrupt();
+        });
+    }
+
+    @Test
+    @DisplayName("Test shutdown wakes blocked consumer")
+    void testShutdownWakesConsumer() throws InterruptedException {
+        List<Integer> removed = Collections.synchronizedList(new ArrayList<>());
+
+        Thread t = new Thread(() -> {
+            try {
+                removed.add(q.remove());
+            } catch(InterruptedException e) {}
+        });
+
+        t.start();
+        Thread.sleep(200);
+        q.shutdown();
+        t.join(1000);
+
+        assertFalse(t.isAlive(), "Consumer should exit after shutdown");
+        assertFalse(q.isActive(), "Blocked queue should not be active");
+        assertNull(removed.get(0), "remove() should return null on shutdown");
+    }
+
+    @Nested
+    @DisplayName("After put method")
+    class AfterPut {
+        @BeforeEach
+        void putData() throws InterruptedException {
+            q.put(10);
+        }
+
+        @Test
+        @DisplayName("Test put method")
+        void testPut() {
+            assertEquals(1, q.size(), "Size should be 1 after 1 put call");
+        }
+
+        @Test
+        @DisplayName("Test shutdown wakes blocked producer")
+        void testShutdownWakesProducer() throws InterruptedException {
+            Thread t = new Thread(() -> {
+                try {
+                    q.put(20);
+                } catch(InterruptedException e) {}
+            });
+
+            t.start();
+            Thread.sleep(200);
+            q.shutdown();
+            t.join(1000);
+
+            assertFalse(t.isAlive(), "Producer should exit after shutdown");
+            assertEquals(1, q.size(), "put() should not insert after shutdown");
+        }
+
+        @Test
+        @DisplayName("Test remove method")
+        void testRemove() throws InterruptedException {
+            assertEquals(10, q.remove(), "Element 10 should have been removed");
+            assertEquals(0, q.size(), "Size should be 0 after removal");
+        }
+    }
+
+    @Test
+    @DisplayName("Test multiple producers and consumers deliver every item once")
+    void testMultipleProducersAndConsumers() throws InterruptedException {
+        q = new RingBufferBlockedQueue<>(4);
+
+        int producers = 4;
+        int itemsPerProducer = 10_000;
+        List<Integer> destination =
+            Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for(int p = 0; p < producers; p++) {
+            int offset = p * itemsPerProducer;
+
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < itemsPerProducer; i++) {
+                        q.put(offset + i);
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        for(int c = 0; c < 4; c++) {
+            threads.add(new Thread(() -> {
+                try {
+                    Integer data;
+                    while((data = q.remove()) != null) {
+                        destination.add(data);
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            while(destination.size() < producers * itemsPerProducer) {
+                Thread.sleep(10);
+            }
+        });
+
+        q.shutdown();
+        for(Thread t : threads) {
+            t.join(1000);
+        }
+
+        List<Integer> sorted = new ArrayList<>(destination);
+        Collections.sort(sorted);
+
+        assertEquals(producers * itemsPerProducer, sorted.size(),
+            "Every item should be consumed exactly once"
+        );
+        for(int i = 0; i < sorted.size(); i++) {
+            assertEquals(i, sorted.get(i), "Item " + i + " should be consumed");
+        }
+    }
+
+    @Nested
+    @DisplayName("Batch operations")
+    class BatchOperations {
+        @BeforeEach
+        void init() {
+            q = new RingBufferBlockedQueue<>(5);
+        }
+
+        @Test
+        @DisplayName("Test putAll and drainTo preserve order")
+        void testPutAllAndDrainTo() throws InterruptedException {
+            assertEquals(3, q.putAll(List.of(10, 20, 30)),
+                "putAll() should insert every item"
+            );
+
+            List<Integer> drained = new ArrayList<>();
+
+            assertEquals(2, q.drainTo(drained, 2), "drainTo() should stop at 2");
+            assertEquals(List.of(10, 20), drained, "Order should be [10, 20]");
+            assertEquals(1, q.drainTo(drained, 10),
+                "drainTo() should only take available items"
+            );
+            assertEquals(List.of(10, 20, 30), drained,
+                "Order should be [10, 20, 30]"
+            );
+        }
+
+        @Test
+        @DisplayName("Test drainTo works after shutdown")
+        void testDrainToAfterShutdown() throws InterruptedException {
+            q.putAll(List.of(10, 20));
+            q.shutdown();
+
+            List<Integer> drained = new ArrayList<>();
+
+            assertEquals(2, q.drainTo(drained, 10),
+                "Buffered items should be recoverable after shutdown"
+            );
+        }
+
+        @Test
+        @DisplayName("Test putAll blocks when batch exceeds capacity")
+        void testPutAllBlocksWhenFull() throws InterruptedException {
+            List<Integer> removed =
+                Collections.synchronizedList(new ArrayList<>());
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(200);
+
+                    Integer data;
+                    while((data = q.remove()) != null) {
+                        removed.add(data);
+                    }
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                assertEquals(8, q.putAll(List.of(1, 2, 3, 4, 5, 6, 7, 8)),
+                    "putAll() should insert every item once space frees up"
+                );
+
+                while(removed.size() < 8) {
+                    Thread.sleep(10);
+                }
+            });
+
+            q.shutdown();
+            consumer.join(1000);
+
+            assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), removed,
+                "Items should be consumed in order"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch waits for minItems")
+        void testRemoveBatchWaitsForMinItems() throws InterruptedException {
+            Thread producer = new Thread(() -> {
+                try {
+                    for(int i = 1; i <= 4; i++) {
+                        Thread.sleep(50);
+                        q.put(i);
+                    }
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+
+            List<Integer> batch = q.removeBatch(3, 5, 2, TimeUnit.SECONDS);
+            producer.join(1000);
+
+            assertTrue(batch.size() >= 3,
+                "removeBatch() should return at least 3 items"
+            );
+            assertEquals(List.of(1, 2, 3), batch.subList(0, 3),
+                "Items should be removed in order"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch returns available items on timeout")
+        void testRemoveBatchTimeout() throws InterruptedException {
+            q.put(10);
+
+            assertEquals(List.of(10),
+                q.removeBatch(3, 5, 100, TimeUnit.MILLISECONDS),
+                "Available items should be returned on timeout"
+            );
+            assertEquals(List.of(),
+                q.removeBatch(1, 5, 100, TimeUnit.MILLISECONDS),
+                "Empty list should be returned on timeout"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch returns null on shutdown")
+        void testRemoveBatchShutdown() throws InterruptedException {
+            q.shutdown();
+
+            assertNull(q.removeBatch(1, 5, 1, TimeUnit.SECONDS),
+                "removeBatch() should return null on shutdown"
+            );
+        }
+
+        @Test
+        @DisplayName("Test invalid batch bounds")
+        void testInvalidBatchBounds() {
+            assertThrows(IllegalArgumentException.class, () -> {
+                q.removeBatch(3, 2, 1, TimeUnit.SECONDS);
+            }, "minItems > maxItems should not be allowed");
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                q.drainTo(new ArrayList<>(), -1);
+            }, "Negative maxItems should not be allowed");
+        }
+    }
+
+    @Nested
+    @DisplayName("Timed and non-blocking operations")
+    class TimedOperations {
+        @Test
+        @DisplayName("Test tryPut and tryRemove never block")
+        void testTryPutAndTryRemove() {
+            assertTimeoutPreemptively(ofSeconds(1), () -> {
+                assertNull(q.tryRemove(), "tryRemove() should fail when empty");
+                assertTrue(q.tryPut(10), "tryPut() should insert");
+                assertFalse(q.tryPut(20), "tryPut() should fail when full");
+                assertEquals(10, q.tryRemove(), "Element 10 should be removed");
+            });
+        }
+
+        @Test
+        @DisplayName("Test offer and poll time out")
+        void testOfferAndPollTimeout() throws InterruptedException {
+            assertNull(q.poll(100, TimeUnit.MILLISECONDS),
+                "poll() should return null after the timeout"
+            );
+            assertTrue(q.offer(10, 100, TimeUnit.MILLISECONDS),
+                "offer() should insert when space is available"
+            );
+
+            long start = System.nanoTime();
+
+            assertFalse(q.offer(20, 100, TimeUnit.MILLISECONDS),
+                "offer() should return false after the timeout"
+            );
+            assertTrue(System.nanoTime() - start
+                >= TimeUnit.MILLISECONDS.toNanos(90),
+                "offer() should wait for the timeout"
+            );
+            assertEquals(10, q.poll(100, TimeUnit.MILLISECONDS),
+                "Element 10 should be removed"
+            );
+        }
+
+        @Test
+        @DisplayName("Test offer succeeds once space frees up")
+        void testOfferWaitsForSpace() throws InterruptedException {
+            q.put(10);
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    q.remove();
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+
+            assertTrue(q.offer(20, 2, TimeUnit.SECONDS),
+                "offer() should insert once the consumer frees a slot"
+            );
+            consumer.join(1000);
+            assertEquals(20, q.tryRemove(), "Element 20 should be removed");
+        }
+
+        @Test
+        @DisplayName("Test timed operations fail after shutdown")
+        void testTimedOperationsAfterShutdown() throws InterruptedException {
+            q.shutdown();
+
+            assertFalse(q.tryPut(10), "tryPut() should fail after shutdown");
+            assertFalse(q.offer(10, 1, TimeUnit.SECONDS),
+                "offer() should fail after shutdown"
+            );
+            assertNull(q.poll(1, TimeUnit.SECONDS),
+                "poll() should return null after shutdown"
+            );
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class ShardedBlockedQueueTests {
+    ShardedBlockedQueue<Integer> q;
+
+    @BeforeEach
+    void init() {
+        q = new ShardedBlockedQueue<>(8, 4, ShardRouting.ROUND_ROBIN);
+    }
+
+    @Test
+    @DisplayName("Test for invalid shard count, capacity and routing")
+    void testConstructorInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ShardedBlockedQueue<>(8, 0, ShardRouting.ROUND_ROBIN);
+        }, "0 shards should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ShardedBlockedQueue<>(2, 4, ShardRouting.ROUND_ROBIN);
+        }, "Fewer slots than shards should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ShardedBlockedQueue<>(8, 4, null);
+        }, "A null routing should not be allowed");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new ShardedBlockedQueue<>(0);
+        }, "Capacity of 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test capacity is split evenly across shards")
+    void testCapacitySplit() {
+        ShardedBlockedQueue<Integer> uneven =
+            new ShardedBlockedQueue<>(10, 4, ShardRouting.ROUND_ROBIN);
+
+        for(int i = 0; i < 10; i++) {
+            assertTrue(uneven.tryPut(i), "Item " + i + " should fit");
+        }
+
+        assertFalse(uneven.tryPut(10), "11th item should not fit");
+        assertEquals(10, uneven.size(), "Size should be 10");
+
+        int[] expected = {3, 3, 2, 2};
+        for(int i = 0; i < 4; i++) {
+            assertEquals(expected[i], uneven.shardSize(i),
+                "Shard " + i + " should hold " + expected[i] + " items"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test round-robin routing spreads items over every shard")
+    void testRoundRobinRouting() throws InterruptedException {
+        for(int i = 0; i < 4; i++) {
+            q.put(i);
+        }
+
+        for(int i = 0; i < 4; i++) {
+            assertEquals(1, q.shardSize(i), "Shard " + i + " should hold 1 item");
+        }
+    }
+
+    @Test
+    @DisplayName("Test the high-water mark covers the whole queue, and each shard")
+    void testHighWaterMark() throws InterruptedException {
+        for(int i = 0; i < 6; i++) {
+            q.put(i);
+        }
+        q.remove();
+
+        QueueMetrics.Snapshot snapshot = q.metrics().snapshot();
+        assertEquals(6, snapshot.getHighWaterMark(),
+            "Filling a shard samples the queue-wide depth"
+        );
+        for(int i = 0; i < 4; i++) {
+            assertEquals(i < 2 ? 2 : 1, q.shardHighWaterMark(i),
+                "Shard " + i + " peak"
+            );
+        }
+
+        // a large queue is only sampled every DEPTH_SAMPLE_PUTS puts
+        ShardedBlockedQueue<Integer> large =
+            new ShardedBlockedQueue<>(1024, 4, ShardRouting.ROUND_ROBIN);
+        for(int i = 0; i < 200; i++) {
+            large.put(i);
+        }
+
+        long mark = large.metrics().snapshot().getHighWaterMark();
+        assertTrue(mark > 200 - ShardedBlockedQueue.DEPTH_SAMPLE_PUTS
+            && mark <= 200, "Mark should be within one sample, was " + mark
+        );
+    }
+
+    @Test
+    @DisplayName("Test hash routing keeps equal items on one shard, in order")
+    void testHashRouting() throws InterruptedException {
+        ShardedBlockedQueue<String> hashed =
+            new ShardedBlockedQueue<>(8, 4, ShardRouting.HASH);
+
+        hashed.put("a");
+        hashed.put("a");
+
+        int occupied = 0;
+        for(int i = 0; i < 4; i++) {
+            if(hashed.shardSize(i) > 0) occupied++;
+        }
+
+        assertEquals(1, occupied, "Equal items should share one shard");
+        assertFalse(hashed.tryPut("a"), "A full shard should not spill");
+        assertTrue(hashed.tryPut("b"), "Other shards should still accept data");
+
+        assertEquals("a", hashed.tryRemove(), "Data removed should be a");
+    }
+
+    @Test
+    @DisplayName("Test an idle consumer steals from sibling shards")
+    void testStealing() throws InterruptedException {
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < 8; i++) {
+                q.tryPut(i);
+            }
+        });
+
+        producer.start();
+        producer.join();
+
+        List<Integer> removed = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            removed.add(q.remove());
+        }
+
+        Collections.sort(removed);
+        for(int i = 0; i < 8; i++) {
+            assertEquals(i, removed.get(i), "Item " + i + " should be removed");
+        }
+
+        assertEquals(0, q.size(), "Size should be 0");
+        assertTrue(q.stolenCount() > 0, "Items should be stolen from siblings");
+    }
+
+    @Test
+    @DisplayName("Test remove blocks until any shard has data")
+    void testRemoveBlocksWhenEmpty() {
+        assertNull(q.tryRemove(), "tryRemove should return null when empty");
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            assertNull(q.poll(10, TimeUnit.MILLISECONDS),
+                "poll should time out when empty"
+            );
+
+            List<Integer> removed = Collections.synchronizedList(new ArrayList<>());
+            Thread consumer = new Thread(() -> {
+                try {
+                    removed.add(q.remove());
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+            Thread.sleep(100);
+            assertTrue(consumer.isAlive(), "Consumer should block");
+
+            Thread producer = new Thread(() -> q.tryPut(5));
+            producer.start();
+            producer.join();
+            consumer.join();
+
+            assertEquals(List.of(5), removed, "Data removed should be 5");
+        });
+    }
+
+    @Test
+    @DisplayName("Test put blocks until any shard has space")
+    void testPutBlocksWhenFull() throws InterruptedException {
+        for(int i = 0; i < 8; i++) {
+            q.put(i);
+        }
+
+        assertFalse(q.offer(8, 10, TimeUnit.MILLISECONDS),
+            "offer should time out when every shard is full"
+        );
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    q.put(8);
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+            Thread.sleep(100);
+            assertTrue(producer.isAlive(), "Producer should block");
+
+            assertTrue(q.tryRemove() != null, "An item should be removed");
+            producer.join();
+        });
+
+        assertEquals(8, q.size(), "Size should be 8");
+    }
+
+    @Test
+    @DisplayName("Test concurrent producers and consumers move every item")
+    void testConcurrent() {
+        ShardedBlockedQueue<Integer> queue =
+            new ShardedBlockedQueue<>(16, 4, ShardRouting.ROUND_ROBIN);
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for(int p = 0; p < 4; p++) {
+            int first = p * 1_000;
+
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = first; i < first + 1_000; i++) {
+                        queue.put(i);
+                    }
+                } catch(InterruptedException e) {}
+            }));
+
+            threads.add(new Thread(() -> {
+                try {
+                    int received = 0;
+                    while(received < 1_000) {
+                        List<Integer> batch = queue.removeBatch(1,
+                            1_000 - received, 1, TimeUnit.SECONDS
+                        );
+
+                        consumed.addAll(batch);
+                        received += batch.size();
+                    }
+                } catch(InterruptedException e) {}
+            }));
+        }
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            threads.forEach(Thread::start);
+            for(Thread t : threads) {
+                t.join();
+            }
+        });
+
+        List<Integer> sorted = new ArrayList<>(consumed);
+        Collections.sort(sorted);
+
+        assertEquals(4_000, sorted.size(), "Every item should be consumed");
+        for(int i = 0; i < 4_000; i++) {
+            assertEquals(i, sorted.get(i), "Item " + i + " should appear once");
+        }
+    }
+
+    @Test
+    @DisplayName("Test shutdown is global and keeps every item drainable")
+    void testShutdown() throws InterruptedException {
+        for(int i = 0; i < 6; i++) {
+            q.put(i);
+        }
+
+        q.shutdown();
+
+        assertFalse(q.isActive(), "Queue should be inactive");
+        assertNull(q.remove(), "remove should return null upon shutdown");
+        assertNull(q.removeBatch(1, 4, 1, TimeUnit.SECONDS),
+            "removeBatch should return null upon shutdown"
+        );
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(6, q.drainTo(drained, 10), "drainTo works after shutdown");
+
+        Collections.sort(drained);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), drained,
+            "Every shard's items should be drained"
+        );
+    }
+}
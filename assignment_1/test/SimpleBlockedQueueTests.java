@@ -1,3 +1,8 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
 import static java.time.Duration.ofSeconds;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -168,4 +173,424 @@ class SimpleBlockedQueueTests {
 
         assertEquals(30, q.remove(), "Element 30 should have been removed");
     }
+
+    @Nested
+    @DisplayName("Batch operations")
+    class BatchOperations {
+        @BeforeEach
+        void init() {
+            q = new SimpleBlockedQueue<>(5);
+        }
+
+        @Test
+        @DisplayName("Test putAll and drainTo preserve order")
+        void testPutAllAndDrainTo() throws InterruptedException {
+            assertEquals(3, q.putAll(List.of(10, 20, 30)),
+                "putAll() should insert every item"
+            );
+
+            List<Integer> drained = new ArrayList<>();
+
+            assertEquals(2, q.drainTo(drained, 2), "drainTo() should stop at 2");
+            assertEquals(List.of(10, 20), drained, "Order should be [10, 20]");
+            assertEquals(1, q.drainTo(drained, 10),
+                "drainTo() should only take available items"
+            );
+            assertEquals(List.of(10, 20, 30), drained,
+                "Order should be [10, 20, 30]"
+            );
+        }
+
+        @Test
+        @DisplayName("Test drainTo works after shutdown")
+        void testDrainToAfterShutdown() throws InterruptedException {
+            q.putAll(List.of(10, 20));
+            q.shutdown();
+
+            List<Integer> drained = new ArrayList<>();
+
+            assertEquals(2, q.drainTo(drained, 10),
+                "Buffered items should be recoverable after shutdown"
+            );
+        }
+
+        @Test
+        @DisplayName("Test putAll blocks when batch exceeds capacity")
+        void testPutAllBlocksWhenFull() throws InterruptedException {
+            List<Integer> removed =
+                Collections.synchronizedList(new ArrayList<>());
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(200);
+
+                    Integer data;
+                    while((data = q.remove()) != null) {
+                        removed.add(data);
+                    }
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                assertEquals(8, q.putAll(List.of(1, 2, 3, 4, 5, 6, 7, 8)),
+                    "putAll() should insert every item once space frees up"
+                );
+
+                while(removed.size() < 8) {
+                    Thread.sleep(10);
+                }
+            });
+
+            q.shutdown();
+            consumer.join(1000);
+
+            assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), removed,
+                "Items should be consumed in order"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch waits for minItems")
+        void testRemoveBatchWaitsForMinItems() throws InterruptedException {
+            Thread producer = new Thread(() -> {
+                try {
+                    for(int i = 1; i <= 4; i++) {
+                        Thread.sleep(50);
+                        q.put(i);
+                    }
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+
+            List<Integer> batch = q.removeBatch(3, 5, 2, TimeUnit.SECONDS);
+            producer.join(1000);
+
+            assertTrue(batch.size() >= 3,
+                "removeBatch() should return at least 3 items"
+            );
+            assertEquals(List.of(1, 2, 3), batch.subList(0, 3),
+                "Items should be removed in order"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch returns available items on timeout")
+        void testRemoveBatchTimeout() throws InterruptedException {
+            q.put(10);
+
+            assertEquals(List.of(10),
+                q.removeBatch(3, 5, 100, TimeUnit.MILLISECONDS),
+                "Available items should be returned on timeout"
+            );
+            assertEquals(List.of(),
+                q.removeBatch(1, 5, 100, TimeUnit.MILLISECONDS),
+                "Empty list should be returned on timeout"
+            );
+        }
+
+        @Test
+        @DisplayName("Test removeBatch returns null on shutdown")
+        void testRemoveBatchShutdown() throws InterruptedException {
+            q.shutdown();
+
+            assertNull(q.removeBatch(1, 5, 1, TimeUnit.SECONDS),
+                "removeBatch() should return null on shutdown"
+            );
+        }
+
+        @Test
+        @DisplayName("Test invalid batch bounds")
+        void testInvalidBatchBounds() {
+            assertThrows(IllegalArgumentException.class, () -> {
+                q.removeBatch(3, 2, 1, TimeUnit.SECONDS);
+            }, "minItems > maxItems should not be allowed");
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                q.drainTo(new ArrayList<>(), -1);
+            }, "Negative maxItems should not be allowed");
+        }
+    }
+
+    @Nested
+    @DisplayName("Timed and non-blocking operations")
+    class TimedOperations {
+        @Test
+        @DisplayName("Test tryPut and tryRemove never block")
+        void testTryPutAndTryRemove() {
+            assertTimeoutPreemptively(ofSeconds(1), () -> {
+                assertNull(q.tryRemove(), "tryRemove() should fail when empty");
+                assertTrue(q.tryPut(10), "tryPut() should insert");
+                assertFalse(q.tryPut(20), "tryPut() should fail when full");
+                assertEquals(10, q.tryRemove(), "Element 10 should be removed");
+            });
+        }
+
+        @Test
+        @DisplayName("Test offer and poll time out")
+        void testOfferAndPollTimeout() throws InterruptedException {
+            assertNull(q.poll(100, TimeUnit.MILLISECONDS),
+                "poll() should return null after the timeout"
+            );
+            assertTrue(q.offer(10, 100, TimeUnit.MILLISECONDS),
+                "offer() should insert when space is available"
+            );
+
+            long start = System.nanoTime();
+
+            assertFalse(q.offer(20, 100, TimeUnit.MILLISECONDS),
+                "offer() should return false after the timeout"
+            );
+            assertTrue(System.nanoTime() - start
+                >= TimeUnit.MILLISECONDS.toNanos(90),
+                "offer() should wait for the timeout"
+            );
+            assertEquals(10, q.poll(100, TimeUnit.MILLISECONDS),
+                "Element 10 should be removed"
+            );
+        }
+
+        @Test
+        @DisplayName("Test offer succeeds once space frees up")
+        void testOfferWaitsForSpace() throws InterruptedException {
+            q.put(10);
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    q.remove();
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+
+            assertTrue(q.offer(20, 2, TimeUnit.SECONDS),
+                "offer() should insert once the consumer frees a slot"
+            );
+            consumer.join(1000);
+            assertEquals(20, q.tryRemove(), "Element 20 should be removed");
+        }
+
+        @Test
+        @DisplayName("Test timed operations fail after shutdown")
+        void testTimedOperationsAfterShutdown() throws InterruptedException {
+            q.shutdown();
+
+            assertFalse(q.tryPut(10), "tryPut() should fail after shutdown");
+            assertFalse(q.offer(10, 1, TimeUnit.SECONDS),
+                "offer() should fail after shutdown"
+            );
+            assertNull(q.poll(1, TimeUnit.SECONDS),
+                "poll() should return null after shutdown"
+            );
+        }
+    }
+
+    @Nested
+    @DisplayName("Elastic capacity")
+    class ElasticCapacity {
+        @Test
+        @DisplayName("Test for invalid capacity and weight settings")
+        void testInvalidSettings() {
+            assertThrows(IllegalArgumentException.class, () -> {
+                q.setCapacity(0);
+            }, "Capacity 0 should not be allowed");
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                new SimpleBlockedQueue<Integer>(4, 0, item -> 1);
+            }, "maxWeight 0 should not be allowed");
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                new SimpleBlockedQueue<Integer>(4, 10, null);
+            }, "A null weigher should not be allowed");
+
+            assertThrows(IllegalStateException.class, () -> {
+                q.setMaxWeight(10);
+            }, "A queue without weigher has no weight to bound");
+
+            SimpleBlockedQueue<Integer> weighted =
+                new SimpleBlockedQueue<>(4, 10, item -> item);
+            assertThrows(IllegalArgumentException.class, () -> {
+                weighted.put(-1);
+            }, "Negative weights should not be allowed");
+            assertEquals(0, weighted.size(), "Nothing should be inserted");
+        }
+
+        @Test
+        @DisplayName("Test growing the capacity wakes a blocked producer")
+        void testGrowCapacity() throws InterruptedException {
+            q.put(10);
+
+            Thread producer = new Thread(() -> {
+                try {
+                    q.put(20);
+                } catch(InterruptedException e) {}
+            });
+            producer.start();
+            Thread.sleep(100);
+            assertTrue(producer.isAlive(), "Producer should block when full");
+
+            q.setCapacity(2);
+            producer.join(1000);
+
+            assertFalse(producer.isAlive(), "Producer should be woken");
+            assertEquals(2, q.getCapacity(), "Capacity should be 2");
+            assertEquals(2, q.size(), "Both items should be queued");
+        }
+
+        @Test
+        @DisplayName("Test shrinking the capacity keeps queued items")
+        void testShrinkCapacity() throws InterruptedException {
+            q.setCapacity(3);
+            q.putAll(List.of(10, 20, 30));
+
+            q.setCapacity(1);
+
+            assertEquals(3, q.size(), "No item should be dropped");
+            assertFalse(q.tryPut(40), "Queue should be full above capacity");
+
+            q.remove();
+            assertFalse(q.tryPut(40), "Queue should still be full");
+
+            q.remove();
+            q.remove();
+            assertTrue(q.tryPut(40), "Queue should accept under capacity");
+        }
+
+        @Test
+        @DisplayName("Test weight budget bounds the queue")
+        void testWeightBudget() throws InterruptedException {
+            SimpleBlockedQueue<String> weighted =
+                new SimpleBlockedQueue<>(100, 10, String::length);
+
+            assertTrue(weighted.tryPut("aaaa"), "4 of 10 should fit");
+            assertTrue(weighted.tryPut("bbbbbb"), "10 of 10 should fit");
+            assertFalse(weighted.tryPut("c"), "11 of 10 should not fit");
+            assertEquals(10, weighted.getWeight(), "Weight should be 10");
+
+            assertEquals("aaaa", weighted.remove(), "Head should be removed");
+            assertEquals(6, weighted.getWeight(), "Weight should drop to 6");
+            assertTrue(weighted.tryPut("c"), "7 of 10 should fit");
+
+            weighted.setMaxWeight(20);
+            assertTrue(weighted.offer("dddddddddd", 1, TimeUnit.SECONDS),
+                "17 of 20 should fit once the budget grows"
+            );
+
+            List<String> drained = new ArrayList<>();
+            weighted.drainTo(drained, 10);
+            assertEquals(List.of("bbbbbb", "c", "dddddddddd"), drained,
+                "Items should be drained in order"
+            );
+            assertEquals(0, weighted.getWeight(), "Weight should be 0");
+
+            assertTrue(weighted.tryPut("x".repeat(50)),
+                "An item heavier than the budget fits into an empty queue"
+            );
+            assertFalse(weighted.tryPut("y"), "but nothing else fits beside it");
+        }
+
+        @Test
+        @DisplayName("Test producer blocks on weight until a consumer frees some")
+        void testWeightBlocksProducer() {
+            SimpleBlockedQueue<String> weighted =
+                new SimpleBlockedQueue<>(100, 10, String::length);
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                weighted.put("aaaaaaaa");
+
+                Thread producer = new Thread(() -> {
+                    try {
+                        weighted.put("bbbbb");
+                    } catch(InterruptedException e) {}
+                });
+                producer.start();
+                Thread.sleep(100);
+                assertTrue(producer.isAlive(), "13 of 10 should block");
+
+                weighted.remove();
+                producer.join();
+                assertEquals(5, weighted.getWeight(), "Only bbbbb is queued");
+            });
+        }
+
+        @Test
+        @DisplayName("Test a batch consumer stops waiting once the weight budget is full")
+        void testBatchFullByWeight() {
+            SimpleBlockedQueue<String> weighted =
+                new SimpleBlockedQueue<>(100, 10, String::length);
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                Thread producer = new Thread(() -> {
+                    try {
+                        weighted.putAll(List.of("aaaaaa", "bbbbbb", "cc"));
+                    } catch(InterruptedException e) {}
+                });
+                producer.start();
+
+                // only aaaaaa fits until it is removed
+                assertEquals(List.of("aaaaaa"), weighted.removeBatch(3, 10,
+                    Long.MAX_VALUE, TimeUnit.NANOSECONDS),
+                    "removeBatch should not wait for items that cannot fit"
+                );
+                assertEquals(List.of("bbbbbb", "cc"), weighted.removeBatch(2,
+                    10, Long.MAX_VALUE, TimeUnit.NANOSECONDS),
+                    "The rest should follow in order"
+                );
+                producer.join();
+            });
+        }
+
+        @Test
+        @DisplayName("Test a batch consumer sees the capacity shrink while waiting")
+        void testBatchCapacityShrink() {
+            q.setCapacity(3);
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                q.putAll(List.of(10, 20));
+
+                List<List<Integer>> batches = new ArrayList<>();
+                Thread consumer = new Thread(() -> {
+                    try {
+                        batches.add(q.removeBatch(3, 3, Long.MAX_VALUE,
+                            TimeUnit.NANOSECONDS
+                        ));
+                    } catch(InterruptedException e) {}
+                });
+                consumer.start();
+                Thread.sleep(100);
+                assertTrue(consumer.isAlive(), "2 of 3 items should block");
+
+                q.setCapacity(2);
+                consumer.join();
+                assertEquals(List.of(List.of(10, 20)), batches,
+                    "A full queue of the new capacity should be removed"
+                );
+            });
+        }
+
+        @Test
+        @DisplayName("Test a large queue keeps working as its storage grows and shrinks")
+        void testLazyStorage() throws InterruptedException {
+            SimpleBlockedQueue<Integer> large =
+                new SimpleBlockedQueue<>(Integer.MAX_VALUE);
+
+            for(int round = 0; round < 3; round++) {
+                for(int i = 0; i < 5_000; i++) {
+                    large.put(i);
+                }
+                assertEquals(5_000, large.size(), "Every item should be queued");
+
+                for(int i = 0; i < 4_000; i++) {
+                    assertEquals(i, large.remove(), "Items should stay in order");
+                }
+                List<Integer> rest = new ArrayList<>();
+                large.drainTo(rest, 5_000);
+                assertEquals(1_000, rest.size(), "The rest should be drained");
+                assertEquals(4_999, rest.get(999), "Last item should be last");
+            }
+        }
+    }
 }
@@ -0,0 +1,207 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class SinkTests {
+    static final int THREADS = 4;
+    static final int ITEMS_PER_THREAD = 10_000;
+
+    /**
+     * Runs THREADS threads, each accepting its own range of items one by
+     * one, then calling finish()
+     */
+    static void acceptConcurrently(Sink<Integer> sink) {
+        List<Thread> threads = new ArrayList<>();
+
+        for(int t = 0; t < THREADS; t++) {
+            int first = t * ITEMS_PER_THREAD;
+
+            threads.add(new Thread(() -> {
+                for(int i = first; i < first + ITEMS_PER_THREAD; i++) {
+                    sink.accept(i);
+                }
+                sink.finish();
+            }));
+        }
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            for(Thread thread : threads) {
+                thread.start();
+            }
+            for(Thread thread : threads) {
+                thread.join();
+            }
+        });
+    }
+
+    /**
+     * Asserts items holds every item once, in order within each thread
+     */
+    static void assertEveryItemOnce(List<Integer> items) {
+        assertEquals(THREADS * ITEMS_PER_THREAD, items.size(),
+            "Every item should be collected"
+        );
+        assertEquals(items.size(), new HashSet<>(items).size(),
+            "No item should be collected twice"
+        );
+
+        int[] last = new int[THREADS];
+        for(int t = 0; t < THREADS; t++) {
+            last[t] = t * ITEMS_PER_THREAD - 1;
+        }
+        for(int item : items) {
+            int t = item / ITEMS_PER_THREAD;
+            assertTrue(item > last[t], "Items of a thread should stay in order");
+            last[t] = item;
+        }
+    }
+
+    @Test
+    @DisplayName("Test Sink.of adds to a collection")
+    void testCollectionSink() {
+        List<Integer> destination = new ArrayList<>();
+        Sink<Integer> sink = Sink.of(destination);
+
+        sink.accept(1);
+        sink.acceptAll(List.of(2, 3));
+        sink.finish();
+
+        assertEquals(List.of(1, 2, 3), destination, "Items should be added");
+        assertThrows(IllegalArgumentException.class, () -> {
+            Sink.of(null);
+        }, "A null destination should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test ThreadLocalSink merges per-thread buffers on finish")
+    void testThreadLocalSink() {
+        ThreadLocalSink<Integer> sink = new ThreadLocalSink<>();
+
+        sink.accept(-1);
+        assertEquals(0, sink.size(), "Unfinished buffers should not be merged");
+        sink.finish();
+        assertEquals(List.of(-1), sink.toList(), "Finished buffer should merge");
+
+        ThreadLocalSink<Integer> shared = new ThreadLocalSink<>();
+        acceptConcurrently(shared);
+        assertEveryItemOnce(shared.toList());
+    }
+
+    @Test
+    @DisplayName("Test StripedSink collects from many threads")
+    void testStripedSink() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new StripedSink<Integer>(0);
+        }, "0 stripes should not be allowed");
+
+        for(int stripes : new int[] {1, 2, 8}) {
+            StripedSink<Integer> sink = new StripedSink<>(stripes);
+            acceptConcurrently(sink);
+
+            assertEquals(THREADS * ITEMS_PER_THREAD, sink.size(),
+                stripes + " stripes: size should count every item"
+            );
+            assertEveryItemOnce(sink.toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Test BatchingSink hands full and final partial batches over")
+    void testBatchingSink() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new BatchingSink<Integer>(0, batch -> {});
+        }, "Batch size of 0 should not be allowed");
+
+        List<List<Integer>> batches =
+            Collections.synchronizedList(new ArrayList<>());
+        BatchingSink<Integer> sink = new BatchingSink<>(3, batches::add);
+
+        sink.acceptAll(List.of(1, 2, 3, 4));
+        assertEquals(List.of(List.of(1, 2, 3)), batches,
+            "A full batch should be handed over"
+        );
+
+        sink.finish();
+        assertEquals(List.of(4), batches.get(1),
+            "finish should hand over the partial batch"
+        );
+
+        batches.clear();
+        BatchingSink<Integer> shared = new BatchingSink<>(64, batches::add);
+        acceptConcurrently(shared);
+
+        List<Integer> items = new ArrayList<>();
+        Set<Integer> sizes = new HashSet<>();
+        for(List<Integer> batch : batches) {
+            items.addAll(batch);
+            sizes.add(batch.size());
+        }
+        assertEveryItemOnce(items);
+        assertEquals(batches.size(), shared.batchCount(), "Batches should be counted");
+        assertTrue(sizes.contains(64), "Batches should be full while items last");
+    }
+
+    @Test
+    @DisplayName("Test consumers share every sink")
+    void testConsumersShareSink() {
+        List<Supplier<Sink<Integer>>> sinks = List.of(
+            ThreadLocalSink::new,
+            StripedSink::new,
+            () -> new BatchingSink<>(2, batch -> {})
+        );
+
+        for(Supplier<Sink<Integer>> factory : sinks) {
+            Sink<Integer> sink = factory.get();
+            LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(10);
+            List<Thread> consumers = new ArrayList<>();
+            for(int i = 0; i < 2; i++) {
+                consumers.add(new Thread(new Consumer<>(queue, sink, 8)));
+            }
+
+            assertTimeoutPreemptively(ofSeconds(5), () -> {
+                for(Thread consumer : consumers) {
+                    consumer.start();
+                }
+
+                queue.putAll(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+                while(queue.size() > 0) {
+                    Thread.sleep(10);
+                }
+
+                queue.shutdown();
+                for(Thread consumer : consumers) {
+                    consumer.join();
+                }
+            });
+
+            if(sink instanceof ThreadLocalSink) {
+                List<Integer> items = ((ThreadLocalSink<Integer>) sink).toList();
+                Collections.sort(items);
+                assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), items,
+                    "Every consumed item should be merged"
+                );
+            } else if(sink instanceof StripedSink) {
+                assertEquals(10, ((StripedSink<Integer>) sink).size(),
+                    "Every consumed item should be collected"
+                );
+            } else {
+                assertTrue(((BatchingSink<Integer>) sink).batchCount() >= 5,
+                    "Every consumed item should be batched"
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourcesTests {
+    @TempDir
+    Path dir;
+
+    static <T> List<T> collect(Iterable<T> source) {
+        List<T> items = new ArrayList<>();
+        for(T item : source) {
+            items.add(item);
+        }
+
+        return items;
+    }
+
+    @Test
+    @DisplayName("Test iterator, spliterator and stream sources")
+    void testInMemorySources() {
+        Iterable<Integer> iterator = Sources.of(List.of(1, 2, 3).iterator());
+        assertEquals(List.of(1, 2, 3), collect(iterator), "Iterator items");
+        assertThrows(IllegalStateException.class, () -> {
+            iterator.iterator();
+        }, "An iterator source should only be iterated once");
+
+        assertEquals(List.of(4, 5), collect(Sources.of(List.of(4, 5).spliterator())),
+            "Spliterator items"
+        );
+
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<Integer> stream = Stream.of(6, 7).onClose(() -> closed.set(true));
+        assertEquals(List.of(6, 7), collect(Sources.of(stream)), "Stream items");
+        assertTrue(closed.get(), "Stream should be closed once exhausted");
+    }
+
+    @Test
+    @DisplayName("Test lines from a file and from a channel")
+    void testLines() throws IOException {
+        Path file = dir.resolve("lines.txt");
+        Files.writeString(file, "alpha\nbeta\r\n\ngamma");
+
+        Iterable<String> lines = Sources.lines(file);
+        List<String> expected = List.of("alpha", "beta", "", "gamma");
+        assertEquals(expected, collect(lines), "Lines should be read in order");
+        assertEquals(expected, collect(lines), "A file source can be read again");
+
+        byte[] bytes = "x\ny\n".getBytes(StandardCharsets.UTF_8);
+        Iterable<String> channel = Sources.lines(
+            Channels.newChannel(new ByteArrayInputStream(bytes)),
+            StandardCharsets.UTF_8
+        );
+        assertEquals(List.of("x", "y"), collect(channel), "Channel lines");
+    }
+
+    @Test
+    @DisplayName("Test records larger than the read buffer round-trip")
+    void testRecords() throws IOException {
+        List<String> items = new ArrayList<>();
+        for(int i = 0; i < 1_000; i++) {
+            items.add("record-" + i);
+        }
+        items.add("x".repeat(Sources.READ_BUFFER_BYTES * 3));
+        items.add("");
+
+        Path file = dir.resolve("records.bin");
+        try(FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            Sources.writeRecords(items, RecordCodec.STRING, channel);
+        }
+
+        assertEquals(items, collect(Sources.records(file, RecordCodec.STRING)),
+            "Records should round-trip"
+        );
+
+        // cut the last 2 bytes of the length of the last record
+        byte[] truncated = Files.readAllBytes(file);
+        Iterable<String> broken = Sources.records(
+            Channels.newChannel(new ByteArrayInputStream(
+                truncated, 0, truncated.length - 2
+            )),
+            RecordCodec.STRING
+        );
+        assertThrows(UncheckedIOException.class, () -> {
+            collect(broken);
+        }, "A truncated record should be reported");
+    }
+
+    @Test
+    @DisplayName("Test Producer reads an endless source only as fast as the queue drains")
+    void testProducerBoundedReadAhead() throws InterruptedException {
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<Integer> endless = Stream.iterate(0, i -> i + 1)
+            .peek(i -> pulled.incrementAndGet())
+            .onClose(() -> closed.set(true));
+
+        LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(3);
+        Thread producer = new Thread(new Producer<>(queue, Sources.of(endless)));
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            producer.start();
+            Thread.sleep(800);
+
+            // 3 in the queue, 1 blocked in put(), and 1 read ahead to
+            // answer hasNext()
+            assertEquals(3, queue.size(), "Queue should be full");
+            assertTrue(pulled.get() <= 5,
+                "Producer should not read ahead, but read " + pulled.get()
+            );
+            assertTrue(producer.isAlive(), "Producer should block");
+
+            queue.shutdown();
+            producer.join();
+        });
+
+        assertTrue(closed.get(), "Producer should close its source on shutdown");
+    }
+
+    @Test
+    @DisplayName("Test Producer batches a lazy source")
+    void testProducerBatchesLazySource() throws InterruptedException {
+        Iterator<Integer> iterator = List.of(1, 2, 3, 4, 5).iterator();
+        LockBlockedQueue<Integer> queue = new LockBlockedQueue<>(10);
+        List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+
+        Thread producer = new Thread(new Producer<>(queue, Sources.of(iterator), 2));
+
+        assertTimeoutPreemptively(ofSeconds(5), () -> {
+            producer.start();
+            producer.join();
+        });
+
+        queue.drainTo(consumed, 10);
+        assertEquals(List.of(1, 2, 3, 4, 5), consumed, "Every item in order");
+        assertFalse(iterator.hasNext(), "Source should be exhausted");
+        assertEquals(5, queue.metrics().getEnqueuedCount(),
+            "Every item should be enqueued"
+        );
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+
+class SpscBlockedQueueTests {
+    SpscBlockedQueue<Integer> q;
+
+    @BeforeEach
+    void init() {
+        q = new SpscBlockedQueue<>(3);
+    }
+
+    @Test
+    @DisplayName("Test for invalid capacity")
+    void testConstructorInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SpscBlockedQueue<>(0);
+        }, "Capacity of 0 should not be allowed");
+    }
+
+    @Test
+    @DisplayName("Test capacity is enforced exactly, not rounded up")
+    void testExactCapacity() {
+        assertTrue(q.tryPut(1), "1st item should fit");
+        assertTrue(q.tryPut(2), "2nd item should fit");
+        assertTrue(q.tryPut(3), "3rd item should fit");
+        assertFalse(q.tryPut(4), "4th item should not fit");
+
+        assertEquals(3, q.size(), "Size should be 3");
+    }
+
+    @Test
+    @DisplayName("Test put and remove in order, across the end of the ring")
+    void testOrderAcrossWrap() throws InterruptedException {
+        for(int i = 0; i < 10; i++) {
+            q.put(i);
+            q.put(i + 100);
+
+            assertEquals(i, q.remove(), "Data removed should be " + i);
+            assertEquals(i + 100, q.remove(),
+                "Data removed should be " + (i + 100)
+            );
+        }
+
+        assertNull(q.tryRemove(), "tryRemove should return null when empty");
+        assertNull(q.poll(10, TimeUnit.MILLISECONDS),
+            "poll should time out when empty"
+        );
+    }
+
+    @Test
+    @DisplayName("Test one producer and one consumer move every item in order")
+    void testProducerConsumer() {
+        int items = 100_000;
+        List<Integer> consumed = new ArrayList<>();
+
+        Thread producer = new Thread(() -> {
+            try {
+                for(int i = 0; i < items; i++) {
+                    q.put(i);
+                }
+            } catch(InterruptedException e) {}
+        });
+
+        Thread consumer = new Thread(() -> {
+            try {
+                while(consumed.size() < items) {
+                    consumed.addAll(q.removeBatch(1, 64, 1, TimeUnit.SECONDS));
+                }
+            } catch(InterruptedException e) {}
+        });
+
+        assertTimeoutPreemptively(ofSeconds(10), () -> {
+            producer.start();
+            consumer.start();
+            producer.join();
+            consumer.join();
+        });
+
+        assertEquals(items, consumed.size(), "Every item should be consumed");
+        for(int i = 0; i < items; i++) {
+            assertEquals(i, consumed.get(i), "Item " + i + " should be in order");
+        }
+    }
+
+    @Test
+    @DisplayName("Test put blocks until the consumer frees a slot")
+    void testPutBlocksWhenFull() throws InterruptedException {
+        q.put(1);
+        q.put(2);
+        q.put(3);
+
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    q.put(4);
+                } catch(InterruptedException e) {}
+            });
+
+            producer.start();
+            Thread.sleep(100);
+            assertTrue(producer.isAlive(), "Producer should block");
+
+            assertEquals(1, q.remove(), "Data removed should be 1");
+            producer.join();
+        });
+
+        List<Integer> drained = new ArrayList<>();
+        q.drainTo(drained, 5);
+        assertEquals(List.of(2, 3, 4), drained, "Drained items should be 2, 3, 4");
+    }
+
+    @Test
+    @DisplayName("Test shutdown wakes a blocked consumer with null")
+    void testShutdown() throws InterruptedException {
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            List<Integer> removed = new ArrayList<>();
+            Thread consumer = new Thread(() -> {
+                try {
+                    removed.add(q.remove());
+                } catch(InterruptedException e) {}
+            });
+
+            consumer.start();
+            Thread.sleep(100);
+            q.shutdown();
+            consumer.join();
+
+            assertEquals(1, removed.size(), "Consumer should return");
+            assertNull(removed.get(0), "remove should return null upon shutdown");
+        });
+
+        q.put(1);
+        assertEquals(0, q.size(), "put should not insert after shutdown");
+    }
+
+    @Test
+    @DisplayName("Test forUsage picks SPSC only for one producer and one consumer")
+    void testForUsage() {
+        assertEquals(QueueType.SPSC, QueueType.LOCK.forUsage(1, 1),
+            "1 producer and 1 consumer should get SPSC"
+        );
+        assertEquals(QueueType.LOCK, QueueType.LOCK.forUsage(2, 1),
+            "2 producers should keep the chosen type"
+        );
+        assertTrue(QueueType.SPSC.forUsage(1, 1).create(4)
+            instanceof SpscBlockedQueue, "SPSC should create SpscBlockedQueue"
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            QueueType.SPSC.forUsage(1, 2);
+        }, "SPSC should not allow 2 consumers");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            QueueType.LOCK.forUsage(0, 1);
+        }, "0 producers should not be allowed");
+    }
+}
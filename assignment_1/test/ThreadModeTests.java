@@ -0,0 +1,97 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class ThreadModeTests {
+    /**
+     * Runs producers and consumers over a LockBlockedQueue in the given
+     * thread mode, and returns everything consumed
+     */
+    private List<Integer> runPipeline(ThreadMode mode, int producers,
+        int consumers) throws InterruptedException {
+
+        BlockedQueue<Integer> buffer = new LockBlockedQueue<>(4);
+        List<Integer> destination =
+            Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = mode.newExecutor(producers + consumers);
+
+        for(int i = 0; i < producers; i++) {
+            pool.submit(new Producer<>(buffer, List.of(i)));
+        }
+
+        for(int i = 0; i < consumers; i++) {
+            pool.submit(new Consumer<>(buffer, destination));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(destination.size() < producers
+            && System.nanoTime() < deadline) {
+
+            Thread.sleep(10);
+        }
+
+        buffer.shutdown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS),
+            "Every task should stop after shutdown"
+        );
+
+        return destination;
+    }
+
+    @Test
+    @DisplayName("Test platform threads run producers and consumers")
+    void testPlatformMode() throws InterruptedException {
+        assertTrue(ThreadMode.PLATFORM.isSupported(),
+            "Platform threads should always be supported"
+        );
+        assertEquals(20, runPipeline(ThreadMode.PLATFORM, 20, 20).size(),
+            "Every produced item should be consumed"
+        );
+    }
+
+    @Test
+    @DisplayName("Test virtual threads run thousands of tasks")
+    void testVirtualMode() throws InterruptedException {
+        assumeTrue(ThreadMode.VIRTUAL.isSupported(),
+            "Virtual threads need Java 21 or higher"
+        );
+
+        assertEquals(2_000, runPipeline(ThreadMode.VIRTUAL, 2_000, 2_000).size(),
+            "Every produced item should be consumed"
+        );
+    }
+
+    @Test
+    @DisplayName("Test virtual threads are rejected on older JVMs")
+    void testVirtualModeUnsupported() {
+        assumeTrue(!ThreadMode.VIRTUAL.isSupported(),
+            "Only applies before Java 21"
+        );
+
+        assertThrows(UnsupportedOperationException.class, () -> {
+            ThreadMode.VIRTUAL.newExecutor(1);
+        }, "Creating a virtual executor should fail before Java 21");
+    }
+
+    @Test
+    @DisplayName("Test thread mode lookup by name")
+    void testFromName() {
+        assertEquals(ThreadMode.VIRTUAL, ThreadMode.fromName(" Virtual "),
+            "Lookup should ignore case and whitespace"
+        );
+        assertThrows(IllegalArgumentException.class, () -> {
+            ThreadMode.fromName("green");
+        }, "Unknown thread modes should not be allowed");
+    }
+}
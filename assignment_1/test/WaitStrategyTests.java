@@ -0,0 +1,221 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.time.Duration.ofSeconds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+class WaitStrategyTests {
+    // every queue that takes a WaitStrategy, with capacity 2
+    static final List<Function<WaitStrategy, BlockedQueue<Integer>>> QUEUES =
+        List.of(
+            strategy -> new RingBufferBlockedQueue<>(2, strategy),
+            strategy -> new SpscBlockedQueue<>(2, strategy)
+        );
+
+    @Test
+    @DisplayName("Test for null wait strategy")
+    void testNullStrategy() {
+        for(Function<WaitStrategy, BlockedQueue<Integer>> queue : QUEUES) {
+            assertThrows(IllegalArgumentException.class, () -> {
+                queue.apply(null);
+            }, "A null wait strategy should not be allowed");
+        }
+    }
+
+    @Test
+    @DisplayName("Test every strategy hands every item over in order")
+    void testHandoff() {
+        for(Function<WaitStrategy, BlockedQueue<Integer>> factory : QUEUES) {
+            for(WaitStrategy strategy : WaitStrategy.values()) {
+                BlockedQueue<Integer> queue = factory.apply(strategy);
+                List<Integer> consumed = new ArrayList<>();
+
+                Thread producer = new Thread(() -> {
+                    try {
+                        for(int i = 0; i < 2_000; i++) {
+                            queue.put(i);
+                        }
+                    } catch(InterruptedException e) {}
+                });
+
+                Thread consumer = new Thread(() -> {
+                    try {
+                        for(int i = 0; i < 2_000; i++) {
+                            consumed.add(queue.remove());
+                        }
+                    } catch(InterruptedException e) {}
+                });
+
+                assertTimeoutPreemptively(ofSeconds(10), () -> {
+                    producer.start();
+                    consumer.start();
+                    producer.join();
+                    consumer.join();
+                }, strategy + ": handoff should complete");
+
+                for(int i = 0; i < 2_000; i++) {
+                    assertEquals(i, consumed.get(i),
+                        strategy + ": item " + i + " should be in order"
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test shutdown and timeouts end a spinning wait")
+    void testShutdownAndTimeout() {
+        for(Function<WaitStrategy, BlockedQueue<Integer>> factory : QUEUES) {
+            for(WaitStrategy strategy : WaitStrategy.values()) {
+                BlockedQueue<Integer> queue = factory.apply(strategy);
+
+                assertTimeoutPreemptively(ofSeconds(2), () -> {
+                    assertNull(queue.poll(10, TimeUnit.MILLISECONDS),
+                        strategy + ": poll should time out when empty"
+                    );
+
+                    List<Integer> removed =
+                        Collections.synchronizedList(new ArrayList<>());
+                    Thread consumer = new Thread(() -> {
+                        try {
+                            removed.add(queue.remove());
+                        } catch(InterruptedException e) {}
+                    });
+
+                    consumer.start();
+                    Thread.sleep(50);
+                    queue.shutdown();
+                    consumer.join();
+
+                    assertNull(removed.get(0),
+                        strategy + ": remove should return null upon shutdown"
+                    );
+                });
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test an interrupt ends a spinning wait")
+    void testInterrupt() {
+        for(Function<WaitStrategy, BlockedQueue<Integer>> factory : QUEUES) {
+            BlockedQueue<Integer> queue = factory.apply(WaitStrategy.BUSY_SPIN);
+            List<Boolean> interrupted =
+                Collections.synchronizedList(new ArrayList<>());
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    queue.remove();
+                } catch(InterruptedException e) {
+                    interrupted.add(true);
+                }
+            });
+
+            assertTimeoutPreemptively(ofSeconds(2), () -> {
+                consumer.start();
+                Thread.sleep(50);
+                consumer.interrupt();
+                consumer.join();
+            });
+
+            assertEquals(List.of(true), interrupted,
+                "remove should throw InterruptedException"
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Test metrics count which phase ended each wait")
+    void testPhaseMetrics() throws InterruptedException {
+        for(Function<WaitStrategy, BlockedQueue<Integer>> factory : QUEUES) {
+            BlockedQueue<Integer> spinning = factory.apply(WaitStrategy.BUSY_SPIN);
+            waitForOneItem(spinning);
+
+            QueueMetrics.Snapshot spun = spinning.metrics().snapshot();
+            assertEquals(1, spun.getSpinWaitCount(), "BUSY_SPIN should spin");
+            assertEquals(0, spun.getParkWaitCount(), "BUSY_SPIN should not park");
+
+            BlockedQueue<Integer> yielding =
+                factory.apply(WaitStrategy.SPIN_YIELD);
+            waitForOneItem(yielding);
+
+            assertEquals(1, yielding.metrics().getYieldWaitCount(),
+                "SPIN_YIELD should end a 50 ms wait while yielding"
+            );
+
+            BlockedQueue<Integer> blocking = factory.apply(WaitStrategy.BLOCKING);
+            waitForOneItem(blocking);
+
+            QueueMetrics.Snapshot parked = blocking.metrics().snapshot();
+            assertEquals(0, parked.getSpinWaitCount(), "BLOCKING should not spin");
+            assertEquals(1, parked.getParkWaitCount(), "BLOCKING should park");
+        }
+    }
+
+    @Test
+    @DisplayName("Test the adaptive budget shrinks when spinning fails")
+    void testAdaptiveBudget() {
+        SpinWaiter waiter =
+            new SpinWaiter(WaitStrategy.SPIN_PARK, new QueueMetrics());
+        int initial = waiter.budget();
+
+        waiter.parked();
+        assertTrue(waiter.budget() < initial, "Parking should shrink the budget");
+
+        for(int i = 0; i < 20; i++) {
+            waiter.parked();
+        }
+        assertEquals(SpinWaiter.MIN_BUDGET, waiter.budget(),
+            "Budget should not shrink below its minimum"
+        );
+
+        waiter.satisfied(1_000);
+        assertEquals(2_000, waiter.budget(),
+            "Spinning success should grow the budget"
+        );
+        assertFalse(waiter.idle(2_001), "SPIN_PARK should park past its budget");
+    }
+
+    @Test
+    @DisplayName("Test for wait strategy names")
+    void testFromName() {
+        assertEquals(WaitStrategy.SPIN_PARK, WaitStrategy.fromName("spin-park"),
+            "spin-park should be SPIN_PARK"
+        );
+        assertThrows(IllegalArgumentException.class, () -> {
+            WaitStrategy.fromName("sleep");
+        }, "Unknown names should not be allowed");
+    }
+
+    /**
+     * Removes one item that another thread puts after 50 ms
+     */
+    private static void waitForOneItem(BlockedQueue<Integer> queue)
+        throws InterruptedException {
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.put(1);
+            } catch(InterruptedException e) {}
+        });
+
+        producer.start();
+        assertTimeoutPreemptively(ofSeconds(2), () -> {
+            assertEquals(1, queue.remove(), "Data removed should be 1");
+        });
+        producer.join();
+    }
+}